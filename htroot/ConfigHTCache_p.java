@@ -70,6 +70,11 @@ public class ConfigHTCache_p {
 					post.getInt("compressionLevel", SwitchboardConstants.HTCACHE_COMPRESSION_LEVEL_DEFAULT)));
 			env.setConfig(SwitchboardConstants.HTCACHE_COMPRESSION_LEVEL, newCompressionLevel);
 			Cache.setCompressionLevel(newCompressionLevel);
+
+			/* Compression with dictionaries trained for each host */
+			final boolean newCompressionDictionaries = post.getBoolean("compressionDictionaries");
+			env.setConfig(SwitchboardConstants.HTCACHE_COMPRESSION_DICTIONARIES, newCompressionDictionaries);
+			Cache.setDictionaryCompression(newCompressionDictionaries);
 			
             /* Synchronization lock timeout */
 			final long newLockTimeout = Math.max(10, Math.min(60000,
@@ -111,6 +116,8 @@ public class ConfigHTCache_p {
         	levelsCount++;
         }
         prop.put("compressionLevels", levelsCount);
+		prop.put("compressionDictionaries", env.getConfigBool(SwitchboardConstants.HTCACHE_COMPRESSION_DICTIONARIES,
+				SwitchboardConstants.HTCACHE_COMPRESSION_DICTIONARIES_DEFAULT) ? 1 : 0);
         
 		prop.put("lockTimeout", env.getConfigLong(SwitchboardConstants.HTCACHE_SYNC_LOCK_TIMEOUT,
 				SwitchboardConstants.HTCACHE_SYNC_LOCK_TIMEOUT_DEFAULT));
@@ -112,10 +112,10 @@ public class Crawler_p {
         String localSolr = "solr/select?core=collection1&q=*:*&start=0&rows=3";
         String remoteSolr = env.getConfig(SwitchboardConstants.FEDERATED_SERVICE_SOLR_INDEXING_URL, localSolr);
         if (!remoteSolr.endsWith("/")) remoteSolr = remoteSolr + "/";
-        prop.put("urlpublictextSolrURL", fulltext.connectedLocalSolr() ? localSolr : remoteSolr + "collection1/select?&q=*:*&start=0&rows=3");
+        prop.put("urlpublictextSolrURL", (fulltext.connectedLocalSolr() || fulltext.connectedLocalShards()) ? localSolr : remoteSolr + "collection1/select?&q=*:*&start=0&rows=3");
         prop.putNum("urlpublictextSize", fulltext.collectionSize());
         prop.putNum("urlpublictextSegmentCount", fulltext.getDefaultConnector().getSegmentCount());
-        prop.put("webgraphSolrURL", fulltext.connectedLocalSolr() ? localSolr.replace("collection1", "webgraph") : remoteSolr + "webgraph/select?&q=*:*&start=0&rows=3");
+        prop.put("webgraphSolrURL", (fulltext.connectedLocalSolr() || fulltext.connectedLocalShards()) ? localSolr.replace("collection1", "webgraph") : remoteSolr + "webgraph/select?&q=*:*&start=0&rows=3");
         prop.putNum("webgraphSize", fulltext.useWebgraph() ? fulltext.webgraphSize() : 0);
         prop.putNum("webgraphSegmentCount", fulltext.useWebgraph() ? fulltext.getWebgraphConnector().getSegmentCount() : 0);
         prop.putNum("citationSize", segment.citationCount());
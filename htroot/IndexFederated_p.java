@@ -87,7 +87,7 @@ public class IndexFederated_p {
         	TransactionManager.checkPostTransaction(header, post);
         	
             boolean post_core_fulltext = post.getBoolean(SwitchboardConstants.CORE_SERVICE_FULLTEXT);
-			final boolean previous_core_fulltext = sb.index.fulltext().connectedLocalSolr() && env.getConfigBool(
+			final boolean previous_core_fulltext = (sb.index.fulltext().connectedLocalSolr() || sb.index.fulltext().connectedLocalShards()) && env.getConfigBool(
 					SwitchboardConstants.CORE_SERVICE_FULLTEXT, SwitchboardConstants.CORE_SERVICE_FULLTEXT_DEFAULT);
             env.setConfig(SwitchboardConstants.CORE_SERVICE_FULLTEXT, post_core_fulltext);
 
@@ -0,0 +1,36 @@
+// metrics_p.java
+// ------------
+// part of YaCy
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+import net.yacy.cora.metrics.Metrics;
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+
+/**
+ * The runtime metrics of the peer in the Prometheus text exposition format,
+ * to be scraped by a monitoring system: http://localhost:8090/api/metrics_p.txt
+ */
+public class metrics_p {
+
+    public static serverObjects respond(@SuppressWarnings("unused") final RequestHeader header, @SuppressWarnings("unused") final serverObjects post, @SuppressWarnings("unused") final serverSwitch env) {
+        final serverObjects prop = new serverObjects();
+        prop.put("metrics", Metrics.text());
+        return prop;
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ *  SuggestionIndex
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.document;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A symmetric-delete spelling index: all terms in edit distance one of a word are found
+ * without generating and testing the variations of the word against a dictionary.
+ * <p>
+ * Every term is stored together with all variations of the term where one character is deleted.
+ * A word and a term have an edit distance of at most one (one letter changed, added, deleted or
+ * two consecutive letters reversed) only if the word or one of its deletions is equal to the term or
+ * one of the deletions of the term. The deletions are stored as hash values in a sorted array of
+ * (hash, term id) pairs, so a lookup needs (length + 1) binary searches and a verification of the found terms.
+ * </p><p>
+ * Terms are added incrementally together with a frequency; new entries are collected in an unsorted tail
+ * which is merged into the sorted array when it becomes large.
+ * </p>
+ */
+public class SuggestionIndex {
+
+    private static final int MIN_PENDING = 4096; // the unsorted tail is scanned linearly up to this size
+
+    private final Map<String, Integer> ids;
+    private String[] terms;
+    private int[] counts;
+    private long[] entries; // (hash << 32 | term id), sorted up to this.sorted
+    private int entryCount, sorted;
+
+    public SuggestionIndex() {
+        this.ids = new HashMap<String, Integer>();
+        this.terms = new String[64];
+        this.counts = new int[64];
+        this.entries = new long[512];
+        this.entryCount = 0;
+        this.sorted = 0;
+    }
+
+    /**
+     * add a term or increase the frequency of a known term
+     * @param term the term, stored in lower case
+     * @param count the number of new occurrences of the term
+     */
+    public synchronized void add(final CharSequence term, final int count) {
+        final String t = term.toString().toLowerCase(Locale.ROOT);
+        if (t.isEmpty()) return;
+        final Integer id = this.ids.get(t);
+        if (id != null) {
+            final long c = (long) this.counts[id.intValue()] + count;
+            this.counts[id.intValue()] = c > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) c;
+            return;
+        }
+        final int n = this.ids.size();
+        if (n == this.terms.length) {
+            this.terms = Arrays.copyOf(this.terms, n * 2);
+            this.counts = Arrays.copyOf(this.counts, n * 2);
+        }
+        this.terms[n] = t;
+        this.counts[n] = count;
+        this.ids.put(t, Integer.valueOf(n));
+        if (this.entryCount + t.length() + 1 > this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, Math.max(this.entries.length * 2, this.entryCount + t.length() + 1));
+        }
+        this.entries[this.entryCount++] = entry(hash(t, -1), n);
+        for (int i = 0; i < t.length(); i++) {
+            if (i > 0 && t.charAt(i) == t.charAt(i - 1)) continue; // same deletion as before
+            this.entries[this.entryCount++] = entry(hash(t, i), n);
+        }
+    }
+
+    /**
+     * add a batch of terms with a single synchronization
+     * @param terms the terms with the number of their new occurrences
+     */
+    public synchronized void addAll(final Map<String, Integer> terms) {
+        for (final Map.Entry<String, Integer> e: terms.entrySet()) add(e.getKey(), e.getValue().intValue());
+    }
+
+    /**
+     * @return the frequency of the term or 0 if the term is not known
+     */
+    public synchronized int count(final CharSequence term) {
+        final Integer id = this.ids.get(term.toString().toLowerCase(Locale.ROOT));
+        return id == null ? 0 : this.counts[id.intValue()];
+    }
+
+    /**
+     * find all terms in edit distance of at most one to the given word, including the word itself
+     * @param word the (possibly misspelled) word
+     * @return a map from the terms to their frequency
+     */
+    public synchronized Map<String, Integer> suggest(final CharSequence word) {
+        final Map<String, Integer> result = new HashMap<String, Integer>();
+        final String w = word.toString().toLowerCase(Locale.ROOT);
+        if (w.isEmpty() || this.entryCount == 0) return result;
+        if (this.entryCount - this.sorted > Math.max(MIN_PENDING, this.sorted / 8)) merge();
+        collect(w, hash(w, -1), result);
+        for (int i = 0; i < w.length(); i++) {
+            if (i > 0 && w.charAt(i) == w.charAt(i - 1)) continue;
+            collect(w, hash(w, i), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of terms
+     */
+    public synchronized int size() {
+        return this.ids.size();
+    }
+
+    public synchronized void clear() {
+        this.ids.clear();
+        this.terms = new String[64];
+        this.counts = new int[64];
+        this.entries = new long[512];
+        this.entryCount = 0;
+        this.sorted = 0;
+    }
+
+    /**
+     * remove the terms with the smallest frequency until the given number of terms remains
+     */
+    public synchronized void shrinkToMaxSize(final int maxSize) {
+        final int n = this.ids.size();
+        if (n <= maxSize) return;
+        final long[] order = new long[n]; // (count << 32 | id), the largest counts at the end
+        for (int id = 0; id < n; id++) order[id] = ((long) this.counts[id] << 32) | id;
+        Arrays.sort(order);
+        final String[] t = new String[maxSize];
+        final int[] c = new int[maxSize];
+        for (int i = 0; i < maxSize; i++) {
+            final int id = (int) order[n - maxSize + i];
+            t[i] = this.terms[id];
+            c[i] = this.counts[id];
+        }
+        clear();
+        for (int i = 0; i < maxSize; i++) add(t[i], c[i]);
+        merge();
+    }
+
+    private void collect(final String word, final int hash, final Map<String, Integer> result) {
+        // the sorted part
+        final long key = (long) hash << 32;
+        int low = 0, high = this.sorted;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.entries[mid] < key) low = mid + 1; else high = mid;
+        }
+        for (int i = low; i < this.sorted && (int) (this.entries[i] >>> 32) == hash; i++) verify(word, (int) this.entries[i], result);
+        // the unsorted tail
+        for (int i = this.sorted; i < this.entryCount; i++) {
+            if ((int) (this.entries[i] >>> 32) == hash) verify(word, (int) this.entries[i], result);
+        }
+    }
+
+    private void verify(final String word, final int id, final Map<String, Integer> result) {
+        final String term = this.terms[id];
+        if (!result.containsKey(term) && withinOneEdit(word, term)) result.put(term, Integer.valueOf(this.counts[id]));
+    }
+
+    private void merge() {
+        if (this.sorted == this.entryCount) return;
+        Arrays.sort(this.entries, this.sorted, this.entryCount);
+        final long[] a = new long[Math.max(512, this.entryCount + this.entryCount / 4)];
+        int i = 0, j = this.sorted, k = 0;
+        while (i < this.sorted && j < this.entryCount) a[k++] = this.entries[i] <= this.entries[j] ? this.entries[i++] : this.entries[j++];
+        while (i < this.sorted) a[k++] = this.entries[i++];
+        while (j < this.entryCount) a[k++] = this.entries[j++];
+        this.entries = a;
+        this.sorted = this.entryCount;
+    }
+
+    private static long entry(final int hash, final int id) {
+        return ((long) hash << 32) | id;
+    }
+
+    /**
+     * @return the hash of the string without the character at the position skip; -1 means no deletion
+     */
+    private static int hash(final String s, final int skip) {
+        int h = s.length() - (skip < 0 ? 0 : 1);
+        for (int i = 0; i < s.length(); i++) {
+            if (i != skip) h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * @return true if the strings are equal or differ by one changed, added or deleted character
+     * or by two reversed consecutive characters
+     */
+    static boolean withinOneEdit(final String a, final String b) {
+        final int la = a.length(), lb = b.length();
+        if (la == lb) {
+            int i = 0;
+            while (i < la && a.charAt(i) == b.charAt(i)) i++;
+            if (i >= la - 1) return true;
+            if (a.charAt(i + 1) == b.charAt(i + 1)) return a.regionMatches(i + 2, b, i + 2, la - i - 2); // one change
+            return a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i) && a.regionMatches(i + 2, b, i + 2, la - i - 2); // reversed
+        }
+        if (Math.abs(la - lb) != 1) return false;
+        final String s = la < lb ? a : b, l = la < lb ? b : a;
+        int i = 0;
+        while (i < s.length() && s.charAt(i) == l.charAt(i)) i++;
+        return s.regionMatches(i, l, i + 1, s.length() - i);
+    }
+}
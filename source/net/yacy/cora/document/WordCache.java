@@ -27,15 +27,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
@@ -55,6 +62,10 @@ public class WordCache {
     private static final int commonWordsMaxSize = 20000;  // maximum size of common word cache
     private static final int commonWordsMinLength = 5;    // words must have that length at minimum
     private static OrderedScoreMap<StringBuilder> commonWords = new OrderedScoreMap<StringBuilder>(StringBuilderComparator.CASE_INSENSITIVE_ORDER);
+    private static final SuggestionIndex commonIndex = new SuggestionIndex(); // spelling index of the common words
+    private static final int commonIndexBatchSize = 1024; // learned words are added to the spelling index in batches of this size
+    private static final ConcurrentLinkedQueue<StringBuilder> commonIndexPending = new ConcurrentLinkedQueue<StringBuilder>();
+    private static final AtomicInteger commonIndexPendingCount = new AtomicInteger(0);
 
     // dictionaries
     private final File dictionaryPath;
@@ -64,11 +75,13 @@ public class WordCache {
 
         private final TreeSet<StringBuilder> dict; // the word dictionary
         private final TreeSet<StringBuilder> tcid; // the dictionary of reverse words
+        private final SuggestionIndex index; // the spelling index of the words
 
         public Dictionary(final File file) throws IOException {
 
             this.dict = new TreeSet<StringBuilder>(StringBuilderComparator.CASE_INSENSITIVE_ORDER);
             this.tcid = new TreeSet<StringBuilder>(StringBuilderComparator.CASE_INSENSITIVE_ORDER);
+            this.index = new SuggestionIndex();
 
             InputStream is = new FileInputStream(file);
             if (file.getName().endsWith(".gz")) {
@@ -89,6 +102,7 @@ public class WordCache {
                     sb = new StringBuilder(l);
                     this.dict.add(sb);
                     this.tcid.add(reverse(sb));
+                    this.index.add(l, 1);
                 }
             } catch (final IOException e) {
                 // finish
@@ -124,6 +138,16 @@ public class WordCache {
             return ret;
         }
 
+        /**
+         * find the words of the dictionary that differ from the given word by one changed,
+         * added or deleted letter or by two reversed consecutive letters
+         * @param string the possibly misspelled word
+         * @return a map from the words to their frequency; the map may contain the given word
+         */
+        public Map<String, Integer> corrections(final StringBuilder string) {
+            return this.index.suggest(string);
+        }
+
         /**
          * check if the library contains the given word
          * @param s the given word
@@ -220,6 +244,31 @@ public class WordCache {
         if (!(commonWords.sizeSmaller(commonWordsMaxSize))) {
             commonWords.shrinkToMaxSize(commonWordsMaxSize / 2);
         }
+        commonIndexPending.add(word);
+        if (commonIndexPendingCount.incrementAndGet() >= commonIndexBatchSize) {
+            flushCommonIndex();
+        }
+    }
+
+    /**
+     * add the pending learned words to the spelling index of the common words
+     */
+    private static void flushCommonIndex() {
+        final Map<String, Integer> batch = new HashMap<String, Integer>();
+        StringBuilder word;
+        while ((word = commonIndexPending.poll()) != null) {
+            commonIndexPendingCount.decrementAndGet();
+            final String w = word.toString().toLowerCase(Locale.ROOT);
+            final Integer c = batch.get(w);
+            batch.put(w, c == null ? 1 : c.intValue() + 1);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        commonIndex.addAll(batch);
+        if (commonIndex.size() >= commonWordsMaxSize) {
+            commonIndex.shrinkToMaxSize(commonWordsMaxSize / 2);
+        }
     }
 
     public static void learn(Collection<String> wordset) {
@@ -284,6 +333,41 @@ public class WordCache {
         return ret;
     }
 
+    /**
+     * find the words in the dictionaries and in the common words that differ from the given word
+     * by one changed, added or deleted letter or by two reversed consecutive letters.
+     * The words are taken from a precomputed spelling index, the variations of the given word are not tested one by one.
+     * @param string the possibly misspelled word
+     * @param maxCount the maximum number of corrections
+     * @return the corrections, the most frequent first; the given word is not contained
+     */
+    public List<StringBuilder> corrections(final StringBuilder string, final int maxCount) {
+        final Map<String, Integer> found = new HashMap<String, Integer>();
+        for (Dictionary dict: this.dictionaries.values()) {
+            found.putAll(dict.corrections(string));
+        }
+        flushCommonIndex();
+        for (final Map.Entry<String, Integer> e: commonIndex.suggest(string).entrySet()) {
+            final Integer c = found.get(e.getKey());
+            found.put(e.getKey(), c == null ? e.getValue() : Integer.valueOf(c.intValue() + e.getValue().intValue()));
+        }
+        found.remove(string.toString().toLowerCase(Locale.ROOT));
+        final List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(found.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(final Map.Entry<String, Integer> o1, final Map.Entry<String, Integer> o2) {
+                final int c = o2.getValue().compareTo(o1.getValue());
+                return c != 0 ? c : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        final List<StringBuilder> ret = new ArrayList<StringBuilder>(Math.min(maxCount, sorted.size()));
+        for (final Map.Entry<String, Integer> e: sorted) {
+            if (ret.size() >= maxCount) break;
+            ret.add(new StringBuilder(e.getKey()));
+        }
+        return ret;
+    }
+
     /**
      * check if the library contains the given word
      * @param s the given word
@@ -332,6 +416,9 @@ public class WordCache {
     
     public static void clearCommonWords() {
         commonWords.clear();
+        commonIndexPending.clear();
+        commonIndexPendingCount.set(0);
+        commonIndex.clear();
     }
 
     /**
@@ -49,8 +49,10 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
 
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.sorting.ClusteredScoreMap;
@@ -256,13 +258,21 @@ public abstract class AbstractSolrConnector implements SolrConnector {
             try {
                 for (final String querystring: querystrings) {
                     Thread.currentThread().setName("AbstractSolrConnector:concurrentDocumentsByQueryNoPrefetch(" + querystring + ")");
-                    int o = offset;
+                    String cursor = CursorMarkParams.CURSOR_MARK_START;
+                    int skip = offset;
                     int count = 0;
                     int retry = 0;
                     loop: while (remainingTime > 0 && count < maxcount) {
                           try {
-                             final SolrDocumentList sdl = getDocumentListByQuery(querystring, sort, o, Math.min(maxcount, ps), fields);
+                             final int rows = Math.min(maxcount, ps);
+                             final QueryResponse rsp = getCursorPageByQuery(querystring, sort, cursor, rows, fields);
+                             final SolrDocumentList sdl = rsp.getResults();
+                             if (sdl == null) break loop;
                              for (final SolrDocument d: sdl) {
+                                    if (skip > 0) {
+                                        skip--; // a cursor scan has no offset
+                                        continue;
+                                    }
                             		if (endtime != Long.MAX_VALUE) {
                             			/*
                             			 * A timeout is defined : we must not use here queue.put() otherwise this
@@ -277,10 +287,11 @@ public abstract class AbstractSolrConnector implements SolrConnector {
                             		}
                                 count++;
                              }
-                             if (sdl.size() < ps) {
+                             final String next = nextCursorMark(rsp, cursor, rows);
+                             if (next == null) {
                                 break loop; // finished
                              }
-                             o += sdl.size();
+                             cursor = next;
                              retry = 0;
                          } catch(final InterruptedIOException e) {
                         	 throw new InterruptedException(); // rethrow to finish the process
@@ -371,18 +382,23 @@ public abstract class AbstractSolrConnector implements SolrConnector {
                 try {
                     for (String querystring: querystrings) {
                         this.setName("AbstractSolrConnector:concurrentIDsByQueries(" + querystring + ")");
-                        int o = offset;
-                        while (System.currentTimeMillis() < endtime) {
+                        String cursor = CursorMarkParams.CURSOR_MARK_START;
+                        int skip = offset;
+                        int count = 0;
+                        while ((maxcount < 0 || count < maxcount) && System.currentTimeMillis() < endtime) { // maxcount == 0 returns nothing
                             try {
-                                SolrDocumentList sdl = getDocumentListByQuery(querystring, sort, o, maxcount < 0 ? pagesize_ids : Math.min(maxcount, pagesize_ids), CollectionSchema.id.getSolrFieldName());
-                                int count = 0;
+                                final int rows = maxcount < 0 ? pagesize_ids : Math.min(maxcount, pagesize_ids);
+                                final QueryResponse rsp = getCursorPageByQuery(querystring, sort, cursor, rows, CollectionSchema.id.getSolrFieldName());
+                                final SolrDocumentList sdl = rsp.getResults();
+                                if (sdl == null) break;
                                 for (SolrDocument d: sdl) {
+                                    if (skip > 0) {skip--; continue;}
                                     try {queue.put((String) d.getFieldValue(CollectionSchema.id.getSolrFieldName()));} catch (final InterruptedException e) {break;}
                                     count++;
                                 }
-                                if (count < pagesize_ids) break;
-                                o += count;
-                                if (o > maxcount && maxcount > 0) break;
+                                if (count >= maxcount && maxcount >= 0) break;
+                                cursor = nextCursorMark(rsp, cursor, rows);
+                                if (cursor == null) break;
                             } catch (final SolrException e) {
                                 break;
                             } catch (final IOException e) {
@@ -440,6 +456,97 @@ public abstract class AbstractSolrConnector implements SolrConnector {
         return docs;
     }
 
+    /**
+     * get one page of a deep scan through the results of a query with a Solr cursor
+     */
+    @Override
+    public QueryResponse getCursorPageByQuery(
+            final String querystring,
+            final String sort,
+            final String cursorMark,
+            final int count,
+            final String ... fields) throws IOException {
+        final SolrQuery params = getSolrQuery(querystring, cursorSort(sort), 0, count, fields);
+        params.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark == null ? CursorMarkParams.CURSOR_MARK_START : cursorMark);
+        return getCursorResponseByParams(params);
+    }
+
+    /**
+     * get the response for a query with a cursor mark; connectors may override this with a more efficient request
+     * which must return the documents and the next cursor mark
+     * @param params the query with cursor mark and sort
+     * @throws IOException
+     */
+    protected QueryResponse getCursorResponseByParams(final ModifiableSolrParams params) throws IOException {
+        return getResponseByParams(params);
+    }
+
+    /**
+     * Solr requires a sort for a cursor which has the unique key field as last sort criterion
+     * @param sort the solr sort string, may be null
+     * @return the sort which ends with the id field
+     */
+    public static String cursorSort(final String sort) {
+        final String idsort = CollectionSchema.id.getSolrFieldName() + " asc";
+        if (sort == null || sort.trim().isEmpty()) return idsort;
+        for (final String clause: sort.split(",")) {
+            if (clause.trim().startsWith(CollectionSchema.id.getSolrFieldName() + " ")) return sort;
+        }
+        return sort + "," + idsort;
+    }
+
+    /**
+     * @param rsp the response of a cursor page
+     * @param cursorMark the cursor mark of the page
+     * @param rows the number of requested rows
+     * @return the cursor mark of the next page or null if the scan is finished
+     */
+    protected static String nextCursorMark(final QueryResponse rsp, final String cursorMark, final int rows) {
+        final SolrDocumentList sdl = rsp.getResults();
+        if (sdl == null || sdl.size() < rows) return null;
+        final String next = rsp.getNextCursorMark();
+        if (next == null) {
+            ConcurrentLog.warn("AbstractSolrConnector", "no cursor mark in the response, the scan is incomplete");
+            return null;
+        }
+        return next.equals(cursorMark) ? null : next;
+    }
+
+    @Override
+    public Iterator<SolrDocument> documentsByQuery(
+            final String querystring,
+            final String sort,
+            final int maxcount,
+            final long maxtime,
+            final int pagesize,
+            final String ... fields) {
+        final long endtime = maxtime < 0 || maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxtime; // we know infinity!
+        return new LookAheadIterator<SolrDocument>() {
+            private String cursor = CursorMarkParams.CURSOR_MARK_START;
+            private Iterator<SolrDocument> page = null;
+            private int count = 0;
+
+            @Override
+            protected SolrDocument next0() {
+                while (this.page == null || !this.page.hasNext()) {
+                    if (this.cursor == null || this.count >= maxcount || System.currentTimeMillis() >= endtime) return null;
+                    final int rows = Math.min(pagesize, maxcount - this.count);
+                    try {
+                        final QueryResponse rsp = getCursorPageByQuery(querystring, sort, this.cursor, rows, fields);
+                        if (rsp.getResults() == null) return null;
+                        this.page = rsp.getResults().iterator();
+                        this.cursor = nextCursorMark(rsp, this.cursor, rows);
+                    } catch (final IOException | SolrException e) {
+                        ConcurrentLog.warn("AbstractSolrConnector", "aborted documentsByQuery: " + e.getMessage());
+                        return null;
+                    }
+                }
+                this.count++;
+                return this.page.next();
+            }
+        };
+    }
+
     public static SolrQuery getSolrQuery(
             final String querystring,
             final String sort,
@@ -32,6 +32,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import net.yacy.cora.federate.solr.instance.EmbeddedInstance;
 import net.yacy.cora.federate.solr.instance.SolrInstance;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.search.schema.CollectionSchema;
 
@@ -47,6 +49,7 @@ import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
@@ -76,6 +79,8 @@ public class EmbeddedSolrConnector extends SolrServerConnector implements SolrCo
     public static final String SELECT = "/select";
     public static final String CONTEXT = "/solr";
 
+    private static final Histogram queryTime = Metrics.histogram("solr_embedded_query_seconds", "duration of queries to the embedded Solr");
+
     private final SearchHandler requestHandler;
     //private final SuggestComponent suggestHandler;
     private final EmbeddedInstance instance;
@@ -216,7 +221,9 @@ public class EmbeddedSolrConnector extends SolrServerConnector implements SolrCo
         //SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
 
         // send request to solr and create a result
+        final long start = System.nanoTime();
         this.requestHandler.handleRequest(req, rsp);
+        queryTime.recordSince(start);
 
         // get statistics and add a header with that
         Exception exception = rsp.getException();
@@ -337,7 +344,9 @@ public class EmbeddedSolrConnector extends SolrServerConnector implements SolrCo
         //System.out.println("EmbeddedSolrConnector.getResponseByParams * QUERY: " + ql); System.out.println("STACKTRACE: " + ConcurrentLog.stackTrace());
         QueryResponse rsp;
         try {
+            final long start = System.nanoTime();
             rsp = this.server.query(params);
+            queryTime.recordSince(start);
             Thread.currentThread().setName(threadname);
             if (rsp != null) if (log.isFine()) log.fine(rsp.getResults().getNumFound() + " results for " + ql);
             return rsp;
@@ -377,7 +386,31 @@ public class EmbeddedSolrConnector extends SolrServerConnector implements SolrCo
         }
     }
 
-    
+
+    /**
+     * get a cursor page without the serialization of a full query response: the response holds only the documents and the next cursor mark
+     */
+    @Override
+    protected QueryResponse getCursorResponseByParams(final ModifiableSolrParams params) throws IOException {
+        final SolrQueryRequest req = this.request(params);
+        try {
+            final SolrQueryResponse response = this.query(req);
+            if (response == null) throw new IOException("response == null");
+            if (response.getException() != null) throw new IOException(response.getException().getMessage(), response.getException());
+            final NamedList<Object> nl = new SimpleOrderedMap<Object>();
+            nl.add("response", SolrQueryResponse2SolrDocumentList(req, response));
+            nl.add(CursorMarkParams.CURSOR_MARK_NEXT, response.getValues().get(CursorMarkParams.CURSOR_MARK_NEXT));
+            final QueryResponse rsp = new QueryResponse();
+            rsp.setResponse(nl);
+            return rsp;
+        } catch (final SolrException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            req.close();
+            SolrRequestInfo.clearRequestInfo();
+        }
+    }
+
     private class DocListSearcher implements AutoCloseable {
         private SolrQueryRequest request;
         private DocList response;
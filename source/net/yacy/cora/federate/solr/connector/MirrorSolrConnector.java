@@ -260,6 +260,14 @@ public class MirrorSolrConnector extends AbstractSolrConnector implements SolrCo
         return list;
     }
 
+    @Override
+    public QueryResponse getCursorPageByQuery(final String querystring, final String sort, final String cursorMark, final int count, final String ... fields) throws IOException {
+        // a cursor mark is valid only for the index which created it; both indexes hold the same documents
+        if (this.solr0 != null) return this.solr0.getCursorPageByQuery(querystring, sort, cursorMark, count, fields);
+        if (this.solr1 != null) return this.solr1.getCursorPageByQuery(querystring, sort, cursorMark, count, fields);
+        return new QueryResponse();
+    }
+
     @Override
     public QueryResponse getResponseByParams(ModifiableSolrParams query) throws IOException, SolrException {
         Integer count0 = query.getInt(CommonParams.ROWS);
@@ -22,6 +22,7 @@ package net.yacy.cora.federate.solr.connector;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -204,6 +205,45 @@ public interface SolrConnector extends Iterable<String> /* Iterable of document
             final int offset,
             final int count,
             final String ... fields) throws IOException;
+
+    /**
+     * get one page of a deep scan through the results of a query. The scan uses a Solr cursor instead of a result offset,
+     * so the cost of a page does not grow with its position in the result list.
+     * @param querystring the solr query string
+     * @param sort the solr sort string, may be null; the id field is appended as last sort criterion
+     * @param cursorMark the cursor mark of the page, CursorMarkParams.CURSOR_MARK_START for the first page
+     * @param count number of wanted results
+     * @param fields list of fields
+     * @return the query response with the cursor mark of the next page in QueryResponse.getNextCursorMark();
+     *   the scan is finished when the next cursor mark is equal to the given cursor mark
+     * @throws IOException
+     */
+    public QueryResponse getCursorPageByQuery(
+            final String querystring,
+            final String sort,
+            final String cursorMark,
+            final int count,
+            final String ... fields) throws IOException;
+
+    /**
+     * Get the results of a query as a stream of documents. The documents are loaded page by page with a Solr cursor
+     * while the iterator is consumed, so at most one page of documents is held in memory.
+     * The iteration ends early when the time is over or a page cannot be loaded.
+     * @param querystring the solr query string
+     * @param sort the solr sort string, may be null to be not used
+     * @param maxcount the maximum number of results
+     * @param maxtime the maximum time in milliseconds
+     * @param pagesize the number of documents fetched with each request
+     * @param fields list of fields
+     * @return an iterator of the result documents
+     */
+    public Iterator<SolrDocument> documentsByQuery(
+            final String querystring,
+            final String sort,
+            final int maxcount,
+            final long maxtime,
+            final int pagesize,
+            final String ... fields);
     
     /**
      * get the number of results when this query is done.
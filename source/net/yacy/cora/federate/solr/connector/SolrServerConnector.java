@@ -27,6 +27,8 @@ import java.util.Collection;
 import java.util.List;
 
 import net.yacy.cora.federate.solr.instance.ServerShard;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.search.schema.CollectionSchema;
 
@@ -50,6 +52,8 @@ import org.apache.solr.common.params.CommonParams;
 public abstract class SolrServerConnector extends AbstractSolrConnector implements SolrConnector {
 
     protected final static ConcurrentLog log = new ConcurrentLog(SolrServerConnector.class.getName());
+    protected final static Histogram addTime = Metrics.histogram("solr_add_seconds", "duration of adding documents to a Solr index, including the waiting time for the index lock");
+    final static Histogram remoteQueryTime = Metrics.histogram("solr_remote_query_seconds", "duration of queries to a remote Solr");
     public final static org.apache.lucene.analysis.CharArrayMap<Byte> classLoaderSynchro = new org.apache.lucene.analysis.CharArrayMap<Byte>(0, true);
     // pre-instantiate this object to prevent sun.misc.Launcher$AppClassLoader deadlocks
     // this is a very nasty problem; solr instantiates objects dynamically which can cause deadlocks
@@ -208,6 +212,7 @@ public abstract class SolrServerConnector extends AbstractSolrConnector implemen
     public void add(final SolrInputDocument solrdoc) throws IOException, SolrException {
         if (this.server == null) return;
         if (solrdoc.containsKey("_version_")) solrdoc.setField("_version_",0L); // prevent Solr "version conflict"
+        final long start = System.nanoTime();
         synchronized (this.server) {
             try {
                 this.server.add(solrdoc, -1);
@@ -240,6 +245,8 @@ public abstract class SolrServerConnector extends AbstractSolrConnector implemen
                         throw new IOException(eee);
                     }
                 }
+            } finally {
+                addTime.recordSince(start);
             }
         }
     }
@@ -250,6 +257,7 @@ public abstract class SolrServerConnector extends AbstractSolrConnector implemen
         for (SolrInputDocument solrdoc : solrdocs) {
             if (solrdoc.containsKey("_version_")) solrdoc.setField("_version_",0L); // prevent Solr "version conflict"
         }
+        final long start = System.nanoTime();
         synchronized (this.server) {
             try {
                 this.server.add(solrdocs, -1);
@@ -283,6 +291,8 @@ public abstract class SolrServerConnector extends AbstractSolrConnector implemen
                     log.warn(e.getMessage() + " IDs=" + ids.toString());
                     throw new IOException(ee);
                 }
+            } finally {
+                addTime.recordSince(start);
             }
         }
     }
@@ -311,7 +321,9 @@ public abstract class SolrServerConnector extends AbstractSolrConnector implemen
         while (retry++ < 10) {
             try {
                 if (q != null) Thread.currentThread().setName("solr query: q = " + q + (fq == null ? "" : ", fq = " + fq) + (sort == null ? "" : ", sort = " + sort) + "; retry = " + retry + "; fl = " + fl); // for debugging in Threaddump
+                final long start = System.nanoTime();
                 rsp = this.server.query(params);
+                remoteQueryTime.recordSince(start);
                 if (q != null) Thread.currentThread().setName(threadname);
                 if (rsp != null) if (log.isFine()) log.fine(rsp.getResults().getNumFound() + " results for q=" + q);
                 return rsp.getResults();
@@ -20,31 +20,55 @@
 
 package net.yacy.cora.federate.solr.instance;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 
+/**
+ * Combination of the responses of several shards to one response.
+ * The documents are merged according to the requested sort order, the facet counts of all shards are added.
+ */
 public class ResponseAccumulator {
 
     final SimpleOrderedMap<Object> fieldsAcc;
     final SimpleOrderedMap<Object> index_countsAcc;
     final SimpleOrderedMap<Object> facet_countsAcc;
+    final Map<String, Map<String, Long>> facet_fieldsAcc;
+    final Map<String, Long> facet_queriesAcc;
     final SimpleOrderedMap<Object> highlightingAcc;
     final SimpleOrderedMap<Object> headerAcc;
-    final SolrDocumentList resultsAcc;
+    final List<SolrDocumentList> resultsAcc;
+    final List<String> cursorMarksAcc;
+    long numFound;
+    Float maxScore;
 
     public ResponseAccumulator() {
         this.fieldsAcc = new SimpleOrderedMap<Object>();
         this.index_countsAcc = new SimpleOrderedMap<Object>();
         this.facet_countsAcc = new SimpleOrderedMap<Object>();
+        this.facet_fieldsAcc = new LinkedHashMap<String, Map<String, Long>>();
+        this.facet_queriesAcc = new LinkedHashMap<String, Long>();
         this.highlightingAcc = new SimpleOrderedMap<Object>();
         this.headerAcc = new SimpleOrderedMap<Object>();
-        this.resultsAcc = new SolrDocumentList();
-        
+        this.resultsAcc = new ArrayList<SolrDocumentList>();
+        this.cursorMarksAcc = new ArrayList<String>();
+        this.numFound = 0;
+        this.maxScore = null;
     }
     
     public void addResponse(NamedList<Object> response) {
@@ -62,13 +86,13 @@ public class ResponseAccumulator {
         	}
         }
         
-        // accumulate the results
+        // collect the results; they are merged when the accumulated response is produced
         SolrDocumentList results = (SolrDocumentList) response.get("response");
         if (results != null) {
-            long found = results.size();
-            for (int i = 0; i < found; i++) resultsAcc.add(results.get(i));
-            resultsAcc.setNumFound(resultsAcc.getNumFound() + results.getNumFound());
-            resultsAcc.setMaxScore(Math.max(resultsAcc.getMaxScore() == null ? 0f : resultsAcc.getMaxScore().floatValue(), results.getMaxScore() == null ? 0f : results.getMaxScore().floatValue()));
+            this.resultsAcc.add(results);
+            this.cursorMarksAcc.add((String) response.get(CursorMarkParams.CURSOR_MARK_NEXT));
+            this.numFound += results.getNumFound();
+            if (results.getMaxScore() != null && (this.maxScore == null || results.getMaxScore().floatValue() > this.maxScore.floatValue())) this.maxScore = results.getMaxScore();
         }
         
         // accumulate the highlighting
@@ -78,11 +102,23 @@ public class ResponseAccumulator {
             for (Map.Entry<String, Object> e: highlighting) highlightingAcc.add(e.getKey(), e.getValue());
         }
         
-        // accumulate the facets (well this is not correct at this time...)
+        // accumulate the facets: the counts of field values and facet queries are added, other facets are taken from the first shard
         @SuppressWarnings("unchecked")
-        SimpleOrderedMap<Object> facet_counts = (SimpleOrderedMap<Object>) response.get("facet_counts");
+        NamedList<Object> facet_counts = (NamedList<Object>) response.get("facet_counts");
         if (facet_counts != null) {
-            for (Map.Entry<String, Object> e: facet_counts) facet_countsAcc.add(e.getKey(), e.getValue());
+            for (Map.Entry<String, Object> e: facet_counts) {
+                if ("facet_fields".equals(e.getKey()) && e.getValue() instanceof NamedList) {
+                    for (Map.Entry<String, ?> field: (NamedList<?>) e.getValue()) {
+                        Map<String, Long> acc = facet_fieldsAcc.get(field.getKey());
+                        if (acc == null) facet_fieldsAcc.put(field.getKey(), acc = new LinkedHashMap<String, Long>());
+                        if (field.getValue() instanceof NamedList) addCounts(acc, (NamedList<?>) field.getValue());
+                    }
+                } else if ("facet_queries".equals(e.getKey()) && e.getValue() instanceof NamedList) {
+                    addCounts(facet_queriesAcc, (NamedList<?>) e.getValue());
+                } else if (facet_countsAcc.get(e.getKey()) == null) {
+                    facet_countsAcc.add(e.getKey(), e.getValue());
+                }
+            }
         }
         
         // accumulate the index
@@ -108,20 +144,195 @@ public class ResponseAccumulator {
             for (Map.Entry<String, Object> e: fields) fieldsAcc.add(e.getKey(), e.getValue());
         }
     }
+
+    private static void addCounts(final Map<String, Long> acc, final NamedList<?> counts) {
+        for (Map.Entry<String, ?> c: counts) {
+            if (!(c.getValue() instanceof Number)) continue;
+            final Long v = acc.get(c.getKey());
+            acc.put(c.getKey(), (v == null ? 0 : v.longValue()) + ((Number) c.getValue()).longValue());
+        }
+    }
     
+    /**
+     * @return the accumulated response with the documents of all shards one after another
+     */
     public NamedList<Object> getAccumulatedResponse() {
+        return getAccumulatedResponse(null);
+    }
+
+    /**
+     * @param params the parameters of the original query, used for sort, start, rows and the facet limits; may be null
+     * @return the accumulated response with the top documents of all shards in the order of the requested sort
+     */
+    public NamedList<Object> getAccumulatedResponse(final SolrParams params) {
         // prepare combined response
         NamedList<Object> responsesAcc = new NamedList<Object>();
         responsesAcc.add("responseHeader", headerAcc);
-        responsesAcc.add("response", resultsAcc);
+        final String cursorMark = params == null ? null : params.get(CursorMarkParams.CURSOR_MARK_PARAM);
+        if (cursorMark == null) {
+            responsesAcc.add("response", params == null ? concatResults() : mergeResults(params));
+        } else {
+            final String[] nextCursorMark = new String[] {cursorMark};
+            responsesAcc.add("response", mergeCursorResults(params, nextCursorMark));
+            responsesAcc.add(CursorMarkParams.CURSOR_MARK_NEXT, nextCursorMark[0]);
+        }
         if (highlightingAcc != null && highlightingAcc.size() > 0) responsesAcc.add("highlighting", highlightingAcc);
-        if (facet_countsAcc != null && facet_countsAcc.size() > 0) responsesAcc.add("facet_counts", facet_countsAcc);
+        if (facet_fieldsAcc.size() > 0 || facet_queriesAcc.size() > 0 || facet_countsAcc.size() > 0) {
+            final SimpleOrderedMap<Object> facets = new SimpleOrderedMap<Object>();
+            final NamedList<Object> queries = new SimpleOrderedMap<Object>();
+            for (Map.Entry<String, Long> e: facet_queriesAcc.entrySet()) queries.add(e.getKey(), (int) Math.min(Integer.MAX_VALUE, e.getValue().longValue()));
+            facets.add("facet_queries", queries);
+            final NamedList<Object> fields = new SimpleOrderedMap<Object>();
+            for (Map.Entry<String, Map<String, Long>> e: facet_fieldsAcc.entrySet()) fields.add(e.getKey(), facetValues(e.getKey(), e.getValue(), params));
+            facets.add("facet_fields", fields);
+            for (Map.Entry<String, Object> e: facet_countsAcc) facets.add(e.getKey(), e.getValue());
+            responsesAcc.add("facet_counts", facets);
+        }
         if (index_countsAcc != null && index_countsAcc.size() > 0) responsesAcc.add("index", index_countsAcc);
         if (fieldsAcc != null && fieldsAcc.size() > 0) responsesAcc.add("fields", fieldsAcc);
         return responsesAcc;
     }
 
+    private SolrDocumentList concatResults() {
+        final SolrDocumentList sdl = new SolrDocumentList();
+        for (SolrDocumentList results: this.resultsAcc) sdl.addAll(results);
+        sdl.setNumFound(this.numFound);
+        sdl.setMaxScore(this.maxScore);
+        return sdl;
+    }
+
+    /**
+     * merge the sorted result lists of the shards with a heap which holds the next document of each shard,
+     * so only the requested documents are visited
+     */
+    private SolrDocumentList mergeResults(final SolrParams params) {
+        final int start = params.getInt(CommonParams.START, 0);
+        final int rows = params.getInt(CommonParams.ROWS, CommonParams.ROWS_DEFAULT);
+        final long end = (long) start + (long) rows;
+        final SortClause[] sort = SortClause.parse(params.get(CommonParams.SORT));
+        final PriorityQueue<int[]> heap = new PriorityQueue<int[]>(Math.max(1, this.resultsAcc.size()), (a, b) -> {
+            final int c = SortClause.compare(sort, this.resultsAcc.get(a[0]).get(a[1]), this.resultsAcc.get(b[0]).get(b[1]));
+            if (c != 0) return c;
+            // documents with the same sort values are taken from the shards alternately
+            return a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < this.resultsAcc.size(); i++) {
+            if (this.resultsAcc.get(i).size() > 0) heap.add(new int[] {i, 0});
+        }
+        final SolrDocumentList sdl = new SolrDocumentList();
+        long p = 0;
+        while (p < end && !heap.isEmpty()) {
+            final int[] top = heap.poll();
+            if (p++ >= start) sdl.add(this.resultsAcc.get(top[0]).get(top[1]));
+            if (++top[1] < this.resultsAcc.get(top[0]).size()) heap.add(top);
+        }
+        sdl.setStart(start);
+        sdl.setNumFound(this.numFound);
+        sdl.setMaxScore(this.maxScore);
+        return sdl;
+    }
+
+    /**
+     * Merge the pages of a cursor scan. Each shard returns its next page after the same cursor mark. The merged page
+     * ends with the last document of the shard page which ends first in the sort order, because only up to this document
+     * the documents of all shards are known; the cursor mark of that shard continues the scan on all shards.
+     * The merged page may therefore hold more documents than requested.
+     * @param nextCursorMark an array which holds the cursor mark of the query and returns the cursor mark of the next page
+     */
+    private SolrDocumentList mergeCursorResults(final SolrParams params, final String[] nextCursorMark) {
+        final int rows = params.getInt(CommonParams.ROWS, CommonParams.ROWS_DEFAULT);
+        final SortClause[] sort = SortClause.parse(params.get(CommonParams.SORT));
+        SolrDocument last = null;
+        for (int i = 0; i < this.resultsAcc.size(); i++) {
+            final SolrDocumentList results = this.resultsAcc.get(i);
+            // a shard which returned a short page has no more documents and does not limit the merged page
+            if (results.size() < rows || results.isEmpty() || this.cursorMarksAcc.get(i) == null) continue;
+            final SolrDocument d = results.get(results.size() - 1);
+            if (last == null || SortClause.compare(sort, d, last) < 0) {
+                last = d;
+                nextCursorMark[0] = this.cursorMarksAcc.get(i);
+            }
+        }
+        final List<SolrDocument> docs = new ArrayList<SolrDocument>();
+        for (SolrDocumentList results: this.resultsAcc) {
+            for (SolrDocument d: results) if (last == null || SortClause.compare(sort, d, last) <= 0) docs.add(d);
+        }
+        docs.sort((a, b) -> SortClause.compare(sort, a, b));
+        final SolrDocumentList sdl = new SolrDocumentList();
+        sdl.addAll(docs);
+        sdl.setNumFound(this.numFound);
+        sdl.setMaxScore(this.maxScore);
+        return sdl;
+    }
+
+    private static NamedList<Object> facetValues(final String field, final Map<String, Long> counts, final SolrParams params) {
+        final int limit = params == null ? -1 : params.getFieldInt(field, FacetParams.FACET_LIMIT, 100);
+        final int mincount = params == null ? 0 : params.getFieldInt(field, FacetParams.FACET_MINCOUNT, 0);
+        final String sort = params == null ? FacetParams.FACET_SORT_COUNT : params.getFieldParam(field, FacetParams.FACET_SORT, limit > 0 ? FacetParams.FACET_SORT_COUNT : FacetParams.FACET_SORT_INDEX);
+        final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.size());
+        for (Map.Entry<String, Long> e: counts.entrySet()) if (e.getValue().longValue() >= mincount) entries.add(e);
+        if (FacetParams.FACET_SORT_INDEX.equals(sort)) {
+            entries.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+        } else {
+            entries.sort((a, b) -> {
+                final int c = Long.compare(b.getValue().longValue(), a.getValue().longValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            });
+        }
+        final NamedList<Object> values = new NamedList<Object>();
+        final Iterator<Map.Entry<String, Long>> i = entries.iterator();
+        while (i.hasNext() && (limit < 0 || values.size() < limit)) {
+            final Map.Entry<String, Long> e = i.next();
+            values.add(e.getKey(), (int) Math.min(Integer.MAX_VALUE, e.getValue().longValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Compute the parameters of the query to one shard: each shard must return all documents up to the end of the requested page,
+     * and more facet values than requested so the added counts of the top values are more accurate.
+     * @param params the parameters of the original query
+     * @return the parameters for a shard
+     */
+    public static ModifiableSolrParams shardParams(final SolrParams params) {
+        final ModifiableSolrParams p = new ModifiableSolrParams(params);
+        final int start = params.getInt(CommonParams.START, 0);
+        if (start > 0) {
+            final int rows = params.getInt(CommonParams.ROWS, CommonParams.ROWS_DEFAULT);
+            p.set(CommonParams.START, 0);
+            p.set(CommonParams.ROWS, (int) Math.min(Integer.MAX_VALUE, (long) start + (long) rows));
+        }
+        if (params.get(CursorMarkParams.CURSOR_MARK_PARAM) != null) {
+            // the sort values are needed to merge the pages of a cursor scan
+            final String fl = params.get(CommonParams.FL);
+            if (fl != null && !fl.trim().isEmpty() && !fl.contains("*")) {
+                final StringBuilder fields = new StringBuilder(fl);
+                for (SortClause clause: SortClause.parse(params.get(CommonParams.SORT))) fields.append(',').append(clause.field);
+                p.set(CommonParams.FL, fields.toString());
+            }
+        }
+        if (params.getBool(FacetParams.FACET, false)) {
+            final Iterator<String> names = params.getParameterNamesIterator();
+            while (names.hasNext()) {
+                final String name = names.next();
+                if (!name.equals(FacetParams.FACET_LIMIT) && !(name.startsWith("f.") && name.endsWith("." + FacetParams.FACET_LIMIT))) continue;
+                final int limit = params.getInt(name, 100);
+                if (limit > 0) p.set(name, (int) Math.min(Integer.MAX_VALUE, (long) (limit * 1.5) + 10));
+            }
+        }
+        return p;
+    }
+
     public static QueryResponse combineResponses(Collection<QueryResponse> qrl) {
+        return combineResponses(qrl, null);
+    }
+
+    /**
+     * @param qrl the responses of the shards
+     * @param params the parameters of the original query; may be null to concatenate the documents
+     * @return the combined response
+     */
+    public static QueryResponse combineResponses(Collection<QueryResponse> qrl, final SolrParams params) {
         ResponseAccumulator acc = new ResponseAccumulator();
         for (final QueryResponse rsp: qrl) {
             NamedList<Object> response = rsp.getResponse();
@@ -130,7 +341,60 @@ public class ResponseAccumulator {
         
         // prepare combined response
         QueryResponse rspAcc = new QueryResponse();
-        rspAcc.setResponse(acc.getAccumulatedResponse());
+        rspAcc.setResponse(acc.getAccumulatedResponse(params));
         return rspAcc;
     }
+
+    /**
+     * one criterion of a Solr sort parameter
+     */
+    private static final class SortClause {
+        private final String field;
+        private final boolean desc;
+
+        private SortClause(final String field, final boolean desc) {
+            this.field = field;
+            this.desc = desc;
+        }
+
+        /**
+         * @param sort a Solr sort parameter like <code>score desc,id asc</code>; null sorts by score
+         */
+        private static SortClause[] parse(final String sort) {
+            if (sort == null || sort.trim().isEmpty()) return new SortClause[] {new SortClause("score", true)};
+            final List<SortClause> clauses = new ArrayList<SortClause>();
+            for (String clause: sort.split(",")) {
+                clause = clause.trim();
+                final int p = clause.lastIndexOf(' ');
+                if (p < 0) continue;
+                clauses.add(new SortClause(clause.substring(0, p).trim(), clause.substring(p + 1).trim().equalsIgnoreCase("desc")));
+            }
+            return clauses.toArray(new SortClause[clauses.size()]);
+        }
+
+        /**
+         * compare the sort values of two documents; values which are not in a document are sorted last.
+         * Function queries cannot be evaluated here and give no order.
+         */
+        private static int compare(final SortClause[] sort, final SolrDocument a, final SolrDocument b) {
+            for (SortClause clause: sort) {
+                final Object va = a.getFirstValue(clause.field);
+                final Object vb = b.getFirstValue(clause.field);
+                if (va == null || vb == null) {
+                    if (va != vb) return va == null ? 1 : -1;
+                    continue;
+                }
+                final int c = compareValues(va, vb);
+                if (c != 0) return clause.desc ? -c : c;
+            }
+            return 0;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static int compareValues(final Object a, final Object b) {
+            if (a instanceof Number && b instanceof Number) return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            if (a instanceof Comparable && a.getClass() == b.getClass()) return ((Comparable) a).compareTo(b);
+            return a.toString().compareTo(b.toString());
+        }
+    }
 }
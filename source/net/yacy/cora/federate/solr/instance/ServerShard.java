@@ -25,7 +25,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrClient;
@@ -33,6 +32,7 @@ import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.SolrPingResponse;
 import org.apache.solr.client.solrj.response.UpdateResponse;
@@ -41,6 +41,8 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 
 import net.yacy.cora.federate.solr.connector.ShardSelection;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 
 public class ServerShard extends SolrClient {
     
@@ -53,10 +55,26 @@ public class ServerShard extends SolrClient {
     
     private final ShardSelection shards;
     private final boolean writeEnabled;
+    private final String name;
+    private final List<SolrClient> server;
+    private final Histogram[] latencies;
     
     public ServerShard(ArrayList<SolrClient> server, final ShardSelection.Method method, final boolean writeEnabled) {
+        this(server, method, writeEnabled, "default");
+    }
+
+    /**
+     * @param name the core name, used to name the latency metrics of the shards
+     */
+    public ServerShard(ArrayList<SolrClient> server, final ShardSelection.Method method, final boolean writeEnabled, final String name) {
         this.shards = new ShardSelection(server, method);
         this.writeEnabled = writeEnabled;
+        this.name = name;
+        this.server = new ArrayList<SolrClient>(server);
+        this.latencies = new Histogram[server.size()];
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = Metrics.histogram("solr_shard_" + name + "_" + i + "_query_seconds", "duration of queries to a Solr shard");
+        }
     }
 
     /**
@@ -379,34 +397,7 @@ public class ServerShard extends SolrClient {
      */
     @Override
     public QueryResponse query(final SolrParams params) throws SolrServerException, IOException {
-        List<SolrClient> qs = this.shards.server4read();
-        if (qs.size() == 1) {
-            return qs.get(0).query(params);
-        }
-
-        // concurrently call all shards
-        final Collection<QueryResponse> qrl = new ConcurrentLinkedQueue<QueryResponse>();
-        List<Thread> t = new ArrayList<Thread>();
-        for (final SolrClient s: qs) {
-            Thread t0 = new Thread("ServerShard.query/1(" + params.toString() + ")") {
-                @Override
-                public void run() {
-                    QueryResponse rsp;
-                    try {
-                        rsp = s.query(params);
-                    } catch (final Throwable e) {return;}
-                    qrl.add(rsp);
-                }
-            };
-            t0.start();
-            t.add(t0);
-        }
-        for (Thread t0: t) {
-            try {t0.join();} catch (final InterruptedException e) {}
-        }
-        
-        // prepare combined response
-        return ResponseAccumulator.combineResponses(qrl);
+        return query(params, null);
     }
     
     /**
@@ -419,34 +410,24 @@ public class ServerShard extends SolrClient {
     public QueryResponse query(final SolrParams params, final METHOD method) throws SolrServerException, IOException {
         List<SolrClient> qs = this.shards.server4read();
         if (qs.size() == 1) {
-            return qs.get(0).query(params, method);
+            return method == null ? qs.get(0).query(params) : qs.get(0).query(params, method);
         }
 
-        final Collection<QueryResponse> qrl = new ConcurrentLinkedQueue<QueryResponse>();
-        // concurrently call all shards
-        List<Thread> t = new ArrayList<Thread>();
-        for (final SolrClient s: qs) {
-            Thread t0 = new Thread("ServerShard.query/2(" + params.toString() + ")") {
-                @Override
-                public void run() {
-                    QueryResponse rsp;
-                    try {
-                        rsp = s.query(params, method);
-                    } catch (final Throwable e) {return;}
-                    qrl.add(rsp);
-                }
-            };
-            t0.start();
-            t.add(t0);
-        }
-        for (Thread t0: t) {
-            try {t0.join();} catch (final InterruptedException e) {}
+        // concurrently call all shards and merge the results by the requested sort
+        final List<Histogram> latencies = new ArrayList<Histogram>(qs.size());
+        for (SolrClient s: qs) latencies.add(latency(s));
+        return ShardQueryCoordinator.query(qs, latencies, params, method);
+    }
+
+    /**
+     * @return the latency histogram of a shard
+     */
+    private Histogram latency(final SolrClient shard) {
+        for (int i = 0; i < this.server.size(); i++) {
+            if (this.server.get(i) == shard) return this.latencies[i];
         }
-        
-        // prepare combined response
-        return ResponseAccumulator.combineResponses(qrl);
+        return Metrics.histogram("solr_shard_" + this.name + "_query_seconds", "duration of queries to a Solr shard");
     }
-    
 
     /**
      * Query solr, and stream the results.  Unlike the standard query, this will 
@@ -469,6 +450,8 @@ public class ServerShard extends SolrClient {
      */ 
     @Override
     public NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request, String collection) throws SolrServerException, IOException {
+        // queries are merged by the requested sort like in query(params)
+        if (request instanceof QueryRequest && this.shards.server4read().size() > 1) return query(request.getParams(), request.getMethod()).getResponse();
         ResponseAccumulator acc = new ResponseAccumulator();
         for (SolrClient s: this.shards.server4read()) acc.addResponse(s.request(request, collection));
         return acc.getAccumulatedResponse();  
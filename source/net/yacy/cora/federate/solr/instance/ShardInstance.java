@@ -32,13 +32,16 @@ import org.apache.solr.client.solrj.SolrClient;
 
 public class ShardInstance implements SolrInstance {
 
-    private final ArrayList<RemoteInstance> instances;
+    private final ArrayList<? extends SolrInstance> instances;
     private final ShardSelection.Method method;
     private SolrClient defaultServer;
     private Map<String, SolrClient> serverCache;
     private final boolean writeEnabled;
 
-    public ShardInstance(final ArrayList<RemoteInstance> instances, final ShardSelection.Method method, final boolean writeEnabled) {
+    /**
+     * @param instances the shards, remote Solr instances or embedded cores of the local index
+     */
+    public ShardInstance(final ArrayList<? extends SolrInstance> instances, final ShardSelection.Method method, final boolean writeEnabled) {
         this.instances = instances;
         this.method = method;
         this.writeEnabled = writeEnabled;
@@ -60,8 +63,8 @@ public class ShardInstance implements SolrInstance {
     public SolrClient getDefaultServer() {
         if (this.defaultServer != null) return this.defaultServer;
         ArrayList<SolrClient> server = new ArrayList<SolrClient>(instances.size());
-        for (int i = 0; i < instances.size(); i++) server.set(i, instances.get(i).getDefaultServer());
-        this.defaultServer = new ServerShard(server, method, this.writeEnabled);
+        for (int i = 0; i < instances.size(); i++) server.add(i, instances.get(i).getDefaultServer());
+        this.defaultServer = new ServerShard(server, method, this.writeEnabled, getDefaultCoreName());
         return this.defaultServer;
     }
 
@@ -71,14 +74,14 @@ public class ShardInstance implements SolrInstance {
         if (s != null) return s;
         ArrayList<SolrClient> server = new ArrayList<SolrClient>(instances.size());
         for (int i = 0; i < instances.size(); i++) server.add(i, instances.get(i).getServer(name));
-        s = new ServerShard(server, method, this.writeEnabled);
+        s = new ServerShard(server, method, this.writeEnabled, name);
         this.serverCache.put(name, s);
         return s;
     }
 
     @Override
     public void close() {
-        for (RemoteInstance instance: instances) instance.close();
+        for (SolrInstance instance: instances) instance.close();
     }
     
 	/**
@@ -88,11 +91,14 @@ public class ShardInstance implements SolrInstance {
 	 * @param externalHost
 	 *            the eventual external host name or address to use when
 	 *            toExternalAddress is true
-	 * @return the administration URLs of the Solr instances
+	 * @return the administration URLs of the Solr instances, the directories of embedded cores
 	 */
     public ArrayList<String> getAdminInterfaces(final boolean toExternalAddress, final String externalHost) {
         ArrayList<String> a = new ArrayList<String>();
-        for (RemoteInstance i: this.instances) a.add(i.getAdminInterface(toExternalAddress, externalHost));
+        for (SolrInstance i: this.instances) {
+            if (i instanceof RemoteInstance) a.add(((RemoteInstance) i).getAdminInterface(toExternalAddress, externalHost));
+            else if (i instanceof EmbeddedInstance) a.add(((EmbeddedInstance) i).getContainerPath().getAbsolutePath());
+        }
         return a;
     }
 }
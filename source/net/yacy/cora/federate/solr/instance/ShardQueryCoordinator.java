@@ -0,0 +1,226 @@
+/**
+ *  ShardQueryCoordinator
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.instance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * Sends a query to several shards and merges the responses.
+ * <p>
+ * The requests run on a shared bounded pool. The latency of each shard is recorded; when a shard has not answered
+ * after the 95th percentile of its latency, the request is sent a second time (a hedged request) and the first answer is used.
+ * A failed request is retried once and a shard which fails again is left out of the result.
+ * If the query has a timeAllowed parameter, shards which do not answer until that time are left out as well;
+ * otherwise all shards are awaited. A cursorMark query always waits for all shards and fails if one of them fails,
+ * because the merged next cursor mark would skip the documents of a missing shard for good.
+ * </p>
+ */
+final class ShardQueryCoordinator {
+
+    private static final ConcurrentLog log = new ConcurrentLog(ShardQueryCoordinator.class.getSimpleName());
+
+    /** the latency quantile of a shard after which a hedged request is sent */
+    static final double HEDGE_QUANTILE = 0.95d;
+
+    /** the number of recorded latencies of a shard before the quantile is used */
+    static final int HEDGE_MIN_SAMPLES = 20;
+
+    /** the hedge delay for a shard with too few recorded latencies */
+    static final long HEDGE_DEFAULT_DELAY = 1000;
+
+    /** the lower bound of the hedge delay, to not double the load of fast shards */
+    static final long HEDGE_MIN_DELAY = 20;
+
+    private static final int POOL_SIZE = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        final ThreadFactory prefixFactory = new NamePrefixThreadFactory(ShardQueryCoordinator.class.getSimpleName());
+        EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(4 * POOL_SIZE), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = prefixFactory.newThread(r);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** the answer of one request to a shard */
+    private static final class Answer {
+        private final int shard;
+        private final QueryResponse response;
+        private final Throwable error;
+
+        private Answer(final int shard, final QueryResponse response, final Throwable error) {
+            this.shard = shard;
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    private ShardQueryCoordinator() {
+    }
+
+    /**
+     * @return the time in milliseconds after which a second request is sent to the shard
+     */
+    static long hedgeDelay(final Histogram latency) {
+        if (latency.count() < HEDGE_MIN_SAMPLES) return HEDGE_DEFAULT_DELAY;
+        return Math.max(HEDGE_MIN_DELAY, TimeUnit.NANOSECONDS.toMillis(latency.quantile(HEDGE_QUANTILE)));
+    }
+
+    /**
+     * query all shards and merge the responses
+     * @param shards the shards to query
+     * @param latencies the latency histograms of the shards, in the same order
+     * @param params the query parameters
+     * @param method the http method or null for the default method
+     * @return the merged response of the shards which answered in time
+     * @throws SolrServerException if a shard failed to answer a cursorMark query
+     */
+    static QueryResponse query(final List<SolrClient> shards, final List<Histogram> latencies, final SolrParams params, final METHOD method) throws SolrServerException {
+        final ModifiableSolrParams shardParams = ResponseAccumulator.shardParams(params);
+        final int n = shards.size();
+        final QueryResponse[] responses = new QueryResponse[n];
+        final boolean[] done = new boolean[n];
+        final int[] attempts = new int[n]; // the number of requests sent to a shard
+        final int[] running = new int[n];  // the number of requests to a shard without answer
+        final long[] hedgeTime = new long[n];
+        final BlockingQueue<Answer> answers = new LinkedBlockingQueue<Answer>();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        final boolean cursor = params.get(CursorMarkParams.CURSOR_MARK_PARAM) != null;
+        final Integer timeAllowed = cursor ? null : params.getInt(CommonParams.TIME_ALLOWED);
+        final long now0 = System.currentTimeMillis();
+        final long deadline = timeAllowed == null || timeAllowed.intValue() <= 0 ? Long.MAX_VALUE : now0 + timeAllowed.longValue() + HEDGE_DEFAULT_DELAY;
+
+        for (int i = 0; i < n; i++) {
+            submit(shards, latencies, shardParams, method, i, answers, futures, true);
+            attempts[i] = 1;
+            running[i] = 1;
+            hedgeTime[i] = now0 + hedgeDelay(latencies.get(i));
+        }
+
+        int open = n;
+        try {
+            while (open > 0) {
+                final long now = System.currentTimeMillis();
+                if (now >= deadline) break;
+
+                // send hedged requests to the shards which are slower than usual
+                long wait = deadline - now;
+                for (int i = 0; i < n; i++) {
+                    if (done[i] || attempts[i] > 1) continue;
+                    if (hedgeTime[i] <= now) {
+                        if (submit(shards, latencies, shardParams, method, i, answers, futures, false)) {
+                            attempts[i]++;
+                            running[i]++;
+                        } else hedgeTime[i] = deadline; // the pool is busy, do not add more load
+                    } else {
+                        wait = Math.min(wait, hedgeTime[i] - now);
+                    }
+                }
+
+                final Answer answer = answers.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                if (answer == null || done[answer.shard]) continue;
+                final int s = answer.shard;
+                running[s]--;
+                if (answer.error == null) {
+                    responses[s] = answer.response;
+                    done[s] = true;
+                    open--;
+                } else if (attempts[s] < 2 && submit(shards, latencies, shardParams, method, s, answers, futures, false)) {
+                    // retry a failed request once
+                    attempts[s]++;
+                    running[s]++;
+                } else if (running[s] == 0) {
+                    if (cursor) throw new SolrServerException("query to shard " + s + " failed, the cursor cannot be continued", answer.error);
+                    log.warn("query to shard " + s + " failed: " + answer.error.getMessage());
+                    done[s] = true;
+                    open--;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // requests which are still running are not needed any more
+            for (final Future<?> f: futures) f.cancel(true);
+        }
+        if (open > 0) {
+            if (cursor) throw new SolrServerException("interrupted while waiting for " + open + " of " + n + " shards, the cursor cannot be continued");
+            log.info(open + " of " + n + " shards did not answer in time, the result is incomplete");
+        }
+
+        final List<QueryResponse> qrl = new ArrayList<QueryResponse>(n);
+        for (final QueryResponse rsp: responses) if (rsp != null) qrl.add(rsp);
+        return ResponseAccumulator.combineResponses(qrl, params);
+    }
+
+    /**
+     * send a request to a shard
+     * @param inline if true then the request is done by the calling thread when the pool is busy
+     * @return false if the pool is busy and the request was not sent
+     */
+    private static boolean submit(final List<SolrClient> shards, final List<Histogram> latencies, final SolrParams params, final METHOD method,
+            final int shard, final BlockingQueue<Answer> answers, final List<Future<?>> futures, final boolean inline) {
+        final Runnable request = () -> {
+            final long start = System.nanoTime();
+            try {
+                final QueryResponse rsp = method == null ? shards.get(shard).query(params) : shards.get(shard).query(params, method);
+                latencies.get(shard).recordSince(start);
+                answers.add(new Answer(shard, rsp, null));
+            } catch (final Throwable e) {
+                answers.add(new Answer(shard, null, e));
+            }
+        };
+        try {
+            futures.add(EXECUTOR.submit(request));
+            return true;
+        } catch (final RejectedExecutionException e) {
+            if (!inline) return false;
+            request.run();
+            return true;
+        }
+    }
+}
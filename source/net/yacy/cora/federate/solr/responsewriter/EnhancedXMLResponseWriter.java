@@ -25,9 +25,12 @@ import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import net.yacy.cora.federate.solr.SolrType;
 
@@ -149,10 +152,13 @@ public class EnhancedXMLResponseWriter implements QueryResponseWriter, SolrjResp
         DocIterator iterator = response.iterator();
         includeScore = includeScore && response.hasScores();
         IndexSchema schema = request.getSchema();
+        // load only the requested fields; null if all fields are requested
+        final Set<String> fieldNames = returnFields == null ? null : returnFields.getLuceneFieldNames();
+        final Map<String, SchemaField> schemaFields = new HashMap<>();
         for (int i = 0; i < sz; i++) {
             int id = iterator.nextDoc();
-            Document doc = searcher.doc(id);
-            writeDoc(writer, schema, null, doc.getFields(), (includeScore ? iterator.score() : 0.0f), includeScore, returnFields);
+            Document doc = fieldNames == null ? searcher.doc(id) : searcher.doc(id, fieldNames);
+            writeDoc(writer, schema, schemaFields, null, doc.getFields(), (includeScore ? iterator.score() : 0.0f), includeScore, returnFields);
         }
         writer.write("</result>");
         writer.write(lb);
@@ -182,7 +188,7 @@ public class EnhancedXMLResponseWriter implements QueryResponseWriter, SolrjResp
         writer.write(lb);
     }
 
-	private static final void writeDoc(final Writer writer, final IndexSchema schema, final String name,
+	private static final void writeDoc(final Writer writer, final IndexSchema schema, final Map<String, SchemaField> schemaFields, final String name,
 			final List<IndexableField> fields, final float score, final boolean includeScore,
 			final ReturnFields returnFields) throws IOException {
         startTagOpen(writer, "doc", name);
@@ -206,9 +212,13 @@ public class EnhancedXMLResponseWriter implements QueryResponseWriter, SolrjResp
                 fidx2++;
             }
             if(returnFields == null || returnFields.wantsField(fieldName)) {
-            	SchemaField sf = schema == null ? null : schema.getFieldOrNull(fieldName);
+            	SchemaField sf = schemaFields.get(fieldName);
             	if (sf == null) {
-            		sf = new SchemaField(fieldName, new TextField());
+            		sf = schema == null ? null : schema.getFieldOrNull(fieldName);
+            		if (sf == null) {
+            			sf = new SchemaField(fieldName, new TextField());
+            		}
+            		schemaFields.put(fieldName, sf);
             	}
             	
             	final String renderedFieldName = fieldRenamings.getOrDefault(fieldName, fieldName);
@@ -283,15 +293,15 @@ public class EnhancedXMLResponseWriter implements QueryResponseWriter, SolrjResp
 		final Map<String, String> fieldRenamings = returnFields == null ? Collections.emptyMap()
 				: returnFields.getFieldRenames();
         
-        final Map<String, Object> fields = doc.getFieldValueMap();
-        for (String key: fields.keySet()) {
+        for (final Entry<String, Object> field: doc) {
+            final String key = field.getKey();
             if (key == null) {
             	continue;
             }
             if (returnFields != null && !returnFields.wantsField(key)) {
                 continue;
             }
-            Object value = doc.get(key);
+            Object value = field.getValue();
             
 			final String renderedFieldName = fieldRenamings.getOrDefault(key, key);
             
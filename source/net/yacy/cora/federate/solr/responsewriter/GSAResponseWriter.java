@@ -94,7 +94,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
     private static final CollectionSchema[] extrafields = new CollectionSchema[]{
         CollectionSchema.id, CollectionSchema.sku, CollectionSchema.title, CollectionSchema.description_txt,
         CollectionSchema.last_modified, CollectionSchema.load_date_dt, CollectionSchema.size_i, 
-        CollectionSchema.language_s, CollectionSchema.collection_sxt
+        CollectionSchema.language_s, CollectionSchema.collection_sxt, CollectionSchema.content_type
     };
     
     private static final Set<String> SOLR_FIELDS = new HashSet<>();
@@ -363,6 +363,8 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
         SolrIndexSearcher searcher = request.getSearcher();
         DocIterator iterator = documents.iterator();
         String urlhash = null;
+        final List<String> descriptions = new ArrayList<>();
+        final List<String> collections = new ArrayList<>();
         final int responseCount = documents.size();
         for (int i = 0; i < responseCount; i++) {
             int id = iterator.nextDoc();
@@ -380,9 +382,9 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
             }
             
             // write the R header for a search result
-            writer.write("<R N=\"" + (resHead.offset + i + 1)  + "\"" + (i == 1 ? " L=\"2\"" : "")  + (mime != null && mime.length() > 0 ? " MIME=\"" + mime + "\"" : "") + ">"); writer.write(lb);
-            List<String> descriptions = new ArrayList<>();
-            List<String> collections = new ArrayList<>();
+            writeResultHead(writer, resHead.offset + i + 1, i, mime);
+            descriptions.clear();
+            collections.clear();
             int size = 0;
             boolean title_written = false; // the solr index may contain several; we take only the first which should be the visible tag in <title></title>
             String title = null;
@@ -404,7 +406,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
                     descriptions.add(value.stringValue());
                 } else if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName)) {
                     Date d = new Date(Long.parseLong(value.stringValue()));
-                    writer.write("<FS NAME=\"date\" VALUE=\"" + formatGSAFS(d) + "\"/>\n");
+                    writer.write("<FS NAME=\"date\" VALUE=\""); writer.write(formatGSAFS(d)); writer.write("\"/>\n");
                 } else if (CollectionSchema.load_date_dt.getSolrFieldName().equals(fieldName)) {
                     Date d = new Date(Long.parseLong(value.stringValue()));
                     OpensearchResponseWriter.solitaireTag(writer, GSAToken.CRAWLDATE.name(), HeaderFramework.formatRFC1123(d));
@@ -420,7 +422,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
             OpensearchResponseWriter.solitaireTag(writer, GSAToken.S.name(), snippet == null || snippet.size() == 0 ? (descriptions.size() > 0 ? descriptions.get(0) : "") : OpensearchResponseWriter.getLargestSnippet(snippet));
             OpensearchResponseWriter.solitaireTag(writer, GSAToken.GD.name(), descriptions.size() > 0 ? descriptions.get(0) : "");
             String cols = collections.toString();
-            if (collections.size() > 0) OpensearchResponseWriter.solitaireTag(writer, "COLS" /*SPECIAL!*/, collections.size() > 1 ? cols.substring(1, cols.length() - 1).replaceAll(" ", "") : collections.get(0));
+            if (collections.size() > 0) OpensearchResponseWriter.solitaireTag(writer, "COLS" /*SPECIAL!*/, collections.size() > 1 ? cols.substring(1, cols.length() - 1).replace(" ", "") : collections.get(0));
             writer.write("<HAS><L/><C SZ=\""); writer.write(Integer.toString(size / 1024)); writer.write("k\" CID=\""); writer.write(urlhash); writer.write("\" ENC=\"UTF-8\"/></HAS>\n");
             if (YaCyVer == null) YaCyVer = yacyVersion.thisVersion().getName() + "/" + Switchboard.getSwitchboard().peers.mySeed().hash;
             OpensearchResponseWriter.solitaireTag(writer, GSAToken.ENT_SOURCE.name(), YaCyVer);
@@ -444,6 +446,8 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
 			throws IOException {
 		// parse body
         String urlhash = null;
+        final List<String> descriptions = new ArrayList<>();
+        final List<String> collections = new ArrayList<>();
         int i = 0;
         for (final SolrDocument doc : documents) {
 
@@ -452,9 +456,9 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
         	final String mime = contentTypeObj != null ? contentTypeObj.toString() : "";
             
             // write the R header for a search result
-            writer.write("<R N=\"" + (resHead.offset + i + 1)  + "\"" + (i == 1 ? " L=\"2\"" : "")  + (mime != null && mime.length() > 0 ? " MIME=\"" + mime + "\"" : "") + ">"); writer.write(lb);
-            final List<String> descriptions = new ArrayList<>();
-            final List<String> collections = new ArrayList<>();
+            writeResultHead(writer, resHead.offset + i + 1, i, mime);
+            descriptions.clear();
+            collections.clear();
             int size = 0;
             String title = null;
             for (final Entry<String, Object> field : doc.entrySet()) {
@@ -494,7 +498,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
                         descriptions.add(value.toString());                		
                 	}
                 } else if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName) && value instanceof Date) {
-                    writer.write("<FS NAME=\"date\" VALUE=\"" + formatGSAFS((Date)value) + "\"/>\n");
+                    writer.write("<FS NAME=\"date\" VALUE=\""); writer.write(formatGSAFS((Date)value)); writer.write("\"/>\n");
                 } else if (CollectionSchema.load_date_dt.getSolrFieldName().equals(fieldName) && value instanceof Date) {
                     OpensearchResponseWriter.solitaireTag(writer, GSAToken.CRAWLDATE.name(), HeaderFramework.formatRFC1123((Date)value));
                 } else if (CollectionSchema.size_i.getSolrFieldName().equals(fieldName)) {
@@ -518,7 +522,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
             OpensearchResponseWriter.solitaireTag(writer, GSAToken.GD.name(), descriptions.size() > 0 ? descriptions.get(0) : "");
             String cols = collections.toString();
             if (!collections.isEmpty()) {
-            	OpensearchResponseWriter.solitaireTag(writer, "COLS" /*SPECIAL!*/, collections.size() > 1 ? cols.substring(1, cols.length() - 1).replaceAll(" ", "") : collections.get(0));
+            	OpensearchResponseWriter.solitaireTag(writer, "COLS" /*SPECIAL!*/, collections.size() > 1 ? cols.substring(1, cols.length() - 1).replace(" ", "") : collections.get(0));
             }
             writer.write("<HAS><L/><C SZ=\""); writer.write(Integer.toString(size / 1024)); writer.write("k\" CID=\""); writer.write(urlhash); writer.write("\" ENC=\"UTF-8\"/></HAS>\n");
             if (YaCyVer == null) YaCyVer = yacyVersion.thisVersion().getName() + "/" + Switchboard.getSwitchboard().peers.mySeed().hash;
@@ -529,6 +533,18 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
         }
 	}
 
+    /**
+     * write the R header for a search result
+     */
+    private static void writeResultHead(final Writer writer, final long n, final int i, final String mime) throws IOException {
+        writer.write("<R N=\""); writer.write(Long.toString(n)); writer.write('"');
+        if (i == 1) writer.write(" L=\"2\"");
+        if (mime != null && mime.length() > 0) {
+            writer.write(" MIME=\""); writer.write(mime); writer.write('"');
+        }
+        writer.write('>'); writer.write(lb);
+    }
+
     private static String getContextString(Map<Object,Object> context, String key, String dflt) {
         Object v = context.get(key);
         if (v == null) return dflt;
@@ -551,6 +567,8 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
         writer.write("\"/>"); writer.write(lb);
     }
 
+    private static final Pattern JOINED_HIGHLIGHTS = Pattern.compile("</b> <b>", Pattern.LITERAL);
+
     public static String highlight(String text, String query) {
         if (query != null) {
             String[] q = CommonPattern.SPACE.split(CommonPattern.PLUS.matcher(query.trim().toLowerCase()).replaceAll(" "));
@@ -559,7 +577,7 @@ public class GSAResponseWriter implements QueryResponseWriter, SolrjResponseWrit
                 if (p < 0) continue;
                 text = text.substring(0, p) + "<b>" + text.substring(p, p + s.length()) + "</b>" + text.substring(p + s.length());
             }
-            return text.replaceAll(Pattern.quote("</b> <b>"), " ");
+            return JOINED_HIGHLIGHTS.matcher(text).replaceAll(" ");
         } 
         return text;
     }
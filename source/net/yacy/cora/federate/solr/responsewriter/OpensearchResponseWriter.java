@@ -73,21 +73,49 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
     // define a list of simple YaCySchema -> RSS Token matchings
     private static final Map<String, String> field2tag = new HashMap<>();
 
+    // the fields with a special handling
+    private enum DocField {
+        sku, id, title, last_modified, description_txt, text_t, size_i, headline, images_protocol_sxt, images_urlstub_sxt, keywords;
+    }
+    private static final Map<String, DocField> field2docfield = new HashMap<>();
+
     // pre-select a set of YaCy schema fields for the solr searcher which should cause a better caching
     private static final CollectionSchema[] extrafields = new CollectionSchema[]{
-        CollectionSchema.id, CollectionSchema.title, CollectionSchema.description_txt, CollectionSchema.text_t,
-        CollectionSchema.h1_txt, CollectionSchema.h2_txt, CollectionSchema.h3_txt, CollectionSchema.h4_txt, CollectionSchema.h5_txt, CollectionSchema.h6_txt,
+        CollectionSchema.id, CollectionSchema.sku, CollectionSchema.title, CollectionSchema.last_modified, CollectionSchema.description_txt, CollectionSchema.text_t, CollectionSchema.size_i,
+        CollectionSchema.images_protocol_sxt, CollectionSchema.images_urlstub_sxt, CollectionSchema.keywords
         };
+    private static final CollectionSchema[] headlinefields = new CollectionSchema[]{
+        CollectionSchema.h1_txt, CollectionSchema.h2_txt, CollectionSchema.h3_txt, CollectionSchema.h4_txt, CollectionSchema.h5_txt, CollectionSchema.h6_txt
+        };
+
+    /**
+     * the fields read by this writer: only these are loaded from the stored documents, all other fields would be loaded
+     * lazily with a second read of the stored document when they were accessed
+     */
     static final Set<String> SOLR_FIELDS = new HashSet<>();
     static {
         field2tag.put(CollectionSchema.coordinate_p.getSolrFieldName() + "_0_coordinate", Geo.Lat.getURIref());
         field2tag.put(CollectionSchema.coordinate_p.getSolrFieldName() + "_1_coordinate", Geo.Long.getURIref());
         field2tag.put(CollectionSchema.publisher_t.getSolrFieldName(), DublinCore.Publisher.getURIref());
         field2tag.put(CollectionSchema.author.getSolrFieldName(), DublinCore.Creator.getURIref());
+        for (CollectionSchema field: extrafields) field2docfield.put(field.getSolrFieldName(), DocField.valueOf(field.name()));
+        for (CollectionSchema field: headlinefields) field2docfield.put(field.getSolrFieldName(), DocField.headline);
         SOLR_FIELDS.addAll(field2tag.keySet());
-        for (CollectionSchema field: extrafields) SOLR_FIELDS.add(field.getSolrFieldName());
+        SOLR_FIELDS.addAll(field2docfield.keySet());
     }
 
+    private static final String RSS_START =
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<?xml-stylesheet type='text/xsl' href='/yacysearch.xsl' version='1.0'?>\n" +
+                        "<rss version=\"2.0\"\n" +
+                        "    xmlns:yacy=\"http://www.yacy.net/\"\n" +
+                        "    xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\"\n" +
+                        "    xmlns:media=\"http://search.yahoo.com/mrss/\"\n" +
+                        "    xmlns:atom=\"http://www.w3.org/2005/Atom\"\n" +
+                        "    xmlns:dc=\"" + DublinCore.NAMESPACE + "\"\n" +
+                        "    xmlns:geo=\"" + Geo.NAMESPACE + "\"\n" +
+                        ">\n";
+
     private String title;
 
     public static class ResHead {
@@ -229,7 +257,7 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
         closeTag(writer, "yacy:navigation");
         
         closeTag(writer, "channel");
-        writer.write("</rss>\n".toCharArray());
+        writer.write("</rss>\n");
     }
     
 	/**
@@ -241,17 +269,7 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
 	private void writeHeader(final Writer writer, final ResHead resHead)
 			throws IOException {
         // write header
-        writer.write((
-                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                        "<?xml-stylesheet type='text/xsl' href='/yacysearch.xsl' version='1.0'?>\n" +
-                        "<rss version=\"2.0\"\n" +
-                        "    xmlns:yacy=\"http://www.yacy.net/\"\n" +
-                        "    xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\"\n" +
-                        "    xmlns:media=\"http://search.yahoo.com/mrss/\"\n" +
-                        "    xmlns:atom=\"http://www.w3.org/2005/Atom\"\n" +
-                        "    xmlns:dc=\"" + DublinCore.NAMESPACE + "\"\n" +
-                        "    xmlns:geo=\"" + Geo.NAMESPACE + "\"\n" +
-                        ">\n").toCharArray());
+        writer.write(RSS_START);
         openTag(writer, "channel");
         solitaireTag(writer, "opensearch:totalResults", Long.toString(resHead.numFound));
         solitaireTag(writer, "opensearch:startIndex", Long.toString(resHead.offset));
@@ -272,15 +290,10 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
 	private void writeDocs(final Writer writer, final SolrDocumentList documents,
 			final Map<String, Collection<String>> snippets) throws IOException {
 		// parse body
-        String urlhash = null;
-        MultiProtocolURL url = null;
+        final DocState state = new DocState();
         for (SolrDocument doc: documents) {
             openTag(writer, "item");
-            List<String> texts = new ArrayList<>();
-            List<String> descriptions = new ArrayList<>();
-            String docTitle = "";
-            List<Object> images_protocol_obj = new ArrayList<>();
-        	List<String> images_stub = new ArrayList<>();
+            state.clear();
 			for (final Entry<String, Object> fieldEntry : doc) {
 				final String fieldName = fieldEntry.getKey();
         		final Object value = fieldEntry.getValue();
@@ -296,110 +309,81 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
                     continue;
                 }
                 
-                // take apart the url
-                if (CollectionSchema.sku.getSolrFieldName().equals(fieldName)) {
-                    url = writeLink(writer, value.toString());
-                    continue;
-                }
-                
                 // if the rule is not generic, use the specific here
-                if (CollectionSchema.id.getSolrFieldName().equals(fieldName)) {
-                    urlhash = value.toString();
-                    solitaireTag(writer, RSSMessage.Token.guid.name(), urlhash, "isPermaLink=\"false\"");
+                final DocField docField = field2docfield.get(fieldName);
+                if (docField == null) {
                     continue;
                 }
-                if (CollectionSchema.title.getSolrFieldName().equals(fieldName)) {
+                switch (docField) {
+                case sku:
+                    // take apart the url
+                    state.url = writeLink(writer, value.toString());
+                    break;
+                case id:
+                    state.urlhash = value.toString();
+                    solitaireTag(writer, RSSMessage.Token.guid.name(), state.urlhash, "isPermaLink=\"false\"");
+                    break;
+                case title:
                 	if(value instanceof Iterable<?>) {
                         /* Handle multivalued field */
                 		for(final Object valueItem : (Iterable<?>)value) {
-                            docTitle = valueItem.toString();
-                            texts.add(docTitle);                			
+                            state.docTitle = valueItem.toString();
+                            state.texts.add(state.docTitle);
                 		}
                 	} else {
-                        docTitle = value.toString();
-                        texts.add(docTitle);        		
+                        state.docTitle = value.toString();
+                        state.texts.add(state.docTitle);
                 	}
-                    continue;
-                }
-                if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName) && value instanceof Date) {
-                    solitaireTag(writer, RSSMessage.Token.pubDate.name(), HeaderFramework.formatRFC1123((Date)value));
-                    continue;
-                }
-                if (CollectionSchema.description_txt.getSolrFieldName().equals(fieldName)) {
+                    break;
+                case last_modified:
+                    if (value instanceof Date) {
+                        solitaireTag(writer, RSSMessage.Token.pubDate.name(), HeaderFramework.formatRFC1123((Date)value));
+                    }
+                    break;
+                case description_txt:
                 	if(value instanceof Iterable<?>) {
                         /* Handle multivalued field */
                 		for(final Object valueItem : (Iterable<?>)value) {
-                            final String description = valueItem.toString();
-                            descriptions.add(description);
-                            texts.add(description);
-                            solitaireTag(writer, DublinCore.Description.getURIref(), description);                			
+                            writeDescription(writer, state, valueItem.toString());
                 		}
                 	} else {
-                        final String description = value.toString();
-                        descriptions.add(description);
-                        texts.add(description);
-                        solitaireTag(writer, DublinCore.Description.getURIref(), description);                		
+                        writeDescription(writer, state, value.toString());
                 	}
-
-                    continue;
-                }
-                if (CollectionSchema.text_t.getSolrFieldName().equals(fieldName)) {
-                    texts.add(value.toString());
-                    continue;
-                }
-                if (CollectionSchema.size_i.getSolrFieldName().equals(fieldName) && value instanceof Integer) {
-                    int size = ((Integer)value).intValue();
-                    solitaireTag(writer, YaCyMetadata.size.getURIref(), Integer.toString(size));
-                    solitaireTag(writer, YaCyMetadata.sizename.getURIref(), RSSMessage.sizename(size));
-                    continue;
-                }
-                if (CollectionSchema.h1_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h2_txt.getSolrFieldName().equals(fieldName) ||
-                    CollectionSchema.h3_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h4_txt.getSolrFieldName().equals(fieldName) ||
-                    CollectionSchema.h5_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h6_txt.getSolrFieldName().equals(fieldName)) {
-                	if(value instanceof Iterable<?>) {
-                        // because these are multi-valued fields, there can be several of each
-                		for(final Object valueItem : (Iterable<?>)value) {
-                			texts.add(valueItem.toString());                			
-                		}
-                	} else {
-                		texts.add(value.toString());       		
-                	}
-                    continue;
-                }
-                if (CollectionSchema.images_protocol_sxt.getSolrFieldName().equals(fieldName)) {
-                	if(value instanceof Iterable<?>) {
-                        /* Handle multivalued field */
-                		for(final Object valueItem : (Iterable<?>)value) {
-                        	images_protocol_obj.add(valueItem.toString());            			
-                		}
-                	} else {
-                    	images_protocol_obj.add(value.toString());       		
-                	}
-                    continue;
-                }
-                if (CollectionSchema.images_urlstub_sxt.getSolrFieldName().equals(fieldName)) {
-                	if(value instanceof Iterable<?>) {
-                        /* Handle multivalued field */
-                		for(final Object valueItem : (Iterable<?>)value) {
-                        	images_stub.add(valueItem.toString());            			
-                		}
-                	} else {
-                    	images_stub.add(value.toString());       		
-                	}
-                    continue;
+                    break;
+                case text_t:
+                    state.texts.add(value.toString());
+                    break;
+                case size_i:
+                    if (value instanceof Integer) {
+                        writeSize(writer, ((Integer)value).intValue());
+                    }
+                    break;
+                case headline:
+                    // because these are multi-valued fields, there can be several of each
+                    addValues(state.texts, value);
+                    break;
+                case images_protocol_sxt:
+                    addValues(state.imagesProtocolObjs, value);
+                    break;
+                case images_urlstub_sxt:
+                    addValues(state.imagesStubs, value);
+                    break;
+                case keywords:
+                    if (value instanceof String) {
+                        state.keywords = (String) value;
+                    }
+                    break;
                 }
             }
-			
-			final Object keywordsObj = doc.get(CollectionSchema.keywords.getSolrFieldName());
-			final String keywords = (keywordsObj instanceof String) ? (String)keywordsObj : null;
             
-            writeDocEnd(writer, snippets, urlhash, url, keywords, texts, descriptions, docTitle, images_protocol_obj,
-					images_stub);
+            writeDocEnd(writer, snippets, state);
         }
 	}
 
 	/**
 	 * Append to the writer the OpenSearch RSS representation of Solr documents.
+	 * The stored fields are read from the index and written in one pass, without
+	 * building an intermediate Solr document.
 	 * 
 	 * @param writer        an open output writer. Must not be null.
 	 * @param documents     the documents to render. Must not be null.
@@ -410,18 +394,13 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
 			final Map<String, Collection<String>> snippets) throws IOException {
 		// parse body
         SolrIndexSearcher searcher = request.getSearcher();
-        String urlhash = null;
-        MultiProtocolURL url = null;
+        final DocState state = new DocState();
         final DocIterator iterator = documents.iterator();
         while(iterator.hasNext()) {
             openTag(writer, "item");
             int id = iterator.nextDoc();
             Document doc = searcher.doc(id, SOLR_FIELDS);
-            List<String> texts = new ArrayList<>();
-            List<String> descriptions = new ArrayList<>();
-            String docTitle = "";
-            List<Object> images_protocol_obj = new ArrayList<>();
-        	List<String> images_stub = new ArrayList<>();
+            state.clear();
             for (final IndexableField value : doc.getFields()) {
                 String fieldName = value.name();
 
@@ -432,69 +411,83 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
                     continue;
                 }
                 
-                // take apart the url
-                if (CollectionSchema.sku.getSolrFieldName().equals(fieldName)) {
-                	url = writeLink(writer, value.stringValue());
-                    continue;
-                }
-                
                 // if the rule is not generic, use the specific here
-                if (CollectionSchema.id.getSolrFieldName().equals(fieldName)) {
-                    urlhash = value.stringValue();
-                    solitaireTag(writer, RSSMessage.Token.guid.name(), urlhash, "isPermaLink=\"false\"");
-                    continue;
-                }
-                if (CollectionSchema.title.getSolrFieldName().equals(fieldName)) {
-                    docTitle = value.stringValue();
-                    texts.add(docTitle);
+                final DocField docField = field2docfield.get(fieldName);
+                if (docField == null) {
                     continue;
                 }
-                if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName)) {
+                switch (docField) {
+                case sku:
+                    // take apart the url
+                    state.url = writeLink(writer, value.stringValue());
+                    break;
+                case id:
+                    state.urlhash = value.stringValue();
+                    solitaireTag(writer, RSSMessage.Token.guid.name(), state.urlhash, "isPermaLink=\"false\"");
+                    break;
+                case title:
+                    state.docTitle = value.stringValue();
+                    state.texts.add(state.docTitle);
+                    break;
+                case last_modified:
                     Date d = new Date(Long.parseLong(value.stringValue()));
                     solitaireTag(writer, RSSMessage.Token.pubDate.name(), HeaderFramework.formatRFC1123(d));
-                    continue;
-                }
-                if (CollectionSchema.description_txt.getSolrFieldName().equals(fieldName)) {
-                    String description = value.stringValue();
-                    descriptions.add(description);
-                    solitaireTag(writer, DublinCore.Description.getURIref(), description);
-                    texts.add(description);
-                    continue;
-                }
-                if (CollectionSchema.text_t.getSolrFieldName().equals(fieldName)) {
-                    texts.add(value.stringValue());
-                    continue;
-                }
-                if (CollectionSchema.size_i.getSolrFieldName().equals(fieldName)) {
-                    int size = value.numericValue().intValue();
-                    solitaireTag(writer, YaCyMetadata.size.getURIref(), Integer.toString(size));
-                    solitaireTag(writer, YaCyMetadata.sizename.getURIref(), RSSMessage.sizename(size));
-                    continue;
-                }
-                if (CollectionSchema.h1_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h2_txt.getSolrFieldName().equals(fieldName) ||
-                    CollectionSchema.h3_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h4_txt.getSolrFieldName().equals(fieldName) ||
-                    CollectionSchema.h5_txt.getSolrFieldName().equals(fieldName) || CollectionSchema.h6_txt.getSolrFieldName().equals(fieldName)) {
+                    break;
+                case description_txt:
+                    writeDescription(writer, state, value.stringValue());
+                    break;
+                case text_t:
+                    state.texts.add(value.stringValue());
+                    break;
+                case size_i:
+                    writeSize(writer, value.numericValue().intValue());
+                    break;
+                case headline:
                     // because these are multi-valued fields, there can be several of each
-                    texts.add(value.stringValue());
-                    continue;
-                }
-                if (CollectionSchema.images_protocol_sxt.getSolrFieldName().equals(fieldName)) {
-                	images_protocol_obj.add(value.stringValue());
-                    continue;
-                }
-                if (CollectionSchema.images_urlstub_sxt.getSolrFieldName().equals(fieldName)) {
-                	images_stub.add(value.stringValue());
-                    continue;
+                    state.texts.add(value.stringValue());
+                    break;
+                case images_protocol_sxt:
+                	state.imagesProtocolObjs.add(value.stringValue());
+                    break;
+                case images_urlstub_sxt:
+                	state.imagesStubs.add(value.stringValue());
+                    break;
+                case keywords:
+                    if (state.keywords == null) {
+                        state.keywords = value.stringValue();
+                    }
+                    break;
                 }
             }
             
-			final Object keywordsObj = doc.get(CollectionSchema.keywords.getSolrFieldName());
-			final String keywords = (keywordsObj instanceof String) ? (String)keywordsObj : null;
-            
-            writeDocEnd(writer, snippets, urlhash, url, keywords, texts, descriptions, docTitle, images_protocol_obj,
-					images_stub);
+            writeDocEnd(writer, snippets, state);
         }
 	}
+
+	/**
+	 * Add the string values of a single or multivalued field value to a list
+	 */
+	private static void addValues(final List<? super String> list, final Object value) {
+		if(value instanceof Iterable<?>) {
+			/* Handle multivalued field */
+			for(final Object valueItem : (Iterable<?>)value) {
+				list.add(valueItem.toString());
+			}
+		} else {
+			list.add(value.toString());
+		}
+	}
+
+	private static void writeDescription(final Writer writer, final DocState state, final String description) throws IOException {
+        state.descriptions.add(description);
+        state.texts.add(description);
+        solitaireTag(writer, DublinCore.Description.getURIref(), description);
+	}
+
+	private static void writeSize(final Writer writer, final int size) throws IOException {
+        solitaireTag(writer, YaCyMetadata.size.getURIref(), Integer.toString(size));
+        solitaireTag(writer, YaCyMetadata.sizename.getURIref(), RSSMessage.sizename(size));
+	}
 	
 	/**
 	 * Append information about the Solr document URL to the writer
@@ -522,44 +515,66 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
 	 * Append to the writer the end of the RSS OpenSearch representation of the Solr
 	 * document.
 	 */
-	private void writeDocEnd(final Writer writer, final Map<String, Collection<String>> snippets, final String urlhash,
-			final MultiProtocolURL url, final String keywords, final List<String> texts, final List<String> descriptions, final String docTitle,
-			final List<Object> imagesProtocolObjs, final List<String> imagesStubs) throws IOException {
-		if (Math.min(imagesProtocolObjs.size(), imagesStubs.size()) > 0) {
-			List<String> imagesProtocols = CollectionConfiguration.indexedList2protocolList(imagesProtocolObjs, imagesStubs.size());
-			String imageurl = imagesProtocols.get(0) + "://" + imagesStubs.get(0);
+	private void writeDocEnd(final Writer writer, final Map<String, Collection<String>> snippets, final DocState state) throws IOException {
+		if (Math.min(state.imagesProtocolObjs.size(), state.imagesStubs.size()) > 0) {
+			List<String> imagesProtocols = CollectionConfiguration.indexedList2protocolList(state.imagesProtocolObjs, state.imagesStubs.size());
 		     writer.write("<media:content medium=\"image\" url=\"");
-		     XML.escapeCharData(imageurl, writer); writer.write("\"/>\n");
+		     XML.escapeCharData(imagesProtocols.get(0), writer); writer.write("://"); XML.escapeCharData(state.imagesStubs.get(0), writer); writer.write("\"/>\n");
 		} else {
-			if (url != null && Response.docTypeExt(MultiProtocolURL.getFileExtension(url.getFile()).toLowerCase(Locale.ROOT)) == Response.DT_IMAGE) {
+			if (state.url != null && Response.docTypeExt(MultiProtocolURL.getFileExtension(state.url.getFile()).toLowerCase(Locale.ROOT)) == Response.DT_IMAGE) {
 				writer.write("<media:content medium=\"image\" url=\"");
-		        XML.escapeCharData(url.toNormalform(true), writer); writer.write("\"/>\n");
+		        XML.escapeCharData(state.url.toNormalform(true), writer); writer.write("\"/>\n");
 			}
 		}
 		
 		// compute snippet from texts
-		solitaireTag(writer, RSSMessage.Token.title.name(), docTitle.length() == 0 ? (texts.size() == 0 ? "" : texts.get(0)) : docTitle);
-		Collection<String> snippet = urlhash == null ? null : snippets.get(urlhash);
+		solitaireTag(writer, RSSMessage.Token.title.name(), state.docTitle.length() == 0 ? (state.texts.size() == 0 ? "" : state.texts.get(0)) : state.docTitle);
+		Collection<String> snippet = state.urlhash == null ? null : snippets.get(state.urlhash);
 		String tagname = RSSMessage.Token.description.name();
 		if (snippet == null || snippet.size() == 0) {
 		    writer.write("<"); writer.write(tagname); writer.write('>');
-		    for (String d: descriptions) {
+		    for (String d: state.descriptions) {
 		        XML.escapeCharData(d, writer);
 		    }
 		    writer.write("</"); writer.write(tagname); writer.write(">\n");
 		} else {
-		    removeSubsumedTitle(snippet, docTitle);
+		    removeSubsumedTitle(snippet, state.docTitle);
 		    solitaireTag(writer, tagname, getLargestSnippet(snippet)); // snippet may be size=0
 		}
 
-		if(keywords != null) {
-			solitaireTag(writer, DublinCore.Subject.getURIref(), keywords);
+		if(state.keywords != null) {
+			solitaireTag(writer, DublinCore.Subject.getURIref(), state.keywords);
 		}
 		
 		closeTag(writer, "item");
 	}
+
+	/**
+	 * The values of a document which are collected from its fields and written at the end of the document.
+	 * One instance is reused for all documents of a response.
+	 */
+	private static final class DocState {
+		private MultiProtocolURL url;
+		private String urlhash;
+		private String docTitle;
+		private String keywords;
+		private final List<String> texts = new ArrayList<>();
+		private final List<String> descriptions = new ArrayList<>();
+		private final List<Object> imagesProtocolObjs = new ArrayList<>();
+		private final List<String> imagesStubs = new ArrayList<>();
+
+		private void clear() {
+			this.url = null;
+			this.urlhash = null;
+			this.docTitle = "";
+			this.keywords = null;
+			this.texts.clear();
+			this.descriptions.clear();
+			this.imagesProtocolObjs.clear();
+			this.imagesStubs.clear();
+		}
+	}
 	
-    
 	/**
 	 * produce snippets from solr (they call that 'highlighting')
 	 * 
@@ -598,7 +613,7 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
         while (i.hasNext()) {
             String s = i.next().toLowerCase();
             s = keymarks.matcher(s).replaceAll("");
-            if (tlc.toLowerCase().indexOf(s) >= 0 || s.toLowerCase().indexOf(tlc) >= 0) i.remove();
+            if (tlc.indexOf(s) >= 0 || s.indexOf(tlc) >= 0) i.remove();
         }
         return;
     }
@@ -618,7 +633,7 @@ public class OpensearchResponseWriter implements QueryResponseWriter, SolrjRespo
 			}
         }
         if(l != null) {
-        	l = l.replaceAll("\"", "'");
+        	l = l.replace('"', '\'');
         }
         return l;
     }
@@ -0,0 +1,80 @@
+/**
+ *  PooledFastWriter
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.responsewriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.solr.util.FastWriter;
+
+/**
+ * A {@link FastWriter} for the response writers which takes its character buffer from a pool
+ * and gives it back on {@link #close()}. Every search result page is written through such a writer,
+ * so the buffers are reused instead of being allocated for each request; the buffer is also larger
+ * than the FastWriter default, which reduces the number of calls to the charset encoder of the sink.
+ */
+public class PooledFastWriter extends FastWriter {
+
+    /** size of the pooled buffers in characters */
+    public static final int BUFFER_SIZE = 32 * 1024;
+
+    /** the maximum number of idle buffers kept in the pool */
+    private static final int POOL_SIZE = 64;
+
+    private static final ArrayBlockingQueue<char[]> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private PooledFastWriter(final Writer sink, final char[] buffer) {
+        super(sink, buffer, 0);
+    }
+
+    /**
+     * @param sink the destination of the written characters
+     * @return a buffered writer on the sink using a pooled buffer. The writer must be closed to return the buffer to the pool.
+     */
+    public static PooledFastWriter wrap(final Writer sink) {
+        char[] buffer = pool.poll();
+        if (buffer == null) buffer = new char[BUFFER_SIZE];
+        return new PooledFastWriter(sink, buffer);
+    }
+
+    /**
+     * @param out the destination of the written characters encoded as UTF-8
+     * @return a buffered UTF-8 writer on the stream using a pooled buffer. The writer must be closed to return the buffer to the pool.
+     */
+    public static PooledFastWriter wrap(final OutputStream out) {
+        return wrap(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        final char[] buffer = this.buf;
+        if (buffer == null) return; // already closed
+        try {
+            super.close();
+        } finally {
+            this.buf = null;
+            pool.offer(buffer);
+        }
+    }
+}
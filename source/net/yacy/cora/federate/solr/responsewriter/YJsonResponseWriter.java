@@ -27,11 +27,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
@@ -73,6 +75,22 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
         field2tag.put(CollectionSchema.host_s.getSolrFieldName(), "host");
         field2tag.put(CollectionSchema.url_file_ext_s.getSolrFieldName(), "ext");
     }
+
+    // the fields with a special handling, named like the CollectionSchema fields
+    private enum DocField {
+        sku, title, description_txt, id, url_paths_sxt, last_modified, size_i, images_protocol_sxt, images_urlstub_sxt;
+    }
+    private static final Map<String, DocField> field2docfield = new HashMap<>();
+
+    /** the fields read by this writer, loaded together from the stored documents */
+    private static final Set<String> SOLR_FIELDS = new HashSet<>();
+    static {
+        for (final DocField docField: DocField.values()) {
+            field2docfield.put(CollectionSchema.valueOf(docField.name()).getSolrFieldName(), docField);
+        }
+        SOLR_FIELDS.addAll(field2tag.keySet());
+        SOLR_FIELDS.addAll(field2docfield.keySet());
+    }
      
     private String title;
 
@@ -143,8 +161,8 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
         
         String jsonp = request.getParams().get("callback"); // check for JSONP
         if (jsonp != null) {
-            writer.write(jsonp.toCharArray());
-            writer.write("([".toCharArray());
+            writer.write(jsonp);
+            writer.write("([");
         }
         
         if(responseObj instanceof ResultContext){
@@ -174,7 +192,7 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
         	throw new IOException("Unable to process Solr response format");
         }
 
-        writer.write("],\n".toCharArray());
+        writer.write("],\n");
         
         writer.write("\"navigation\":[\n");
 
@@ -193,18 +211,18 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
         int facetcount = 0;
         if (domains != null) {
             writer.write(facetcount > 0 ? ",\n" : "\n");
-            writer.write("{\"facetname\":\"domains\",\"displayname\":\"Provider\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n".toCharArray());
+            writer.write("{\"facetname\":\"domains\",\"displayname\":\"Provider\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n");
             for (int i = 0; i < domains.size(); i++) {
                 facetEntry(writer, "site", domains.getName(i), Integer.toString(domains.getVal(i)));
                 if (i < domains.size() - 1) writer.write(',');
                 writer.write("\n");
             }
-            writer.write("]}".toCharArray());
+            writer.write("]}");
             facetcount++;
         }
         if (filetypes != null) {
             writer.write(facetcount > 0 ? ",\n" : "\n");
-            writer.write("{\"facetname\":\"filetypes\",\"displayname\":\"Filetypes\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n".toCharArray());
+            writer.write("{\"facetname\":\"filetypes\",\"displayname\":\"Filetypes\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n");
             List<Map.Entry<String, Integer>> l = new ArrayList<>();
             for (Map.Entry<String, Integer> e: filetypes) {
                 if (e.getKey().length() <= 6) l.add(e);
@@ -216,46 +234,46 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
                 if (i < l.size() - 1) writer.write(',');
                 writer.write("\n");
             }
-            writer.write("]}".toCharArray());
+            writer.write("]}");
             facetcount++;
         }
         if (protocols != null) {
             writer.write(facetcount > 0 ? ",\n" : "\n");
-            writer.write("{\"facetname\":\"protocols\",\"displayname\":\"Protocol\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n".toCharArray());
+            writer.write("{\"facetname\":\"protocols\",\"displayname\":\"Protocol\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n");
             for (int i = 0; i < protocols.size(); i++) {
                 facetEntry(writer, "protocol", protocols.getName(i), Integer.toString(protocols.getVal(i)));
                 if (i < protocols.size() - 1) writer.write(',');
                 writer.write("\n");
             }
-            writer.write("]}".toCharArray());
+            writer.write("]}");
             facetcount++;
         }
         if (authors != null) {
             writer.write(facetcount > 0 ? ",\n" : "\n");
-            writer.write("{\"facetname\":\"authors\",\"displayname\":\"Authors\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n".toCharArray());
+            writer.write("{\"facetname\":\"authors\",\"displayname\":\"Authors\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n");
             for (int i = 0; i < authors.size(); i++) {
                 facetEntry(writer, "author", authors.getName(i), Integer.toString(authors.getVal(i)));
                 if (i < authors.size() - 1) writer.write(',');
                 writer.write("\n");
             }
-            writer.write("]}".toCharArray());
+            writer.write("]}");
             facetcount++;
         }
         if (collections != null) {
             writer.write(facetcount > 0 ? ",\n" : "\n");
-            writer.write("{\"facetname\":\"collections\",\"displayname\":\"Collections\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n".toCharArray());
+            writer.write("{\"facetname\":\"collections\",\"displayname\":\"Collections\",\"type\":\"String\",\"min\":\"0\",\"max\":\"0\",\"mean\":\"0\",\"elements\":[\n");
             for (int i = 0; i < collections.size(); i++) {
                 facetEntry(writer, "collection", collections.getName(i), Integer.toString(collections.getVal(i)));
                 if (i < collections.size() - 1) writer.write(',');
                 writer.write("\n");
             }
-            writer.write("]}".toCharArray());
+            writer.write("]}");
             facetcount++;
         }
-        writer.write("\n]}]}\n".toCharArray());
+        writer.write("\n]}]}\n");
         
         if (jsonp != null) {
-            writer.write("])".toCharArray());
+            writer.write("])");
         }
     }
 	
@@ -267,17 +285,19 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
 	 */
 	private void writeHeader(final Writer writer, final ResHead resHead)
 			throws IOException {
-        writer.write(("{\"channels\": [{\n").toCharArray());
+        writer.write(("{\"channels\": [{\n"));
         solitaireTag(writer, "totalResults", Long.toString(resHead.numFound));
         solitaireTag(writer, "startIndex", Long.toString(resHead.offset));
         solitaireTag(writer, "itemsPerPage", Long.toString(resHead.rows));
         solitaireTag(writer, "title", this.title);
         solitaireTag(writer, "description", "Search Result");
-        writer.write("\"items\": [\n".toCharArray());
+        writer.write("\"items\": [\n");
 	}
 	
 	/**
-	 * Append to the writer the OpenSearch RSS representation of Solr documents.
+	 * Append to the writer the YaCy json representation of Solr documents. The
+	 * stored fields are read from the index and written in one pass, without
+	 * building an intermediate Solr document.
 	 * 
 	 * @param writer        an open output writer. Must not be null.
 	 * @param documents     the documents to render. Must not be null.
@@ -288,22 +308,17 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
 			final Map<String, Collection<String>> snippets) throws IOException {
         final SolrIndexSearcher searcher = request.getSearcher();
         final DocIterator iterator = documents.iterator();
+        final DocState state = new DocState();
         int writtenDocs = 0;
         while(iterator.hasNext()) {
         	if(writtenDocs > 0) {
-        		writer.write(",\n".toCharArray());
+        		writer.write(",\n");
         	}
             try {
-            	writer.write("{\n".toCharArray());
+            	writer.write("{\n");
             	int id = iterator.nextDoc();
-            	Document doc = searcher.doc(id, OpensearchResponseWriter.SOLR_FIELDS);
-            	MultiProtocolURL url = null;
-            	String urlhash = null;
-            	List<String> descriptions = new ArrayList<>();
-            	String docTitle = "";
-            	StringBuilder path = new StringBuilder(80);
-            	List<Object> imagesProtocolObjs = new ArrayList<>();
-            	List<String> imagesStubs = new ArrayList<>();
+            	Document doc = searcher.doc(id, SOLR_FIELDS);
+            	state.clear();
         	
             	for (final IndexableField value : doc.getFields()) {
             		String fieldName = value.name();
@@ -316,52 +331,45 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
             		}
             		
             		// some special handling here
-            		if (CollectionSchema.sku.getSolrFieldName().equals(fieldName)) {
-            			url = writeLink(writer, value.stringValue());
-            			continue;
+            		final DocField docField = field2docfield.get(fieldName);
+            		if (docField == null) {
+            			continue; //missing: "code","faviconCode"
             		}
-            		if (CollectionSchema.title.getSolrFieldName().equals(fieldName)) {
-            			docTitle = value.stringValue();
-            			continue;
-            		}
-            		if (CollectionSchema.description_txt.getSolrFieldName().equals(fieldName)) {
-            			String description = value.stringValue();
-            			descriptions.add(description);
-            			continue;
-            		}
-            		if (CollectionSchema.id.getSolrFieldName().equals(fieldName)) {
-            			urlhash = value.stringValue();
-                    	solitaireTag(writer, "guid", urlhash);
-                    	continue;
-            		}
-            		if (CollectionSchema.url_paths_sxt.getSolrFieldName().equals(fieldName)) {
-            			path.append('/').append(value.stringValue());
-                    	continue;
-            		}
-            		if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName)) {
+            		switch (docField) {
+            		case sku:
+            			state.url = writeLink(writer, value.stringValue());
+            			break;
+            		case title:
+            			state.docTitle = value.stringValue();
+            			break;
+            		case description_txt:
+            			state.descriptions.add(value.stringValue());
+            			break;
+            		case id:
+            			state.urlhash = value.stringValue();
+            			solitaireTag(writer, "guid", state.urlhash);
+            			break;
+            		case url_paths_sxt:
+            			state.path.append('/').append(value.stringValue());
+            			break;
+            		case last_modified:
             			Date d = new Date(Long.parseLong(value.stringValue()));
             			solitaireTag(writer, "pubDate", HeaderFramework.formatRFC1123(d));
-            			continue;
-            		}
-            		if (CollectionSchema.size_i.getSolrFieldName().equals(fieldName)) {
+            			break;
+            		case size_i:
             			int size = value.stringValue() != null && value.stringValue().length() > 0 ? Integer.parseInt(value.stringValue()) : -1;
             			writeSize(writer, size);
-            			continue;
-            		}
-            		if (CollectionSchema.images_protocol_sxt.getSolrFieldName().equals(fieldName)) {
-            			imagesProtocolObjs.add(value.stringValue());
-            			continue;
-            		}
-            		if (CollectionSchema.images_urlstub_sxt.getSolrFieldName().equals(fieldName)) {
-            			imagesStubs.add(value.stringValue());
-            			continue;
+            			break;
+            		case images_protocol_sxt:
+            			state.imagesProtocolObjs.add(value.stringValue());
+            			break;
+            		case images_urlstub_sxt:
+            			state.imagesStubs.add(value.stringValue());
+            			break;
             		}
-
-            		//missing: "code","faviconCode"
             	}
 
-            	writeDocEnd(writer, snippets, url, urlhash, descriptions, docTitle, path, imagesProtocolObjs,
-						imagesStubs);
+            	writeDocEnd(writer, snippets, state);
             } catch (final Exception ee) {
                 ConcurrentLog.logException(ee);
                 writer.write("\"description\":\"\"\n}\n");
@@ -381,20 +389,15 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
 	 */
 	private void writeDocs(final Writer writer, final SolrDocumentList documents,
 			final Map<String, Collection<String>> snippets) throws IOException {
+		final DocState state = new DocState();
 		int writtenDocs = 0;
         for (final SolrDocument doc : documents) {
         	if(writtenDocs > 0) {
-        		writer.write(",\n".toCharArray());
+        		writer.write(",\n");
         	}
             try {
-            	writer.write("{\n".toCharArray());
-            	MultiProtocolURL url = null;
-            	String urlhash = null;
-            	List<String> descriptions = new ArrayList<>();
-            	String docTitle = "";
-            	StringBuilder path = new StringBuilder(80);
-            	List<Object> imagesProtocolObjs = new ArrayList<>();
-            	List<String> imagesStubs = new ArrayList<>();
+            	writer.write("{\n");
+            	state.clear();
         	
             	for (final Entry<String, Object> fieldEntry : doc) {
             		final String fieldName = fieldEntry.getKey();
@@ -410,95 +413,63 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
             			solitaireTag(writer, stag, value.toString());
             			continue;
             		}
-            		// some special handling here
-            		if (CollectionSchema.sku.getSolrFieldName().equals(fieldName)) {
-            			url = writeLink(writer, value.toString());
-            			continue;
-            		}
             		
-            		if (CollectionSchema.title.getSolrFieldName().equals(fieldName)) {
-            			if(value instanceof Iterable<?>) {
-            				/* Handle multivalued field */
-            				for(final Object valueItem : (Iterable<?>)value) {
-            					docTitle = valueItem.toString();
-            				}
-            			} else {
-            				docTitle = value.toString();
-            			}
-            			continue;
+            		// some special handling here
+            		final DocField docField = field2docfield.get(fieldName);
+            		if (docField == null) {
+            			continue; //missing: "code","faviconCode"
             		}
-            		
-            		if (CollectionSchema.description_txt.getSolrFieldName().equals(fieldName)) {
+            		switch (docField) {
+            		case sku:
+            			state.url = writeLink(writer, value.toString());
+            			break;
+            		case title:
             			if(value instanceof Iterable<?>) {
             				/* Handle multivalued field */
             				for(final Object valueItem : (Iterable<?>)value) {
-            					final String description = valueItem.toString();
-            					descriptions.add(description);
+            					state.docTitle = valueItem.toString();
             				}
             			} else {
-            				final String description = value.toString();
-            				descriptions.add(description);
+            				state.docTitle = value.toString();
             			}
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.id.getSolrFieldName().equals(fieldName)) {
-            			urlhash = value.toString();
-            			solitaireTag(writer, "guid", urlhash);
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.url_paths_sxt.getSolrFieldName().equals(fieldName)) {
+            			break;
+            		case description_txt:
+            			addValues(state.descriptions, value);
+            			break;
+            		case id:
+            			state.urlhash = value.toString();
+            			solitaireTag(writer, "guid", state.urlhash);
+            			break;
+            		case url_paths_sxt:
             			if(value instanceof Iterable<?>) {
             				/* Handle multivalued field */
             				for(final Object valueItem : (Iterable<?>)value) {
-            					path.append('/').append(valueItem.toString());
+            					state.path.append('/').append(valueItem.toString());
             				}
             			} else {
-            				path.append('/').append(value.toString());
+            				state.path.append('/').append(value.toString());
             			}
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.last_modified.getSolrFieldName().equals(fieldName)  && value instanceof Date) {
-            			solitaireTag(writer, "pubDate", HeaderFramework.formatRFC1123((Date)value));
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.size_i.getSolrFieldName().equals(fieldName) && value instanceof Integer) {
-            			writeSize(writer, ((Integer)value).intValue());
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.images_protocol_sxt.getSolrFieldName().equals(fieldName)) {
-            			if(value instanceof Iterable<?>) {
-            				/* Handle multivalued field */
-            				for(final Object valueItem : (Iterable<?>)value) {
-            					imagesProtocolObjs.add(valueItem.toString());
-            				}
-            			} else {
-            				imagesProtocolObjs.add(value.toString());
+            			break;
+            		case last_modified:
+            			if (value instanceof Date) {
+            				solitaireTag(writer, "pubDate", HeaderFramework.formatRFC1123((Date)value));
             			}
-            			continue;
-            		}
-            		
-            		if (CollectionSchema.images_urlstub_sxt.getSolrFieldName().equals(fieldName)) {
-            			if(value instanceof Iterable<?>) {
-            				/* Handle multivalued field */
-            				for(final Object valueItem : (Iterable<?>)value) {
-            					imagesStubs.add(valueItem.toString());
-            				}
-            			} else {
-            				imagesStubs.add(value.toString());
+            			break;
+            		case size_i:
+            			if (value instanceof Integer) {
+            				writeSize(writer, ((Integer)value).intValue());
             			}
-            			continue;
+            			break;
+            		case images_protocol_sxt:
+            			addValues(state.imagesProtocolObjs, value);
+            			break;
+            		case images_urlstub_sxt:
+            			addValues(state.imagesStubs, value);
+            			break;
             		}
-
-            		//missing: "code","faviconCode"
             	}
 
-            	writeDocEnd(writer, snippets, url, urlhash, descriptions, docTitle, path, imagesProtocolObjs,
-						imagesStubs);
+            	writeDocEnd(writer, snippets, state);
             } catch (final Exception ee) {
                 ConcurrentLog.logException(ee);
                 writer.write("\"description\":\"\"\n}\n");
@@ -507,6 +478,20 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
         }
 	}
 
+	/**
+	 * Add the string values of a single or multivalued field value to a list
+	 */
+	private static void addValues(final List<? super String> list, final Object value) {
+		if(value instanceof Iterable<?>) {
+			/* Handle multivalued field */
+			for(final Object valueItem : (Iterable<?>)value) {
+				list.add(valueItem.toString());
+			}
+		} else {
+			list.add(value.toString());
+		}
+	}
+
 	/**
 	 * Append information about the Solr document size to the writer
 	 * @param writer an open output writer. Must not be null.
@@ -545,45 +530,70 @@ public class YJsonResponseWriter implements QueryResponseWriter, SolrjResponseWr
 	 * Append to the writer the end of the YaCy json representation of the Solr
 	 * document.
 	 */
-	private void writeDocEnd(final Writer writer, final Map<String, Collection<String>> snippets,
-			final MultiProtocolURL url, final String urlhash, final List<String> descriptions, final String docTitle, final StringBuilder path,
-			final List<Object> imagesProtocolObjs, final List<String> imagesStubs) throws IOException {
-		if (Math.min(imagesProtocolObjs.size(), imagesStubs.size()) > 0) {
-			List<String> imagesProtocols = CollectionConfiguration.indexedList2protocolList(imagesProtocolObjs, imagesStubs.size());
-			String imageurl = imagesProtocols.get(0) + "://" + imagesStubs.get(0);
+	private void writeDocEnd(final Writer writer, final Map<String, Collection<String>> snippets, final DocState state) throws IOException {
+		if (Math.min(state.imagesProtocolObjs.size(), state.imagesStubs.size()) > 0) {
+			List<String> imagesProtocols = CollectionConfiguration.indexedList2protocolList(state.imagesProtocolObjs, state.imagesStubs.size());
+			String imageurl = imagesProtocols.get(0) + "://" + state.imagesStubs.get(0);
 			solitaireTag(writer, "image", imageurl);
 		} else {
-			if (url != null && Response.docTypeExt(MultiProtocolURL.getFileExtension(url.getFile()).toLowerCase(Locale.ROOT)) == Response.DT_IMAGE) {
-				solitaireTag(writer, "image", url.toNormalform(true));
+			if (state.url != null && Response.docTypeExt(MultiProtocolURL.getFileExtension(state.url.getFile()).toLowerCase(Locale.ROOT)) == Response.DT_IMAGE) {
+				solitaireTag(writer, "image", state.url.toNormalform(true));
 			}
 		}
          
 		// compute snippet from texts            
-		solitaireTag(writer, "path", path.toString());
-		solitaireTag(writer, "title", docTitle.length() == 0 ? path.toString() : docTitle.replaceAll("\"", "'"));
-		Collection<String> snippet = urlhash == null ? null : snippets.get(urlhash);
-		if (snippet == null) {snippet = new LinkedHashSet<>(); snippet.addAll(descriptions);}
-		OpensearchResponseWriter.removeSubsumedTitle(snippet, docTitle);
-		String snippetstring = snippet == null || snippet.size() == 0 ? (descriptions.size() > 0 ? descriptions.get(0) : "") : OpensearchResponseWriter.getLargestSnippet(snippet);
+		final String path = state.path.toString();
+		solitaireTag(writer, "path", path);
+		solitaireTag(writer, "title", state.docTitle.length() == 0 ? path : state.docTitle.replace('"', '\''));
+		Collection<String> snippet = state.urlhash == null ? null : snippets.get(state.urlhash);
+		if (snippet == null) {snippet = state.snippet; snippet.addAll(state.descriptions);}
+		OpensearchResponseWriter.removeSubsumedTitle(snippet, state.docTitle);
+		String snippetstring = snippet == null || snippet.size() == 0 ? (state.descriptions.size() > 0 ? state.descriptions.get(0) : "") : OpensearchResponseWriter.getLargestSnippet(snippet);
 		if (snippetstring != null && snippetstring.length() > 140) {
 			snippetstring = snippetstring.substring(0, 140);
 			int sp = snippetstring.lastIndexOf(' ');
 			if (sp >= 0) snippetstring = snippetstring.substring(0, sp) + " ..."; else snippetstring = snippetstring + "...";
 		}
-		writer.write("\"description\":"); writer.write(JSONObject.quote(snippetstring)); writer.write("\n}\n");
+		writer.write("\"description\":"); JSONObject.quote(snippetstring, writer); writer.write("\n}\n");
+	}
+
+	/**
+	 * The values of a document which are collected from its fields and written at the end of the document.
+	 * One instance is reused for all documents of a response.
+	 */
+	private static final class DocState {
+		private MultiProtocolURL url;
+		private String urlhash;
+		private String docTitle;
+		private final List<String> descriptions = new ArrayList<>();
+		private final StringBuilder path = new StringBuilder(80);
+		private final List<Object> imagesProtocolObjs = new ArrayList<>();
+		private final List<String> imagesStubs = new ArrayList<>();
+		private final LinkedHashSet<String> snippet = new LinkedHashSet<>();
+
+		private void clear() {
+			this.url = null;
+			this.urlhash = null;
+			this.docTitle = "";
+			this.descriptions.clear();
+			this.path.setLength(0);
+			this.imagesProtocolObjs.clear();
+			this.imagesStubs.clear();
+			this.snippet.clear();
+		}
 	}
 
     public static void solitaireTag(final Writer writer, final String tagname, String value) throws IOException {
         if (value == null) return;
-        writer.write('"'); writer.write(tagname); writer.write("\":"); writer.write(JSONObject.quote(value)); writer.write(','); writer.write('\n');
+        writer.write('"'); writer.write(tagname); writer.write("\":"); JSONObject.quote(value, writer); writer.write(",\n");
     }
 
     private static void facetEntry(final Writer writer, String modifier, String propname, final String value) throws IOException {
-        modifier = modifier.replaceAll("\"", "'").trim();
-        propname = propname.replaceAll("\"", "'").trim();
-        writer.write("{\"name\":"); writer.write(JSONObject.quote(propname));
-        writer.write(",\"count\":"); writer.write(JSONObject.quote(value.replaceAll("\"", "'").trim())); 
-        writer.write(",\"modifier\":"); writer.write(JSONObject.quote(modifier+"%3A"+propname));
+        modifier = modifier.replace('"', '\'').trim();
+        propname = propname.replace('"', '\'').trim();
+        writer.write("{\"name\":"); JSONObject.quote(propname, writer);
+        writer.write(",\"count\":"); JSONObject.quote(value.replace('"', '\'').trim(), writer);
+        writer.write(",\"modifier\":"); JSONObject.quote(modifier + "%3A" + propname, writer);
         writer.write("}");
     }
 }
@@ -0,0 +1,129 @@
+/**
+ *  Histogram
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with log-linear buckets like a HDR histogram: every power of two is divided into
+ * 32 linear sub-buckets, so a quantile is known with a relative error of about 3% over the whole range
+ * from one nanosecond to 2^41 nanoseconds (about 36 minutes); larger values are counted in the last bucket.
+ * Recording a value is a few atomic increments without any lock and without allocation.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    Histogram() {
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) return (int) Math.max(0, value);
+        if (value > MAX_VALUE) value = MAX_VALUE;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * @return the smallest value counted in the bucket
+     */
+    static long lowerBound(final int index) {
+        if (index < SUB_COUNT) return index;
+        final int shift = (index >>> SUB_BITS) - 1;
+        return ((long) (SUB_COUNT + (index & (SUB_COUNT - 1)))) << shift;
+    }
+
+    private static long width(final int index) {
+        return index < SUB_COUNT ? 1 : 1L << ((index >>> SUB_BITS) - 1);
+    }
+
+    /**
+     * count a value
+     * @param value a time in nanoseconds; negative values are counted as 0
+     */
+    public void record(final long value) {
+        this.buckets.incrementAndGet(index(value));
+        this.count.increment();
+        this.sum.add(Math.max(0, value));
+        long m = this.max.get();
+        while (value > m && !this.max.compareAndSet(m, value)) m = this.max.get();
+    }
+
+    /**
+     * count the time from a start time until now
+     * @param startNanos the start time as given by {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return this.count.sum();
+    }
+
+    public long sum() {
+        return this.sum.sum();
+    }
+
+    public long max() {
+        return this.max.get();
+    }
+
+    public long mean() {
+        final long c = this.count.sum();
+        return c == 0 ? 0 : this.sum.sum() / c;
+    }
+
+    /**
+     * @param q the quantile, between 0 and 1
+     * @return the approximated value at the quantile, or 0 if nothing was recorded
+     */
+    public long quantile(final double q) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += this.buckets.get(i);
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(q * total));
+        if (rank >= total) return this.max.get(); // the largest value is known exactly
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) return Math.min(this.max.get(), lowerBound(i) + width(i) / 2);
+        }
+        return this.max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) this.buckets.set(i, 0);
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+}
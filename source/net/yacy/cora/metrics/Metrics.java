@@ -0,0 +1,191 @@
+/**
+ *  Metrics
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * The registry of all runtime metrics of a peer: counters, gauges and latency histograms.
+ * A metric is created on first use with its name and stays registered for the lifetime of the JVM;
+ * hot paths should keep the returned object in a static field instead of looking it up for every event.
+ * All metrics are exported in the Prometheus text format (see /api/metrics_p.txt) and as attributes
+ * of the JMX bean {@link #OBJECT_NAME}.
+ * Histograms count nanoseconds and are exported in seconds as summaries with the quantiles {@link #QUANTILES}.
+ */
+public final class Metrics {
+
+    public static final String PREFIX = "yacy_";
+    public static final String OBJECT_NAME = "net.yacy:type=Metrics";
+    public static final double[] QUANTILES = new double[] {0.5d, 0.9d, 0.99d, 0.999d};
+    static final String[] QUANTILE_NAMES = new String[] {"p50", "p90", "p99", "p999"};
+
+    enum Type {
+        counter, gauge, summary;
+    }
+
+    static final class Entry {
+        final String name, help;
+        final Type type;
+        final Object metric; // a Counter, a Histogram or a LongSupplier
+        Entry(final String name, final String help, final Type type, final Object metric) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.metric = metric;
+        }
+        long value() {
+            return this.metric instanceof Counter ? ((Counter) this.metric).get() : ((LongSupplier) this.metric).getAsLong();
+        }
+    }
+
+    static final ConcurrentMap<String, Entry> registry = new ConcurrentSkipListMap<String, Entry>();
+
+    private static boolean registeredJMX = false;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name the metric name without the prefix, like <code>crawler_fetch_bytes_total</code>; other characters than letters, digits and '_' are replaced by '_'
+     * @return the counter with that name, registered on first use
+     */
+    public static Counter counter(final String name, final String help) {
+        return (Counter) register(name, help, Type.counter, new Counter()).metric;
+    }
+
+    /**
+     * @param name the metric name without the prefix, like <code>solr_query_seconds</code>
+     * @return the latency histogram with that name, registered on first use
+     */
+    public static Histogram histogram(final String name, final String help) {
+        return (Histogram) register(name, help, Type.summary, new Histogram()).metric;
+    }
+
+    /**
+     * register a gauge which reads its value from a statistic maintained elsewhere
+     */
+    public static void gauge(final String name, final String help, final LongSupplier value) {
+        register(name, help, Type.gauge, value);
+    }
+
+    /**
+     * register a counter which reads its monotonically increasing value from a statistic maintained elsewhere
+     */
+    public static void counter(final String name, final String help, final LongSupplier value) {
+        register(name, help, Type.counter, value);
+    }
+
+    private static Entry register(final String name, final String help, final Type type, final Object metric) {
+        final String n = sanitize(name);
+        final Entry c = new Entry(n, help, type, metric);
+        final Entry e = registry.putIfAbsent(n, c);
+        if (e == null) return c;
+        if (e.type != type || (e.metric instanceof LongSupplier) != (metric instanceof LongSupplier)) {
+            throw new IllegalArgumentException("metric " + n + " is already registered as " + e.type);
+        }
+        if (metric instanceof LongSupplier) {
+            // the source of the value was re-initialized
+            registry.put(n, c);
+            return c;
+        }
+        return e;
+    }
+
+    static String sanitize(final String name) {
+        final StringBuilder sb = new StringBuilder(PREFIX.length() + name.length()).append(PREFIX);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            sb.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    static String seconds(final long nanos) {
+        return Double.toString(nanos / 1.0e9d);
+    }
+
+    /**
+     * write all metrics in the Prometheus text exposition format
+     */
+    public static void write(final StringBuilder sb) {
+        for (final Entry e: registry.values()) {
+            long value = 0;
+            if (e.type != Type.summary) try {
+                value = e.value();
+            } catch (final Throwable t) {
+                continue; // the source of the gauge is not available (any more)
+            }
+            sb.append("# HELP ").append(e.name).append(' ').append(e.help.replace('\n', ' ')).append('\n');
+            sb.append("# TYPE ").append(e.name).append(' ').append(e.type.name()).append('\n');
+            if (e.type == Type.summary) {
+                final Histogram h = (Histogram) e.metric;
+                for (final double q: QUANTILES) {
+                    sb.append(e.name).append("{quantile=\"").append(q).append("\"} ").append(seconds(h.quantile(q))).append('\n');
+                }
+                sb.append(e.name).append("_sum ").append(seconds(h.sum())).append('\n');
+                sb.append(e.name).append("_count ").append(h.count()).append('\n');
+            } else {
+                sb.append(e.name).append(' ').append(value).append('\n');
+            }
+        }
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    public static String text() {
+        final StringBuilder sb = new StringBuilder(registry.size() * 200);
+        write(sb);
+        return sb.toString();
+    }
+
+    /**
+     * register the metrics as JMX bean {@link #OBJECT_NAME} at the platform MBean server; repeated calls do nothing
+     */
+    public static synchronized void registerJMX() {
+        if (registeredJMX) return;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new MetricsMBean(), name);
+            registeredJMX = true;
+        } catch (final Throwable e) {
+            ConcurrentLog.warn("Metrics", "cannot register the JMX bean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * set all counters and histograms to zero; the gauges are not changed
+     */
+    static void reset() {
+        for (final Entry e: registry.values()) {
+            if (e.metric instanceof Counter) ((Counter) e.metric).reset();
+            if (e.metric instanceof Histogram) ((Histogram) e.metric).reset();
+        }
+    }
+}
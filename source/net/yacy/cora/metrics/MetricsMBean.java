@@ -0,0 +1,108 @@
+/**
+ *  MetricsMBean
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * A read-only JMX view of the {@link Metrics} registry. The attributes are created from the registry
+ * whenever the bean info is requested, so metrics registered later are visible as well.
+ * Counters and gauges are <code>long</code> attributes with the metric name; a histogram has the attributes
+ * <code>&lt;name&gt;_count</code>, <code>&lt;name&gt;_mean</code>, <code>&lt;name&gt;_max</code> and one for each quantile,
+ * like <code>&lt;name&gt;_p99</code>, all times in seconds.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = new String[] {"_count", "_mean", "_max"};
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        Metrics.Entry e = Metrics.registry.get(attribute);
+        if (e != null && e.type != Metrics.Type.summary) return Long.valueOf(e.value());
+        final int p = attribute.lastIndexOf('_');
+        if (p > 0 && (e = Metrics.registry.get(attribute.substring(0, p))) != null && e.type == Metrics.Type.summary) {
+            final Histogram h = (Histogram) e.metric;
+            final String suffix = attribute.substring(p + 1);
+            if ("count".equals(suffix)) return Long.valueOf(h.count());
+            if ("mean".equals(suffix)) return Double.valueOf(h.mean() / 1.0e9d);
+            if ("max".equals(suffix)) return Double.valueOf(h.max() / 1.0e9d);
+            for (int i = 0; i < Metrics.QUANTILES.length; i++) {
+                if (Metrics.QUANTILE_NAMES[i].equals(suffix)) return Double.valueOf(h.quantile(Metrics.QUANTILES[i]) / 1.0e9d);
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (final String a: attributes) {
+            try {
+                list.add(new Attribute(a, getAttribute(a)));
+            } catch (final AttributeNotFoundException | RuntimeException e) {
+                // attributes which cannot be read are omitted, as defined for getAttributes
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (final Metrics.Entry e: Metrics.registry.values()) {
+            if (e.type == Metrics.Type.summary) {
+                for (final String suffix: HISTOGRAM_ATTRIBUTES) {
+                    attributes.add(new MBeanAttributeInfo(e.name + suffix, "_count".equals(suffix) ? "long" : "double", e.help, true, false, false));
+                }
+                for (final String q: Metrics.QUANTILE_NAMES) {
+                    attributes.add(new MBeanAttributeInfo(e.name + "_" + q, "double", e.help, true, false, false));
+                }
+            } else {
+                attributes.add(new MBeanAttributeInfo(e.name, "long", e.help, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "YaCy runtime metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -30,8 +30,11 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * implements a stack where elements 'float' on-top of the stack according to a weight value.
@@ -39,14 +42,32 @@ import java.util.concurrent.TimeUnit;
  * for a double-check.
  * If the queue gets larger that the given maxsize, then elements from the tail of the queue
  * are drained (deleted).
+ * <p>
+ * Many feeder threads may put elements concurrently while another thread takes them: put does not lock,
+ * it appends the element to one of several insert buffers which are merged into the ordered queue
+ * by the next thread reading the queue or by a feeder when the buffers grow too large.
+ * Elements which are not better than the last element of a full queue are rejected by put immediately.
+ * </p>
  */
 public class WeakPriorityBlockingQueue<E> implements Serializable {
 
 	private static final long serialVersionUID = 4573442576760691887L;
 
+    /** the number of insert buffers, a power of two */
+    private static final int STRIPES = Integer.highestOneBit(Math.min(8, Math.max(1, Runtime.getRuntime().availableProcessors())) * 2 - 1);
+
+    /** the number of buffered elements after which a feeder merges the buffers into the queue */
+    private static final int MERGE_BATCH = 1024;
+
 	private final TreeSet<Element<E>>   queue;    // object within the stack, ordered using a TreeSet
-    private final Semaphore    enqueued; // semaphore for elements in the stack
     private final ArrayList<Element<E>> drained;  // objects that had been on the stack but had been removed
+    private final ConcurrentLinkedQueue<Element<E>>[] buffers; // elements which are put but not yet merged into the queue
+    private final AtomicInteger buffered;         // the number of elements in the buffers
+    private final AtomicBoolean merging;          // true while a feeder merges the buffers
+    private final AtomicInteger waiting;          // the number of threads waiting in poll(timeout)
+    private final Semaphore     signal;           // wakes up waiting threads when elements are put
+    private volatile int queued;                  // the size of the queue, readable without lock
+    private volatile Element<E> threshold;        // the last element of the queue if the queue is full, otherwise null
     private int maxsize;
 
     /**
@@ -60,17 +81,40 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
         // if this is set to -1, the size is unlimited
         this.queue = new TreeSet<Element<E>>();
         this.drained = drain ? new ArrayList<Element<E>>() : null;
-        this.enqueued = new Semaphore(0);
+        this.buffers = newBuffers(STRIPES);
+        this.buffered = new AtomicInteger(0);
+        this.merging = new AtomicBoolean(false);
+        this.waiting = new AtomicInteger(0);
+        this.signal = new Semaphore(0);
+        this.queued = 0;
+        this.threshold = null;
         this.maxsize = maxsize;
     }
 
+    /**
+     * create the insert buffers; generic arrays cannot be created directly
+     * @param count the number of buffers
+     * @return an array of empty buffers
+     */
+    private static <E> ConcurrentLinkedQueue<Element<E>>[] newBuffers(final int count) {
+        @SuppressWarnings("unchecked")
+        final ConcurrentLinkedQueue<Element<E>>[] buffers = (ConcurrentLinkedQueue<Element<E>>[]) new ConcurrentLinkedQueue<?>[count];
+        for (int i = 0; i < count; i++) buffers[i] = new ConcurrentLinkedQueue<Element<E>>();
+        return buffers;
+    }
+
     /**
      * clear the queue
      */
     public synchronized void clear() {
+        for (ConcurrentLinkedQueue<Element<E>> buffer: this.buffers) {
+            while (buffer.poll() != null) this.buffered.decrementAndGet();
+        }
         if (this.drained != null) this.drained.clear();
         this.queue.clear();
-        this.enqueued.drainPermits();
+        this.queued = 0;
+        this.threshold = null;
+        this.signal.drainPermits();
     }
 
     /**
@@ -78,15 +122,18 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return true if the queue is empty, false if not
      */
     public boolean isEmpty() {
-        return this.queue.isEmpty() & (this.drained == null || this.drained.isEmpty());
+        return this.queued == 0 && this.buffered.get() == 0 && (this.drained == null || this.drained.isEmpty());
     }
 
     /**
      * get the number of elements in the queue, waiting to be removed with take() or poll()
+     * This does not lock the queue: elements which are put but not yet merged into the queue are counted,
+     * even if they are dropped at the merge because they are double or the queue is full.
      * @return
      */
-    public synchronized int sizeQueue() {
-        return this.queue.size();
+    public int sizeQueue() {
+        final int size = this.queued + this.buffered.get();
+        return this.maxsize < 0 ? size : Math.min(this.maxsize, size);
     }
 
 
@@ -105,6 +152,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return
      */
     public synchronized int sizeAvailable() {
+        merge();
         return this.maxsize < 0 ?
                         this.queue.size() + (this.drained == null ? 0 : this.drained.size()) :
                         Math.min(this.maxsize, this.queue.size() + (this.drained == null ? 0 : this.drained.size()));
@@ -116,8 +164,44 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * they are checked against the drained list
      * @param element the element (must have a equals() method)
      */
-    public synchronized void put(final Element<E> element) {
-        // put the element on the stack
+    public void put(final Element<E> element) {
+        // reject elements which would be removed from the full queue at once
+        final Element<E> last = this.threshold;
+        if (last != null && element.compareTo(last) >= 0) return;
+
+        this.buffers[(int) Thread.currentThread().getId() & (STRIPES - 1)].add(element);
+        final int size = this.buffered.incrementAndGet();
+        if (this.waiting.get() > 0) this.signal.release();
+
+        // keep the buffers small if nobody reads the queue
+        if (size >= MERGE_BATCH && this.merging.compareAndSet(false, true)) {
+            try {
+                synchronized (this) {
+                    merge();
+                }
+            } finally {
+                this.merging.set(false);
+            }
+        }
+    }
+
+    /**
+     * move the elements of the insert buffers to the queue; must be called while synchronized
+     */
+    private void merge() {
+        if (this.buffered.get() == 0) return;
+        Element<E> element;
+        for (ConcurrentLinkedQueue<Element<E>> buffer: this.buffers) {
+            while ((element = buffer.poll()) != null) {
+                this.buffered.decrementAndGet();
+                insert(element);
+            }
+        }
+        this.queued = this.queue.size();
+        updateThreshold();
+    }
+
+    private void insert(final Element<E> element) {
         if (this.drained != null && this.drained.contains(element)) {
         	return;
         }
@@ -127,10 +211,12 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
             	this.queue.remove(this.queue.last());
             }
         } else {
-            // just add entry but only release semaphore if entry was not double
-            if (this.queue.add(element)) this.enqueued.release();
+            this.queue.add(element);
         }
-        assert this.queue.size() >= this.enqueued.availablePermits() : "(put) queue.size() = " + this.queue.size() + ", enqueued.availablePermits() = " + this.enqueued.availablePermits();
+    }
+
+    private void updateThreshold() {
+        this.threshold = this.maxsize >= 0 && !this.queue.isEmpty() && this.queue.size() >= this.maxsize ? this.queue.last() : null;
     }
 
     /**
@@ -138,10 +224,10 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return null if no element is on the queue or the head of the queue
      */
     public Element<E> poll() {
-        boolean a = this.enqueued.tryAcquire();
-        if (!a) return null;
+        if (this.queued == 0 && this.buffered.get() == 0) return null;
         synchronized (this) {
-            return takeUnsafe();
+            merge();
+            return this.queue.isEmpty() ? null : takeUnsafe();
         }
     }
 
@@ -153,10 +239,23 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @throws InterruptedException
      */
     public Element<E> poll(long timeout) throws InterruptedException {
-        boolean a = (timeout <= 0) ? this.enqueued.tryAcquire() : this.enqueued.tryAcquire(timeout, TimeUnit.MILLISECONDS);
-        if (!a) return null;
-        synchronized (this) {
-            return takeUnsafe();
+        final long deadline = timeout <= 0 ? 0 : System.currentTimeMillis() + timeout;
+        while (true) {
+            final Element<E> element = poll();
+            if (element != null) return element;
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) return null;
+            this.waiting.incrementAndGet();
+            try {
+                // a put either sees this waiting thread and signals it, or its element is seen here;
+                // the element may also have been merged into the queue by another thread in the meantime
+                if (this.queued == 0 && this.buffered.get() == 0) {
+                    this.signal.tryAcquire(wait, TimeUnit.MILLISECONDS);
+                    this.signal.drainPermits();
+                }
+            } finally {
+                this.waiting.decrementAndGet();
+            }
         }
     }
 
@@ -164,7 +263,8 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
         final Element<E> element = this.queue.pollFirst();
         assert element != null;
         if (this.drained != null && (this.maxsize == -1 || this.drained.size() < this.maxsize)) this.drained.add(element);
-        assert this.queue.size() >= this.enqueued.availablePermits() : "(take) queue.size() = " + this.queue.size() + ", enqueued.availablePermits() = " + this.enqueued.availablePermits();
+        this.queued = this.queue.size();
+        this.threshold = null; // the queue is not full any more
         return element;
     }
     
@@ -173,11 +273,14 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      */
     public synchronized void requeueDrainedElements() {
     	if(this.drained != null) {
+    		merge();
     		final int initialDrainedSize = this.drained.size();
     		for(int step = 0; step < initialDrainedSize; step++) {
     			Element<E> element = this.drained.remove(this.drained.size() - 1);
-    			put(element);
+    			insert(element);
     		}
+    		this.queued = this.queue.size();
+    		updateThreshold();
     	}
     }
     
@@ -204,6 +307,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return null if no element is on the queue or the head of the queue
      */
     public synchronized Element<E> peek() {
+        merge();
         if (this.queue.isEmpty()) return null;
         return this.queue.first();
     }
@@ -213,6 +317,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
      * @return null if no element is on the queue or the tail of the queue
      */
     public synchronized Element<E> getLastInQueue() {
+        merge();
         if (this.queue.isEmpty()) {
         	return null;
         }
@@ -236,6 +341,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
             return this.drained.get(position);
         }
         synchronized (this) {
+            merge();
             if (position >= this.queue.size() + this.drained.size()) return null; // we don't have that element
             Element<E> p;
             int s;
@@ -298,6 +404,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     private synchronized ArrayList<Element<E>> list() {
         if (this.drained == null) return null;
         // shift all elements
+        merge();
         while (!this.queue.isEmpty()) this.poll();
         return this.drained;
     }
@@ -309,6 +416,7 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
     public synchronized Iterator<Element<E>> iterator() {
         if (this.drained == null) return null;
         // shift all elements to the offstack
+        merge();
         while (!this.queue.isEmpty()) this.poll();
         return this.drained.iterator();
     }
@@ -28,11 +28,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -43,23 +45,35 @@ import java.util.logging.Logger;
  * in concurrent environments. This makes logging a main performance issue. 
  * To overcome this problem, this is a add-on to jdk logging to put log entries
  * on a concurrent message queue and log the messages one by one using a
- * separate process
+ * separate process.
+ * The queue is a lock-free ring buffer: a logging thread never waits for a lock or for the
+ * log worker, it only claims a slot with a compare-and-set. The worker drains all queued messages
+ * in one batch and sleeps when the queue is empty. If the ring buffer is full, messages below
+ * WARNING are dropped and counted (the number is logged later), more important messages are
+ * logged synchronously by the calling thread.
+ * The level is checked before a message is queued; messages which are expensive to build should be
+ * given as a Supplier, which is only called if the level is enabled.
  */
 public final class ConcurrentLog {
 
     private final static Logger ConcurrentLogLogger = Logger.getLogger("ConcurrentLog");
-    private final static Message POISON_MESSAGE = new Message();
-    private final static BlockingQueue<Message> logQueue = new ArrayBlockingQueue<Message>(500);
-    private static Worker logRunnerThread = null;
+    private final static Message POISON_MESSAGE = new Message(null, null, null, null);
+    private final static int QUEUE_SIZE = 8192; // must be a power of 2
+    private final static int BATCH_SIZE = 512;
+    private final static RingBuffer logQueue = new RingBuffer(QUEUE_SIZE);
+    private final static AtomicLong dropped = new AtomicLong(0);
+    private final static ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<String, Logger>();
+    private static volatile Worker logRunnerThread = null;
 
     static {
         ensureWorkerIsRunning();
     }
 
-    public static void ensureWorkerIsRunning() {
+    public static synchronized void ensureWorkerIsRunning() {
         if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            logRunnerThread = new Worker();
-            logRunnerThread.start();
+            final Worker worker = new Worker();
+            worker.start();
+            logRunnerThread = worker;
             //ConcurrentLogLogger.log(Level.INFO, "started ConcurrentLog.Worker.");
         }
     }
@@ -67,7 +81,7 @@ public final class ConcurrentLog {
     private final Logger theLogger;
 
     public ConcurrentLog(final String appName) {
-        this.theLogger = Logger.getLogger(appName);
+        this.theLogger = logger(appName);
         //this.theLogger.setLevel(Level.FINEST); // set a default level
     }
 
@@ -79,6 +93,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.SEVERE, message);
     }
 
+    public final void severe(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.SEVERE)) enQueueLog(this.theLogger, Level.SEVERE, message.get(), null);
+    }
+
     public final void severe(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.SEVERE, message, thrown);
@@ -92,6 +110,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.WARNING, message);
     }
 
+    public final void warn(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.WARNING)) enQueueLog(this.theLogger, Level.WARNING, message.get(), null);
+    }
+
     public final void warn(final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.WARNING, thrown.getMessage(), thrown);
@@ -110,6 +132,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.CONFIG, message);
     }
 
+    public final void config(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.CONFIG)) enQueueLog(this.theLogger, Level.CONFIG, message.get(), null);
+    }
+
     public final void config(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.CONFIG, message, thrown);
@@ -123,6 +149,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.INFO, message);
     }
 
+    public final void info(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.INFO)) enQueueLog(this.theLogger, Level.INFO, message.get(), null);
+    }
+
     public final void info(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.INFO, message, thrown);
@@ -136,6 +166,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.FINE, message);
     }
 
+    public final void fine(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.FINE)) enQueueLog(this.theLogger, Level.FINE, message.get(), null);
+    }
+
     public final void fine(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.FINE, message, thrown);
@@ -149,6 +183,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.FINER, message);
     }
 
+    public final void finer(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.FINER)) enQueueLog(this.theLogger, Level.FINER, message.get(), null);
+    }
+
     public final void finer(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.FINER, message, thrown);
@@ -162,6 +200,10 @@ public final class ConcurrentLog {
         enQueueLog(this.theLogger, Level.FINEST, message);
     }
 
+    public final void finest(final Supplier<String> message) {
+        if (this.theLogger.isLoggable(Level.FINEST)) enQueueLog(this.theLogger, Level.FINEST, message.get(), null);
+    }
+
     public final void finest(final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(this.theLogger, Level.FINEST, message, thrown);
@@ -190,6 +232,10 @@ public final class ConcurrentLog {
     public final static void severe(final String appName, final String message) {
         enQueueLog(appName, Level.SEVERE, message);
     }
+    public final static void severe(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.SEVERE)) enQueueLog(logger, Level.SEVERE, message.get(), null);
+    }
     public final static void severe(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.SEVERE, message, thrown);
@@ -198,6 +244,10 @@ public final class ConcurrentLog {
     public final static void warn(final String appName, final String message) {
         enQueueLog(appName, Level.WARNING, message);
     }
+    public final static void warn(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.WARNING)) enQueueLog(logger, Level.WARNING, message.get(), null);
+    }
     public final static void warn(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.WARNING, message, thrown);
@@ -206,6 +256,10 @@ public final class ConcurrentLog {
     public final static void config(final String appName, final String message) {
         enQueueLog(appName, Level.CONFIG, message);
     }
+    public final static void config(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.CONFIG)) enQueueLog(logger, Level.CONFIG, message.get(), null);
+    }
     public final static void config(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.CONFIG, message, thrown);
@@ -214,6 +268,10 @@ public final class ConcurrentLog {
     public final static void info(final String appName, final String message) {
         enQueueLog(appName, Level.INFO, message);
     }
+    public final static void info(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.INFO)) enQueueLog(logger, Level.INFO, message.get(), null);
+    }
     public final static void info(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.INFO, message, thrown);
@@ -222,17 +280,25 @@ public final class ConcurrentLog {
     public final static void fine(final String appName, final String message) {
         enQueueLog(appName, Level.FINE, message);
     }
+    public final static void fine(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.FINE)) enQueueLog(logger, Level.FINE, message.get(), null);
+    }
     public final static void fine(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.FINE, message, thrown);
     }
     public final static boolean isFine(final String appName) {
-        return Logger.getLogger(appName).isLoggable(Level.FINE);
+        return logger(appName).isLoggable(Level.FINE);
     }
 
     public final static void finer(final String appName, final String message) {
         enQueueLog(appName, Level.FINER, message);
     }
+    public final static void finer(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.FINER)) enQueueLog(logger, Level.FINER, message.get(), null);
+    }
     public final static void finer(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.FINER, message, thrown);
@@ -241,136 +307,181 @@ public final class ConcurrentLog {
     public final static void finest(final String appName, final String message) {
         enQueueLog(appName, Level.FINEST, message);
     }
+    public final static void finest(final String appName, final Supplier<String> message) {
+        final Logger logger = logger(appName);
+        if (logger.isLoggable(Level.FINEST)) enQueueLog(logger, Level.FINEST, message.get(), null);
+    }
     public final static void finest(final String appName, final String message, final Throwable thrown) {
         if (thrown == null) return;
         enQueueLog(appName, Level.FINEST, message, thrown);
     }
     public final static boolean isFinest(final String appName) {
-        return Logger.getLogger(appName).isLoggable(Level.FINEST);
+        return logger(appName).isLoggable(Level.FINEST);
     }
 
     // private
+    /**
+     * @return the logger with that name; the loggers are cached, because Logger.getLogger synchronizes on the LogManager
+     */
+    private final static Logger logger(final String loggername) {
+        Logger logger = loggers.get(loggername);
+        if (logger == null) {
+            logger = Logger.getLogger(loggername);
+            final Logger l = loggers.putIfAbsent(loggername, logger);
+            if (l != null) logger = l;
+        }
+        return logger;
+    }
+
     private final static void enQueueLog(final Logger logger, final Level level, final String message, final Throwable thrown) {
         if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
+        final Worker worker = logRunnerThread;
+        if (worker == null || !worker.isAlive()) {
             if (thrown == null) logger.log(level, "* " + message); else logger.log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
+            return;
+        }
+        if (logQueue.offer(new Message(logger, level, message, thrown))) {
+            worker.wakeup();
+        } else if (level.intValue() >= Level.WARNING.intValue()) {
+            // the queue is full; important messages are not lost but logged by this thread
+            if (thrown == null) logger.log(level, message); else logger.log(level, message, thrown);
         } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(logger, level, message)); else logQueue.put(new Message(logger, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) logger.log(level, message); else  logger.log(level, message, thrown);
-            }
+            dropped.incrementAndGet();
         }
     }
 
     private final static void enQueueLog(final Logger logger, final Level level, final String message) {
-        if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            logger.log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(logger, level, message));
-            } catch (final InterruptedException e) {
-                logger.log(level, message);
-            }
-        }
+        enQueueLog(logger, level, message, null);
     }
 
     private final static void enQueueLog(final String loggername, final Level level, final String message, final Throwable thrown) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-        	if (thrown == null) Logger.getLogger(loggername).log(level, "* " + message); else Logger.getLogger(loggername).log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(loggername, level, message)); else logQueue.put(new Message(loggername, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) Logger.getLogger(loggername).log(level, message); else Logger.getLogger(loggername).log(level, message, thrown);
-            }
-        }
+        enQueueLog(logger(loggername), level, message, thrown);
     }
 
     private final static void enQueueLog(final String loggername, final Level level, final String message) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            Logger.getLogger(loggername).log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(loggername, level, message));
-            } catch (final InterruptedException e) {
-                Logger.getLogger(loggername).log(level, message);
-            }
-        }
+        enQueueLog(logger(loggername), level, message, null);
     }
 
     protected final static class Message {
         private final Level level;
         private final String message;
-        private Logger logger;
-        private String loggername;
-        private Throwable thrown;
-        private Message(final Level level, final String message) {
+        private final Logger logger;
+        private final Throwable thrown;
+        protected Message(final Logger logger, final Level level, final String message, final Throwable thrown) {
+            this.logger = logger;
             this.level = level;
             this.message = message == null || message.length() <= 4096 ? message : message.substring(0, 4096);
-        }
-        public Message(final Logger logger, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
-            this.logger = logger;
-            this.loggername = null;
             this.thrown = thrown;
         }
-        public Message(final Logger logger, final Level level, final String message) {
-            this(level, message);
-            this.logger = logger;
-            this.loggername = null;
-            this.thrown = null;
+    }
+
+    /**
+     * A bounded multi-producer queue without locks (the algorithm of Dmitry Vyukov): every slot has a sequence
+     * number which tells whether the slot may be written for a position or read for a position.
+     * Producers claim a position with a compare-and-set; there is only one consumer, the log worker.
+     */
+    protected final static class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<Message> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong(0); // the next position to write
+        private volatile long head = 0; // the next position to read, written only by the consumer
+
+        protected RingBuffer(final int capacity) {
+            assert Integer.bitCount(capacity) == 1 : "capacity must be a power of 2: " + capacity;
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<Message>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) this.sequences.set(i, i);
         }
-        public Message(final String loggername, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
-            this.logger = null;
-            this.loggername = loggername;
-            this.thrown = thrown;
+
+        /**
+         * @return false if the buffer is full
+         */
+        protected boolean offer(final Message m) {
+            long pos = this.tail.get();
+            while (true) {
+                final int index = (int) pos & this.mask;
+                final long dif = this.sequences.get(index) - pos;
+                if (dif == 0) {
+                    if (this.tail.compareAndSet(pos, pos + 1)) {
+                        this.slots.set(index, m);
+                        this.sequences.set(index, pos + 1); // publish the slot to the consumer; a volatile write, which is ordered before the check of the sleeping worker
+                        return true;
+                    }
+                    pos = this.tail.get();
+                } else if (dif < 0) {
+                    return false; // the slot was not yet read by the consumer
+                } else {
+                    pos = this.tail.get(); // another producer was faster
+                }
+            }
         }
-        public Message(final String loggername, final Level level, final String message) {
-            this(level, message);
-            this.logger = null;
-            this.loggername = loggername;
-            this.thrown = null;
+
+        /**
+         * may only be called by the single consumer
+         * @return the next message or null if the buffer is empty
+         */
+        protected Message poll() {
+            final long pos = this.head;
+            final int index = (int) pos & this.mask;
+            if (this.sequences.get(index) != pos + 1) return null;
+            final Message m = this.slots.get(index);
+            this.slots.lazySet(index, null);
+            this.sequences.lazySet(index, pos + this.mask + 1); // the slot may be written again in the next round
+            this.head = pos + 1;
+            return m;
         }
-        public Message() {
-            this.logger = null;
-            this.loggername = null;
-            this.level = null;
-            this.message = null;
-            this.thrown = null;
+
+        protected boolean isEmpty() {
+            return this.sequences.get((int) this.head & this.mask) != this.head + 1;
+        }
+
+        protected int size() {
+            return (int) Math.max(0, this.tail.get() - this.head);
         }
     }
 
     protected final static class Worker extends Thread {
+        private volatile boolean sleeping = false;
+
         public Worker() {
             super("Log Worker");
         }
 
+        /**
+         * wake up the worker if it sleeps; this costs only a volatile read if it is busy
+         */
+        protected void wakeup() {
+            if (this.sleeping) {
+                this.sleeping = false;
+                LockSupport.unpark(this);
+            }
+        }
+
         @Override
         public void run() {
-            Message entry;
-            Map<String, Logger> loggerCache = new HashMap<String, Logger>();
             try {
-                while ((entry = logQueue.take()) != POISON_MESSAGE) {
-                    if (entry.logger == null) {
-                        assert entry.loggername != null;
-                        Logger l = loggerCache.get(entry.loggername);
-                        if (l == null) {l = Logger.getLogger(entry.loggername); loggerCache.put(entry.loggername, l);}
-                        if (entry.thrown == null) {
-                            l.log(entry.level, entry.message);
-                        } else {
-                            l.log(entry.level, entry.message, entry.thrown);
-                        }
-                    } else {
-                        assert entry.loggername == null;
+                loop: while (true) {
+                    // drain the queue in batches
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        final Message entry = logQueue.poll();
+                        if (entry == null) break;
+                        if (entry == POISON_MESSAGE) break loop;
                         if (entry.thrown == null) {
                             entry.logger.log(entry.level, entry.message);
                         } else {
                             entry.logger.log(entry.level, entry.message, entry.thrown);
                         }
                     }
+                    final long d = dropped.getAndSet(0);
+                    if (d > 0) ConcurrentLogLogger.log(Level.WARNING, "the log queue was full, " + d + " messages below WARNING were dropped");
+                    if (logQueue.isEmpty()) {
+                        // announce the sleep before the final check, so that a producer either sees the flag or we see its message
+                        this.sleeping = true;
+                        if (logQueue.isEmpty()) LockSupport.parkNanos(this, 100000000L);
+                        this.sleeping = false;
+                    }
                 }
             } catch (final Throwable e) {
                 ConcurrentLogLogger.log(Level.SEVERE, "ConcurrentLog.Worker has terminated", e);
@@ -455,14 +566,17 @@ public final class ConcurrentLog {
     }
 
     public final static void shutdown() {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
+        final Worker worker = logRunnerThread;
+        if (worker == null || !worker.isAlive()) {
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker void because it was not running.");
             return;
         }
         try {
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: injection of poison message");
-            logQueue.put(POISON_MESSAGE);
-            logRunnerThread.join(2000);
+            final long timeout = System.currentTimeMillis() + 2000;
+            while (!logQueue.offer(POISON_MESSAGE) && System.currentTimeMillis() < timeout) Thread.sleep(1);
+            worker.wakeup();
+            worker.join(2000);
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: terminated");
         } catch (final InterruptedException e) {
         }
@@ -1234,11 +1234,17 @@ public class JSONObject {
         String hhhh;
         int i;
         int len = string.length();
+        int run = 0; // start of the pending run of characters which need no escaping
 
         w.write('"');
         for (i = 0; i < len; i += 1) {
             b = c;
             c = string.charAt(i);
+            if ((c >= ' ' && c < '\u0080' && c != '\\' && c != '"' && c != '/') || (c >= '\u00a0' && (c < '\u2000' || c >= '\u2100'))) {
+                continue; // copied later together with the whole run
+            }
+            if (run < i) w.write(string, run, i - run);
+            run = i + 1;
             switch (c) {
             case '\\':
             case '"':
@@ -1278,6 +1284,7 @@ public class JSONObject {
                 }
             }
         }
+        if (run < len) w.write(string, run, len - run);
         w.write('"');
         return w;
     }
@@ -497,12 +497,12 @@ public final class CrawlStacker implements WorkflowTask<Request>{
 
         // check blacklist
         if (Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, url)) {
-            CrawlStacker.log.fine("URL '" + urlstring + "' is in blacklist.");
+            CrawlStacker.log.fine(() -> "URL '" + urlstring + "' is in blacklist.");
             return "url in blacklist";
         }
 
         // filter with must-match for URLs
-        if ((depth > 0) && !profile.urlMustMatchPattern().matcher(urlstring).matches()) {
+        if ((depth > 0) && !profile.urlMustMatchFilter().matches(urlstring)) {
         	final String patternStr = profile.formattedUrlMustMatchPattern();
             if (CrawlStacker.log.isFine()) {
             	CrawlStacker.log.fine("URL '" + urlstring + "' does not match must-match crawling filter '" + patternStr + "'.");
@@ -511,7 +511,7 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         }
 
         // filter with must-not-match for URLs
-        if ((depth > 0) && profile.urlMustNotMatchPattern().matcher(urlstring).matches()) {
+        if ((depth > 0) && profile.urlMustNotMatchFilter().matches(urlstring)) {
             if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("URL '" + urlstring + "' matches must-not-match crawling filter '" + profile.urlMustNotMatchPattern().toString() + "'.");
             return ERROR_MATCH_WITH_MUST_NOT_MATCH_FILTER + profile.urlMustNotMatchPattern().toString();
         }
@@ -532,13 +532,13 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         // this is expensive and those filters are check at the end of all other tests
 
         // filter with must-match for IPs
-        if ((depth > 0) && profile.ipMustMatchPattern() != CrawlProfile.MATCH_ALL_PATTERN && url.getHost() != null && !profile.ipMustMatchPattern().matcher(url.getInetAddress().getHostAddress()).matches()) {
+        if ((depth > 0) && !profile.ipMustMatchFilter().isMatchAll() && url.getHost() != null && !profile.ipMustMatchFilter().matches(url.getInetAddress().getHostAddress())) {
             if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + url.getInetAddress().getHostAddress() + " of URL '" + urlstring + "' does not match must-match crawling filter '" + profile.ipMustMatchPattern().toString() + "'.");
             return "ip " + url.getInetAddress().getHostAddress() + " of url does not match must-match filter";
         }
 
         // filter with must-not-match for IPs
-        if ((depth > 0) && profile.ipMustNotMatchPattern() != CrawlProfile.MATCH_NEVER_PATTERN && url.getHost() != null && profile.ipMustNotMatchPattern().matcher(url.getInetAddress().getHostAddress()).matches()) {
+        if ((depth > 0) && !profile.ipMustNotMatchFilter().isMatchNever() && url.getHost() != null && profile.ipMustNotMatchFilter().matches(url.getInetAddress().getHostAddress())) {
             if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + url.getInetAddress().getHostAddress() + " of URL '" + urlstring + "' matches must-not-match crawling filter '" + profile.ipMustNotMatchPattern().toString() + "'.");
             return "ip " + url.getInetAddress().getHostAddress() + " of url matches must-not-match filter";
         }
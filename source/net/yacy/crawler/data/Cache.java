@@ -51,9 +51,11 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.Compressor;
+import net.yacy.kelondro.blob.Heap;
 import net.yacy.kelondro.blob.MapHeap;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.util.MemoryBudget;
 
 
 public final class Cache {
@@ -70,12 +72,23 @@ public final class Cache {
 	
     private static final String RESPONSE_HEADER_DB_NAME = "responseHeader.heap";
     private static final String FILE_DB_NAME = "file.array";
+    private static final String DICTIONARY_DB_NAME = "dictionary.heap";
+
+    /** length of the host hash at the end of an url hash, which groups the entries for the compression dictionaries */
+    private static final int DICTIONARY_KEY_LENGTH = 6;
+
+    /** the compression dictionaries may use this fraction (1 / DICTIONARY_SHARE) of the maximum cache size */
+    private static final int DICTIONARY_SHARE = 20;
+
+    /** minimum time (in milliseconds) between two cleanups of the compression dictionaries */
+    private static final long DICTIONARY_CLEANUP_CYCLE = 60L * 60L * 1000L;
 
     private static MapHeap responseHeaderDB = null;
     private static Compressor fileDB = null;
     private static ArrayStack fileDBunbuffered = null;
 
     private static volatile long maxCacheSize = Long.MAX_VALUE;
+    private static long lastDictionaryCleanup = 0;
     
     /** Total number of requests for cached response since last start/initialization or cache clear */
     private static AtomicLong totalRequests = new AtomicLong(0);
@@ -95,6 +108,18 @@ public final class Cache {
      * @param compressionLevel the compression level : supported values ranging from 0 - no compression, to 9 - best compression
      */
     public static void init(final File htCachePath, final String peerSalt, final long cacheSizeMax, final long lockTimeout, final int compressionLevel) {
+        init(htCachePath, peerSalt, cacheSizeMax, lockTimeout, compressionLevel, false);
+    }
+
+    /**
+     * @param htCachePath folder path for the cache
+     * @param peerSalt peer identifier
+     * @param cacheSizeMax maximum cache size in bytes
+     * @param lockTimeout maximum time (in milliseconds) to acquire a synchronization lock on store() and getContent()
+     * @param compressionLevel the compression level : supported values ranging from 0 - no compression, to 9 - best compression
+     * @param compressionDictionaries true to compress the content with dictionaries trained for each host
+     */
+    public static void init(final File htCachePath, final String peerSalt, final long cacheSizeMax, final long lockTimeout, final int compressionLevel, final boolean compressionDictionaries) {
 
         cachePath = htCachePath;
         maxCacheSize = cacheSizeMax;
@@ -123,11 +148,19 @@ public final class Cache {
                 }
             }
         }
+        // open the compression dictionaries; they are needed to read the content as long as it exists, even if no new dictionaries shall be used
+        Heap dictionaryDB = null;
+        try {
+            dictionaryDB = new Heap(new File(cachePath, DICTIONARY_DB_NAME), DICTIONARY_KEY_LENGTH, Base64Order.enhancedCoder, DEFAULT_RESPONSE_HEADER_BUFFER_SIZE);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
         // open the cache file
         try {
             fileDBunbuffered = new ArrayStack(new File(cachePath, FILE_DB_NAME), prefix, Base64Order.enhancedCoder, 12, DEFAULT_BACKEND_BUFFER_SIZE, false, true);
-            fileDBunbuffered.setMaxSize(maxCacheSize);
-            fileDB = new Compressor(fileDBunbuffered, DEFAULT_COMPRESSOR_BUFFER_SIZE, lockTimeout, compressionLevel);
+            fileDBunbuffered.setMaxSize(maxContentSize(maxCacheSize));
+            fileDB = new Compressor(fileDBunbuffered, DEFAULT_COMPRESSOR_BUFFER_SIZE, lockTimeout, compressionLevel, dictionaryDB);
+            fileDB.setDictionaryCompression(compressionDictionaries);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             // try a healing
@@ -135,13 +168,26 @@ public final class Cache {
                 cachePath.delete();
                 try {
                     fileDBunbuffered = new ArrayStack(new File(cachePath, FILE_DB_NAME), prefix, Base64Order.enhancedCoder, 12, DEFAULT_BACKEND_BUFFER_SIZE, false, true);
-                    fileDBunbuffered.setMaxSize(maxCacheSize);
-                    fileDB = new Compressor(fileDBunbuffered, DEFAULT_COMPRESSOR_BUFFER_SIZE, lockTimeout, compressionLevel);
+                    fileDBunbuffered.setMaxSize(maxContentSize(maxCacheSize));
+                    fileDB = new Compressor(fileDBunbuffered, DEFAULT_COMPRESSOR_BUFFER_SIZE, lockTimeout, compressionLevel, dictionaryDB);
+                    fileDB.setDictionaryCompression(compressionDictionaries);
                 } catch (final IOException ee) {
                     ConcurrentLog.logException(e);
                 }
             }
         }
+        // under memory pressure the uncompressed buffer is written to the backend by the compression threads
+        MemoryBudget.register("HTCACHE buffer", MemoryBudget.PRIORITY_HTCACHE, new MemoryBudget.Consumer() {
+            @Override
+            public long memoryUsed() {
+                return fileDB == null ? 0 : fileDB.bufferLength();
+            }
+
+            @Override
+            public long shrink(final long bytes) {
+                return fileDB == null ? 0 : fileDB.flushInBackground(); // flushAll() may wait for the background compression
+            }
+        });
         ConcurrentLog.info("Cache", "initialized cache database responseHeaderDB.size() = " + (responseHeaderDB == null ? "NULL" : responseHeaderDB.size()) + ", fileDB.size() = " + (fileDB == null ? "NULL" : fileDB.size()));
 
         // clean up the responseHeaderDB which cannot be cleaned the same way as the cache files.
@@ -195,6 +241,29 @@ public final class Cache {
     	fileDB.flushAll();
     }
 
+    /**
+     * @param cacheSize the maximum cache size in bytes
+     * @return the maximum size in bytes of the cached content, without the part reserved for the compression dictionaries
+     */
+    private static long maxContentSize(final long cacheSize) {
+        return cacheSize - cacheSize / DICTIONARY_SHARE;
+    }
+
+    /**
+     * Delete the compression dictionaries of hosts which are not in the cache any more, and shrink the
+     * dictionaries to their part of the maximum cache size. This is done at most once per hour.
+     */
+    public static void cleanup() {
+        if (fileDB == null || System.currentTimeMillis() - lastDictionaryCleanup < DICTIONARY_CLEANUP_CYCLE) return;
+        lastDictionaryCleanup = System.currentTimeMillis();
+        try {
+            final int deleted = fileDB.cleanupDictionaries(maxCacheSize / DICTIONARY_SHARE);
+            if (deleted > 0) log.info("deleted " + deleted + " compression dictionaries, " + fileDB.dictionaryLength() + " bytes remaining");
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
     /**
      * clear the cache
      */
@@ -221,16 +290,16 @@ public final class Cache {
      */
     public static void setMaxCacheSize(final long newCacheSize) {
         maxCacheSize = newCacheSize;
-        fileDBunbuffered.setMaxSize(maxCacheSize);
+        fileDBunbuffered.setMaxSize(maxContentSize(maxCacheSize));
     }
 
     /**
      * Warning : even when the cache is empty, 
      * the actual cache size may not be zero because heap files still containing zeros after deletions
-     * @return the current actual cache size stored on disk
+     * @return the current actual cache size stored on disk, including the compression dictionaries
      */
     public static long getActualCacheSize() {
-        return fileDBunbuffered.length();
+        return fileDBunbuffered.length() + fileDB.dictionaryLength();
     }
     
     /**
@@ -248,6 +317,14 @@ public final class Cache {
     	fileDB.setCompressionLevel(newCompressionLevel);
     }
     
+    /**
+     * Enable or disable the compression of new content with dictionaries trained for each host
+     * @param compressionDictionaries true to use the dictionaries
+     */
+    public static void setDictionaryCompression(final boolean compressionDictionaries) {
+    	fileDB.setDictionaryCompression(compressionDictionaries);
+    }
+
     /**
      * Set the new synchronization lock timeout.
      * @param lockTimeout the new synchronization lock timeout (in milliseconds).
@@ -260,6 +337,7 @@ public final class Cache {
      * close the databases
      */
     public static void close() {
+        MemoryBudget.deregister("HTCACHE buffer");
         responseHeaderDB.close();
         fileDB.close(true);
     }
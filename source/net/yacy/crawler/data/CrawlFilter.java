@@ -0,0 +1,352 @@
+/**
+ *  CrawlFilter
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.yacy.cora.storage.ConcurrentARC;
+
+/**
+ * A compiled url filter of a crawl profile: a case-insensitive regular expression together with a literal prefilter.
+ * <p>
+ * The prefilter holds the literal prefixes which any matching string must start with, either at the beginning
+ * or after the protocol and an optional 'www.' (like in the filters created by {@link CrawlProfile#siteFilter(java.util.Collection)},
+ * {@link CrawlProfile#mustMatchFilterFullDomain(net.yacy.cora.document.id.MultiProtocolURL)} and
+ * {@link CrawlProfile#subpathFilter(java.util.Collection)}). The prefixes are stored in a character trie,
+ * so most urls of other hosts are rejected with one walk through the trie and without running the regular expression.
+ * </p><p>
+ * Filters are shared by all crawl profiles with the same expression.
+ * </p>
+ */
+public final class CrawlFilter {
+
+    /** the filter matching everything */
+    public static final CrawlFilter MATCH_ALL = new CrawlFilter(CrawlProfile.MATCH_ALL_PATTERN, null, null);
+
+    /** the filter matching only the empty string */
+    public static final CrawlFilter MATCH_NEVER = new CrawlFilter(CrawlProfile.MATCH_NEVER_PATTERN, null, null);
+
+    private static final ConcurrentARC<String, CrawlFilter> cache = new ConcurrentARC<String, CrawlFilter>(1000, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private final Pattern pattern;
+    private final Node fromStart;   // literal prefixes at the beginning, or null
+    private final Node afterScheme; // literal prefixes after 'protocol://' and an optional 'www.', or null
+
+    private CrawlFilter(final Pattern pattern, final Node fromStart, final Node afterScheme) {
+        this.pattern = pattern;
+        this.fromStart = fromStart;
+        this.afterScheme = afterScheme;
+    }
+
+    /**
+     * get the compiled filter for a regular expression, which is matched case-insensitive
+     * @param regex the regular expression
+     * @return a filter, possibly shared with other crawl profiles
+     * @throws PatternSyntaxException if the expression is not valid
+     */
+    public static CrawlFilter compile(final String regex) throws PatternSyntaxException {
+        if (CrawlProfile.MATCH_ALL_STRING.equals(regex)) return MATCH_ALL;
+        if (CrawlProfile.MATCH_NEVER_STRING.equals(regex)) return MATCH_NEVER;
+        CrawlFilter filter = cache.get(regex);
+        if (filter != null) return filter;
+        final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        Node fromStart = null, afterScheme = null;
+        final List<String> alternatives = alternatives(regex, 0, regex.length());
+        final List<String> prefixes = new ArrayList<String>();
+        final List<Boolean> schemes = new ArrayList<Boolean>();
+        boolean prefilter = alternatives != null;
+        if (prefilter) for (final String a: alternatives) {
+            int pos = a.startsWith("^") ? 1 : 0;
+            final int s = schemeEnd(a, pos);
+            final boolean scheme = s > 0;
+            if (scheme) {
+                pos = s;
+                if (a.startsWith("(www.)?", pos)) pos += 7;
+                else if (a.startsWith("(www\\.)?", pos)) pos += 8;
+            }
+            final List<String> p = new ArrayList<String>();
+            literals(a, pos, new StringBuilder(), p);
+            for (final String l: p) {
+                if (l.isEmpty()) prefilter = false;
+                prefixes.add(l);
+                schemes.add(Boolean.valueOf(scheme));
+            }
+            if (!prefilter) break;
+        }
+        if (prefilter) {
+            for (int i = 0; i < prefixes.size(); i++) {
+                if (schemes.get(i).booleanValue()) {
+                    if (afterScheme == null) afterScheme = new Node();
+                    afterScheme.add(prefixes.get(i));
+                } else {
+                    if (fromStart == null) fromStart = new Node();
+                    fromStart.add(prefixes.get(i));
+                }
+            }
+        }
+        filter = new CrawlFilter(pattern, fromStart, afterScheme);
+        cache.insertIfAbsent(regex, filter);
+        return filter;
+    }
+
+    /**
+     * get the compiled filter for an expression stored in a crawl profile
+     * @param regex the regular expression or null
+     * @param ifNull the filter used if the regular expression is null
+     * @param ifError the filter used if the regular expression is not valid
+     */
+    public static CrawlFilter compile(final String regex, final CrawlFilter ifNull, final CrawlFilter ifError) {
+        if (regex == null) return ifNull;
+        try {
+            return compile(regex);
+        } catch (final PatternSyntaxException e) {
+            return ifError;
+        }
+    }
+
+    /**
+     * @param s a string, usually a normalized url
+     * @return true if the regular expression matches the whole string
+     */
+    public boolean matches(final String s) {
+        if (this == MATCH_ALL) return true;
+        if (this == MATCH_NEVER) return s.isEmpty();
+        if (this.fromStart != null || this.afterScheme != null) {
+            boolean candidate = this.fromStart != null && this.fromStart.prefixOf(s, 0);
+            if (!candidate && this.afterScheme != null) {
+                final int p = s.indexOf("://");
+                if (p >= 0) {
+                    final int start = p + 3;
+                    candidate = this.afterScheme.prefixOf(s, start) ||
+                            (s.regionMatches(true, start, "www", 0, 3) && this.afterScheme.prefixOf(s, start + 4));
+                }
+            }
+            if (!candidate) return false;
+        }
+        return this.pattern.matcher(s).matches();
+    }
+
+    public boolean isMatchAll() {
+        return this == MATCH_ALL;
+    }
+
+    public boolean isMatchNever() {
+        return this == MATCH_NEVER;
+    }
+
+    /**
+     * @return true if the filter has a literal prefilter
+     */
+    boolean hasPrefilter() {
+        return this.fromStart != null || this.afterScheme != null;
+    }
+
+    public Pattern pattern() {
+        return this.pattern;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern.toString();
+    }
+
+    /**
+     * a character trie of lower case literal prefixes
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+        private boolean terminal = false;
+
+        private void add(final String literal) {
+            Node n = this;
+            for (int i = 0; i < literal.length(); i++) {
+                final Character c = Character.valueOf(Character.toLowerCase(literal.charAt(i)));
+                Node child = n.children.get(c);
+                if (child == null) n.children.put(c, child = new Node());
+                n = child;
+            }
+            n.terminal = true;
+        }
+
+        private boolean prefixOf(final String s, final int start) {
+            Node n = this;
+            for (int i = start; i < s.length(); i++) {
+                n = n.children.get(Character.valueOf(Character.toLowerCase(s.charAt(i))));
+                if (n == null) return false;
+                if (n.terminal) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * split the expression at the '|' which are not contained in a group, a character class or a quotation
+     * @return the alternatives or null if the expression could not be parsed
+     */
+    private static List<String> alternatives(final String r, final int from, final int to) {
+        final List<String> alternatives = new ArrayList<String>();
+        int depth = 0, start = from;
+        for (int i = from; i < to; i++) {
+            final char c = r.charAt(i);
+            if (c == '\\') {
+                i = skipEscape(r, i, to) - 1;
+                if (i < 0) return null;
+            } else if (c == '[') {
+                i = skipClass(r, i, to) - 1;
+                if (i < 0) return null;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth < 0) return null;
+            } else if (c == '|' && depth == 0) {
+                alternatives.add(r.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (depth != 0) return null;
+        alternatives.add(r.substring(start, to));
+        return alternatives;
+    }
+
+    /**
+     * @return the position after the escape sequence at position i or -1 if it is incomplete
+     */
+    private static int skipEscape(final String r, final int i, final int to) {
+        if (i + 1 >= to) return -1;
+        if (r.charAt(i + 1) == 'Q') {
+            final int e = r.indexOf("\\E", i + 2);
+            return e < 0 || e + 2 > to ? to : e + 2;
+        }
+        return i + 2;
+    }
+
+    /**
+     * @return the position after the character class starting at position i or -1 if it is not closed
+     */
+    private static int skipClass(final String r, final int i, final int to) {
+        int j = i + 1;
+        if (j < to && r.charAt(j) == '^') j++;
+        if (j < to && r.charAt(j) == ']') j++;
+        int depth = 1;
+        while (j < to) {
+            final char c = r.charAt(j);
+            if (c == '\\') {
+                j += 2;
+                continue;
+            }
+            if (c == '[') depth++;
+            if (c == ']' && --depth == 0) return j + 1;
+            j++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position after a protocol part like 'https?://' or '(smb|ftp|https?)://' at position pos, or -1
+     */
+    private static int schemeEnd(final String a, final int pos) {
+        final int e = a.indexOf("://", pos);
+        if (e <= pos) return -1;
+        int depth = 0;
+        for (int i = pos; i < e; i++) {
+            final char c = a.charAt(i);
+            if (c >= 'a' && c <= 'z') continue;
+            if (c == '?' || c == '+' || c == '|') continue;
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else return -1;
+            if (depth < 0) return -1;
+        }
+        return depth == 0 ? e + 3 : -1;
+    }
+
+    /**
+     * collect the literal prefixes of the expression starting at position pos
+     * @param a an expression without top-level alternatives
+     * @param pos the start position
+     * @param prefix the literal found before pos
+     * @param result the literals; an empty literal means that there is no literal prefix
+     */
+    private static void literals(final String a, int pos, final StringBuilder prefix, final List<String> result) {
+        final int len = a.length();
+        while (pos < len) {
+            final char c = a.charAt(pos);
+            String atom;
+            if (c == '\\') {
+                if (pos + 1 >= len) break;
+                final char n = a.charAt(pos + 1);
+                if (n == 'Q') {
+                    final int e = a.indexOf("\\E", pos + 2);
+                    atom = a.substring(pos + 2, e < 0 ? len : e);
+                    pos = e < 0 ? len : e + 2;
+                } else if (!Character.isLetterOrDigit(n)) {
+                    atom = String.valueOf(n);
+                    pos += 2;
+                } else {
+                    break;
+                }
+            } else if (c == '(') {
+                // a group of alternatives: each alternative continues the prefix
+                final int inner = a.startsWith("(?:", pos) ? pos + 3 : a.startsWith("(?", pos) ? -1 : pos + 1;
+                if (inner < 0) break;
+                int depth = 0, end = -1;
+                for (int i = pos; i < len && end < 0; i++) {
+                    final char d = a.charAt(i);
+                    if (d == '\\') {
+                        i = skipEscape(a, i, len) - 1;
+                        if (i < 0) break;
+                    } else if (d == '[') {
+                        i = skipClass(a, i, len) - 1;
+                        if (i < 0) break;
+                    } else if (d == '(') {
+                        depth++;
+                    } else if (d == ')' && --depth == 0) {
+                        end = i;
+                    }
+                }
+                if (end < 0 || (end + 1 < len && "?*{".indexOf(a.charAt(end + 1)) >= 0)) break;
+                final List<String> groupAlternatives = alternatives(a, inner, end);
+                if (groupAlternatives == null) break;
+                for (final String g: groupAlternatives) literals(g, 0, new StringBuilder(prefix), result);
+                return;
+            } else if (".[)^$|*+?{".indexOf(c) >= 0) {
+                break;
+            } else {
+                atom = String.valueOf(c);
+                pos++;
+            }
+            if (atom.isEmpty()) continue;
+            if (pos < len && "?*{".indexOf(a.charAt(pos)) >= 0) {
+                // the last character is optional
+                prefix.append(atom, 0, atom.length() - 1);
+                break;
+            }
+            prefix.append(atom);
+            if (pos < len && a.charAt(pos) == '+') break;
+        }
+        result.add(prefix.toString());
+    }
+}
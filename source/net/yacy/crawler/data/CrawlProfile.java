@@ -149,17 +149,17 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
   }
     
     
-    private Pattern crawlerurlmustmatch = null, crawlerurlmustnotmatch = null;
+    private CrawlFilter crawlerurlmustmatch = null, crawlerurlmustnotmatch = null;
     
-    /** Pattern on the URL a document must match to allow adding its embedded links to the crawl stack */
-    private Pattern crawlerOriginUrlMustMatch = null;
+    /** Filter on the URL a document must match to allow adding its embedded links to the crawl stack */
+    private CrawlFilter crawlerOriginUrlMustMatch = null;
     
-    /** Pattern on the URL a document must not match to allow adding its embedded links to the crawl stack */
-    private Pattern crawlerOriginUrlMustNotMatch = null;
+    /** Filter on the URL a document must not match to allow adding its embedded links to the crawl stack */
+    private CrawlFilter crawlerOriginUrlMustNotMatch = null;
     
-    private Pattern crawleripmustmatch = null, crawleripmustnotmatch = null;
-    private Pattern crawlernodepthlimitmatch = null;
-    private Pattern indexurlmustmatch = null, indexurlmustnotmatch = null;
+    private CrawlFilter crawleripmustmatch = null, crawleripmustnotmatch = null;
+    private CrawlFilter crawlernodepthlimitmatch = null;
+    private CrawlFilter indexurlmustmatch = null, indexurlmustnotmatch = null;
     private Pattern indexcontentmustmatch = null, indexcontentmustnotmatch = null;
     
     /** Pattern on the media type documents must match before being indexed 
@@ -472,11 +472,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must be matched
      */
     public Pattern urlMustMatchPattern() {
+        return urlMustMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must be matched by URLs in order to be crawled.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter urlMustMatchFilter() {
         if (this.crawlerurlmustmatch == null) {
-            final String r = get(CrawlAttribute.CRAWLER_URL_MUSTMATCH.key);
-            try {
-                this.crawlerurlmustmatch = (r == null || r.equals(CrawlProfile.MATCH_ALL_STRING)) ? CrawlProfile.MATCH_ALL_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.crawlerurlmustmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.crawlerurlmustmatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_URL_MUSTMATCH.key), CrawlFilter.MATCH_ALL, CrawlFilter.MATCH_NEVER);
         }
         return this.crawlerurlmustmatch;
     }
@@ -504,11 +509,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must not be matched
      */
     public Pattern urlMustNotMatchPattern() {
+        return urlMustNotMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must not be matched by URLs in order to be crawled.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter urlMustNotMatchFilter() {
         if (this.crawlerurlmustnotmatch == null) {
-            final String r = get(CrawlAttribute.CRAWLER_URL_MUSTNOTMATCH.key);
-            try {
-                this.crawlerurlmustnotmatch = (r == null || r.equals(CrawlProfile.MATCH_NEVER_STRING)) ? CrawlProfile.MATCH_NEVER_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.crawlerurlmustnotmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.crawlerurlmustnotmatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_URL_MUSTNOTMATCH.key), CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_NEVER);
         }
         return this.crawlerurlmustnotmatch;
     }
@@ -521,16 +531,20 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
 	 *         string is not set or its syntax is incorrect
 	 */
     public Pattern getCrawlerOriginUrlMustMatchPattern() {
+        return getCrawlerOriginUrlMustMatchFilter().pattern();
+    }
+
+	/**
+	 * Get the compiled filter on the URL a document must match to allow adding its embedded links to the crawl stack
+	 * 
+	 * @return a {@link CrawlFilter} instance, defaulting to
+	 *         {@link CrawlFilter#MATCH_ALL} when the regular expression
+	 *         string is not set or its syntax is incorrect
+	 */
+    public CrawlFilter getCrawlerOriginUrlMustMatchFilter() {
 		if (this.crawlerOriginUrlMustMatch == null) {
-			/* Cache the compiled pattern for faster next calls */
-			final String patternStr = get(CrawlAttribute.CRAWLER_ORIGIN_URL_MUSTMATCH.key);
-			try {
-				this.crawlerOriginUrlMustMatch = (patternStr == null
-						|| patternStr.equals(CrawlProfile.MATCH_ALL_STRING)) ? CrawlProfile.MATCH_ALL_PATTERN
-								: Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE);
-			} catch (final PatternSyntaxException e) {
-				this.crawlerOriginUrlMustMatch = CrawlProfile.MATCH_ALL_PATTERN;
-			}
+			/* Cache the compiled filter for faster next calls */
+			this.crawlerOriginUrlMustMatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_ORIGIN_URL_MUSTMATCH.key), CrawlFilter.MATCH_ALL, CrawlFilter.MATCH_ALL);
 		}
         return this.crawlerOriginUrlMustMatch;
     }
@@ -543,16 +557,20 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
 	 *         string is not set or its syntax is incorrect
 	 */
     public Pattern getCrawlerOriginUrlMustNotMatchPattern() {
+        return getCrawlerOriginUrlMustNotMatchFilter().pattern();
+    }
+
+	/**
+	 * Get the compiled filter on the URL a document must not match to allow adding its embedded links to the crawl stack
+	 * 
+	 * @return a {@link CrawlFilter} instance, defaulting to
+	 *         {@link CrawlFilter#MATCH_NEVER} when the regular expression
+	 *         string is not set or its syntax is incorrect
+	 */
+    public CrawlFilter getCrawlerOriginUrlMustNotMatchFilter() {
 		if (this.crawlerOriginUrlMustNotMatch == null) {
-			/* Cache the compiled pattern for faster next calls */
-			final String patternStr = get(CrawlAttribute.CRAWLER_ORIGIN_URL_MUSTNOTMATCH.key);
-			try {
-				this.crawlerOriginUrlMustNotMatch = (patternStr == null
-						|| patternStr.equals(CrawlProfile.MATCH_NEVER_STRING)) ? CrawlProfile.MATCH_NEVER_PATTERN
-								: Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE);
-			} catch (final PatternSyntaxException e) {
-				this.crawlerOriginUrlMustNotMatch = CrawlProfile.MATCH_NEVER_PATTERN;
-			}
+			/* Cache the compiled filter for faster next calls */
+			this.crawlerOriginUrlMustNotMatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_ORIGIN_URL_MUSTNOTMATCH.key), CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_NEVER);
 		}
         return this.crawlerOriginUrlMustNotMatch;
     }
@@ -562,11 +580,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must be matched
      */
     public Pattern ipMustMatchPattern() {
+        return ipMustMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must be matched by IPs in order to be crawled.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter ipMustMatchFilter() {
         if (this.crawleripmustmatch == null) {
-            final String r = get(CrawlAttribute.CRAWLER_IP_MUSTMATCH.key);
-            try {
-                this.crawleripmustmatch = (r == null || r.equals(CrawlProfile.MATCH_ALL_STRING)) ? CrawlProfile.MATCH_ALL_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.crawleripmustmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.crawleripmustmatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_IP_MUSTMATCH.key), CrawlFilter.MATCH_ALL, CrawlFilter.MATCH_NEVER);
         }
         return this.crawleripmustmatch;
     }
@@ -576,11 +599,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must not be matched
      */
     public Pattern ipMustNotMatchPattern() {
+        return ipMustNotMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must not be matched by IPs in order to be crawled.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter ipMustNotMatchFilter() {
         if (this.crawleripmustnotmatch == null) {
-            final String r = get(CrawlAttribute.CRAWLER_IP_MUSTNOTMATCH.key);
-            try {
-                this.crawleripmustnotmatch = (r == null || r.equals(CrawlProfile.MATCH_NEVER_STRING)) ? CrawlProfile.MATCH_NEVER_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.crawleripmustnotmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.crawleripmustnotmatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_IP_MUSTNOTMATCH.key), CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_NEVER);
         }
         return this.crawleripmustnotmatch;
     }
@@ -603,11 +631,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must be matched
      */
     public Pattern crawlerNoDepthLimitMatchPattern() {
+        return crawlerNoDepthLimitMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which overrides the depth limit.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter crawlerNoDepthLimitMatchFilter() {
         if (this.crawlernodepthlimitmatch == null) {
-            final String r = get(CrawlAttribute.CRAWLER_URL_NODEPTHLIMITMATCH.key);
-            try {
-                this.crawlernodepthlimitmatch = (r == null || r.equals(CrawlProfile.MATCH_NEVER_STRING)) ? CrawlProfile.MATCH_NEVER_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.crawlernodepthlimitmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.crawlernodepthlimitmatch = CrawlFilter.compile(get(CrawlAttribute.CRAWLER_URL_NODEPTHLIMITMATCH.key), CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_NEVER);
         }
         return this.crawlernodepthlimitmatch;
     }
@@ -617,11 +650,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must be matched
      */
     public Pattern indexUrlMustMatchPattern() {
+        return indexUrlMustMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must be matched by URLs in order to be indexed.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter indexUrlMustMatchFilter() {
         if (this.indexurlmustmatch == null) {
-            final String r = get(CrawlAttribute.INDEXING_URL_MUSTMATCH.key);
-            try {
-                this.indexurlmustmatch = (r == null || r.equals(CrawlProfile.MATCH_ALL_STRING)) ? CrawlProfile.MATCH_ALL_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.indexurlmustmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.indexurlmustmatch = CrawlFilter.compile(get(CrawlAttribute.INDEXING_URL_MUSTMATCH.key), CrawlFilter.MATCH_ALL, CrawlFilter.MATCH_NEVER);
         }
         return this.indexurlmustmatch;
     }
@@ -631,11 +669,16 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
      * @return regex which must not be matched
      */
     public Pattern indexUrlMustNotMatchPattern() {
+        return indexUrlMustNotMatchFilter().pattern();
+    }
+
+    /**
+     * Gets the compiled filter of the regex which must not be matched by URLs in order to be indexed.
+     * @return the filter, shared with other profiles using the same regex
+     */
+    public CrawlFilter indexUrlMustNotMatchFilter() {
         if (this.indexurlmustnotmatch == null) {
-            final String r = get(CrawlAttribute.INDEXING_URL_MUSTNOTMATCH.key);
-            try {
-                this.indexurlmustnotmatch = (r == null || r.equals(CrawlProfile.MATCH_NEVER_STRING)) ? CrawlProfile.MATCH_NEVER_PATTERN : Pattern.compile(r, Pattern.CASE_INSENSITIVE);
-            } catch (final PatternSyntaxException e) { this.indexurlmustnotmatch = CrawlProfile.MATCH_NEVER_PATTERN; }
+            this.indexurlmustnotmatch = CrawlFilter.compile(get(CrawlAttribute.INDEXING_URL_MUSTNOTMATCH.key), CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_NEVER);
         }
         return this.indexurlmustnotmatch;
     }
@@ -21,13 +21,19 @@
 package net.yacy.crawler.data;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -65,84 +71,271 @@ import net.yacy.search.schema.CollectionSchema;
  * The construction of the file name with the date allows to make several copies of the same document
  * for different snapshot-times. The usage of the crawl depth makes it easier to extract a specific part
  * of the domain.
+ * 
+ * The snapshots are listed in a catalog file in the root path, an append-only log of the announced
+ * storages and deletions. The catalog is read at start-up instead of scanning the storage hierarchy,
+ * and the snapshots are looked up in memory by url hash, by host and by date.
+ * The storage hierarchy is scanned only if there is no catalog; to rebuild the catalog, delete it.
  */
 public class Snapshots {
 
+    /** the name of the catalog file in the storage location */
+    public static final String CATALOG_NAME = "snapshots.catalog";
+
+    /** the catalog is compacted at start-up when it has more than this number of lines per snapshot */
+    private static final int CATALOG_COMPACTION_FACTOR = 2;
+
+    /** the place of a snapshot in the storage hierarchy */
+    private static final class Location {
+        private final String hostport;
+        private final int depth;
+
+        private Location(final String hostport, final int depth) {
+            this.hostport = hostport;
+            this.depth = depth;
+        }
+    }
+
     private File storageLocation;
+    private final File catalog;
     
     private Map<String, TreeMap<Integer, TreeSet<String>>> directory; // a TreeMap for each domain (host.port) where the key is the depth and the value is a Set containing a key/urlhash id to get all files into a specific order to provide a recent view on the documents
+    private final TreeMap<String, Location> dates;      // the <date>.<urlhash> ids of all snapshots in the order of the date
+    private final Map<String, TreeSet<String>> hashes;  // the <date>.<urlhash> ids of the snapshots of each url hash
+    private final Map<String, Location> locations;      // shared location objects by <host>.<port>/<depth>
+    private int size;
     
     public Snapshots(final File location) {
         this.storageLocation = location;
         this.storageLocation.mkdirs();
-        // scan the location to fill the directory
+        this.catalog = new File(location, CATALOG_NAME);
         this.directory = new HashMap<>();
-        for (String hostport: location.list()) {
-            TreeMap<Integer, TreeSet<String>> domaindepth = new TreeMap<>();
-            this.directory.put(hostport, domaindepth);
-            File domaindir = new File(location, hostport);
+        this.dates = new TreeMap<>();
+        this.hashes = new HashMap<>();
+        this.locations = new HashMap<>();
+        this.size = 0;
+        int lines = -1;
+        if (this.catalog.exists()) {
+            try {
+                lines = loadCatalog();
+            } catch (final IOException e) {
+                ConcurrentLog.warn("SNAPSHOTS", "cannot read the snapshot catalog " + this.catalog + ", scanning the storage: " + e.getMessage());
+                this.directory.clear();
+                this.dates.clear();
+                this.hashes.clear();
+                this.size = 0;
+                lines = -1;
+            }
+        }
+        if (lines < 0) scan(); // no catalog
+        else if (lines <= CATALOG_COMPACTION_FACTOR * this.size + 1000) return;
+        try {
+            writeCatalog();
+        } catch (final IOException e) {
+            ConcurrentLog.warn("SNAPSHOTS", "cannot write the snapshot catalog " + this.catalog + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * scan the location to fill the directory
+     */
+    private void scan() {
+        for (String hostport: this.storageLocation.list()) {
+            File domaindir = new File(this.storageLocation, hostport);
             if (domaindir.isDirectory()) domainscan: for (String depth: domaindir.list()) {
-                TreeSet<String> dateid = new TreeSet<>();
                 Integer depthi = -1;
                 try {
                     depthi = Integer.parseInt(depth);
                 } catch (NumberFormatException e) {
                     continue domainscan;
                 }
-                domaindepth.put(depthi, dateid);
                 File sharddir = new File(domaindir, depth);
                 if (sharddir.isDirectory()) for (String shard: sharddir.list()) {
                     File snapshotdir = new File(sharddir, shard);
                     if (snapshotdir.isDirectory()) {
                         for (String snapshotfile: snapshotdir.list()) {
-                            if (snapshotfile.endsWith(".xml")) {
-                                String s = snapshotfile.substring(0, snapshotfile.length() - 4);
-                                int p = s.indexOf('.');
-                                assert p == 12;
-                                if (p > 0) {
-                                    String key = s.substring(p + 1) + '.' + s.substring(0, p);
-                                    dateid.add(key);
-                                }
-                            }
+                            // all snapshot files are listed, also a pdf without metadata: <urlhash>.<date>.<ext>
+                            int e = snapshotfile.lastIndexOf('.');
+                            if (e <= 13 || snapshotfile.indexOf('.') != 12) continue;
+                            String key = snapshotfile.substring(13, e) + '.' + snapshotfile.substring(0, 12);
+                            add(hostport, depthi, key);
                         }
                     }
                 }
-                if (dateid.size() == 0) domaindepth.remove(depthi);
             }
-            if (domaindepth.size() == 0) this.directory.remove(hostport);
         }
     }
 
     /**
-     * get the number of entries in the snapshot directory
-     * @return the total number of different documents
+     * replay the catalog; each line is either
+     * '+' <tab> <date>.<urlhash> <tab> <host>.<port> <tab> <depth> for a stored snapshot or
+     * '-' <tab> <urlhash> <tab> <host>.<port> <tab> <depth> for the deletion of all snapshots of the url at that place or
+     * '-' <tab> <date>.<urlhash> <tab> <host>.<port> <tab> <depth> for the deletion of a single snapshot
+     * @return the number of lines in the catalog
+     */
+    private int loadCatalog() throws IOException {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.catalog), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                final String[] a = line.split("\t");
+                if (a.length != 4) continue; // i.e. a line which was not completely written
+                final int depth;
+                try {
+                    depth = Integer.parseInt(a[3]);
+                } catch (final NumberFormatException e) {
+                    continue;
+                }
+                if ("+".equals(a[0])) add(a[2], depth, a[1]);
+                else if ("-".equals(a[0])) {
+                    if (a[1].indexOf('.') < 0) remove(a[2], depth, a[1]); else removeID(a[2], depth, a[1]);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * write a new catalog with one line for each snapshot
+     */
+    private void writeCatalog() throws IOException {
+        final File tmp = new File(this.storageLocation, CATALOG_NAME + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, TreeMap<Integer, TreeSet<String>>> hostportDepths: this.directory.entrySet()) {
+                for (Map.Entry<Integer, TreeSet<String>> depthIds: hostportDepths.getValue().entrySet()) {
+                    for (String id: depthIds.getValue()) {
+                        writer.write(catalogLine('+', id, hostportDepths.getKey(), depthIds.getKey()));
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), this.catalog.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String catalogLine(final char op, final String id, final String hostport, final int depth) {
+        return op + "\t" + id + '\t' + hostport + '\t' + depth + '\n';
+    }
+
+    private void appendCatalog(final String line) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.catalog, true), StandardCharsets.UTF_8)) {
+            writer.write(line);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("SNAPSHOTS", "cannot write to the snapshot catalog " + this.catalog + ": " + e.getMessage());
+        }
+    }
+
+    private Location location(final String hostport, final int depth) {
+        final String key = hostport + '/' + depth;
+        Location l = this.locations.get(key);
+        if (l == null) {
+            l = new Location(hostport, depth);
+            this.locations.put(key, l);
+        }
+        return l;
+    }
+
+    /**
+     * add a snapshot to the in-memory index
+     * @param datehash the id <date>.<urlhash>
+     * @return false if the snapshot was already known
+     */
+    private boolean add(final String hostport, final int depth, final String datehash) {
+        TreeMap<Integer, TreeSet<String>> domaindepth = this.directory.get(hostport);
+        if (domaindepth == null) {domaindepth = new TreeMap<Integer, TreeSet<String>>(); this.directory.put(hostport, domaindepth);}
+        TreeSet<String> dateid = domaindepth.get(depth);
+        if (dateid == null) {dateid = new TreeSet<String>(); domaindepth.put(depth, dateid);}
+        if (!dateid.add(datehash)) return false;
+        this.size++;
+        this.dates.put(datehash, location(hostport, depth));
+        final String urlhash = datehash.substring(datehash.indexOf('.') + 1);
+        TreeSet<String> ids = this.hashes.get(urlhash);
+        if (ids == null) {ids = new TreeSet<String>(); this.hashes.put(urlhash, ids);}
+        ids.add(datehash);
+        return true;
+    }
+
+    /**
+     * remove all snapshots of a url at a given place from the in-memory index
+     * @return the dates of the removed snapshots
      */
-    public int size() {
-        int c = 0;
-        for (Map<Integer, TreeSet<String>> m: directory.values()) {
-            for (TreeSet<String> n: m.values()) {
-                c += n.size();
+    private Set<Date> remove(final String hostport, final int depth, final String urlhash) {
+        HashSet<Date> dates = new HashSet<>();
+        TreeMap<Integer, TreeSet<String>> domaindepth = this.directory.get(hostport);
+        if (domaindepth == null) return dates;
+        TreeSet<String> dateid = domaindepth.get(depth);
+        if (dateid == null) return dates;
+        TreeSet<String> ids = this.hashes.get(urlhash);
+        if (ids == null) return dates;
+        Iterator<String> i = ids.iterator();
+        while (i.hasNext()) {
+            String dis = i.next();
+            if (dateid.remove(dis)) {
+                String d = dis.substring(0, dis.length() - urlhash.length() - 1);
+                Date date = parseDate(d);
+                if (date != null) dates.add(date);
+                this.dates.remove(dis);
+                this.size--;
+                i.remove();
             }
         }
-        return c;
+        if (ids.size() == 0) this.hashes.remove(urlhash);
+        if (dateid.size() == 0) domaindepth.remove(depth);
+        if (domaindepth.size() == 0) this.directory.remove(hostport);
+        return dates;
+    }
+
+    /**
+     * remove a single snapshot from the in-memory index
+     * @param datehash the id <date>.<urlhash>
+     * @return false if the snapshot was not known
+     */
+    private boolean removeID(final String hostport, final int depth, final String datehash) {
+        TreeMap<Integer, TreeSet<String>> domaindepth = this.directory.get(hostport);
+        if (domaindepth == null) return false;
+        TreeSet<String> dateid = domaindepth.get(depth);
+        if (dateid == null || !dateid.remove(datehash)) return false;
+        this.dates.remove(datehash);
+        this.size--;
+        final String urlhash = datehash.substring(datehash.indexOf('.') + 1);
+        TreeSet<String> ids = this.hashes.get(urlhash);
+        if (ids != null) {
+            ids.remove(datehash);
+            if (ids.size() == 0) this.hashes.remove(urlhash);
+        }
+        if (dateid.size() == 0) domaindepth.remove(depth);
+        if (domaindepth.size() == 0) this.directory.remove(hostport);
+        return true;
+    }
+
+    /**
+     * get the number of entries in the snapshot directory
+     * @return the total number of different documents
+     */
+    public synchronized int size() {
+        return this.size;
     }
 
     /**
      * get a list of <host>.<port> names in the snapshot directory
      * @return
      */
-    public Set<String> listHosts() {
-        return directory.keySet();
+    public synchronized Set<String> listHosts() {
+        return new HashSet<>(this.directory.keySet());
     }
     
     public final class Revisions {
+        public final String hostport;
         public final int depth;
+        public final String datehash;
         public final Date[] dates;
         public final String urlhash;
-        public final String url;
+        public final String url; // null if the snapshot has no xml metadata, i.e. for a pdf-only snapshot
         public final File[] pathtoxml;
         public Revisions(final String hostport, final int depth, final String datehash) {
+            this.hostport = hostport;
             this.depth = depth;
+            this.datehash = datehash;
             int p = datehash.indexOf('.');
             this.dates = new Date[1];
             String datestring = datehash.substring(0, p);
@@ -180,19 +373,15 @@ public class Snapshots {
     
     public Revisions getRevisions(String urlhash) {
         if (urlhash == null || urlhash.length() == 0) return null;
-        // search for the hash, we must iterate through all entries
-        for (Map.Entry<String, TreeMap<Integer, TreeSet<String>>> hostportDomaindepth: this.directory.entrySet()) {
-            String hostport = hostportDomaindepth.getKey();
-            for (Map.Entry<Integer, TreeSet<String>> depthDateHash: hostportDomaindepth.getValue().entrySet()) {
-                int depth = depthDateHash.getKey();
-                for (String dateHash: depthDateHash.getValue()) {
-                    if (dateHash.endsWith(urlhash)) {
-                        return new Revisions(hostport, depth, dateHash);
-                    }
-                }
-            }
+        final String dateHash;
+        final Location location;
+        synchronized (this) {
+            final TreeSet<String> ids = this.hashes.get(urlhash);
+            if (ids == null || ids.isEmpty()) return null;
+            dateHash = ids.first();
+            location = this.dates.get(dateHash);
         }
-        return null;
+        return location == null ? null : new Revisions(location.hostport, location.depth, dateHash);
     }
     
     /**
@@ -203,17 +392,23 @@ public class Snapshots {
      */
     public TreeMap<Integer, Collection<Revisions>> listIDs(final String hostport, final int depth) {
         TreeMap<Integer, Collection<Revisions>> result = new TreeMap<>();
-        TreeMap<Integer, TreeSet<String>> list = directory.get(hostport);
-        if (list != null) {
-            for (Map.Entry<Integer, TreeSet<String>> entry: list.entrySet()) {
-                if (depth != -1 && entry.getKey() != depth) continue;
-                Collection<Revisions> r = new ArrayList<>(entry.getValue().size());
-                for (String datehash: entry.getValue()) {
-                    r.add(new Revisions(hostport, entry.getKey(), datehash));
+        TreeMap<Integer, ArrayList<String>> ids = new TreeMap<>();
+        synchronized (this) {
+            TreeMap<Integer, TreeSet<String>> list = directory.get(hostport);
+            if (list != null) {
+                for (Map.Entry<Integer, TreeSet<String>> entry: list.entrySet()) {
+                    if (depth != -1 && entry.getKey() != depth) continue;
+                    ids.put(entry.getKey(), new ArrayList<>(entry.getValue()));
                 }
-                result.put(entry.getKey(), r);
             }
         }
+        for (Map.Entry<Integer, ArrayList<String>> entry: ids.entrySet()) {
+            Collection<Revisions> r = new ArrayList<>(entry.getValue().size());
+            for (String datehash: entry.getValue()) {
+                r.add(new Revisions(hostport, entry.getKey(), datehash));
+            }
+            result.put(entry.getKey(), r);
+        }
         return result;
     }
 
@@ -223,7 +418,7 @@ public class Snapshots {
      * @param depth restrict the result to the given depth or if depth == -1 do not restrict to a depth
      * @return a count, the total number of documents for the domain and depth
      */
-    public int listIDsSize(final String hostport, final int depth) {
+    public synchronized int listIDsSize(final String hostport, final int depth) {
         int count = 0;
         TreeMap<Integer, TreeSet<String>> list = directory.get(hostport);
         if (list != null) {
@@ -251,53 +446,58 @@ public class Snapshots {
     }
 
     /**
-     * Write information about the storage of a snapshot to the Snapshot-internal index.
+     * Write information about the storage of a snapshot to the Snapshot-internal index and to the catalog.
      * The actual writing of files to the target directory must be done elsewehre, this method does not store the snapshot files.
      * @param url
      * @param depth
      * @param date
      */
-    public void announceStorage(final DigestURL url, final int depth, final Date date) {
+    public synchronized void announceStorage(final DigestURL url, final int depth, final Date date) {
         String id = ASCII.String(url.hash());
         String ds = GenericFormatter.SHORT_MINUTE_FORMATTER.format(date);
         String pathToHostPortDir = pathToHostPortDir(url.getHost(), url.getPort());
-        TreeMap<Integer, TreeSet<String>> domaindepth = this.directory.get(pathToHostPortDir);
-        if (domaindepth == null) {domaindepth = new TreeMap<Integer, TreeSet<String>>(); this.directory.put(pathToHostPortDir(url.getHost(), url.getPort()), domaindepth);}
-        TreeSet<String> dateid = domaindepth.get(depth);
-        if (dateid == null) {dateid = new TreeSet<String>(); domaindepth.put(depth, dateid);}
-        dateid.add(ds + '.' + id);
+        if (add(pathToHostPortDir, depth, ds + '.' + id)) appendCatalog(catalogLine('+', ds + '.' + id, pathToHostPortDir, depth));
     }
 
     /**
-     * Delete information about the storage of a snapshot to the Snapshot-internal index.
+     * Delete information about the storage of a snapshot to the Snapshot-internal index and to the catalog.
      * The actual deletion of files in the target directory must be done elsewhere, this method does not store the snapshot files.
      * @param url
      * @param depth
      * @param date
      */
-    public Set<Date> announceDeletion(final DigestURL url, final int depth) {
-        HashSet<Date> dates = new HashSet<>();
+    public synchronized Set<Date> announceDeletion(final DigestURL url, final int depth) {
         String id = ASCII.String(url.hash());
         String pathToHostPortDir = pathToHostPortDir(url.getHost(), url.getPort());
-        TreeMap<Integer, TreeSet<String>> domaindepth = this.directory.get(pathToHostPortDir);
-        if (domaindepth == null) return dates;
-        TreeSet<String> dateid = domaindepth.get(depth);
-        if (dateid == null) return dates;
-        Iterator<String> i = dateid.iterator();
-        while (i.hasNext()) {
-            String dis = i.next();
-            if (dis.endsWith("." + id)) {
-                String d = dis.substring(0, dis.length() - id.length() - 1);
-                Date date = parseDate(d);
-                if (date != null) dates.add(date);
-                i.remove();
-            }
-        }
-        if (dateid.size() == 0) domaindepth.remove(depth);
-        if (domaindepth.size() == 0) this.directory.remove(pathToHostPortDir);
+        Set<Date> dates = remove(pathToHostPortDir, depth, id);
+        if (dates.size() > 0) appendCatalog(catalogLine('-', id, pathToHostPortDir, depth));
         return dates;
     }
     
+    /**
+     * Write information about the storage of a snapshot to the Snapshot-internal index and to the catalog.
+     * This does not need the url of the snapshot, which is unknown for a snapshot without xml metadata.
+     * @param hostport the <host>.<port> identifier of the snapshot
+     * @param depth the crawl depth of the snapshot
+     * @param datehash the id <date>.<urlhash> of the snapshot
+     */
+    public synchronized void announceStorage(final String hostport, final int depth, final String datehash) {
+        if (add(hostport, depth, datehash)) appendCatalog(catalogLine('+', datehash, hostport, depth));
+    }
+
+    /**
+     * Delete information about the storage of a single snapshot from the Snapshot-internal index and from the catalog.
+     * @param hostport the <host>.<port> identifier of the snapshot
+     * @param depth the crawl depth of the snapshot
+     * @param datehash the id <date>.<urlhash> of the snapshot
+     * @return false if the snapshot was not known
+     */
+    public synchronized boolean announceDeletion(final String hostport, final int depth, final String datehash) {
+        if (!removeID(hostport, depth, datehash)) return false;
+        appendCatalog(catalogLine('-', datehash, hostport, depth));
+        return true;
+    }
+
     /**
      * Order enum class for the select method
      */
@@ -316,24 +516,33 @@ public class Snapshots {
      * @return a map of hosthashes with the associated creation date
      */
     public LinkedHashMap<String, Revisions> select(final String host, final Integer depth, final Order order, int maxcount) {
-        TreeMap<String, String[]> dateIdResult = new TreeMap<>();
-        if (host == null && depth == null) {
-            loop: for (Map.Entry<String, TreeMap<Integer, TreeSet<String>>> hostportDepths: this.directory.entrySet()) {
-                for (Map.Entry<Integer, TreeSet<String>> depthIds: hostportDepths.getValue().entrySet()) {
-                    for (String id: depthIds.getValue()) {
-                        dateIdResult.put(id, new String[]{hostportDepths.getKey(), Integer.toString(depthIds.getKey())});
-                        if (order == Order.ANY && dateIdResult.size() >= maxcount) break loop;
-                    }
-                }
-            }
+        TreeMap<String, String[]> dateIdResult = selectIDs(host, depth, order, maxcount);
+        LinkedHashMap<String, Revisions> result = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, String[]>> i = order == Order.LATESTFIRST ? dateIdResult.descendingMap().entrySet().iterator() : dateIdResult.entrySet().iterator();
+        while (i.hasNext() && result.size() < maxcount) {
+            Map.Entry<String, String[]> entry = i.next();
+            String datehash = entry.getKey();
+            int p = datehash.indexOf('.');
+            assert p >= 0;
+            Revisions r = new Revisions(entry.getValue()[0], Integer.parseInt(entry.getValue()[1]), datehash);
+            result.put(datehash.substring(p + 1), r);
         }
-        if (host == null && depth != null) {
-            loop: for (Map.Entry<String, TreeMap<Integer, TreeSet<String>>> hostportDepths: this.directory.entrySet()) {
-                TreeSet<String> ids = hostportDepths.getValue().get(depth);
-                if (ids != null) for (String id: ids) {
-                    dateIdResult.put(id, new String[]{hostportDepths.getKey(), Integer.toString(depth)});
-                    if (order == Order.ANY && dateIdResult.size() >= maxcount) break loop;
-                }
+        return result;
+    }
+
+    /**
+     * collect the <date>.<urlhash> ids for select
+     * @return a map from the ids to the <host>.<port> and the depth of the snapshot
+     */
+    private synchronized TreeMap<String, String[]> selectIDs(final String host, final Integer depth, final Order order, int maxcount) {
+        TreeMap<String, String[]> dateIdResult = new TreeMap<>();
+        if (host == null) {
+            // the date index is already in the wanted order, so only the selected ids are visited
+            Iterator<Map.Entry<String, Location>> i = order == Order.LATESTFIRST ? this.dates.descendingMap().entrySet().iterator() : this.dates.entrySet().iterator();
+            while (i.hasNext() && dateIdResult.size() < maxcount) {
+                Map.Entry<String, Location> entry = i.next();
+                if (depth != null && entry.getValue().depth != depth.intValue()) continue;
+                dateIdResult.put(entry.getKey(), new String[]{entry.getValue().hostport, Integer.toString(entry.getValue().depth)});
             }
         }
         if (host != null && depth == null) {
@@ -369,17 +578,7 @@ public class Snapshots {
                 }
             }
         }
-        LinkedHashMap<String, Revisions> result = new LinkedHashMap<>();
-        Iterator<Map.Entry<String, String[]>> i = order == Order.LATESTFIRST ? dateIdResult.descendingMap().entrySet().iterator() : dateIdResult.entrySet().iterator();
-        while (i.hasNext() && result.size() < maxcount) {
-            Map.Entry<String, String[]> entry = i.next();
-            String datehash = entry.getKey();
-            int p = datehash.indexOf('.');
-            assert p >= 0;
-            Revisions r = new Revisions(entry.getValue()[0], Integer.parseInt(entry.getValue()[1]), datehash);
-            result.put(datehash.substring(p + 1), r);
-        }
-        return result;
+        return dateIdResult;
     }
     
     private static Date parseDate(String d) {
@@ -424,8 +623,8 @@ public class Snapshots {
      * @return a set of files for snapshots of the url
      */
     public Collection<File> findPaths(final DigestURL url, final String ext) {
-        for (int i = 0; i < 100; i++) {
-            Collection<File> paths = findPaths(url, i, ext);
+        for (int depth: depths(url)) {
+            Collection<File> paths = findPaths(url, depth, ext);
             if (paths.size() > 0) return paths;
         }
         return new ArrayList<>(0);
@@ -436,6 +635,7 @@ public class Snapshots {
     /**
      * for a given url, get all paths for storage locations.
      * The locations are all for the single url but may represent different storage times.
+     * Only urls which are listed in the catalog are looked up in the storage.
      * @param url
      * @param ext required extension or null if the extension must not be checked
      * @param depth
@@ -443,21 +643,51 @@ public class Snapshots {
      */
     public Collection<File> findPaths(final DigestURL url, final int depth, final String ext) {
         String id = ASCII.String(url.hash());
-        File pathToShard = pathToShard(url, depth);
-        if(!pathToShard.exists() && isIpv6AddrHost(url.getHost())) {
-        	/* If the host is a raw IPV6 address, we check also if a snapshot was recorded with the old format (without percent-encoding) */
-        	pathToShard = pathToShard(pathToHostPortDir(url.getHost(), url.getPort(), false), ASCII.String(url.hash()), depth);
-        }
-        String[] list = pathToShard.exists() && pathToShard.isDirectory() ? pathToShard.list() : null; // may be null if path does not exist
         ArrayList<File> paths = new ArrayList<>();
-        if (list != null) {
-            for (String f: list) {
-                if (f.startsWith(id) && (ext == null || f.endsWith(ext))) paths.add(new File(pathToShard, f));
+        for (Map.Entry<String, Location> entry: locate(url, depth).entrySet()) {
+            String datehash = entry.getKey();
+            String date = datehash.substring(0, datehash.length() - id.length() - 1);
+            File pathToShard = pathToShard(entry.getValue().hostport, id, depth);
+            if (ext != null) {
+                File f = new File(pathToShard, id + "." + date + "." + ext);
+                if (f.exists()) paths.add(f);
+            } else {
+                String[] list = pathToShard.list(); // may be null if path does not exist
+                if (list != null) for (String f: list) {
+                    if (f.startsWith(id + "." + date)) paths.add(new File(pathToShard, f));
+                }
             }
         }
         return paths;
     }
 
+    /**
+     * @return the depths of the snapshots of the url in the catalog, in ascending order
+     */
+    private synchronized TreeSet<Integer> depths(final DigestURL url) {
+        TreeSet<Integer> depths = new TreeSet<>();
+        TreeSet<String> ids = this.hashes.get(ASCII.String(url.hash()));
+        if (ids != null) for (String datehash: ids) depths.add(this.dates.get(datehash).depth);
+        return depths;
+    }
+
+    /**
+     * @return the <date>.<urlhash> ids of the snapshots of the url in the given depth with their location
+     */
+    private synchronized Map<String, Location> locate(final DigestURL url, final int depth) {
+        Map<String, Location> result = new TreeMap<>();
+        TreeSet<String> ids = this.hashes.get(ASCII.String(url.hash()));
+        if (ids == null) return result;
+        String hostport = pathToHostPortDir(url.getHost(), url.getPort());
+        /* If the host is a raw IPV6 address, we accept also a snapshot recorded with the old format (without percent-encoding) */
+        String oldHostport = isIpv6AddrHost(url.getHost()) ? pathToHostPortDir(url.getHost(), url.getPort(), false) : hostport;
+        for (String datehash: ids) {
+            Location location = this.dates.get(datehash);
+            if (location.depth == depth && (location.hostport.equals(hostport) || location.hostport.equals(oldHostport))) result.put(datehash, location);
+        }
+        return result;
+    }
+
     private File pathToShard(final DigestURL url, final int depth) {
         return pathToShard(pathToHostPortDir(url.getHost(), url.getPort()), ASCII.String(url.hash()), depth);
     }
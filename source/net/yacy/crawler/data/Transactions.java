@@ -217,6 +217,7 @@ public class Transactions {
         // CLEAN UP OLD DATA (if wanted)
         Collection<File> oldPaths = Transactions.findPaths(url, depth, null, Transactions.State.INVENTORY);
         if (replaceOld && oldPaths != null) {
+            Transactions.announceDeletion(url, depth, Transactions.State.INVENTORY);
             for (File oldPath: oldPaths) {
             	oldPath.delete();
             }
@@ -236,7 +237,9 @@ public class Transactions {
                 public void run() {
                     executorRunning.incrementAndGet();
                     try {
-                        Html2Image.writeWkhtmltopdf(urls, proxy, ClientIdentification.browserAgent.userAgent, acceptLanguage, pdfPath, wkhtmltopdfTimeout);
+                        if (Html2Image.writeWkhtmltopdf(urls, proxy, ClientIdentification.browserAgent.userAgent, acceptLanguage, pdfPath, wkhtmltopdfTimeout)) {
+                            Transactions.announceStorage(url, depth, date, Transactions.State.INVENTORY);
+                        }
                     } catch (Throwable e) {} finally {
                     executorRunning.decrementAndGet();
                     }
@@ -245,6 +248,7 @@ public class Transactions {
             executor.execute(t);
         } else {
             success = Html2Image.writeWkhtmltopdf(urls, proxy, ClientIdentification.browserAgent.userAgent, acceptLanguage, pdfPath, wkhtmltopdfTimeout);
+            if (success) Transactions.announceStorage(url, depth, date, State.INVENTORY);
         }
         
         return success;
@@ -273,6 +277,11 @@ public class Transactions {
     private static Revisions transact(final String urlhash, final State from, final State to) {
         Revisions r = Transactions.getRevisions(from, urlhash);
         if (r == null) return null;
+        // announce the movement before the files are moved; the url is not needed, it is unknown for a snapshot without xml metadata
+        final Snapshots source = from == State.INVENTORY ? inventory : archive;
+        final Snapshots target = to == State.INVENTORY ? inventory : archive;
+        if (!source.announceDeletion(r.hostport, r.depth, r.datehash)) return null; // moved concurrently
+        target.announceStorage(r.hostport, r.depth, r.datehash);
         // we take all pathtoxml and move that to archive
         for (File f: r.pathtoxml) {
             String name = f.getName();
@@ -292,18 +301,7 @@ public class Transactions {
                 sourceParent = sourceParent.getParentFile();
             }
         }
-        // announce the movement
-        DigestURL durl;
-        try {
-            durl = new DigestURL(r.url);
-            Transactions.announceDeletion(durl, r.depth, from);
-            Transactions.announceStorage(durl, r.depth, r.dates[0], to);
-            return r;
-        } catch (MalformedURLException e) {
-            ConcurrentLog.logException(e);
-        }
-    
-        return null;
+        return r;
     }
     
     /**
@@ -37,9 +37,9 @@ import net.yacy.search.schema.CollectionSchema;
  * <li>Deleting one letter: frog / fog; or</li>
  * <li>Reversing two consecutive letters: two / tow.</li>
  * </ol>
- * DidYouMean provides producer threads, that feed a blocking queue with word variations according to
- * the above mentioned four categories. Consumer threads check then the generated word variations against a term index.
- * Only words contained in the term index are return by the getSuggestion method.<p/>
+ * DidYouMean finds the words within these four categories in the spelling index of the dictionaries,
+ * which is built from the dictionary files and the words learned during indexing and searching.
+ * Only words contained in the dictionaries or the term index are return by the getSuggestion method.<p/>
  * @author apfelmaennchen
  * @author orbiter (extensions for multi-language support + multi-word suggestions)
  */
@@ -50,47 +50,15 @@ public class DidYouMean {
 
     private static final int MinimumInputWordLength = 2;
     private static final int MinimumOutputWordLength = 4;
+    private static final int MaximumCorrections = 30;
 
-    private static final char[] ALPHABET_LATIN = {
-        'a','b','c','d','e','f','g','h','i','j','k','l','m','n','o','p',
-		'q','r','s','t','u','v','w','x','y','z',
-		'\u00df',
-        '\u00e0','\u00e1','\u00e2','\u00e3','\u00e4','\u00e5','\u00e6','\u00e7',
-        '\u00e8','\u00e9','\u00ea','\u00eb','\u00ec','\u00ed','\u00ee','\u00ef',
-        '\u00f0','\u00f1','\u00f2','\u00f3','\u00f4','\u00f5','\u00f6',
-        '\u00f8','\u00f9','\u00fa','\u00fb','\u00fc','\u00fd','\u00fe','\u00ff'};
-    private static final char[] ALPHABET_KANJI = new char[512]; // \u3400-\u34ff + \u4e00-\u4eff
-    private static final char[] ALPHABET_HIRAGANA = new char[96]; // \u3040-\u309F
-    private static final char[] ALPHABET_KATAKANA = new char[96]; // \u30A0-\u30FF
-    private static final char[] ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part1 = new char[5376]; // \u4E00-\u62FF
-    private static final char[] ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part2 = new char[5376]; // \u6300-\u77FF
-    private static final char[] ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part3 = new char[5376]; // \u7800-\u8CFF
-    private static final char[] ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part4 = new char[4864]; // \u8D00-\u9FFF
-    static {
-        // this is very experimental: a very small subset of Kanji
-        for (char a = '\u3400'; a <= '\u34ff'; a++) ALPHABET_KANJI[0xff & (a - '\u3400')] = a;
-        for (char a = '\u4e00'; a <= '\u4eff'; a++) ALPHABET_KANJI[0xff & (a - '\u4e00') + 256] = a;
-        for (char a = '\u3040'; a <= '\u309F'; a++) ALPHABET_HIRAGANA[0xff & (a - '\u3040')] = a;
-        for (char a = '\u30A0'; a <= '\u30FF'; a++) ALPHABET_KATAKANA[0xff & (a - '\u30A0')] = a;
-        for (char a = '\u4E00'; a <= '\u62FF'; a++) ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part1[0xff & (a - '\u4E00')] = a;
-        for (char a = '\u6300'; a <= '\u77FF'; a++) ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part2[0xff & (a - '\u6300')] = a;
-        for (char a = '\u7800'; a <= '\u8CFF'; a++) ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part3[0xff & (a - '\u7800')] = a;
-        for (char a = '\u8D00'; a <= '\u9FFF'; a++) ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part4[0xff & (a - '\u8D00')] = a;
-    }
-
-    private static final char[][] ALPHABETS = {
-        ALPHABET_LATIN, ALPHABET_KANJI, ALPHABET_HIRAGANA, ALPHABET_KATAKANA,
-        ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part1, ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part2, ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part3, ALPHABET_CJK_UNIFIED_IDEOGRAPHS_Part4};
     public  static final int AVAILABLE_CPU = Runtime.getRuntime().availableProcessors();
     private static final wordLengthComparator WORD_LENGTH_COMPARATOR = new wordLengthComparator();
 
     private final Segment segment;
     private final StringBuilder word;
     private final boolean endsWithSpace;
-    private final int wordLen;
-    private long timeLimit;
     private final SortedSet<StringBuilder> resultSet;
-    private char[] alphabet;
     private boolean more;
 
     /**
@@ -101,48 +69,8 @@ public class DidYouMean {
         this.endsWithSpace = word0.length() > 0 && word0.charAt(word0.length() - 1) == ' ';
         this.word = new StringBuilder(word0.trim());
         this.resultSet = Collections.synchronizedSortedSet(new TreeSet<StringBuilder>(new headMatchingComparator(this.word, WORD_LENGTH_COMPARATOR)));
-        this.wordLen = this.word.length();
         this.segment = segment;
-        this.more = segment.connectedRWI() && segment.RWICount() > 0; // with RWIs connected the guessing is super-fast
-
-        // identify language
-        if (this.word.length() > 0) {
-            char testchar = this.word.charAt(0);
-            if (testchar >= 'A' && testchar <= 'Z') testchar = (char) (testchar + 32);
-            boolean alphafound = false;
-            alphatest: for (final char[] alpha: ALPHABETS) {
-                if (isAlphabet(alpha, testchar)) {
-                    this.alphabet = new char[alpha.length];
-                    System.arraycopy(alpha, 0, this.alphabet, 0, alpha.length);
-                    alphafound = true;
-                    break alphatest;
-                }
-            }
-            if (!alphafound && testchar < 'A') {
-                this.alphabet = new char[ALPHABET_LATIN.length];
-                System.arraycopy(ALPHABET_LATIN, 0, this.alphabet, 0, ALPHABET_LATIN.length);
-                alphafound = true;
-            }
-            if (!alphafound) {
-                // generate generic alphabet using simply a character block of 256 characters
-                final int firstchar = (0xff & (testchar / 256)) * 256;
-                final int lastchar = firstchar + 255;
-                this.alphabet = new char[256];
-                // test this with /suggest.json?q=%EF%BD%84
-                for (int a = firstchar; a <= lastchar; a++) {
-                    this.alphabet[0xff & (a - firstchar)] = (char) a;
-                }
-            }
-        }
-    }
-
-    private static final boolean isAlphabet(final char[] alpha, final char testchar) {
-        for (final char a: alpha) {
-            if (a == testchar) {
-                return true;
-            }
-        }
-        return false;
+        this.more = segment.connectedRWI() && segment.RWICount() > 0; // with RWIs connected the suggestions are ranked by their word count
     }
 
     public void reset() {
@@ -382,44 +310,23 @@ public class DidYouMean {
     }
 
     /**
-     * This method triggers the producer and consumer threads of the DidYouMean object.
-     * @param word a String with a single word
+     * This method collects the completions of the word and the corrections of the word found in the spelling index of the dictionaries.
      * @param timeout maximum expected execution time in milliseconds. A nagative value means no limit.
-     * @return a Set&lt;String&gt; with word variations contained in term index.
+     * @param askIndex if true, the Solr index is asked for snippets that contain the word
+     * @return a Set&lt;String&gt; with word variations contained in the dictionaries or the index.
      */
     private Collection<StringBuilder> getSuggestions(final long timeout, boolean askIndex) {
-        final long startTime = System.currentTimeMillis();
-        this.timeLimit = timeout >= 0 ? startTime + timeout : Long.MAX_VALUE;
-        
-        Thread[] producers = null;
-        if (this.more) {
-            // create and start producers
-            // the CPU load to create the guessed words is very low, but the testing
-            // against the library may be CPU intensive. Since it is possible to test
-            // words in the library concurrently, it is a good idea to start separate threads
-            producers = new Thread[4];
-            producers[0] = new ChangingOneLetter();
-            producers[1] = new AddingOneLetter();
-            producers[2] = new DeletingOneLetter();
-            producers[3] = new ReversingTwoConsecutiveLetters();
-            for (final Thread t: producers) {
-                t.start();
-            }
+        test(this.word);
+
+        // the corrections are taken from the symmetric-delete spelling index, so the variations of the word
+        // (one letter changed, added or deleted or two letters reversed) need not be tested one by one
+        for (final StringBuilder correction: LibraryProvider.dymLib.corrections(this.word, MaximumCorrections)) {
+            if (correction.length() >= MinimumOutputWordLength) this.resultSet.add(correction);
+            test(correction);
         }
 
-        test(this.word);
         if (askIndex) this.resultSet.addAll(getSuggestions("", this.word.toString(), timeout, 10, this.segment));
-        
-        if (this.more) {
-            // finish the producer
-            for (final Thread t: producers) {
-                long wait = this.timeLimit - System.currentTimeMillis();
-                if (wait > 0) try {
-                    t.join(wait);
-                } catch (final InterruptedException e) {}
-            }
-        }
-        
+
         // we don't want the given word in the result
         this.resultSet.remove(this.word);
         return this.resultSet;
@@ -433,95 +340,6 @@ public class DidYouMean {
         }
     }
     
-    /**
-     * DidYouMean's producer thread that changes one letter (e.g. bat/cat) for a given term
-     * based on the given alphabet and puts it on the blocking queue, to be 'consumed' by a consumer thread.<p/>
-     * <b>Note:</b> the loop runs (alphabet.length * len) tests.
-     */
-    public class ChangingOneLetter extends Thread {
-    	
-    	public ChangingOneLetter() {
-    		super("ChangingOneLetter");
-    	}
-    	
-        @Override
-        public void run() {
-            char m;
-            for (int i = 0; i < DidYouMean.this.wordLen; i++) {
-                m = DidYouMean.this.word.charAt(i);
-                for (final char c: DidYouMean.this.alphabet) {
-                    if (m != c) {
-                        final StringBuilder ts = new StringBuilder(DidYouMean.this.word.length() + 1).append(DidYouMean.this.word.substring(0, i)).append(c).append(DidYouMean.this.word.substring(i + 1));
-                        test(ts);
-                    }
-                    if (System.currentTimeMillis() > DidYouMean.this.timeLimit) return;
-                }
-            }
-        }
-    }
-
-    /**
-     * DidYouMean's producer thread that deletes extra letters (e.g. frog/fog) for a given term
-     * and puts it on the blocking queue, to be 'consumed' by a consumer thread.<p/>
-     * <b>Note:</b> the loop runs (len) tests.
-     */
-	private class DeletingOneLetter extends Thread {
-		public DeletingOneLetter() {
-			super("DeletingOneLetter");
-		}
-		
-        @Override
-        public void run() {
-            for (int i = 0; i < DidYouMean.this.wordLen; i++) {
-                final StringBuilder ts = new StringBuilder(DidYouMean.this.word.length() + 1).append(DidYouMean.this.word.substring(0, i)).append(DidYouMean.this.word.substring(i + 1));
-                test(ts);
-                if (System.currentTimeMillis() > DidYouMean.this.timeLimit) return;
-            }
-        }
-	}
-
-    /**
-     * DidYouMean's producer thread that adds missing letters (e.g. bat/boat) for a given term
-     * based on the given alphabet and puts it on the blocking queue, to be 'consumed' by a consumer thread.<p/>
-     * <b>Note:</b> the loop runs (alphabet.length * len) tests.
-     */
-	private class AddingOneLetter extends Thread {
-		public AddingOneLetter() {
-			super("AddingOneLetter");
-		}
-		
-        @Override
-        public void run() {
-            for (int i = 0; i <= DidYouMean.this.wordLen; i++) {
-                for (final char c: DidYouMean.this.alphabet) {
-                    final StringBuilder ts = new StringBuilder(DidYouMean.this.word.length() + 1).append(DidYouMean.this.word.substring(0, i)).append(c).append(DidYouMean.this.word.substring(i));
-                    test(ts);
-                    if (System.currentTimeMillis() > DidYouMean.this.timeLimit) return;
-                }
-            }
-        }
-	}
-
-    /**
-     * DidYouMean's producer thread that reverses any two consecutive letters (e.g. two/tow) for a given term
-     * and puts it on the blocking queue, to be 'consumed' by a consumer thread.<p/>
-     * <b>Note:</b> the loop runs (len-1) tests.
-     */
-	private class ReversingTwoConsecutiveLetters extends Thread {
-		public ReversingTwoConsecutiveLetters() {
-			super("ReversingTwoConsecutiveLetters");
-		}
-		
-        @Override
-        public void run() {
-            for (int i = 0; i < DidYouMean.this.wordLen - 1; i++) {
-                final StringBuilder ts = new StringBuilder(DidYouMean.this.word.length() + 1).append(DidYouMean.this.word.substring(0, i)).append(DidYouMean.this.word.charAt(i + 1)).append(DidYouMean.this.word.charAt(i)).append(DidYouMean.this.word.substring(i + 2));
-                test(ts);
-                if (System.currentTimeMillis() > DidYouMean.this.timeLimit) return;
-            }
-        }
-	}
-
     /**
      * wordLengthComparator is used by DidYouMean to order terms by the term length
      * This is the default order if the indexSizeComparator is not used
@@ -33,6 +33,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -96,6 +97,12 @@ public class WorkTables extends Tables {
     public WorkTables(final File workPath) {
         super(workPath, 12);
         this.bookmarks = new YMarkTables(this);
+        try {
+            // recorded calls are looked up by their url each time an api call is recorded
+            createIndex(TABLE_API_NAME, Collections.singletonMap(TABLE_API_COL_URL, ""));
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
     }
     
     /**
@@ -0,0 +1,287 @@
+/**
+ *  DumpChunkReader
+ *  part of YaCy
+ *
+ *  This is a part of YaCy, a peer-to-peer based web search engine
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.document.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * Reads the uncompressed content of a dump file in consecutive chunks.
+ * <p>
+ * A local bz2 file made of many concatenated bz2 streams (like the
+ * "pages-articles-multistream" wikipedia dumps) is split at the stream
+ * boundaries, and the streams are decompressed concurrently. Every chunk then
+ * carries the file offset of its compressed stream, which is a valid position
+ * to resume reading the dump. Any other source is read sequentially, and its
+ * chunks all have the offset 0.
+ * </p>
+ * Chunks are always returned in the order of the dump.
+ */
+public class DumpChunkReader implements Closeable {
+
+    /** magic of a bz2 stream header followed by the magic of a first compressed block */
+    private static final byte[] BZIP2_STREAM_START = {'B', 'Z', 'h', '9', 0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+
+    /** index of the block size digit in BZIP2_STREAM_START, which may be any of '1'..'9' */
+    private static final int BLOCKSIZE_INDEX = 3;
+
+    /** amount of compressed data searched for a second stream header to detect multistream files */
+    private static final int MULTISTREAM_PROBE_SIZE = 32 * 1024 * 1024;
+
+    /** maximum size of a single compressed stream in a multistream file */
+    private static final int MAX_STREAM_SIZE = 256 * 1024 * 1024;
+
+    /** size of the chunks of sequentially read sources */
+    private static final int SEQUENTIAL_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** a piece of uncompressed dump content */
+    public static final class Chunk {
+        /** the offset in the source file where reading can resume with this chunk, 0 for sequential sources */
+        public final long offset;
+        public final byte[] data;
+        private Chunk(final long offset, final byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private static final Chunk POISON = new Chunk(-1, new byte[0]);
+
+    private final BlockingQueue<Future<Chunk>> chunks;
+    private final ExecutorService decompressors;
+    private final Thread producer;
+    private volatile IOException producerError;
+    private volatile boolean closed;
+    private boolean eof;
+
+    private DumpChunkReader(final int queueSize, final ExecutorService decompressors, final String name) {
+        this.chunks = new ArrayBlockingQueue<Future<Chunk>>(queueSize);
+        this.decompressors = decompressors;
+        this.producerError = null;
+        this.closed = false;
+        this.eof = false;
+        this.producer = new Thread(DumpChunkReader.class.getSimpleName() + ".producer " + name) {
+            @Override
+            public void run() {
+                try {
+                    produce();
+                } catch (final IOException e) {
+                    DumpChunkReader.this.producerError = e;
+                } catch (final InterruptedException e) {
+                    // closed
+                } finally {
+                    try {
+                        DumpChunkReader.this.chunks.put(CompletableFuture.completedFuture(POISON));
+                    } catch (final InterruptedException e) {}
+                }
+            }
+        };
+    }
+
+    /** fills the chunks queue, implemented by the reading strategies */
+    protected void produce() throws IOException, InterruptedException {
+    }
+
+    private void start() {
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Read a bz2 file with concurrent decompression of its streams.
+     * @param f a local bz2 file made of concatenated bz2 streams
+     * @param resumeOffset 0 or the offset of a stream where reading shall resume. The first stream,
+     * which contains the dump header, is always read first.
+     * @param threads the number of decompressing threads
+     */
+    public static DumpChunkReader multistreamBZip2(final File f, final long resumeOffset, final int threads) {
+        final ExecutorService service = Executors.newFixedThreadPool(threads,
+                new NamePrefixThreadFactory(DumpChunkReader.class.getSimpleName() + ".bunzip2"));
+        final DumpChunkReader reader = new DumpChunkReader(threads * 4, service, f.getName()) {
+            @Override
+            protected void produce() throws IOException, InterruptedException {
+                final RandomAccessFile raf = new RandomAccessFile(f, "r");
+                try {
+                    final long firstEnd = nextStreamStart(raf, 0, raf.length());
+                    this.submitStream(raf, 0, firstEnd < 0 ? raf.length() : firstEnd);
+                    long start = Math.max(firstEnd, resumeOffset);
+                    while (start >= 0 && start < raf.length() && !this.isClosed()) {
+                        long end = nextStreamStart(raf, start, Math.min(raf.length(), start + MAX_STREAM_SIZE));
+                        if (end < 0) {
+                            if (raf.length() - start > MAX_STREAM_SIZE) throw new IOException("bz2 stream at " + start + " is too large");
+                            end = raf.length();
+                        }
+                        this.submitStream(raf, start, end);
+                        start = end;
+                    }
+                } finally {
+                    raf.close();
+                }
+            }
+        };
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * Read an uncompressed or already decompressing stream, one chunk after the other.
+     * @param is the dump content, closed when reading is finished
+     * @param name the source name, used for the thread name
+     */
+    public static DumpChunkReader sequential(final InputStream is, final String name) {
+        final DumpChunkReader reader = new DumpChunkReader(4, null, name) {
+            @Override
+            protected void produce() throws IOException, InterruptedException {
+                try {
+                    final byte[] buffer = new byte[SEQUENTIAL_CHUNK_SIZE];
+                    while (!this.isClosed()) {
+                        int len = 0, r;
+                        while (len < buffer.length && (r = is.read(buffer, len, buffer.length - len)) > 0) len += r;
+                        if (len == 0) break;
+                        this.put(CompletableFuture.completedFuture(new Chunk(0, Arrays.copyOf(buffer, len))));
+                    }
+                } finally {
+                    is.close();
+                }
+            }
+        };
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * @param f a local file
+     * @return true if the file is a bz2 file made of several streams which can be decompressed concurrently
+     */
+    public static boolean isMultistreamBZip2(final File f) {
+        if (!f.isFile()) return false;
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                return matchesStreamStart(raf, 0) && nextStreamStart(raf, 0, Math.min(raf.length(), MULTISTREAM_PROBE_SIZE)) > 0;
+            } finally {
+                raf.close();
+            }
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean matchesStreamStart(final RandomAccessFile raf, final long pos) throws IOException {
+        final byte[] b = new byte[BZIP2_STREAM_START.length];
+        raf.seek(pos);
+        if (raf.read(b) < b.length) return false;
+        return matches(b, 0);
+    }
+
+    private static boolean matches(final byte[] b, final int p) {
+        for (int i = 0; i < BZIP2_STREAM_START.length; i++) {
+            if (i == BLOCKSIZE_INDEX) {
+                if (b[p + i] < '1' || b[p + i] > '9') return false;
+            } else if (b[p + i] != BZIP2_STREAM_START[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset of the next bz2 stream header after the stream starting at start and before limit, or -1
+     */
+    private static long nextStreamStart(final RandomAccessFile raf, final long start, final long limit) throws IOException {
+        final byte[] buffer = new byte[1024 * 1024];
+        long pos = start + 1;
+        while (pos < limit) {
+            raf.seek(pos);
+            final int len = raf.read(buffer, 0, (int) Math.min(buffer.length, limit - pos + BZIP2_STREAM_START.length - 1));
+            if (len < BZIP2_STREAM_START.length) return -1;
+            for (int i = 0; i <= len - BZIP2_STREAM_START.length; i++) {
+                if (buffer[i] == 'B' && matches(buffer, i)) return pos + i;
+            }
+            pos += len - BZIP2_STREAM_START.length + 1;
+        }
+        return -1;
+    }
+
+    protected void submitStream(final RandomAccessFile raf, final long start, final long end) throws IOException, InterruptedException {
+        final byte[] compressed = new byte[(int) (end - start)];
+        raf.seek(start);
+        raf.readFully(compressed);
+        this.put(this.decompressors.submit(() -> new Chunk(start, FileUtils.read(new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), false)))));
+    }
+
+    protected void put(final Future<Chunk> chunk) throws InterruptedException {
+        this.chunks.put(chunk);
+    }
+
+    protected boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * @return the next chunk of the dump, or null when the dump is completely read
+     * @throws IOException when reading or decompressing the dump failed
+     * @throws InterruptedException when the current thread was interrupted
+     */
+    public Chunk next() throws IOException, InterruptedException {
+        if (this.eof) return null;
+        final Chunk chunk;
+        try {
+            chunk = this.chunks.take().get();
+        } catch (final ExecutionException e) {
+            throw new IOException("could not decompress dump chunk: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (chunk == POISON) {
+            this.eof = true;
+            if (this.producerError != null) throw this.producerError;
+            return null;
+        }
+        return chunk;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.producer.interrupt();
+        this.chunks.clear();
+        if (this.decompressors != null) this.decompressors.shutdownNow();
+        ConcurrentLog.fine("DumpChunkReader", "closed");
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *  ImportCheckpoint
+ *  part of YaCy
+ *
+ *  This is a part of YaCy, a peer-to-peer based web search engine
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.document.importer;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Persistent progress of a long running import, so that an interrupted import
+ * can be resumed where it stopped instead of starting again from the
+ * beginning of a multi-GB dump.
+ * <p>
+ * The checkpoint is a small property file stored next to the import target.
+ * It is bound to the identity of the import source (its name and size) : a
+ * checkpoint written for another source is ignored. Values are written
+ * atomically with {@link FileUtils#saveMap(File, Map, String)}.
+ * </p>
+ */
+public class ImportCheckpoint {
+
+    /** file name extension of checkpoint files, not processed by the surrogate reader */
+    public static final String EXTENSION = ".checkpoint";
+
+    private static final String KEY_SOURCE = "source";
+
+    private final File file;
+    private final String source;
+    private final Map<String, String> values;
+
+    /**
+     * Open the checkpoint for an import, loading the stored values if a
+     * checkpoint for the same source exists.
+     * @param file the checkpoint file
+     * @param sourceName name of the import source (file name or url)
+     * @param sourceSize size of the import source in bytes, or -1 when unknown
+     */
+    public ImportCheckpoint(final File file, final String sourceName, final long sourceSize) {
+        this.file = file;
+        this.source = sourceName + "/" + sourceSize;
+        this.values = new ConcurrentHashMap<String, String>();
+        if (file.exists()) {
+            final Map<String, String> stored = FileUtils.loadMap(file);
+            if (stored != null && this.source.equals(stored.get(KEY_SOURCE))) {
+                this.values.putAll(stored);
+                ConcurrentLog.info("ImportCheckpoint", "resuming import of " + sourceName + " from " + file);
+            }
+        }
+        this.values.put(KEY_SOURCE, this.source);
+    }
+
+    /**
+     * @return true when values of a previous run of the same import were loaded
+     */
+    public boolean isResumed() {
+        return this.values.size() > 1;
+    }
+
+    public long get(final String key, final long dflt) {
+        final String v = this.values.get(key);
+        if (v == null) return dflt;
+        try {
+            return Long.parseLong(v);
+        } catch (final NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    public String get(final String key, final String dflt) {
+        final String v = this.values.get(key);
+        return v == null ? dflt : v;
+    }
+
+    public void set(final String key, final long value) {
+        this.values.put(key, Long.toString(value));
+    }
+
+    public void set(final String key, final String value) {
+        this.values.put(key, value);
+    }
+
+    /**
+     * write the current values to the checkpoint file
+     */
+    public synchronized void save() {
+        FileUtils.saveMap(this.file, this.values, "import checkpoint");
+    }
+
+    /**
+     * remove the checkpoint when the import is completed
+     */
+    public synchronized void delete() {
+        if (this.file.exists()) FileUtils.deletedelete(this.file);
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+}
@@ -24,7 +24,6 @@ package net.yacy.document.importer;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -37,13 +36,13 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -158,144 +157,196 @@ public class MediawikiImporter extends Thread implements Importer {
         this.start = System.currentTimeMillis();
         final int threads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
         // out keeps a outputfile open until poisened, to make sure underlaying thread gets the end condition
-        // regardless of any exception (e.g. eof memory) a add(poison) is added to the most outer final block
-        final BlockingQueue<wikiparserrecord> out = new ArrayBlockingQueue<wikiparserrecord>(threads * 10);
+        // regardless of any exception (e.g. eof memory) a add(poison) is added to the most outer final block.
+        // The converted records are queued as futures in the order of the dump, so that the writer can
+        // checkpoint the position of the last record of every completed surrogate file.
+        final BlockingQueue<Future<wikiparserrecord>> out = new ArrayBlockingQueue<Future<wikiparserrecord>>(threads * 10);
         final wikiparserrecord poison = newRecord();
-        BufferedReader reader = null;
+        final Future<wikiparserrecord> poisonFuture = CompletableFuture.completedFuture(poison);
+        DumpChunkReader reader = null;
+        ExecutorService converters = null;
+        ImportCheckpoint checkpoint = null;
+        Future<Integer> writerResult = null;
+        boolean completed = false;
         try {
             String targetstub = this.sourcefile.getFileName();
             int p = targetstub.lastIndexOf("\\.");
             if (p > 0) targetstub = targetstub.substring(0, p);
-            InputStream is = new BufferedInputStream(this.sourcefile.getInputStream(ClientIdentification.yacyInternetCrawlerAgent), 1024 * 1024);
-            if (this.sourcefile.getFileName().endsWith(".bz2")) {
-                is = new BZip2CompressorInputStream(is);
-            } else if (this.sourcefile.getFileName().endsWith(".gz")) {
-                is = new GZIPInputStream(is);
+            checkpoint = new ImportCheckpoint(new File(this.targetdir, targetstub + ImportCheckpoint.EXTENSION), this.source(), this.docsize);
+            final long resumeOffset = checkpoint.get("offset", 0);
+            final long skipPages = checkpoint.get("skip", 0);
+            this.count = (int) checkpoint.get("count", 0);
+
+            final File localFile = this.sourcefile.isFile() ? this.sourcefile.getFSFile() : null;
+            if (localFile != null && this.sourcefile.getFileName().endsWith(".bz2") && DumpChunkReader.isMultistreamBZip2(localFile)) {
+                // the streams of a multistream dump are decompressed concurrently and are resume positions
+                reader = DumpChunkReader.multistreamBZip2(localFile, resumeOffset, threads);
+            } else {
+                InputStream is = new BufferedInputStream(this.sourcefile.getInputStream(ClientIdentification.yacyInternetCrawlerAgent), 1024 * 1024);
+                if (this.sourcefile.getFileName().endsWith(".bz2")) {
+                    is = new BZip2CompressorInputStream(is, true);
+                } else if (this.sourcefile.getFileName().endsWith(".gz")) {
+                    is = new GZIPInputStream(is);
+                }
+                reader = DumpChunkReader.sequential(is, this.sourcefile.getFileName());
             }
-            reader = new BufferedReader(new java.io.InputStreamReader(is, StandardCharsets.UTF_8), 4 * 1024 * 1024);
+            final ExecutorService service = Executors.newCachedThreadPool(
+                    new NamePrefixThreadFactory(MediawikiImporter.class.getSimpleName() + ".convertConsumer"));
+            converters = Executors.newFixedThreadPool(threads,
+                    new NamePrefixThreadFactory(MediawikiImporter.class.getSimpleName() + ".convert"));
+            final convertWriter writer = new convertWriter(out, poison, this.targetdir, targetstub, checkpoint, (int) checkpoint.get("file", 0));
+            writerResult = service.submit(writer);
+            service.shutdown();
+
             String t;
             StringBuilder sb = new StringBuilder();
             boolean page = false, text = false;
             String title = null;
-            final BlockingQueue<wikiparserrecord> in = new ArrayBlockingQueue<wikiparserrecord>(threads * 10);
-			final ExecutorService service = Executors.newCachedThreadPool(
-					new NamePrefixThreadFactory(MediawikiImporter.class.getSimpleName() + ".convertConsumer"));
-            final convertConsumer[] consumers = new convertConsumer[threads];
-            final Future<?>[] consumerResults = (Future<?>[]) Array.newInstance(Future.class, threads);
-            for (int i = 0; i < threads; i++) {
-                consumers[i] = new convertConsumer(in, out, poison);
-                consumerResults[i] = service.submit(consumers[i]);
-            }
-            final convertWriter   writer = new convertWriter(out, poison, this.targetdir, targetstub);
-            final Future<Integer> writerResult = service.submit(writer);
-
             wikiparserrecord record;
             int q;
-            while ((t = reader.readLine()) != null) {
-                if ((p = t.indexOf("<base>",0)) >= 0 && (q = t.indexOf("</base>", p)) > 0) {
-                    //urlStub = "http://" + lang + ".wikipedia.org/wiki/";
-                    this.urlStub = t.substring(p + 6, q);
-                    if (!this.urlStub.endsWith("/")) {
-                        q = this.urlStub.lastIndexOf('/');
-                        if (q > 0) this.urlStub = this.urlStub.substring(0, q + 1);
+            long pageOffset = 0; // dump offset where the current page began
+            long pageIndex = -1; // index of the current page among the pages beginning at pageOffset
+            byte[] rest = null; // incomplete last line of the previous chunk
+            DumpChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                final boolean headerOnly = resumeOffset > 0 && chunk.offset < resumeOffset;
+                int lineStart = 0;
+                for (int i = 0; i <= chunk.data.length; i++) {
+                    if (i < chunk.data.length && chunk.data[i] != '\n') continue;
+                    if (i == chunk.data.length) {
+                        // keep the incomplete line for the next chunk
+                        rest = concat(rest, chunk.data, lineStart, i - lineStart);
+                        break;
                     }
-                    final DigestURL uri = new DigestURL(this.urlStub);
-                    this.hostport = uri.getHost();
-                    if (uri.getPort() != 80) this.hostport += ":" + uri.getPort();
-                    continue;
-                }
-                if (t.indexOf(pagestart) >= 0) {
-                    page = true;
-                    continue;
-                }
-                if ((p = t.indexOf(textstart)) >= 0) {
-                    text = page;
-                    q = t.indexOf('>', p + textstart.length());
-                    if (q > 0) {
-                        final int u = t.indexOf(textend, q + 1);
-                        if (u > q) {
-                            sb.append(t.substring(q + 1, u));
-                            ConcurrentLog.info("WIKITRANSLATION", "[INJECT] Title: " + title);
-                            if (sb.length() == 0) {
-                                ConcurrentLog.info("WIKITRANSLATION", "ERROR: " + title + " has empty content");
-                                continue;
-                            }
-                            record = newRecord(this.hostport, this.urlStub, title, sb);
-                            try {
-                                in.put(record);
+                    if (rest != null) {
+                        t = UTF8.String(concat(rest, chunk.data, lineStart, i - lineStart));
+                        rest = null;
+                    } else {
+                        t = UTF8.String(chunk.data, lineStart, i - lineStart);
+                    }
+                    lineStart = i + 1;
+                    if (t.length() > 0 && t.charAt(t.length() - 1) == '\r') t = t.substring(0, t.length() - 1);
+
+                    if ((p = t.indexOf("<base>",0)) >= 0 && (q = t.indexOf("</base>", p)) > 0) {
+                        //urlStub = "http://" + lang + ".wikipedia.org/wiki/";
+                        this.urlStub = t.substring(p + 6, q);
+                        if (!this.urlStub.endsWith("/")) {
+                            q = this.urlStub.lastIndexOf('/');
+                            if (q > 0) this.urlStub = this.urlStub.substring(0, q + 1);
+                        }
+                        final DigestURL uri = new DigestURL(this.urlStub);
+                        this.hostport = uri.getHost();
+                        if (uri.getPort() != 80) this.hostport += ":" + uri.getPort();
+                        continue;
+                    }
+                    if (t.indexOf(pagestart) >= 0) {
+                        if (pageOffset != chunk.offset) {
+                            pageOffset = chunk.offset;
+                            pageIndex = -1;
+                        }
+                        pageIndex++;
+                        // skip the pages already converted in a previous run
+                        page = !headerOnly && (pageOffset != resumeOffset || pageIndex >= skipPages);
+                        continue;
+                    }
+                    if (!page) {
+                        text = false;
+                        continue;
+                    }
+                    if ((p = t.indexOf(textstart)) >= 0) {
+                        text = page;
+                        q = t.indexOf('>', p + textstart.length());
+                        if (q > 0) {
+                            final int u = t.indexOf(textend, q + 1);
+                            if (u > q) {
+                                sb.append(t.substring(q + 1, u));
+                                ConcurrentLog.info("WIKITRANSLATION", "[INJECT] Title: " + title);
+                                if (sb.length() == 0) {
+                                    ConcurrentLog.info("WIKITRANSLATION", "ERROR: " + title + " has empty content");
+                                    continue;
+                                }
+                                record = newRecord(this.hostport, this.urlStub, title, sb, pageOffset, pageIndex);
+                                enqueue(out, converters.submit(record), writerResult);
                                 this.count++;
-                            } catch (final InterruptedException e1) {
-                                ConcurrentLog.logException(e1);
+                                sb = new StringBuilder(200);
+                                continue;
                             }
-                            sb = new StringBuilder(200);
+                            sb.append(t.substring(q + 1));
+                        }
+                        continue;
+                    }
+                    if (t.indexOf(textend) >= 0) {
+                        text = false;
+                        ConcurrentLog.info("WIKITRANSLATION", "[INJECT] Title: " + title);
+                        if (sb.length() == 0) {
+                            ConcurrentLog.info("WIKITRANSLATION", "ERROR: " + title + " has empty content");
                             continue;
                         }
-                        sb.append(t.substring(q + 1));
+                        record = newRecord(this.hostport, this.urlStub, title, sb, pageOffset, pageIndex);
+                        enqueue(out, converters.submit(record), writerResult);
+                        this.count++;
+                        sb = new StringBuilder(200);
+                        continue;
                     }
-                    continue;
-                }
-                if (t.indexOf(textend) >= 0) {
-                    text = false;
-                    ConcurrentLog.info("WIKITRANSLATION", "[INJECT] Title: " + title);
-                    if (sb.length() == 0) {
-                        ConcurrentLog.info("WIKITRANSLATION", "ERROR: " + title + " has empty content");
+                    if (t.indexOf(pageend) >= 0) {
+                        page = false;
                         continue;
                     }
-                    record = newRecord(this.hostport, this.urlStub, title, sb);
-                    try {
-                        in.put(record);
-                        this.count++;
-                    } catch (final InterruptedException e1) {
-                        ConcurrentLog.logException(e1);
+                    if ((p = t.indexOf("<title>",0)) >= 0) {
+                        title = t.substring(p + 7);
+                        q = title.indexOf("</title>",0);
+                        if (q >= 0) title = title.substring(0, q);
+                        continue;
+                    }
+                    if (text) {
+                        sb.append(t);
+                        sb.append('\n');
                     }
-                    sb = new StringBuilder(200);
-                    continue;
-                }
-                if (t.indexOf(pageend) >= 0) {
-                    page = false;
-                    continue;
-                }
-                if ((p = t.indexOf("<title>",0)) >= 0) {
-                    title = t.substring(p + 7);
-                    q = title.indexOf("</title>",0);
-                    if (q >= 0) title = title.substring(0, q);
-                    continue;
-                }
-                if (text) {
-                    sb.append(t);
-                    sb.append('\n');
                 }
             }
-
-            try {
-                for (int i = 0; i < threads; i++) {
-                    in.put(poison);
-                }
-                for (int i = 0; i < threads; i++) {
-                    consumerResults[i].get(10000, TimeUnit.MILLISECONDS);
-                }
-            } catch (final Exception e) {
-            	this.errorMessage = e.getMessage();
-                ConcurrentLog.logException(e);
-            } finally {
-                out.put(poison); // output thread condition (for file.close)
-                writerResult.get(10000, TimeUnit.MILLISECONDS);
-            }
+            enqueue(out, poisonFuture, writerResult); // output thread condition (for file.close)
+            if (writerResult.get() == null) throw new IOException("the surrogate writer has failed, see log");
+            completed = true;
         } catch (final Exception e) {
         	this.errorMessage = e.getMessage();
             ConcurrentLog.logException(e);
         } finally {
         	if(reader != null) {
-                try {
-					reader.close();
-				} catch (IOException e) {
-					ConcurrentLog.warn("WIKITRANSLATION", "Could not close dump reader : " + e.getMessage());
-				}
+                reader.close();
         	}
-            try {
-                out.put(poison); // out keeps output file open until poisened, to close file if exception happend in this block
-            } catch (InterruptedException ex) { }
+            if (converters != null) {
+                converters.shutdown(); // the submitted records are still converted for the writer
+            }
+            if (writerResult != null) try {
+                enqueue(out, poisonFuture, writerResult); // out keeps output file open until poisened, to close file if exception happend in this block
+            } catch (final InterruptedException | IOException ex) { }
+            if (completed && this.errorMessage == null && checkpoint != null) {
+                checkpoint.delete();
+            }
+        }
+    }
+
+    /**
+     * put a record into the writer queue, giving up when the writer has terminated
+     * and will never take it, e.g. after a write failure
+     * @throws IOException if the writer has terminated
+     */
+    private static void enqueue(final BlockingQueue<Future<wikiparserrecord>> out, final Future<wikiparserrecord> record, final Future<Integer> writerResult) throws InterruptedException, IOException {
+        while (!out.offer(record, 1, TimeUnit.SECONDS)) {
+            if (writerResult.isDone()) throw new IOException("the surrogate writer has terminated");
+        }
+    }
+
+    private static byte[] concat(final byte[] a, final byte[] b, final int off, final int len) {
+        if (a == null) {
+            final byte[] c = new byte[len];
+            System.arraycopy(b, off, c, 0, len);
+            return c;
         }
+        final byte[] c = new byte[a.length + len];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, off, c, a.length, len);
+        return c;
     }
 
     public static void checkIndex(final File mediawikixml) {
@@ -511,17 +562,45 @@ public class MediawikiImporter extends Thread implements Importer {
     public wikiparserrecord newRecord(final String hostport, final String urlStub, final String title, final StringBuilder sb) {
         return new wikiparserrecord(hostport, urlStub, title, sb);
     }
+    public wikiparserrecord newRecord(final String hostport, final String urlStub, final String title, final StringBuilder sb, final long offset, final long index) {
+        final wikiparserrecord record = new wikiparserrecord(hostport, urlStub, title, sb);
+        record.offset = offset;
+        record.index = index;
+        return record;
+    }
 
-    public class wikiparserrecord {
+    public class wikiparserrecord implements Callable<wikiparserrecord> {
         public String title;
         String source, html, hostport, urlStub;
         AnchorURL url;
         Document document;
+        long offset, index; // dump position : the page is the index-th page beginning at the dump offset
         public wikiparserrecord(final String hostport, final String urlStub, final String title, final StringBuilder sb) {
             this.title = title;
             this.hostport = hostport;
             this.urlStub = urlStub;
             this.source = (sb == null) ? null : sb.toString();
+            this.offset = 0;
+            this.index = -1;
+        }
+        /**
+         * convert the wiki source to a document. On failure the document remains null.
+         */
+        @Override
+        public wikiparserrecord call() {
+            try {
+                genHTML();
+                genDocument();
+            } catch (final RuntimeException e) {
+                ConcurrentLog.logException(e);
+            } catch (final Parser.Failure e) {
+                ConcurrentLog.logException(e);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+            this.source = null;
+            this.html = null;
+            return this;
         }
         public void genHTML() throws IOException {
             try {
@@ -645,84 +724,64 @@ public class MediawikiImporter extends Thread implements Importer {
         return null;
     }
 
-    private static class convertConsumer implements Callable<Integer> {
-
-        private final BlockingQueue<wikiparserrecord> in, out;
-        private final wikiparserrecord poison;
-
-        public convertConsumer(final BlockingQueue<wikiparserrecord> in, final BlockingQueue<wikiparserrecord> out, final wikiparserrecord poison) {
-            this.poison = poison;
-            this.in = in;
-            this.out = out;
-        }
-
-        @Override
-        public Integer call() {
-            wikiparserrecord record;
-            try {
-                while(true) {
-                    record = this.in.take();
-                    if (record == this.poison) {
-                        ConcurrentLog.info("WIKITRANSLATION", "convertConsumer / got poison");
-                        break;
-                    }
-                    try {
-                        record.genHTML();
-                        record.genDocument();
-                        this.out.put(record);
-                    } catch (final RuntimeException e) {
-                        ConcurrentLog.logException(e);
-                    } catch (final Parser.Failure e) {
-                        ConcurrentLog.logException(e);
-                    } catch (final IOException e) {
-						// TODO Auto-generated catch block
-                        ConcurrentLog.logException(e);
-					}
-                }
-            } catch (final InterruptedException e) {
-                ConcurrentLog.logException(e);
-            }
-            ConcurrentLog.info("WIKITRANSLATION", "*** convertConsumer has terminated");
-            return Integer.valueOf(0);
-        }
-
-    }
-
     private static class convertWriter implements Callable<Integer> {
 
-        private final BlockingQueue<wikiparserrecord> in;
+        private final BlockingQueue<Future<wikiparserrecord>> in;
         private final wikiparserrecord poison;
         private OutputStreamWriter osw;
         private final String targetstub;
         private final File targetdir;
+        private final ImportCheckpoint checkpoint;
         private int fc, rc;
+        private long count;
         private String outputfilename;
-
+        private wikiparserrecord last;
+        private boolean failed;
+
+        /**
+         * @param in the converted records in dump order
+         * @param poison the record terminating the queue
+         * @param targetdir the directory of the surrogate files
+         * @param targetstub the name stub of the surrogate files
+         * @param checkpoint updated each time a surrogate file is completely written
+         * @param fc the number of the first surrogate file to write
+         */
         public convertWriter(
-                final BlockingQueue<wikiparserrecord> in,
+                final BlockingQueue<Future<wikiparserrecord>> in,
                 final wikiparserrecord poison,
                 final File targetdir,
-                final String targetstub) {
+                final String targetstub,
+                final ImportCheckpoint checkpoint,
+                final int fc) {
             this.poison = poison;
             this.in = in;
             this.osw = null;
             this.targetdir = targetdir;
             this.targetstub = targetstub;
-            this.fc = 0;
+            this.checkpoint = checkpoint;
+            this.fc = fc;
             this.rc = 0;
+            this.count = checkpoint.get("count", 0);
             this.outputfilename = null;
+            this.last = null;
+            this.failed = false;
         }
 
+        /**
+         * @return the number of written records, or null if a record was lost or could not be written
+         */
         @Override
         public Integer call() {
             wikiparserrecord record;
             try {
                 while(true) {
-                    record = this.in.take();
+                    record = this.in.take().get();
                     if (record == this.poison) {
                         ConcurrentLog.info("WIKITRANSLATION", "convertConsumer / got poison");
                         break;
                     }
+                    this.last = record;
+                    if (record.document == null) continue;
 
                     if (this.osw == null) {
                         // start writing a new file
@@ -733,40 +792,66 @@ public class MediawikiImporter extends Thread implements Importer {
                     ConcurrentLog.info("WIKITRANSLATION", "[CONSUME] Title: " + record.title);
                     record.document.writeXML(this.osw);
                     this.rc++;
+                    this.count++;
                     if (this.rc >= 10000) {
-                        this.osw.write(SurrogateReader.SURROGATES_MAIN_ELEMENT_CLOSE + "\n");
-                        this.osw.close();
-                        final String finalfilename = this.targetstub + "." + this.fc + ".xml";
-                        new File(this.targetdir, this.outputfilename).renameTo(new File(this.targetdir, finalfilename));
-                        this.rc = 0;
-                        this.fc++;
-                        this.outputfilename = this.targetstub + "." + this.fc + ".xml.prt";
-                        this.osw = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(new File(this.targetdir, this.outputfilename))), StandardCharsets.UTF_8);
-                        this.osw.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" + SurrogateReader.SURROGATES_MAIN_ELEMENT_OPEN + "\n");
+                        finishFile();
                     }
                 }
             } catch (final InterruptedException e) {
+                this.failed = true;
                 ConcurrentLog.logException(e);
+            } catch (final ExecutionException e) {
+                // a lost record must be converted again when the import is resumed
+                this.failed = true;
+                ConcurrentLog.logException(e.getCause());
             } catch (final UnsupportedEncodingException e) {
+                this.failed = true;
                 ConcurrentLog.logException(e);
             } catch (final FileNotFoundException e) {
+                this.failed = true;
                 ConcurrentLog.logException(e);
             } catch (final IOException e) {
+                this.failed = true;
                 ConcurrentLog.logException(e);
             } finally {
                 try {
-                    if (osw != null) { // maybe null on poison (immediately)
-                        this.osw.write(SurrogateReader.SURROGATES_MAIN_ELEMENT_CLOSE + "\n");
-                        this.osw.close();
-                        final String finalfilename = this.targetstub + "." + this.fc + ".xml";
-                        new File(this.targetdir, this.outputfilename).renameTo(new File(this.targetdir, finalfilename));
+                    if (this.osw != null) { // maybe null on poison (immediately)
+                        if (this.failed) {
+                            // keep the incomplete file out of the surrogate reader and the checkpoint at the last complete file
+                            this.osw.close();
+                            this.osw = null;
+                        } else {
+                            finishFile();
+                        }
                     }
                 } catch (final IOException e) {
+                    this.failed = true;
                     ConcurrentLog.logException(e);
                 }
             }
             ConcurrentLog.info("WIKITRANSLATION", "*** convertWriter has terminated");
-            return Integer.valueOf(0);
+            return this.failed ? null : Integer.valueOf((int) this.count);
+        }
+
+        /**
+         * close the current surrogate file, make it visible to the surrogate reader
+         * and record the dump position following its last page in the checkpoint
+         */
+        private void finishFile() throws IOException {
+            this.osw.write(SurrogateReader.SURROGATES_MAIN_ELEMENT_CLOSE + "\n");
+            this.osw.close();
+            this.osw = null;
+            final String finalfilename = this.targetstub + "." + this.fc + ".xml";
+            new File(this.targetdir, this.outputfilename).renameTo(new File(this.targetdir, finalfilename));
+            this.rc = 0;
+            this.fc++;
+            if (this.last != null && this.last.index >= 0) {
+                this.checkpoint.set("offset", this.last.offset);
+                this.checkpoint.set("skip", this.last.index + 1);
+                this.checkpoint.set("file", this.fc);
+                this.checkpoint.set("count", this.count);
+                this.checkpoint.save();
+            }
         }
 
     }
@@ -22,11 +22,23 @@
  */
 package net.yacy.document.importer;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.protocol.HeaderFramework;
@@ -37,6 +49,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.document.TextParser;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.search.Switchboard;
 import net.yacy.server.http.ChunkedInputStream;
 import org.jwat.common.HeaderLine;
@@ -55,24 +68,44 @@ import org.jwat.warc.WarcRecord;
  *
  * http://archive-access.sourceforge.net/warc/warc_file_format-0.9.html
  * http://archive-access.sourceforge.net/warc/
+ *
+ * Large local warc files are split into byte ranges which are read concurrently,
+ * each range starting at the first record beginning inside the range. The offset
+ * of the next record of each range is saved in a {@link ImportCheckpoint} next to
+ * the warc file, so that an interrupted import resumes where it stopped.
  */
 public class WarcImporter extends Thread implements Importer {
 
     static public WarcImporter job; // static object to assure only one importer is running (if started from a servlet, this object is used to store the thread)
 
+    /** minimum size of a warc file to be read concurrently in byte ranges */
+    private static final long PARALLEL_MIN_SIZE = 64L * 1024L * 1024L;
+
+    /** number of byte ranges per reader thread, more ranges balance the load better */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** time between two checkpoint writes */
+    private static final long CHECKPOINT_INTERVAL = 10000;
+
+    /** buffer size of the warc readers */
+    private static final int READER_BUFFER_SIZE = 64 * 1024;
+
     private final InputStream source; // current input warc archive
+    private final File file; // input warc file, or null when reading from a stream
     private String name; // file name of input source
-    
-    private int recordCnt; // number of responses indexed (for statistic)
+
+    private final AtomicInteger recordCnt; // number of responses indexed (for statistic)
     private long startTime; // (for statistic)
     private final long sourceSize; // length of the input source (for statistic)
-    private long consumed; // bytes consumed from input source (for statistic)
-    private boolean abort = false; // flag to signal stop of import
+    private final AtomicLong consumed; // bytes consumed from input source (for statistic)
+    private volatile boolean abort = false; // flag to signal stop of import
 
     public WarcImporter(InputStream f) {
     	super("WarcImporter - from InputStream");
         source = f;
-        recordCnt = 0;
+        file = null;
+        recordCnt = new AtomicInteger(0);
+        consumed = new AtomicLong(0);
         sourceSize = -1;
     }
 
@@ -91,8 +124,11 @@ public class WarcImporter extends Thread implements Importer {
     public WarcImporter(File f) throws FileNotFoundException{
        super("WarcImporter - from file " + f.getName());
        name = f.getName();
+       file = f;
        sourceSize = f.length();
        source = new FileInputStream(f);
+       recordCnt = new AtomicInteger(0);
+       consumed = new AtomicLong(0);
     }
 
     /**
@@ -104,91 +140,296 @@ public class WarcImporter extends Thread implements Importer {
      */
     public void indexWarcRecords(InputStream f) throws IOException {
 
-        byte[] content;
         job = this;
         startTime = System.currentTimeMillis();
 
         WarcReader localwarcReader = WarcReaderFactory.getReader(f);
         WarcRecord wrec = localwarcReader.getNextRecord();
         while (wrec != null && !abort) {
+            indexWarcRecord(wrec);
+            this.consumed.set(localwarcReader.getConsumed());
+            wrec = localwarcReader.getNextRecord();
+        }
+        localwarcReader.close();
+        ConcurrentLog.info("WarcImporter", "Indexed " + recordCnt + " documents");
+        job = null;
+    }
 
-            HeaderLine hl = wrec.getHeader(WarcConstants.FN_WARC_TYPE);
-            if (hl != null && hl.value.equals(WarcConstants.RT_RESPONSE)) { // filter responses
+    /**
+     * Reads a local Warc file concurrently in byte ranges and adds all contained
+     * responses to the index. Progress is saved in a checkpoint file, an
+     * interrupted import of the same file is resumed from there.
+     *
+     * @param warcFile the local warc file, plain or gzip'd
+     * @throws IOException
+     */
+    public void indexWarcRecordsParallel(final File warcFile) throws IOException {
+        job = this;
+        startTime = System.currentTimeMillis();
 
-                hl = wrec.getHeader(WarcConstants.FN_WARC_TARGET_URI);
-                DigestURL location = new DigestURL(hl.value);
+        final boolean compressed;
+        final InputStream probe = new BufferedInputStream(new FileInputStream(warcFile), READER_BUFFER_SIZE);
+        try {
+            final WarcReader probeReader = WarcReaderFactory.getReader(probe);
+            compressed = probeReader.isCompressed();
+            probeReader.close();
+        } finally {
+            probe.close();
+        }
 
-                HttpHeader http = wrec.getHttpHeader();
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(
+                new File(warcFile.getAbsolutePath() + ImportCheckpoint.EXTENSION), warcFile.getName(), warcFile.length());
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        final int rangeCount = (int) checkpoint.get("ranges", threads * RANGES_PER_THREAD);
+        checkpoint.set("ranges", rangeCount);
+        final long rangeSize = warcFile.length() / rangeCount + 1;
+        final long[] next = new long[rangeCount];
+        final boolean[] aligned = new boolean[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            final long stored = checkpoint.get("range." + i + ".next", -1);
+            aligned[i] = stored >= 0; // stored offsets are record starts
+            next[i] = aligned[i] ? stored : i * rangeSize;
+            this.consumed.addAndGet(next[i] - i * rangeSize);
+        }
+        this.recordCnt.set((int) checkpoint.get("count", 0));
 
-                if (http != null && http.statusCode == 200) { // process http response header OK (status 200)
+        final ExecutorService service = Executors.newFixedThreadPool(threads,
+                new NamePrefixThreadFactory(WarcImporter.class.getSimpleName() + ".range"));
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            final int range = i;
+            final long end = Math.min(warcFile.length(), (i + 1) * rangeSize);
+            results.add(service.submit(() -> indexRange(warcFile, compressed, range, next, aligned, end)));
+        }
+        service.shutdown();
 
-                    if (TextParser.supportsMime(http.contentType) == null) { // check availability of parser
+        // save the checkpoint regularly until all ranges are done
+        try {
+            while (!service.awaitTermination(CHECKPOINT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                saveCheckpoint(checkpoint, next, aligned);
+            }
+            for (final Future<Integer> result : results) {
+                result.get();
+            }
+        } catch (final InterruptedException e) {
+            this.abort = true;
+            service.shutdownNow();
+        } catch (final ExecutionException e) {
+            this.abort = true;
+            ConcurrentLog.warn("WarcImporter", "range import failed: " + e.getCause().getMessage());
+        }
+        if (this.abort) {
+            saveCheckpoint(checkpoint, next, aligned);
+            ConcurrentLog.info("WarcImporter", "Import interrupted after " + recordCnt + " documents, progress saved in " + checkpoint.getFile());
+        } else {
+            checkpoint.delete();
+            ConcurrentLog.info("WarcImporter", "Indexed " + recordCnt + " documents");
+        }
+        job = null;
+    }
 
-                        InputStream istream = wrec.getPayloadContent();
-                        hl = http.getHeader(HeaderFramework.TRANSFER_ENCODING);
-                        if (hl != null && hl.value.contains("chunked")) {
-                            // because chunked stream.read doesn't read source fully, make sure all chunks are read
-                            istream = new ChunkedInputStream(istream);
-                            final ByteBuffer bbuffer = new ByteBuffer();
-                            int c;
-                            while ((c = istream.read()) >= 0) {
-                                bbuffer.append(c);
-                            }
-                            content = bbuffer.getBytes();
-                        } else {
-                            content = new byte[(int) http.getPayloadLength()];
-                            istream.read(content, 0, content.length);
-                        }
-                        istream.close();
+    private void saveCheckpoint(final ImportCheckpoint checkpoint, final long[] next, final boolean[] aligned) {
+        synchronized (next) {
+            for (int i = 0; i < next.length; i++) {
+                // ranges without a known record start are searched again on resume
+                if (aligned[i]) checkpoint.set("range." + i + ".next", next[i]);
+            }
+        }
+        checkpoint.set("count", this.recordCnt.get());
+        checkpoint.save();
+    }
 
-                        RequestHeader requestHeader = new RequestHeader();
+    /**
+     * Index all records beginning inside a byte range of the warc file.
+     * @param warcFile the warc file
+     * @param compressed true when the file is a gzip'd warc file
+     * @param range the range number
+     * @param next offsets of the next record to process, per range. Updated while processing.
+     * @param aligned per range, true when next[range] is known to be the start of a record. Updated while processing.
+     * @param end the end offset (exclusive) of the range
+     * @return the number of records processed in this range
+     * @throws IOException
+     */
+    private int indexRange(final File warcFile, final boolean compressed, final int range, final long[] next, final boolean[] aligned, final long end) throws IOException {
+        long start = next[range];
+        if (start >= end) return 0; // range completed in a previous run
+        if (!aligned[range]) {
+            start = findRecordStart(warcFile, compressed, start, end);
+            synchronized (next) {
+                next[range] = start < 0 ? end : start;
+                aligned[range] = true;
+            }
+            if (start < 0) return 0; // no record begins in this range
+        }
+        int count = 0;
+        final FileInputStream fis = new FileInputStream(warcFile);
+        try {
+            skipFully(fis, start);
+            final InputStream in = new BufferedInputStream(fis, READER_BUFFER_SIZE);
+            final WarcReader reader = compressed ? WarcReaderFactory.getReaderCompressed(in, READER_BUFFER_SIZE) : WarcReaderFactory.getReaderUncompressed(in, READER_BUFFER_SIZE);
+            long recordStart = start;
+            WarcRecord wrec;
+            while (!this.abort && (wrec = reader.getNextRecord()) != null) {
+                final long previous = recordStart;
+                recordStart = start + wrec.getStartOffset();
+                // all records before this one are processed
+                synchronized (next) { next[range] = recordStart; }
+                this.consumed.addAndGet(recordStart - previous);
+                if (recordStart >= end) break;
+                indexWarcRecord(wrec);
+                count++;
+            }
+            if (!this.abort) {
+                synchronized (next) { next[range] = end; }
+            }
+            reader.close();
+        } finally {
+            fis.close();
+        }
+        return count;
+    }
+
+    /**
+     * Find the offset of the first warc record starting inside the given range.
+     * Candidates are gzip member starts for compressed files, or "WARC/" at a line
+     * start for plain files, and are verified by reading a record header.
+     * @return the record start offset or -1 if no record starts in the range
+     */
+    private static long findRecordStart(final File warcFile, final boolean compressed, final long from, final long end) throws IOException {
+        if (from == 0) return 0;
+        final byte[] pattern = compressed ? new byte[]{(byte) 0x1f, (byte) 0x8b, (byte) 0x08} : ASCII.getBytes("\nWARC/");
+        final int shift = compressed ? 0 : 1; // the record starts after the line feed
+        final RandomAccessFile raf = new RandomAccessFile(warcFile, "r");
+        try {
+            final byte[] buffer = new byte[READER_BUFFER_SIZE];
+            long pos = from - shift;
+            while (pos < end) {
+                raf.seek(pos);
+                final int len = raf.read(buffer);
+                if (len < pattern.length) return -1;
+                for (int i = 0; i <= len - pattern.length && pos + i + shift < end; i++) {
+                    int j = 0;
+                    while (j < pattern.length && buffer[i + j] == pattern[j]) j++;
+                    if (j == pattern.length && isRecordStart(warcFile, compressed, pos + i + shift)) return pos + i + shift;
+                }
+                pos += len - pattern.length + 1;
+            }
+            return -1;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean isRecordStart(final File warcFile, final boolean compressed, final long offset) {
+        try {
+            final FileInputStream fis = new FileInputStream(warcFile);
+            try {
+                skipFully(fis, offset);
+                final InputStream in = new BufferedInputStream(fis, READER_BUFFER_SIZE);
+                final WarcReader reader = compressed ? WarcReaderFactory.getReaderCompressed(in, READER_BUFFER_SIZE) : WarcReaderFactory.getReaderUncompressed(in, READER_BUFFER_SIZE);
+                final WarcRecord wrec = reader.getNextRecord();
+                return wrec != null && wrec.getStartOffset() == 0
+                        && wrec.getHeader(WarcConstants.FN_WARC_TYPE) != null
+                        && wrec.getHeader(WarcConstants.FN_WARC_RECORD_ID) != null;
+            } finally {
+                fis.close();
+            }
+        } catch (final IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void skipFully(final InputStream in, long n) throws IOException {
+        while (n > 0) {
+            final long skipped = in.skip(n);
+            if (skipped <= 0) throw new IOException("unexpected end of file");
+            n -= skipped;
+        }
+    }
 
-                        ResponseHeader responseHeader = new ResponseHeader(http.statusCode);
-                        for (HeaderLine hx : http.getHeaderList()) { // include all original response headers for parser
-                            responseHeader.put(hx.name, hx.value);
+    /**
+     * Adds a response record to the index, other record types are ignored.
+     * @param wrec a warc record
+     * @throws IOException
+     */
+    private void indexWarcRecord(final WarcRecord wrec) throws IOException {
+        byte[] content;
+        HeaderLine hl = wrec.getHeader(WarcConstants.FN_WARC_TYPE);
+        if (hl != null && hl.value.equals(WarcConstants.RT_RESPONSE)) { // filter responses
+
+            hl = wrec.getHeader(WarcConstants.FN_WARC_TARGET_URI);
+            DigestURL location = new DigestURL(hl.value);
+
+            HttpHeader http = wrec.getHttpHeader();
+
+            if (http != null && http.statusCode == 200) { // process http response header OK (status 200)
+
+                if (TextParser.supportsMime(http.contentType) == null) { // check availability of parser
+
+                    InputStream istream = wrec.getPayloadContent();
+                    hl = http.getHeader(HeaderFramework.TRANSFER_ENCODING);
+                    if (hl != null && hl.value.contains("chunked")) {
+                        // because chunked stream.read doesn't read source fully, make sure all chunks are read
+                        istream = new ChunkedInputStream(istream);
+                        final ByteBuffer bbuffer = new ByteBuffer();
+                        int c;
+                        while ((c = istream.read()) >= 0) {
+                            bbuffer.append(c);
                         }
+                        content = bbuffer.getBytes();
+                    } else {
+                        content = new byte[(int) http.getPayloadLength()];
+                        istream.read(content, 0, content.length);
+                    }
+                    istream.close();
 
-                        final Request request = new Request(
-                                ASCII.getBytes(Switchboard.getSwitchboard().peers.mySeed().hash),
-                                location,
-                                requestHeader.referer() == null ? null : requestHeader.referer().hash(),
-                                "warc",
-                                responseHeader.lastModified(),
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.handle(),
-                                0,
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.timezoneOffset());
-
-                        final Response response = new Response(
-                                request,
-                                requestHeader,
-                                responseHeader,
-                                Switchboard.getSwitchboard().crawler.defaultSurrogateProfile,
-                                false,
-                                content
-                        );
-
-                        Switchboard.getSwitchboard().toIndexer(response);
-                        recordCnt++;
+                    RequestHeader requestHeader = new RequestHeader();
+
+                    ResponseHeader responseHeader = new ResponseHeader(http.statusCode);
+                    for (HeaderLine hx : http.getHeaderList()) { // include all original response headers for parser
+                        responseHeader.put(hx.name, hx.value);
                     }
+
+                    final Request request = new Request(
+                            ASCII.getBytes(Switchboard.getSwitchboard().peers.mySeed().hash),
+                            location,
+                            requestHeader.referer() == null ? null : requestHeader.referer().hash(),
+                            "warc",
+                            responseHeader.lastModified(),
+                            Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.handle(),
+                            0,
+                            Switchboard.getSwitchboard().crawler.defaultSurrogateProfile.timezoneOffset());
+
+                    final Response response = new Response(
+                            request,
+                            requestHeader,
+                            responseHeader,
+                            Switchboard.getSwitchboard().crawler.defaultSurrogateProfile,
+                            false,
+                            content
+                    );
+
+                    Switchboard.getSwitchboard().toIndexer(response);
+                    recordCnt.incrementAndGet();
                 }
             }
-            this.consumed = localwarcReader.getConsumed();
-            wrec = localwarcReader.getNextRecord();
         }
-        localwarcReader.close();
-        ConcurrentLog.info("WarcImporter", "Indexed " + recordCnt + " documents");
-        job = null;
     }
 
     @Override
     public void run() {
         try {
-            this.indexWarcRecords(this.source);
+            if (this.file != null && this.file.length() >= PARALLEL_MIN_SIZE) {
+                this.source.close(); // the ranges are read with their own streams
+                this.indexWarcRecordsParallel(this.file);
+            } else {
+                this.indexWarcRecords(this.source);
+            }
         } catch (IOException ex) {
             ConcurrentLog.info("WarcImporter", ex.getMessage());
         }
     }
-    
+
     /**
      * Set the flag to stop import
      */
@@ -211,7 +452,7 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public int count() {
-        return this.recordCnt;
+        return this.recordCnt.get();
     }
 
     /**
@@ -220,8 +461,8 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public int speed() {
-        if (this.recordCnt == 0) return 0;
-        return (int) (this.recordCnt / Math.max(0L, runningTime() ));
+        if (this.recordCnt.get() == 0) return 0;
+        return (int) (this.recordCnt.get() / Math.max(1L, runningTime() ));
     }
 
     /**
@@ -240,11 +481,12 @@ public class WarcImporter extends Thread implements Importer {
      */
     @Override
     public long remainingTime() {
-        if (this.consumed == 0) {
+        final long consumedBytes = this.consumed.get();
+        if (consumedBytes == 0) {
             return 0;
         }
-		long speed = this.consumed / runningTime();
-		return (this.sourceSize - this.consumed) / speed;
+		long speed = Math.max(1L, consumedBytes / Math.max(1L, runningTime()));
+		return Math.max(0L, this.sourceSize - consumedBytes) / speed;
     }
 
     @Override
@@ -0,0 +1,227 @@
+// ContainerEntryParser.java
+// ---------------------------
+// part of YaCy
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.document.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.document.AbstractParser;
+import net.yacy.document.Document;
+import net.yacy.document.Parser;
+import net.yacy.document.TextParser;
+import net.yacy.document.VocabularyScraper;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * Parses the entries of a container document (zip, tar, 7zip archives) on a
+ * shared bounded thread pool, so that one large archive does not keep a single
+ * indexing thread busy while other cores are idle.
+ * <p>
+ * Entries are read from the archive stream into memory and handed over to the
+ * pool : no temporary files are written. Entries larger than
+ * {@link #MAX_BUFFERED_ENTRY_SIZE}, entries submitted while memory is short and
+ * entries of nested containers (submitted from a pool thread) are parsed
+ * directly from the archive stream in the calling thread. Sub documents are
+ * always added to the container document in the archive order.
+ * </p>
+ * <p>
+ * Usage : create one instance per parsed container, {@link #submit} each entry
+ * while iterating over the archive, then call {@link #finish()}.
+ * </p>
+ */
+public class ContainerEntryParser {
+
+	/** Maximum size of an entry buffered in memory to be parsed concurrently */
+	public static final int MAX_BUFFERED_ENTRY_SIZE = 16 * 1024 * 1024;
+
+	/** Number of concurrent sub parse threads shared by all container parsers */
+	private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/** Marks the threads of the pool, to parse nested containers inline and prevent pool starvation */
+	private static final ThreadLocal<Boolean> POOL_THREAD = new ThreadLocal<Boolean>();
+
+	/**
+	 * The shared pool. Its queue is bounded : when it is full the task is run by
+	 * the submitting thread, which also limits the amount of buffered entries.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR;
+	static {
+		final ThreadFactory prefixFactory = new NamePrefixThreadFactory(ContainerEntryParser.class.getSimpleName());
+		EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 10, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(2 * POOL_SIZE), new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = prefixFactory.newThread(new Runnable() {
+							@Override
+							public void run() {
+								POOL_THREAD.set(Boolean.TRUE);
+								r.run();
+							}
+						});
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	/** The container document receiving the entries sub documents */
+	private final Document container;
+
+	/** Name used in log messages, such as "ZIP parser" */
+	private final String logName;
+
+	/** Pending parsing results, in archive order */
+	private final List<Future<Document[]>> pending;
+
+	/** Entry names, at the same indexes as pending */
+	private final List<String> names;
+
+	/**
+	 * @param container the document of the container, receiving the parsed entries as sub documents
+	 * @param logName name of the container parser used in log messages
+	 */
+	public ContainerEntryParser(final Document container, final String logName) {
+		this.container = container;
+		this.logName = logName;
+		this.pending = new ArrayList<Future<Document[]>>();
+		this.names = new ArrayList<String>();
+	}
+
+	/**
+	 * Submit an archive entry for parsing. At most size bytes are read from the
+	 * stream, which is never closed.
+	 *
+	 * @param name             the entry name, used in log messages
+	 * @param location         the URL of the entry
+	 * @param mime             the entry media type
+	 * @param ignoreClassNames an eventual set of CSS class names whose matching
+	 *                         html elements content should be ignored
+	 * @param scraper          a vocabulary scraper
+	 * @param timezoneOffset   the local time zone offset
+	 * @param depth            the crawl depth of the entry
+	 * @param size             the entry size in bytes
+	 * @param source           the archive stream positioned at the entry content
+	 * @throws IOException when reading the entry failed
+	 */
+	public void submit(final String name, final DigestURL location, final String mime,
+			final Set<String> ignoreClassNames, final VocabularyScraper scraper, final int timezoneOffset,
+			final int depth, final long size, final InputStream source) throws IOException {
+		final FutureTask<Document[]> task;
+		if (size > MAX_BUFFERED_ENTRY_SIZE || Boolean.TRUE.equals(POOL_THREAD.get())
+				|| !MemoryControl.request(3 * size, false)) {
+			/* parse inline, streaming from the archive */
+			task = new FutureTask<Document[]>(new Callable<Document[]>() {
+				@Override
+				public Document[] call() throws Exception {
+					return TextParser.parseSource(location, mime, null, ignoreClassNames, scraper, timezoneOffset, depth,
+							size, new CloseShieldInputStream(source));
+				}
+			});
+			task.run();
+		} else {
+			final byte[] content = FileUtils.read(source, (int) size);
+			task = new FutureTask<Document[]>(new Callable<Document[]>() {
+				@Override
+				public Document[] call() throws Exception {
+					return TextParser.parseSource(location, mime, null, ignoreClassNames, scraper, timezoneOffset, depth,
+							content);
+				}
+			});
+			EXECUTOR.execute(task);
+		}
+		this.pending.add(task);
+		this.names.add(name);
+	}
+
+	/**
+	 * Wait for all submitted entries and add their documents to the container in
+	 * archive order. Entries that failed to parse are logged and skipped.
+	 *
+	 * @return the container document
+	 * @throws InterruptedException when the current thread was interrupted. Pending
+	 *                              tasks are then cancelled.
+	 */
+	public Document finish() throws InterruptedException {
+		try {
+			for (int i = 0; i < this.pending.size(); i++) {
+				try {
+					final Document[] docs = this.pending.get(i).get();
+					if (docs != null) {
+						this.container.addSubDocuments(docs);
+					}
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause() == null ? e : e.getCause();
+					if (cause instanceof Parser.Failure) {
+						AbstractParser.log.warn(this.logName + " entry " + this.names.get(i) + ": " + cause.getMessage());
+					} else {
+						AbstractParser.log.warn(this.logName + " entry " + this.names.get(i) + ": " + cause.getMessage(), cause);
+					}
+				} catch (final IOException e) {
+					AbstractParser.log.warn(this.logName + " entry " + this.names.get(i) + ": " + e.getMessage());
+				}
+			}
+		} catch (final InterruptedException e) {
+			cancel();
+			throw e;
+		}
+		this.pending.clear();
+		this.names.clear();
+		return this.container;
+	}
+
+	/**
+	 * Cancel all pending entries, for example when reading the archive failed
+	 * with an unrecoverable error.
+	 */
+	public void cancel() {
+		for (final Future<Document[]> task : this.pending) {
+			task.cancel(true);
+		}
+		this.pending.clear();
+		this.names.clear();
+	}
+
+	/**
+	 * @return the number of entries submitted since the last call to {@link #finish()}
+	 */
+	public int size() {
+		return this.pending.size();
+	}
+}
@@ -94,12 +94,14 @@ public class sevenzipParser extends AbstractParser implements Parser {
         } catch (final IOException e) {
             throw new Parser.Failure("error opening 7zip archive: " + e.getMessage(), location);
         }
-        final SZParserExtractCallback aec = new SZParserExtractCallback(AbstractParser.log, archive, doc, location.getFile(), ignore_class_name, timezoneOffset);
+        final ContainerEntryParser entryParser = new ContainerEntryParser(doc, "7zip parser");
+        final SZParserExtractCallback aec = new SZParserExtractCallback(AbstractParser.log, archive, doc, location.getFile(), ignore_class_name, timezoneOffset, entryParser);
         AbstractParser.log.fine("processing archive contents...");
         try {
             archive.Extract(null, -1, 0, aec);
-            return doc;
+            return entryParser.finish();
         } catch (final IOException e) {
+            entryParser.cancel();
             if (e.getCause() instanceof InterruptedException)
                 throw (InterruptedException)e.getCause();
             if (e.getCause() instanceof Parser.Failure)
@@ -150,6 +152,7 @@ public class sevenzipParser extends AbstractParser implements Parser {
          private final String prefix;
          private Set<String> ignore_class_name;
          private final int timezoneOffset;
+         private final ContainerEntryParser entryParser;
 
          public SZParserExtractCallback(
                  final ConcurrentLog logger,
@@ -157,13 +160,15 @@ public class sevenzipParser extends AbstractParser implements Parser {
                  final Document doc,
                  final String prefix,
                  final Set<String> ignore_class_name,
-                 final int timezoneOffset) {
+                 final int timezoneOffset,
+                 final ContainerEntryParser entryParser) {
              super.Init(handler);
              this.log = logger;
              this.doc = doc;
              this.prefix = prefix;
              this.ignore_class_name = ignore_class_name;
              this.timezoneOffset = timezoneOffset;
+             this.entryParser = entryParser;
          }
 
         @Override
@@ -199,15 +204,14 @@ public class sevenzipParser extends AbstractParser implements Parser {
              } else try {
 
                  if (this.cfos != null) {
-                     // parse the file
-                     Document[] theDocs;
+                     // parse the file concurrently, the extracted content is already in memory
                      // workaround for relative links in file, normally '#' shall be used behind the location, see
                      // below for reversion of the effects
                      final AnchorURL url = AnchorURL.newAnchor(this.doc.dc_source(), this.prefix + "/" + super.filePath);
                      final String mime = TextParser.mimeOf(super.filePath.substring(super.filePath.lastIndexOf('.') + 1));
-                     theDocs = TextParser.parseSource(url, mime, null, this.ignore_class_name, new VocabularyScraper(), timezoneOffset, this.doc.getDepth() + 1, this.cfos.toByteArray());
-
-                     this.doc.addSubDocuments(theDocs);
+                     this.entryParser.submit(super.filePath, url, mime, this.ignore_class_name, new VocabularyScraper(), this.timezoneOffset,
+                             this.doc.getDepth() + 1, this.cfos.size(), new ByteArrayInputStream(this.cfos.toByteArray()));
+                     this.cfos = null;
                  }
              } catch (final Exception e) {
                  final IOException ex = new IOException("error parsing extracted content of " + super.filePath + ": " + e.getMessage());
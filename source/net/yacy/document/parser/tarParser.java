@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
@@ -45,7 +46,6 @@ import net.yacy.document.Document;
 import net.yacy.document.Parser;
 import net.yacy.document.TextParser;
 import net.yacy.document.VocabularyScraper;
-import net.yacy.kelondro.util.FileUtils;
 
 // this is a new implementation of this parser idiom using multiple documents as result set
 /**
@@ -86,50 +86,70 @@ public class tarParser extends AbstractParser implements Parser {
                 throw new Parser.Failure("tar parser: " + e.getMessage(), location);
             }
         }
-        TarArchiveEntry entry;
         final TarArchiveInputStream tis = new TarArchiveInputStream(source);
         
         // create maindoc for this tar container
         final Document maindoc = createMainDocument(location, mimeType, charset, this);
-        // loop through the elements in the tar file and parse every single file inside
-        while (true) {
-            try {
-                File tmp = null;
-                entry = tis.getNextTarEntry();
-                if (entry == null) break;
-                if (entry.isDirectory() || entry.getSize() <= 0) continue;
-                final String name = entry.getName();
-                final int idx = name.lastIndexOf('.');
-                final String mime = TextParser.mimeOf((idx > -1) ? name.substring(idx+1) : "");
-                try {
-                    tmp = FileUtils.createTempFile(this.getClass(), name);
-                    FileUtils.copy(tis, tmp, entry.getSize());
-					/*
-					 * Create an appropriate sub location to prevent unwanted fallback to the tarparser on resources included in the archive. 
-					 * We use the tar file name as the parent sub path. Example : http://host/archive.tar/name.
-					 * Indeed if we create a sub location with a '#' separator such as http://host/archive.tar#name, the
-					 * extension of the URL is still ".tar", thus incorrectly making the tar parser
-					 * as a possible parser for the sub resource.
-					 */
-                    final DigestURL subLocation = new DigestURL(parentTarURL, name);
-                    final Document[] subDocs = TextParser.parseSource(subLocation, mime, null, ignore_class_name, scraper, timezoneOffset,	999, tmp);
-                    if (subDocs == null) {
-                    	continue;
-                    }
-                    maindoc.addSubDocuments(subDocs);
-                } catch (final Parser.Failure e) {
-                    AbstractParser.log.warn("tar parser entry " + name + ": " + e.getMessage());
-                } finally {
-                    if (tmp != null) FileUtils.deletedelete(tmp);
-                }
-            } catch (final IOException e) {
-                AbstractParser.log.warn("tar parser:" + e.getMessage());
-                break;
-            }
-        }
+        parseEntries(maindoc, parentTarURL, tis, ignore_class_name, scraper, timezoneOffset);
         return new Document[]{maindoc};
     }
 
+	/**
+	 * Parse all the entries of a tar archive without limits. The entries are read
+	 * from the stream one after the other and parsed concurrently.
+	 * 
+	 * @param maindoc
+	 *            the main document of the tar container receiving the sub documents
+	 * @param parentTarURL
+	 *            the base URL for the archive entries
+	 * @param tis
+	 *            the open tar archive stream
+	 * @param ignoreClassNames
+	 *            an eventual set of CSS class names whose matching html elements
+	 *            content should be ignored
+	 * @param scraper
+	 *            a vocabulary scraper
+	 * @param timezoneOffset
+	 *            the local time zone offset
+	 * @throws InterruptedException
+	 *             when the current thread was interrupted
+	 */
+	private void parseEntries(final Document maindoc, final DigestURL parentTarURL, final TarArchiveInputStream tis,
+			final Set<String> ignoreClassNames, final VocabularyScraper scraper, final int timezoneOffset)
+			throws InterruptedException {
+		final ContainerEntryParser entryParser = new ContainerEntryParser(maindoc, "tar parser");
+		// loop through the elements in the tar file and parse every single file inside
+		TarArchiveEntry entry;
+		while (true) {
+			try {
+				entry = tis.getNextTarEntry();
+				if (entry == null) {
+					break;
+				}
+				if (entry.isDirectory() || entry.getSize() <= 0) {
+					continue;
+				}
+				final String name = entry.getName();
+				final int idx = name.lastIndexOf('.');
+				final String mime = TextParser.mimeOf((idx > -1) ? name.substring(idx + 1) : "");
+				/*
+				 * Create an appropriate sub location to prevent unwanted fallback to the tarparser on resources included in the archive. 
+				 * We use the tar file name as the parent sub path. Example : http://host/archive.tar/name.
+				 * Indeed if we create a sub location with a '#' separator such as http://host/archive.tar#name, the
+				 * extension of the URL is still ".tar", thus incorrectly making the tar parser
+				 * as a possible parser for the sub resource.
+				 */
+				final DigestURL subLocation = new DigestURL(parentTarURL, name);
+				entryParser.submit(name, subLocation, mime, ignoreClassNames, scraper, timezoneOffset, 999,
+						entry.getSize(), tis);
+			} catch (final IOException e) {
+				AbstractParser.log.warn("tar parser:" + e.getMessage());
+				break;
+			}
+		}
+		entryParser.finish();
+	}
+
 	@Override
 	public boolean isParseWithLimitsSupported() {
 		return true;
@@ -147,6 +167,16 @@ public class tarParser extends AbstractParser implements Parser {
 		// create maindoc for this tar container
 		final Document maindoc = createMainDocument(location, mimeType, charset, this);
 
+		if (maxLinks == Integer.MAX_VALUE && maxBytes == Long.MAX_VALUE) {
+			/* No limits (for example when called from a compressor parser on a .tar.gz file) : entries can be parsed concurrently */
+			parseEntries(maindoc, parentTarURL, tis, new HashSet<String>(), scraper, timezoneOffset);
+			return new Document[] { maindoc };
+		}
+
+		/*
+		 * With limits, entries are parsed sequentially : the remaining links and bytes
+		 * budget of each entry depends on the results of the previous ones
+		 */
 		// loop through the elements in the tar file and parse every single file inside
 		TarArchiveEntry entry;
 		int totalProcessedLinks = 0;
@@ -24,7 +24,6 @@
 
 package net.yacy.document.parser;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
@@ -39,7 +38,6 @@ import net.yacy.document.Document;
 import net.yacy.document.Parser;
 import net.yacy.document.TextParser;
 import net.yacy.document.VocabularyScraper;
-import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 
 // this is a new implementation of this parser idiom using multiple documents as result set
@@ -103,10 +101,11 @@ public class zipParser extends AbstractParser implements Parser {
                 false,
                 new Date());
 
-        // loop through the elements in the zip file and parse every single file inside
+        // loop through the elements in the zip file and parse every single file inside,
+        // the entries content is parsed concurrently by the ContainerEntryParser
+        final ContainerEntryParser entryParser = new ContainerEntryParser(maindoc, "ZIP parser");
         while (true) {
             try {
-                File tmp = null;
                 if (zis.available() <= 0) break;
                 entry = zis.getNextEntry();
                 if (entry == null) break;
@@ -114,24 +113,15 @@ public class zipParser extends AbstractParser implements Parser {
                 final String name = entry.getName();
                 final int idx = name.lastIndexOf('.');
                 final String mime = TextParser.mimeOf((idx >= 0) ? name.substring(idx + 1) : "");
-                try {
-                    tmp = FileUtils.createTempFile(this.getClass(), name);
-                    FileUtils.copy(zis, tmp, entry.getSize());
-                    final DigestURL virtualURL = DigestURL.newURL(location, "#" + name);
-                    //this.log.logInfo("ZIP file parser: " + virtualURL.toNormalform(false, false));
-                    final Document[] docs = TextParser.parseSource(virtualURL, mime, null, ignore_class_name, scraper, timezoneOffset, 999, tmp);
-                    if (docs == null) continue;
-                    maindoc.addSubDocuments(docs);
-                } catch (final Parser.Failure e) {
-                    AbstractParser.log.warn("ZIP parser entry " + name + ": " + e.getMessage());
-                } finally {
-                    if (tmp != null) FileUtils.deletedelete(tmp);
-                }
+                final DigestURL virtualURL = DigestURL.newURL(location, "#" + name);
+                //this.log.logInfo("ZIP file parser: " + virtualURL.toNormalform(false, false));
+                entryParser.submit(name, virtualURL, mime, ignore_class_name, scraper, timezoneOffset, 999, entry.getSize(), zis);
             } catch (final IOException e) {
                 AbstractParser.log.warn("ZIP parser:" + e.getMessage());
                 break;
             }
         }
+        entryParser.finish();
         return new Document[]{maindoc};
     }
 }
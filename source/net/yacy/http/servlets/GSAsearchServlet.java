@@ -21,9 +21,7 @@ package net.yacy.http.servlets;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -47,12 +45,12 @@ import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.QueryResponseWriter;
 import org.apache.solr.response.ResultContext;
 import org.apache.solr.response.SolrQueryResponse;
-import org.apache.solr.util.FastWriter;
 
 import net.yacy.cora.date.ISO8601Formatter;
 import net.yacy.cora.federate.solr.Ranking;
 import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
 import net.yacy.cora.federate.solr.responsewriter.GSAResponseWriter;
+import net.yacy.cora.federate.solr.responsewriter.PooledFastWriter;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.util.ConcurrentLog;
@@ -246,7 +244,7 @@ public class GSAsearchServlet extends HttpServlet {
         */
         
         // write the result directly to the output stream
-        Writer ow = new FastWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        Writer ow = PooledFastWriter.wrap(out);
         try {
             responseWriter.write(ow, req, response);
             ow.flush();
@@ -0,0 +1,82 @@
+// ServletMethod.java
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.http.servlets;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+
+/**
+ * The resolved <code>respond(RequestHeader, serverObjects, serverSwitch)</code> method of a YaCy servlet class.
+ * The method is bound once to a method handle with a fixed type, so that calling it does not need the
+ * argument array, the access checks and the argument conversions of a reflective call.
+ */
+public final class ServletMethod {
+
+    /** the type of all servlet method handles; the various return types of the servlets are cast to Object */
+    private static final MethodType RESPOND_TYPE = MethodType.methodType(Object.class, RequestHeader.class, serverObjects.class, serverSwitch.class);
+
+    private final Class<?> servletClass;
+    private final MethodHandle respond;
+
+    private ServletMethod(final Class<?> servletClass, final MethodHandle respond) {
+        this.servletClass = servletClass;
+        this.respond = respond;
+    }
+
+    /**
+     * @param servletClass a YaCy servlet class
+     * @return the bound respond method of the servlet class
+     * @throws NoSuchMethodException when the class has no public static respond method
+     */
+    public static ServletMethod of(final Class<?> servletClass) throws NoSuchMethodException {
+        final Method m = servletClass.getMethod("respond", RequestHeader.class, serverObjects.class, serverSwitch.class);
+        if (!Modifier.isStatic(m.getModifiers())) throw new NoSuchMethodException("method 'respond' of " + servletClass.getName() + " is not static");
+        try {
+            return new ServletMethod(servletClass, MethodHandles.publicLookup().unreflect(m).asType(RESPOND_TYPE));
+        } catch (final IllegalAccessException e) {
+            throw new NoSuchMethodException("method 'respond' of " + servletClass.getName() + " is not accessible: " + e.getMessage());
+        }
+    }
+
+    /**
+     * call the servlet
+     * @return the servlet result, usually the patterns for the servlet template
+     * @throws InvocationTargetException when the servlet throws an exception, like a reflective call would do
+     */
+    public Object respond(final RequestHeader header, final serverObjects post, final serverSwitch env) throws InvocationTargetException {
+        try {
+            return this.respond.invokeExact(header, post, env);
+        } catch (final Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    public Class<?> getServletClass() {
+        return this.servletClass;
+    }
+}
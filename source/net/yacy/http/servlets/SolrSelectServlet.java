@@ -21,11 +21,9 @@
 package net.yacy.http.servlets;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -46,6 +44,7 @@ import net.yacy.cora.federate.solr.responsewriter.GSAResponseWriter;
 import net.yacy.cora.federate.solr.responsewriter.GrepHTMLResponseWriter;
 import net.yacy.cora.federate.solr.responsewriter.HTMLResponseWriter;
 import net.yacy.cora.federate.solr.responsewriter.OpensearchResponseWriter;
+import net.yacy.cora.federate.solr.responsewriter.PooledFastWriter;
 import net.yacy.cora.federate.solr.responsewriter.SnapshotImagesReponseWriter;
 import net.yacy.cora.federate.solr.responsewriter.SolrjResponseWriter;
 import net.yacy.cora.federate.solr.responsewriter.YJsonResponseWriter;
@@ -86,7 +85,6 @@ import org.apache.solr.search.DocList;
 import org.apache.solr.servlet.SolrRequestParsers;
 import org.apache.solr.servlet.cache.HttpCacheHeaderUtil;
 import org.apache.solr.servlet.cache.Method;
-import org.apache.solr.util.FastWriter;
 
 /*
  * taken from the Solr 3.6.0 code, which is now deprecated;
@@ -306,7 +304,7 @@ public class SolrSelectServlet extends HttpServlet {
                 if (responseWriter instanceof BinaryResponseWriter) {
                     ((BinaryResponseWriter) responseWriter).write(response.getOutputStream(), req, rsp);
                 } else {
-                    out = new FastWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+                    out = PooledFastWriter.wrap(response.getOutputStream());
                     responseWriter.write(out, req, rsp);
                     out.flush();
                 }
@@ -368,13 +366,13 @@ public class SolrSelectServlet extends HttpServlet {
                 
                 // write response body
                 if (responseWriter instanceof SolrjResponseWriter) {
-					out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+					out = PooledFastWriter.wrap(response.getOutputStream());
 					((SolrjResponseWriter) responseWriter).write(out, req,
 							defaultConnector ? CollectionSchema.CORE_NAME : WebgraphSchema.CORE_NAME, queryRsp);
                 } else if(responseWriter instanceof BinaryResponseWriter) {
                		((BinaryResponseWriter) responseWriter).write(response.getOutputStream(), req, rsp);
                	} else {
-               		out = new FastWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+               		out = PooledFastWriter.wrap(response.getOutputStream());
                		responseWriter.write(out, req, rsp);
                		out.flush();
                	}
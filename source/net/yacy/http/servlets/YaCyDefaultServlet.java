@@ -20,19 +20,13 @@ package net.yacy.http.servlets;
 
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ref.SoftReference;
-import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
@@ -90,7 +84,6 @@ import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 import net.yacy.server.serverClassLoader;
 import net.yacy.server.serverObjects;
-import net.yacy.server.serverSwitch;
 import net.yacy.server.servletProperties;
 import net.yacy.server.http.HTTPDFileHandler;
 import net.yacy.server.http.TemplateEngine;
@@ -136,7 +129,12 @@ public class YaCyDefaultServlet extends HttpServlet  {
     protected File _htLocalePath;
     protected File _htDocsPath;    
     protected static final serverClassLoader provider = new serverClassLoader(/*this.getClass().getClassLoader()*/);
-    protected ConcurrentHashMap<File, SoftReference<Method>> templateMethodCache = null;
+    /** the respond methods of all servlet classes used so far; the classes are never unloaded, so the methods are strongly held */
+    protected ConcurrentHashMap<File, ServletMethod> templateMethodCache = null;
+    /** the servlet class files of request targets, a fast path to skip the file system lookups */
+    protected ConcurrentHashMap<String, File> targetClassCache = null;
+    /** the targets with the highest request rates, resolved when the servlet is initialized */
+    protected static final String[] HOT_TARGETS = {"/yacysearch.html", "/yacy/search.html"};
     // settings for multipart/form-data
     protected static final File TMPDIR = new File(System.getProperty("java.io.tmpdir"));
     protected static final int SIZE_FILE_THRESHOLD = 1024 * 1024 * 1024; // 1GB is a lot but appropriate for multi-document pushed using the push_p.json servlet
@@ -177,7 +175,16 @@ public class YaCyDefaultServlet extends HttpServlet  {
         if (ConcurrentLog.isFine("FILEHANDLER")) {
             ConcurrentLog.fine("FILEHANDLER","YaCyDefaultServlet: resource base = " + _resourceBase);
         }
-        templateMethodCache = new ConcurrentHashMap<File, SoftReference<Method>>();
+        templateMethodCache = new ConcurrentHashMap<File, ServletMethod>();
+        targetClassCache = new ConcurrentHashMap<String, File>();
+        for (final String target: HOT_TARGETS) {
+            try {
+                final File targetClass = rewriteClassFile(target);
+                if (targetClass != null) rewriteMethod(targetClass);
+            } catch (final IOException | InvocationTargetException e) {
+                ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: could not resolve servlet for " + target);
+            }
+        }
     }
     
     /* ------------------------------------------------------------ */
@@ -655,8 +662,8 @@ public class YaCyDefaultServlet extends HttpServlet  {
     }
 
     
-    protected Object invokeServlet(final File targetClass, final RequestHeader request, final serverObjects args) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-        return rewriteMethod(targetClass).invoke(null, new Object[]{request, args, Switchboard.getSwitchboard()}); // add switchboard
+    protected Object invokeServlet(final File targetClass, final RequestHeader request, final serverObjects args) throws InvocationTargetException {
+        return rewriteMethod(targetClass).respond(request, args, Switchboard.getSwitchboard()); // add switchboard
     }
     
     /**
@@ -762,34 +769,28 @@ public class YaCyDefaultServlet extends HttpServlet  {
         }
     }
 
-    protected Method rewriteMethod(final File classFile) throws InvocationTargetException {
-        Method m = null;
+    /**
+     * @param target the path to a template
+     * @return the servlet class file of the template or null if the template has no servlet class
+     */
+    protected File rewriteClassFile(final String target) throws IOException {
+        File targetClass = targetClassCache.get(target);
+        if (targetClass != null) return targetClass;
+        targetClass = rewriteClassFile(_resourceBase.addPath(target).getFile());
+        // only existing classes are cached, which limits the cache to the number of servlets
+        if (targetClass != null) targetClassCache.put(target, targetClass);
+        return targetClass;
+    }
+
+    protected ServletMethod rewriteMethod(final File classFile) throws InvocationTargetException {
+        ServletMethod m = templateMethodCache.get(classFile);
+        if (m != null) return m;
         // now make a class out of the stream
         try {
-            final SoftReference<Method> ref = templateMethodCache.get(classFile);
-            if (ref != null) {
-                m = ref.get();
-                if (m == null) {
-                    templateMethodCache.remove(classFile);
-                } else {
-                    return m;
-                }
-            }
-
             final Class<?> c = provider.loadClass(classFile);
-            
-            final Class<?>[] params = (Class<?>[]) Array.newInstance(Class.class, 3);
-            params[0]=  RequestHeader.class;
-            params[1] = serverObjects.class;
-            params[2] = serverSwitch.class;
-            m = c.getMethod("respond", params);
-
-            if (MemoryControl.shortStatus()) {
-                templateMethodCache.clear();
-            } else {
-                // store the method into the cache
-                templateMethodCache.put(classFile, new SoftReference<Method>(m));
-            }
+            m = ServletMethod.of(c);
+            // store the method into the cache
+            templateMethodCache.put(classFile, m);
         } catch (final ClassNotFoundException e) {
             ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: class " + classFile + " is missing:" + e.getMessage());
             throw new InvocationTargetException(e, "class " + classFile + " is missing:" + e.getMessage());
@@ -824,7 +825,7 @@ public class YaCyDefaultServlet extends HttpServlet  {
             }
         }
         File targetFile = getLocalizedFile(target, localeSelection);
-        File targetClass = rewriteClassFile(_resourceBase.addPath(target).getFile());
+        File targetClass = rewriteClassFile(target);
         String targetExt = target.substring(target.lastIndexOf('.') + 1);
 
         long now = System.currentTimeMillis();
@@ -894,9 +895,6 @@ public class YaCyDefaultServlet extends HttpServlet  {
                 }
             	ConcurrentLog.logException(e);
                 throw new ServletException(targetFile.getAbsolutePath());
-            } catch (IllegalArgumentException | IllegalAccessException e) {
-                ConcurrentLog.logException(e);
-                throw new ServletException(targetFile.getAbsolutePath());
             }
 
             if (tmp instanceof RasterPlotter || tmp instanceof EncodedImage || tmp instanceof Image) {
@@ -1061,33 +1059,17 @@ public class YaCyDefaultServlet extends HttpServlet  {
                 
                 String mimeType = Classification.ext2mime(targetExt, MimeTypes.Type.TEXT_HTML.asString());
 
-                InputStream fis;
-                long fileSize = targetFile.length();
-
-                if (fileSize <= Math.min(4 * 1024 * 1204, MemoryControl.available() / 100)) {
-                    // read file completely into ram, avoid that too many files are open at the same time
-                    fis = new ByteArrayInputStream(FileUtils.read(targetFile));
-                } else {
-                    fis = new BufferedInputStream(new FileInputStream(targetFile));
-                }
-
                 // set response header
                 response.setContentType(mimeType);
                 response.setStatus(HttpServletResponse.SC_OK);
                 ByteArrayOutputStream bas = new ByteArrayOutputStream(4096);
                 try {
-                	// apply templates
-                	TemplateEngine.writeTemplate(targetFile.getName(), fis, bas, templatePatterns);
+                	// apply templates; the compiled template is cached
+                	TemplateEngine.writeTemplate(targetFile, bas, templatePatterns);
                 	
                     // handle SSI
                     parseSSI (bas.toByteArray(),request,response);
                 } finally {
-                	try {
-                		fis.close();
-                	} catch(IOException ignored) {
-                		ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: could not close target file " + targetFile.getName());
-                	}
-                	
                 	try {
                 		bas.close();
                 	} catch(IOException ignored) {
@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -61,6 +62,8 @@ import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.rwi.Reference;
 import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.rwi.ReferenceContainerCodec;
+import net.yacy.kelondro.rwi.ReferenceContainerOrder;
 import net.yacy.kelondro.rwi.ReferenceFactory;
 import net.yacy.kelondro.rwi.ReferenceIterator;
 import net.yacy.kelondro.util.FileUtils;
@@ -282,6 +285,24 @@ public class ArrayStack implements BLOB {
         ConcurrentLog.severe("BLOBArray", "file " + location + " cannot be unmounted. The file " + ((location.exists()) ? "exists." : "does not exist."));
     }
 
+    /**
+     * unmount a blob file and delete it together with its index files
+     * @param location a file of this array
+     */
+    public synchronized void deleteBLOB(final File location) {
+        unmountBLOB(location, false);
+        HeapWriter.delete(location);
+    }
+
+    /**
+     * @return the locations of all mounted blob files, oldest first
+     */
+    public synchronized File[] locations() {
+        final File[] f = new File[this.blobs.size()];
+        for (int i = 0; i < f.length; i++) f[i] = this.blobs.get(i).location;
+        return f;
+    }
+
     private File unmount(final int idx) {
         final blobItem b = this.blobs.remove(idx);
         b.blob.close(false);
@@ -712,6 +733,55 @@ public class ArrayStack implements BLOB {
         }
     }
 
+    /**
+     * get the beginning of all BLOBs in the array with the given key.
+     * @param key
+     * @param n the maximum number of bytes read from each BLOB
+     * @return the heads of the BLOBs
+     * @throws IOException
+     */
+    public Iterable<byte[]> headAll(final byte[] key, final int n) throws IOException {
+        return new BlobHeads(key, n);
+    }
+
+    private class BlobHeads extends LookAheadIterator<byte[]> {
+
+        private final Iterator<blobItem> bii;
+        private final byte[] key;
+        private final int n;
+
+        public BlobHeads(final byte[] key, final int n) {
+            this.bii = ArrayStack.this.blobs.iterator();
+            this.key = key;
+            this.n = n;
+        }
+
+        @Override
+        protected byte[] next0() {
+            while (this.bii.hasNext()) {
+                final BLOB b = this.bii.next().blob;
+                if (b == null) continue;
+                try {
+                    final byte[] h;
+                    if (b instanceof HeapReader) {
+                        h = ((HeapReader) b).head(this.key, this.n);
+                    } else {
+                        final byte[] v = b.get(this.key);
+                        h = v == null || v.length <= this.n ? v : Arrays.copyOf(v, this.n);
+                    }
+                    if (h != null) return h;
+                } catch (final IOException e) {
+                    ConcurrentLog.severe("ArrayStack", "BlobHeads - IOException: " + e.getMessage(), e);
+                    return null;
+                } catch (final SpaceExceededException e) {
+                    ConcurrentLog.severe("ArrayStack", "BlobHeads - RowSpaceExceededException: " + e.getMessage(), e);
+                    break;
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * retrieve the size of the BLOB
      * @param key
@@ -956,6 +1026,53 @@ public class ArrayStack implements BLOB {
         return resultFile;
     }
 
+    /**
+     * merge any number of blob files into one new file in a single pass.
+     * The given files are not changed, the caller must mount the new file and remove the given ones.
+     * @param files the files to merge
+     * @param factory
+     * @param keylength
+     * @param order
+     * @param newFile the target file
+     * @param writeBuffer
+     * @return the new file or null if there was nothing to write
+     * @throws IOException if the merge failed; the given files are still complete
+     */
+    public static <ReferenceType extends Reference> File mergeAll(
+                    final File[] files, final ReferenceFactory<ReferenceType> factory,
+                    final int keylength, final ByteOrder order, final File newFile, final int writeBuffer) throws IOException {
+        final List<CloneableIterator<ReferenceContainer<ReferenceType>>> iterators = new ArrayList<CloneableIterator<ReferenceContainer<ReferenceType>>>(files.length);
+        final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+        try {
+            for (final File f: files) iterators.add(new ReferenceIterator<ReferenceType>(f, factory));
+            final CloneableIterator<ReferenceContainer<ReferenceType>> i = MergeIterator.cascade(iterators,
+                    new ReferenceContainerOrder<ReferenceType>(factory, order), ReferenceContainer.containerMergeMethod, true);
+            if (!i.hasNext()) return null;
+            final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+            ReferenceContainer<ReferenceType> c;
+            int s;
+            while (i.hasNext()) {
+                c = i.next();
+                if (c == null) continue;
+                s = c.shrinkReferences();
+                if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+                writer.add(c.getTermHash(), ReferenceContainerCodec.export(c));
+            }
+            writer.close(true);
+            return newFile;
+        } catch (final IOException e) {
+            FileUtils.deletedelete(tmpFile);
+            FileUtils.deletedelete(newFile);
+            throw e;
+        } catch (final SpaceExceededException e) {
+            FileUtils.deletedelete(tmpFile);
+            FileUtils.deletedelete(newFile);
+            throw new IOException("cannot merge " + files.length + " files because of memory failure: " + e.getMessage(), e);
+        } finally {
+            for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) i.close();
+        }
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
                     final ReferenceFactory<ReferenceType> factory,
                     final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
@@ -1073,7 +1190,7 @@ public class ArrayStack implements BLOB {
             if (e < 0) {
             	s = c1.shrinkReferences();
             	if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-                writer.add(c1.getTermHash(), c1.exportCollection());
+                writer.add(c1.getTermHash(), ReferenceContainerCodec.export(c1));
                 if (i1.hasNext()) {
                     c1lh = c1.getTermHash();
                     c1 = i1.next();
@@ -1086,7 +1203,7 @@ public class ArrayStack implements BLOB {
             if (e > 0) {
                 s = c2.shrinkReferences();
                 if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-                writer.add(c2.getTermHash(), c2.exportCollection());
+                writer.add(c2.getTermHash(), ReferenceContainerCodec.export(c2));
                 if (i2.hasNext()) {
                     c2lh = c2.getTermHash();
                     c2 = i2.next();
@@ -1101,7 +1218,7 @@ public class ArrayStack implements BLOB {
             c1 = c1.merge(c2);
             s = c1.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
+            writer.add(c1.getTermHash(), ReferenceContainerCodec.export(c1));
             c1lh = c1.getTermHash();
             c2lh = c2.getTermHash();
             if (i1.hasNext() && i2.hasNext()) {
@@ -1131,7 +1248,7 @@ public class ArrayStack implements BLOB {
             //System.out.println("FLUSH REMAINING 1: " + c1.getWordHash());
             s = c1.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
+            writer.add(c1.getTermHash(), ReferenceContainerCodec.export(c1));
             if (i1.hasNext()) {
                 c1lh = c1.getTermHash();
                 c1 = i1.next();
@@ -1144,7 +1261,7 @@ public class ArrayStack implements BLOB {
             //System.out.println("FLUSH REMAINING 2: " + c2.getWordHash());
             s = c2.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-            writer.add(c2.getTermHash(), c2.exportCollection());
+            writer.add(c2.getTermHash(), ReferenceContainerCodec.export(c2));
             if (i2.hasNext()) {
                 c2lh = c2.getTermHash();
                 c2 = i2.next();
@@ -1168,7 +1285,7 @@ public class ArrayStack implements BLOB {
             assert c != null;
             s = c.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
-            writer.add(c.getTermHash(), c.exportCollection());
+            writer.add(c.getTermHash(), ReferenceContainerCodec.export(c));
             if (i.hasNext()) {
                 clh = c.getTermHash();
                 c = i.next();
@@ -45,6 +45,7 @@ import net.yacy.cora.order.Digest;
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.storage.MapStore;
 import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.util.BDecoder;
 import net.yacy.kelondro.util.BDecoder.BObject;
@@ -137,8 +138,8 @@ public class BEncodedHeap implements MapStore {
     {
         HeapReader.entries iter;
 
-        public EntryIter(final File location, final int keylen) throws IOException {
-            this.iter = new HeapReader.entries(location, keylen);
+        public EntryIter(final HeapReader.entries iter) {
+            this.iter = iter;
         }
 
         @Override
@@ -160,6 +161,140 @@ public class BEncodedHeap implements MapStore {
 
     }
 
+    /**
+     * a condition on the bencoded form of a row, evaluated before the row is decoded
+     */
+    private interface RawFilter {
+        public boolean accept(byte[] b);
+    }
+
+    /**
+     * iterator of the rows which are accepted by a filter: only those rows are decoded into maps
+     */
+    private static class FilterEntryIter extends LookAheadIterator<Map.Entry<byte[], Map<String, byte[]>>>
+    {
+        private final HeapReader.entries iter;
+        private final RawFilter filter;
+
+        public FilterEntryIter(final HeapReader.entries iter, final RawFilter filter) {
+            this.iter = iter;
+            this.filter = filter;
+        }
+
+        @Override
+        protected Map.Entry<byte[], Map<String, byte[]>> next0() {
+            while (this.iter.hasNext()) {
+                final Map.Entry<byte[], byte[]> entry = this.iter.next();
+                if (entry == null || !this.filter.accept(entry.getValue())) continue;
+                final Map<String, byte[]> map = b2m(entry.getValue());
+                if (map != null) return new b2mEntry(entry.getKey(), map);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * read the length prefix of a bencoded string
+     * @param b a bencoded object
+     * @param p the position of the string in b
+     * @return the position of the string content in the upper 32 bits and the string length in the lower 32 bits,
+     *   or -1 if there is no string at p
+     */
+    private static long bstring(final byte[] b, int p) {
+        int len = 0;
+        if (p >= b.length || b[p] < '0' || b[p] > '9') return -1;
+        while (p < b.length && b[p] >= '0' && b[p] <= '9') len = len * 10 + (b[p++] - '0');
+        if (p >= b.length || b[p] != ':' || p + 1 + len > b.length) return -1;
+        return ((long) (p + 1) << 32) | len;
+    }
+
+    /**
+     * skip a bencoded object
+     * @param b a bencoded object
+     * @param p the position of an object in b
+     * @return the position after the object or -1 if the object is corrupt
+     */
+    private static int bskip(final byte[] b, int p) {
+        if (p >= b.length) return -1;
+        switch (b[p]) {
+            case 'i':
+                while (p < b.length && b[p] != 'e') p++;
+                return p < b.length ? p + 1 : -1;
+            case 'l':
+            case 'd':
+                p++;
+                while (p < b.length && b[p] != 'e') {
+                    p = bskip(b, p);
+                    if (p < 0) return -1;
+                }
+                return p < b.length ? p + 1 : -1;
+            default:
+                final long s = bstring(b, p);
+                return s < 0 ? -1 : (int) (s >>> 32) + (int) s;
+        }
+    }
+
+    /**
+     * find the value of a column in a bencoded row without decoding the row
+     * @param b the bencoded row
+     * @param column the UTF-8 encoded column name
+     * @return the position and length of the value as returned by {@link #bstring(byte[], int)},
+     *   or -1 if the row has no string value in the column
+     */
+    private static long bcolumn(final byte[] b, final byte[] column) {
+        if (b == null || b.length == 0 || b[0] != 'd') return -1;
+        int p = 1;
+        while (p < b.length && b[p] != 'e') {
+            final long k = bstring(b, p);
+            if (k < 0) return -1;
+            final int ks = (int) (k >>> 32), kl = (int) k;
+            p = ks + kl;
+            if (kl == column.length && NaturalOrder.naturalOrder.compare(b, ks, column, 0, kl) == 0) return bstring(b, p);
+            p = bskip(b, p);
+            if (p < 0) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * get the value of a column from a bencoded row without decoding the whole row
+     * @param b the bencoded row
+     * @param column the column name
+     * @return the value or null if the row has no such column
+     */
+    public static byte[] column(final byte[] b, final String column) {
+        final long v = bcolumn(b, UTF8.getBytes(column));
+        if (v < 0) return null;
+        final byte[] value = new byte[(int) v];
+        System.arraycopy(b, (int) (v >>> 32), value, 0, value.length);
+        return value;
+    }
+
+    private static boolean bequals(final byte[] b, final byte[] column, final byte[] value) {
+        final long v = bcolumn(b, column);
+        return v >= 0 && (int) v == value.length && NaturalOrder.naturalOrder.compare(b, (int) (v >>> 32), value, 0, value.length) == 0;
+    }
+
+    private static boolean bmatches(final byte[] b, final byte[] column, final Pattern pattern) {
+        final long v = bcolumn(b, column);
+        return v >= 0 && pattern.matcher(UTF8.String(b, (int) (v >>> 32), (int) v)).matches();
+    }
+
+    private static boolean bmatchesAny(final byte[] b, final Pattern pattern) {
+        if (b == null || b.length == 0 || b[0] != 'd') return false;
+        int p = 1;
+        while (p < b.length && b[p] != 'e') {
+            final long k = bstring(b, p);
+            if (k < 0) return false;
+            p = (int) (k >>> 32) + (int) k;
+            final long v = bstring(b, p);
+            if (v >= 0 && pattern.matcher(UTF8.String(b, (int) (v >>> 32), (int) v)).matches()) return true;
+            p = bskip(b, p);
+            if (p < 0) return false;
+        }
+        return false;
+    }
+
     private static class b2mEntry implements Map.Entry<byte[], Map<String, byte[]>>
     {
         private final byte[] s;
@@ -333,19 +468,15 @@ public class BEncodedHeap implements MapStore {
      * @return a set of primary keys where the matcher matched
      */
     public Set<byte[]> select(final String columnName, final Pattern columnMatcher) {
-        final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = iterator();
-        Map.Entry<byte[], Map<String, byte[]>> row;
-        Map<String, byte[]> prop;
-        byte[] val;
         final Set<byte[]> pks = new TreeSet<byte[]>(this.table.ordering);
+        final HeapReader.entries i = entries();
+        if (i == null) return pks;
+        final byte[] column = UTF8.getBytes(columnName);
+        Map.Entry<byte[], byte[]> row;
         while ( i.hasNext() ) {
             row = i.next();
-            prop = row.getValue();
-            val = prop.get(columnName);
-            if ( val != null ) {
-                if ( columnMatcher.matcher(UTF8.String(val)).matches() ) {
-                    pks.add(row.getKey());
-                }
+            if ( row != null && bmatches(row.getValue(), column, columnMatcher) ) {
+                pks.add(row.getKey());
             }
         }
         return pks;
@@ -362,21 +493,8 @@ public class BEncodedHeap implements MapStore {
     public Map.Entry<byte[], Map<String, byte[]>> selectOne(
         final String columnName,
         final Pattern columnMatcher) {
-        final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = iterator();
-        Map.Entry<byte[], Map<String, byte[]>> row;
-        Map<String, byte[]> prop;
-        byte[] val;
-        while ( i.hasNext() ) {
-            row = i.next();
-            prop = row.getValue();
-            val = prop.get(columnName);
-            if ( val != null ) {
-                if ( columnMatcher.matcher(UTF8.String(val)).matches() ) {
-                    return row;
-                }
-            }
-        }
-        return null;
+        final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = iterator(columnName, columnMatcher);
+        return i != null && i.hasNext() ? i.next() : null;
     }
 
     /**
@@ -606,17 +724,63 @@ public class BEncodedHeap implements MapStore {
      */
     @Override
     public Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator() {
+        final HeapReader.entries i = entries();
+        return i == null ? null : new EntryIter(i);
+    }
+
+    /**
+     * iterate all rows of the table where a given column has a given value.
+     * The condition is tested on the encoded rows, only matching rows are decoded.
+     * @param columnName the name of the column
+     * @param value the value which the column must have
+     * @return an iterator of the matching rows
+     */
+    public Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator(final String columnName, final byte[] value) {
+        final HeapReader.entries i = entries();
+        if (i == null) return null;
+        final byte[] column = UTF8.getBytes(columnName);
+        return new FilterEntryIter(i, new RawFilter() {
+            @Override
+            public boolean accept(final byte[] b) {
+                return bequals(b, column, value);
+            }
+        });
+    }
+
+    /**
+     * iterate all rows of the table where a pattern matches with a column.
+     * The condition is tested on the encoded rows, only matching rows are decoded.
+     * @param columnName the name of the column or null if the pattern may match with any column
+     * @param pattern the pattern which must match with the column value
+     * @return an iterator of the matching rows
+     */
+    public Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator(final String columnName, final Pattern pattern) {
+        final HeapReader.entries i = entries();
+        if (i == null) return null;
+        final byte[] column = columnName == null ? null : UTF8.getBytes(columnName);
+        return new FilterEntryIter(i, new RawFilter() {
+            @Override
+            public boolean accept(final byte[] b) {
+                return column == null ? bmatchesAny(b, pattern) : bmatches(b, column, pattern);
+            }
+        });
+    }
+
+    /**
+     * iterate the encoded entries of the heap file, after all buffered entries have been written
+     */
+    private HeapReader.entries entries() {
         final File location = this.table.location();
         final int keylen = this.table.keylength();
         try {
             this.table.flushBuffer();
-            return new EntryIter(location, keylen);
+            return new HeapReader.entries(location, keylen);
         } catch (final IOException e1 ) {
             final ByteOrder order = this.table.ordering();
             final int buffermax = this.table.getBuffermax();
             this.table.close();
             try {
-                final Iterator<Map.Entry<byte[], Map<String, byte[]>>> iter = new EntryIter(location, keylen);
+                final HeapReader.entries iter = new HeapReader.entries(location, keylen);
                 this.table = new Heap(location, keylen, order, buffermax);
                 return iter;
             } catch (final IOException e ) {
@@ -638,7 +802,7 @@ public class BEncodedHeap implements MapStore {
     public static Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator(
         final File location,
         final int keylen) throws IOException {
-        return new EntryIter(location, keylen);
+        return new EntryIter(new HeapReader.entries(location, keylen));
     }
 
     /**
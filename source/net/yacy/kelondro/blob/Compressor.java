@@ -32,34 +32,108 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.util.MemoryControl;
-
-
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+
+/**
+ * A BLOB which compresses its entries. New entries are buffered uncompressed and compressed
+ * by a background thread pool when the buffer fills up, so that the inserting threads do not
+ * have to compress. Entries are stored with a leading magic which names the codec:
+ * <ul>
+ * <li><code>z|</code> gzip</li>
+ * <li><code>d|</code> deflate with a preset dictionary trained for the group of the key</li>
+ * <li><code>p|</code> plain, not compressed</li>
+ * </ul>
+ * The dictionary codec is used when a dictionary store is given. Entries are grouped by the
+ * last bytes of their keys (for url hashes: the host hash), and a dictionary is trained once for
+ * each group from the content which is shared by the first entries of the group. Pages from one
+ * host usually share a lot of boilerplate, which then does not need to be stored again in each entry.
+ */
 public class Compressor implements BLOB, Iterable<byte[]> {
 
     private static byte[] gzipMagic  = {(byte) 'z', (byte) '|'}; // magic for gzip-encoded content
     private static byte[] plainMagic = {(byte) 'p', (byte) '|'}; // magic for plain content (no encoding)
+    private static byte[] dictMagic  = {(byte) 'd', (byte) '|'}; // magic for deflate-encoded content with a preset dictionary
+
+    /** number of entries of a group from which its dictionary is trained */
+    private static final int DICTIONARY_SAMPLES = 3;
+
+    /** maximum size of a trained dictionary; only the last 32k of a dictionary can be used by deflate */
+    private static final int DICTIONARY_MAXSIZE = 16 * 1024;
+
+    /** minimum size of a useful dictionary, smaller dictionaries are stored empty to mark the group as not trainable */
+    private static final int DICTIONARY_MINSIZE = 256;
+
+    /** minimum size of a text segment which is taken into a dictionary */
+    private static final int SEGMENT_MINSIZE = 8;
+
+    /** maximum number of groups for which samples are held in memory at the same time */
+    private static final int SAMPLE_GROUPS = 32;
+
+    /** maximum number of dictionaries held in memory */
+    private static final int DICTIONARY_CACHE = 256;
+
+    /** maximum time (in milliseconds) to wait for the background compression when all entries are flushed */
+    private static final long FLUSH_TIMEOUT = 30000;
 
     private final BLOB backend;
+
+    /** the dictionaries for the groups of keys, with the group key as key; may be null */
+    private final BLOB dictionaries;
+
+    /** the most recently used dictionaries */
+    private final Map<String, byte[]> dictionaryCache;
+
+    /** the time of the last use of a dictionary since the start, with the group key as key */
+    private final Map<String, Long> dictionaryUse;
+
+    /** the first entries of groups without a dictionary, used to train the dictionary */
+    private final Map<String, List<byte[]>> samples;
+
+    /** the background compression threads */
+    private final ThreadPoolExecutor compressionPool;
     
     /** entries which are not yet compressed, format is RAW (without magic) */
     private TreeMap<byte[], byte[]> buffer;
+
+    /** entries which have been taken out of the buffer and are compressed in the background, format is RAW (without magic) */
+    private final TreeMap<byte[], byte[]> compressing;
+
+    /** signalled when all entries in the background compression have been written */
+    private final Condition compressed;
     
-    /** Total size (in bytes) of uncompressed entries in buffer */
+    /** Total size (in bytes) of uncompressed entries in buffer and background compression */
     private volatile long bufferlength;
     
     /** Maximum {@link #bufferlength} value before compressing and flushing to the backend */
@@ -74,6 +148,9 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     /** The compression level */
     private volatile int compressionLevel;
 
+    /** true if new entries are compressed with the dictionary of their group */
+    private volatile boolean useDictionaries;
+
     /**
      * @param backend the backend storage
      * @param buffersize the maximum total size (in bytes) of uncompressed in-memory entries before compressing and flushing to the backend
@@ -81,12 +158,48 @@ public class Compressor implements BLOB, Iterable<byte[]> {
      * @param compressionLevel the compression level : supported values ranging from 0 - no compression, to 9 - best compression
      */
     public Compressor(final BLOB backend, final long buffersize, final long lockTimeout, final int compressionLevel) {
+        this(backend, buffersize, lockTimeout, compressionLevel, null);
+    }
+
+    /**
+     * @param backend the backend storage
+     * @param buffersize the maximum total size (in bytes) of uncompressed in-memory entries before compressing and flushing to the backend
+     * @param lockTimeout maximum time to acquire a synchronization lock on get() and insert() operations
+     * @param compressionLevel the compression level : supported values ranging from 0 - no compression, to 9 - best compression
+     * @param dictionaries the storage of the trained dictionaries or null if no dictionaries shall be used.
+     * The key length of this storage defines the group of an entry: it is the end of the entry key with that length.
+     * Entries are compressed with dictionaries after {@link #setDictionaryCompression(boolean)} has been enabled; the storage is
+     * needed anyway to read entries which had been written with dictionaries.
+     */
+    public Compressor(final BLOB backend, final long buffersize, final long lockTimeout, final int compressionLevel, final BLOB dictionaries) {
         this.backend = backend;
+        this.dictionaries = dictionaries;
+        this.dictionaryCache = new LinkedHashMap<String, byte[]>(DICTIONARY_CACHE, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > DICTIONARY_CACHE;
+            }
+        };
+        this.dictionaryUse = new ConcurrentHashMap<String, Long>();
+        this.samples = new LinkedHashMap<String, List<byte[]>>(SAMPLE_GROUPS, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, List<byte[]>> eldest) {
+                return size() > SAMPLE_GROUPS;
+            }
+        };
         this.maxbufferlength = buffersize;
         this.lockTimeout = lockTimeout;
         this.lock = new ReentrantLock();
+        this.compressed = this.lock.newCondition();
+        this.compressing = new TreeMap<byte[], byte[]>(backend.ordering());
         /* Ensure a value within the range supported by the Deflater class */
         this.compressionLevel = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.compressionPool = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("Compressor"));
+        this.compressionPool.allowCoreThreadTimeOut(true); // idle pools do not hold threads
         initBuffer();
     }
 
@@ -95,6 +208,13 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         return this.backend.mem();
     }
 
+    /**
+     * @return the total size in bytes of the uncompressed entries in the buffer and in the background compression
+     */
+    public long bufferLength() {
+        return this.bufferlength;
+    }
+
     @Override
     public void optimize() {
         this.backend.optimize();
@@ -110,7 +230,19 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     	this.lock.lock();
     	try {
     		initBuffer();
+    		this.compressing.clear(); // running compressions do not find their entries any more and are discarded
+    		this.compressed.signalAll();
     		this.backend.clear();
+    		if (this.dictionaries != null) {
+    			this.dictionaries.clear();
+    			synchronized (this.dictionaryCache) {
+    				this.dictionaryCache.clear();
+    			}
+    			this.dictionaryUse.clear();
+    			synchronized (this.samples) {
+    				this.samples.clear();
+    			}
+    		}
     	} finally {
     		this.lock.unlock();
     	}
@@ -132,20 +264,223 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     	try {
     		// no more thread is running, flush all queues
     		flushAll();
+    		this.compressionPool.shutdown();
     		this.backend.close(writeIDX);
+    		if (this.dictionaries != null) this.dictionaries.close(writeIDX);
     	} finally {
     		this.lock.unlock();
     	}
     }
 
-    private static byte[] compress(final byte[] b, final int compressionLevel) {
+    /**
+     * compress an entry, using the dictionary of its group if there is one
+     * @param key the key of the entry
+     * @param b the uncompressed entry
+     * @return the entry with leading magic
+     */
+    private byte[] compress(final byte[] key, final byte[] b) {
         final int l = b.length;
         if (l < 100) return markWithPlainMagic(b);
-        final byte[] bb = compressAddMagic(b, compressionLevel);
-        if (bb.length >= l) return markWithPlainMagic(b);
+        final byte[] dictionary = dictionary(key, b);
+        final byte[] bb = dictionary == null ? compressAddMagic(b, this.compressionLevel) : compressAddMagic(b, this.compressionLevel, dictionary);
+        if (bb == null || bb.length >= l) return markWithPlainMagic(b);
         return bb;
     }
 
+    /**
+     * @return the group of a key: the end of the key with the key length of the dictionary store
+     */
+    private String group(final byte[] key) {
+        final int l = Math.min(key.length, this.dictionaries.keylength());
+        return ASCII.String(key, key.length - l, l);
+    }
+
+    /**
+     * @param group the group of a key
+     * @return the stored dictionary of the group, an empty dictionary if the group could not be trained, or null if no dictionary exists yet
+     */
+    private byte[] dictionary(final String group) {
+        if (this.dictionaries == null) return null;
+        synchronized (this.dictionaryCache) {
+            final byte[] dictionary = this.dictionaryCache.get(group);
+            if (dictionary != null) {
+                this.dictionaryUse.put(group, System.currentTimeMillis());
+                return dictionary;
+            }
+        }
+        try {
+            final byte[] dictionary = this.dictionaries.get(ASCII.getBytes(group));
+            if (dictionary != null) synchronized (this.dictionaryCache) {
+                this.dictionaryCache.put(group, dictionary);
+                this.dictionaryUse.put(group, System.currentTimeMillis());
+            }
+            return dictionary;
+        } catch (final IOException | SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+    }
+
+    /**
+     * get the dictionary to compress an entry with. If the group of the entry has no dictionary yet,
+     * the entry is taken as sample for the training of the dictionary.
+     * @param key the key of the entry
+     * @param b the uncompressed entry
+     * @return the dictionary or null if the entry shall be compressed without dictionary
+     */
+    private byte[] dictionary(final byte[] key, final byte[] b) {
+        if (this.dictionaries == null || !this.useDictionaries) return null;
+        final String group = group(key);
+        byte[] dictionary = dictionary(group);
+        if (dictionary != null) return dictionary.length == 0 ? null : dictionary;
+        // training is done while the samples are locked, so that a dictionary is only trained once and is never replaced:
+        // it must not change as long as entries exist which are compressed with it
+        synchronized (this.samples) {
+            if (this.dictionaries.containsKey(ASCII.getBytes(group))) return null; // trained concurrently, use it with the next entry
+            List<byte[]> sample = this.samples.get(group);
+            if (sample == null) {
+                sample = new ArrayList<byte[]>(DICTIONARY_SAMPLES);
+                this.samples.put(group, sample);
+            }
+            sample.add(b.length > 4 * DICTIONARY_MAXSIZE ? Arrays.copyOf(b, 4 * DICTIONARY_MAXSIZE) : b);
+            if (sample.size() < DICTIONARY_SAMPLES) return null;
+            this.samples.remove(group);
+            dictionary = train(sample);
+            try {
+                this.dictionaries.insert(ASCII.getBytes(group), dictionary);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+                return null;
+            }
+        }
+        synchronized (this.dictionaryCache) {
+            this.dictionaryCache.put(group, dictionary);
+            this.dictionaryUse.put(group, System.currentTimeMillis());
+        }
+        return dictionary.length == 0 ? null : dictionary;
+    }
+
+    /**
+     * @return the size in bytes of the dictionary storage
+     */
+    public long dictionaryLength() {
+        if (this.dictionaries == null) return 0;
+        try {
+            return this.dictionaries.length();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Delete the dictionaries of groups which have no entries any more. If the remaining dictionaries are
+     * larger than the given size, the least recently used dictionaries are deleted, together with the entries
+     * of their groups which cannot be decompressed without them.
+     * @param maxSize the maximum total size in bytes of the dictionaries
+     * @return the number of deleted dictionaries
+     * @throws IOException
+     */
+    public int cleanupDictionaries(final long maxSize) throws IOException {
+        if (this.dictionaries == null || this.dictionaries.size() == 0) return 0;
+        final long start = System.currentTimeMillis();
+
+        // the groups which still have entries
+        final Set<String> live = new HashSet<String>();
+        this.lock.lock();
+        try {
+            for (final byte[] key: this.buffer.keySet()) live.add(group(key));
+            for (final byte[] key: this.compressing.keySet()) live.add(group(key));
+        } finally {
+            this.lock.unlock();
+        }
+        Iterator<byte[]> keys = this.backend.keys(true, false);
+        while (keys.hasNext()) live.add(group(keys.next()));
+
+        // delete the dictionaries of groups without entries; dictionaries used during the scan may belong to new entries
+        final List<String> groups = new ArrayList<String>();
+        keys = this.dictionaries.keys(true, false);
+        while (keys.hasNext()) groups.add(ASCII.String(keys.next()));
+        final List<String> kept = new ArrayList<String>();
+        long total = 0;
+        int deleted = 0;
+        for (final String group: groups) {
+            if (!live.contains(group) && lastUse(group) < start) {
+                deleteDictionary(group);
+                deleted++;
+            } else {
+                kept.add(group);
+                total += Math.max(0, this.dictionaries.length(ASCII.getBytes(group)));
+            }
+        }
+        if (total <= maxSize) return deleted;
+
+        // delete the least recently used dictionaries
+        kept.sort((a, b) -> Long.compare(lastUse(a), lastUse(b)));
+        final Set<String> dropped = new HashSet<String>();
+        for (final String group: kept) {
+            if (total <= maxSize) break;
+            total -= Math.max(0, this.dictionaries.length(ASCII.getBytes(group)));
+            deleteDictionary(group);
+            dropped.add(group);
+            deleted++;
+        }
+        final List<byte[]> obsolete = new ArrayList<byte[]>();
+        keys = this.backend.keys(true, false);
+        while (keys.hasNext()) {
+            final byte[] key = keys.next();
+            if (dropped.contains(group(key))) obsolete.add(key);
+        }
+        for (final byte[] key: obsolete) this.backend.delete(key);
+        return deleted;
+    }
+
+    private long lastUse(final String group) {
+        final Long t = this.dictionaryUse.get(group);
+        return t == null ? 0 : t.longValue();
+    }
+
+    private void deleteDictionary(final String group) throws IOException {
+        this.dictionaries.delete(ASCII.getBytes(group));
+        synchronized (this.dictionaryCache) {
+            this.dictionaryCache.remove(group);
+            this.dictionaryUse.remove(group);
+        }
+    }
+
+    /**
+     * Train a dictionary from sample entries: the entries are cut into segments at line ends and in front
+     * of markup tags, and the segments of the first sample which also appear in another sample are
+     * concatenated to the dictionary.
+     * @param samples the sample entries
+     * @return the dictionary, or an empty array if the samples do not share enough content
+     */
+    static byte[] train(final List<byte[]> samples) {
+        final Set<String> shared = new HashSet<String>();
+        for (int i = 1; i < samples.size(); i++) segments(samples.get(i), shared);
+        final Set<String> first = new LinkedHashSet<String>();
+        segments(samples.get(0), first);
+        final ByteArrayOutputStream dictionary = new ByteArrayOutputStream(DICTIONARY_MAXSIZE);
+        for (final String segment: first) {
+            if (!shared.contains(segment)) continue;
+            if (dictionary.size() + segment.length() > DICTIONARY_MAXSIZE) break;
+            final byte[] s = segment.getBytes(StandardCharsets.ISO_8859_1);
+            dictionary.write(s, 0, s.length);
+        }
+        return dictionary.size() < DICTIONARY_MINSIZE ? new byte[0] : dictionary.toByteArray();
+    }
+
+    private static void segments(final byte[] b, final Set<String> segments) {
+        int start = 0;
+        for (int i = 1; i <= b.length; i++) {
+            if (i == b.length || b[i] == '<' || b[i - 1] == '\n') {
+                // the bytes are mapped one-to-one to characters
+                if (i - start >= SEGMENT_MINSIZE) segments.add(new String(b, start, i - start, StandardCharsets.ISO_8859_1));
+                start = i;
+            }
+        }
+    }
+
     private static byte[] compressAddMagic(final byte[] b, final int compressionLevel) {
         // compress a byte array and add a leading magic for the compression
         try {
@@ -163,6 +498,26 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         }
     }
 
+    private static byte[] compressAddMagic(final byte[] b, final int compressionLevel, final byte[] dictionary) {
+        // deflate a byte array with a preset dictionary; the zlib header contains the checksum of the dictionary
+        final Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(b);
+            deflater.finish();
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(b.length / 5);
+            baos.write(dictMagic, 0, dictMagic.length);
+            final byte[] buf = new byte[Math.min(65536, b.length + 64)];
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(buf);
+                baos.write(buf, 0, n);
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
     private static byte[] markWithPlainMagic(final byte[] b) {
         //System.out.print("+"); // DEBUG
         final byte[] r = new byte[b.length + 2];
@@ -172,10 +527,39 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         return r;
     }
 
-    private static byte[] decompress(final byte[] b) {
+    private byte[] decompress(final byte[] key, final byte[] b) {
         // use a magic in the head of the bytes to identify compression type
         if (b == null) return null;
-        if (ByteArray.startsWith(b, gzipMagic)) {
+        if (ByteArray.startsWith(b, dictMagic)) {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(b, dictMagic.length, b.length - dictMagic.length);
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream(b.length * 4);
+                final byte[] buf = new byte[1024 * 16];
+                while (!inflater.finished()) {
+                    final int n = inflater.inflate(buf);
+                    if (n > 0) {
+                        baos.write(buf, 0, n);
+                    } else if (inflater.needsDictionary()) {
+                        final byte[] dictionary = this.dictionaries == null ? null : this.dictionary(group(key));
+                        if (dictionary == null || dictionary.length == 0) {
+                            ConcurrentLog.warn("Compressor", "missing dictionary for entry " + ASCII.String(key));
+                            return null;
+                        }
+                        inflater.setDictionary(dictionary); // fails if the dictionary has another checksum
+                    } else {
+                        ConcurrentLog.warn("Compressor", "truncated entry " + ASCII.String(key));
+                        return null;
+                    }
+                }
+                return baos.toByteArray();
+            } catch (final DataFormatException | IllegalArgumentException e) {
+                ConcurrentLog.warn("Compressor", "cannot decompress entry " + ASCII.String(key) + ": " + e.getMessage());
+                return null;
+            } finally {
+                inflater.end();
+            }
+        } else if (ByteArray.startsWith(b, gzipMagic)) {
             //System.out.print("\\"); // DEBUG
             final ByteArrayInputStream bais = new ByteArrayInputStream(b);
             // eat up the magic
@@ -226,9 +610,11 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         		b = this.buffer.remove(key);
         		if (b != null) {
         			this.bufferlength = this.bufferlength - b.length;
-           			this.backend.insert(key, compress(b, this.compressionLevel));
+           			this.backend.insert(key, compress(key, b));
         			return b;
         		}
+        		b = this.compressing.get(key);
+        		if (b != null) return b;
         	} finally {
         		this.lock.unlock();
         	}
@@ -239,7 +625,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
             if (!MemoryControl.request(b.length * 2, true)) {
                 throw new SpaceExceededException(b.length * 2, "decompress needs 2 * " + b.length + " bytes");
             }
-            return decompress(b);
+            return decompress(key, b);
         }
        	ConcurrentLog.fine("Compressor", "Could not acquire a synchronization lock for retrieval within " + this.lockTimeout + " milliseconds");
         return b;
@@ -262,7 +648,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     public boolean containsKey(final byte[] key) {
         this.lock.lock();
         try {
-            return this.buffer.containsKey(key) || this.backend.containsKey(key);
+            return this.buffer.containsKey(key) || this.compressing.containsKey(key) || this.backend.containsKey(key);
         } finally {
         	this.lock.unlock();
         }
@@ -291,11 +677,12 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         this.lock.lock();
         try {
             byte[] b = this.buffer.get(key);
+            if (b == null) b = this.compressing.get(key);
             if (b != null) return b.length;
             try {
                 b = this.backend.get(key);
                 if (b == null) return 0;
-                b = decompress(b);
+                b = decompress(key, b);
                 return (b == null) ? 0 : b.length;
             } catch (final SpaceExceededException e) {
                 throw new IOException(e.getMessage());
@@ -306,7 +693,8 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     }
 
     private int removeFromQueues(final byte[] key) {
-        final byte[] b = this.buffer.remove(key);
+        byte[] b = this.buffer.remove(key);
+        if (b == null) b = this.compressing.remove(key); // the running compression of the entry is discarded
         if (b != null) return b.length;
         return 0;
     }
@@ -341,13 +729,12 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     			// or compressed later
    				this.buffer.put(key, b);
    				this.bufferlength += b.length;
+
+   				// start the background compression early enough that the inserting threads rarely need to compress
+   				if (this.bufferlength > this.maxbufferlength / 2) compressInBackground();
     		} finally {
     			this.lock.unlock();
     		}
-    		
-    		if (MemoryControl.shortStatus()) {
-    			flushAll();
-    		}
     	} else {
     		ConcurrentLog.fine("Compressor", "Could not acquire a synchronization lock for insertion within " + this.lockTimeout + " milliseconds");
     	}
@@ -369,7 +756,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     public int size() {
     	this.lock.lock();
     	try {
-    		return this.backend.size() + this.buffer.size();
+    		return this.backend.size() + this.buffer.size() + this.compressing.size();
     	} finally {
     		this.lock.unlock();
     	}
@@ -381,6 +768,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     	try {
     		if (!this.backend.isEmpty()) return false;
     		if (!this.buffer.isEmpty()) return false;
+    		if (!this.compressing.isEmpty()) return false;
     		return true;
     	} finally {
     		this.lock.unlock();
@@ -425,7 +813,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         final Map.Entry<byte[], byte[]> entry = this.buffer.entrySet().iterator().next();
         this.buffer.remove(entry.getKey());
         try {
-            this.backend.insert(entry.getKey(), compress(entry.getValue(), this.compressionLevel));
+            this.backend.insert(entry.getKey(), compress(entry.getKey(), entry.getValue()));
             this.bufferlength -= entry.getValue().length;
             return true;
         } catch (final IOException e) {
@@ -434,9 +822,99 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         }
     }
 
+    /**
+     * move all buffered entries to the background compression. Must be called while the lock is held.
+     */
+    private void compressInBackground() {
+        while (!this.buffer.isEmpty()) {
+            final Map.Entry<byte[], byte[]> entry = this.buffer.pollFirstEntry();
+            final byte[] key = entry.getKey();
+            final byte[] b = entry.getValue();
+            this.compressing.put(key, b);
+            try {
+                this.compressionPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        byte[] c = null;
+                        try {
+                            c = compress(key, b);
+                        } finally {
+                            // the entry must leave the background compression even if the compression fails
+                            compressed(key, b, c);
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // the pool is shut down; the entry is written by the next flush
+                this.compressing.remove(key);
+                this.buffer.put(key, b);
+                return;
+            }
+        }
+    }
+
+    /**
+     * write the result of a background compression to the backend
+     * @param key the key of the entry
+     * @param b the uncompressed entry
+     * @param c the compressed entry or null if the compression failed
+     */
+    private void compressed(final byte[] key, final byte[] b, final byte[] c) {
+        this.lock.lock();
+        try {
+            // the entry may have been deleted or replaced in the meantime
+            if (this.compressing.get(key) != b) return;
+            try {
+                this.backend.insert(key, c == null ? markWithPlainMagic(b) : c);
+                this.compressing.remove(key);
+                this.bufferlength -= b.length;
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+                // keep the entry uncompressed in the buffer
+                this.compressing.remove(key);
+                this.buffer.put(key, b);
+            }
+        } finally {
+            if (this.compressing.isEmpty()) this.compressed.signalAll();
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * move all buffered entries to the background compression without waiting until they are written;
+     * does nothing if another thread holds the lock
+     * @return the length of the uncompressed entries which are written in the background, in bytes
+     */
+    public long flushInBackground() {
+        if (!this.lock.tryLock()) return 0;
+        try {
+            compressInBackground();
+            return this.bufferlength;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * write all entries to the backend; waits until the entries in the background compression are written,
+     * at most {@link #FLUSH_TIMEOUT} milliseconds
+     */
     public void flushAll() {
     	this.lock.lock();
     	try {
+    		long wait = TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT);
+    		while (!this.compressing.isEmpty()) {
+    			if (wait <= 0) {
+    				ConcurrentLog.warn("Compressor", "background compression of " + this.compressing.size() + " entries not finished within " + FLUSH_TIMEOUT + " milliseconds");
+    				break;
+    			}
+    			try {
+    				wait = this.compressed.awaitNanos(wait); // releases the lock for the background compression
+    			} catch (final InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    				break;
+    			}
+    		}
     		while (!this.buffer.isEmpty()) {
     			if (!flushOne()) {
     				break;
@@ -480,6 +958,15 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         this.compressionLevel = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
     }
     
+    /**
+     * Enable or disable the compression of new entries with the trained dictionaries of their groups.
+     * Entries which are already compressed with a dictionary can be read in any case.
+     * @param useDictionaries true to compress with dictionaries, if a dictionary storage is given
+     */
+    public void setDictionaryCompression(final boolean useDictionaries) {
+        this.useDictionaries = useDictionaries;
+    }
+
     /**
      * Set the new synchronization lock timeout.
      * @param lockTimeout the new synchronization lock timeout (in milliseconds).
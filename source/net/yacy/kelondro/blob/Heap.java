@@ -28,6 +28,7 @@ package net.yacy.kelondro.blob;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -35,6 +36,9 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.order.NaturalOrder;
@@ -45,6 +49,9 @@ import net.yacy.kelondro.util.MemoryControl;
 
 
 public final class Heap extends HeapModifier implements BLOB {
+
+    private final static Histogram flushTime = Metrics.histogram("kelondro_heap_flush_seconds", "duration of writing the buffer of a heap file");
+    private final static Counter writtenBytes = Metrics.counter("kelondro_heap_written_bytes_total", "number of bytes written from buffers to heap files");
     
     private SortedMap<byte[], byte[]> buffer;     // a write buffer to limit IO to the file
     private int                     buffersize; // bytes that are buffered in buffer
@@ -225,8 +232,11 @@ public final class Heap extends HeapModifier implements BLOB {
             posBuffer += 4 + this.keylength + blob.length;
         }
         assert ba.length == posBuffer; // must fit exactly
+        final long start = System.nanoTime();
         this.file.seek(pos);
         this.file.write(ba);
+        flushTime.recordSince(start);
+        writtenBytes.add(ba.length);
         this.buffer.clear();
         this.buffer.putAll(nextBuffer);
         this.buffersize = 0;
@@ -274,6 +284,28 @@ public final class Heap extends HeapModifier implements BLOB {
         }
     }
     
+    /**
+     * read the beginning of a BLOB
+     * @param key
+     * @param n the maximum number of bytes to read
+     * @return the first n bytes of the BLOB or null if the BLOB does not exist
+     * @throws IOException
+     */
+    @Override
+    public byte[] head(byte[] key, final int n) throws IOException {
+        key = normalizeKey(key);
+
+        synchronized (this) {
+            // check the buffer
+            if (this.buffer != null) {
+                byte[] blob = this.buffer.get(key);
+                if (blob != null) return blob.length <= n ? blob : Arrays.copyOf(blob, n);
+            }
+
+            return super.head(key, n);
+        }
+    }
+
     /**
      * clears the content of the database
      * @throws IOException
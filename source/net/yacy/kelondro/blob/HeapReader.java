@@ -38,6 +38,9 @@ import java.util.concurrent.ExecutionException;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.order.Digest;
@@ -59,6 +62,8 @@ public class HeapReader {
     //public final static long keepFreeMem = 20 * 1024 * 1024;
 
 	private final static ConcurrentLog log = new ConcurrentLog("HeapReader");
+    private final static Histogram readTime = Metrics.histogram("kelondro_heap_read_seconds", "duration of reading a blob from a heap file, including the waiting time for the file lock");
+    private final static Counter readBytes = Metrics.counter("kelondro_heap_read_bytes_total", "number of bytes read as blobs from heap files");
 
     // input values
     protected int                keylength;  // the length of the primary key
@@ -489,6 +494,7 @@ public class HeapReader {
         }
         key = normalizeKey(key);
 
+        final long start = System.nanoTime();
         synchronized (this.index) {
             // check if the index contains the key
             final long pos = this.index.get(key);
@@ -544,6 +550,8 @@ public class HeapReader {
                 }
             }
             this.file.readFully(blob, 0, blob.length);
+            readTime.recordSince(start);
+            readBytes.add(len);
 
             return blob;
         }
@@ -597,6 +605,34 @@ public class HeapReader {
         }
     }
 
+    /**
+     * read the beginning of a BLOB. This is cheaper than get() if only a header of a large BLOB is needed.
+     * @param key
+     * @param n the maximum number of bytes to read
+     * @return the first n bytes of the BLOB (or less if the BLOB is smaller) or null if the BLOB does not exist
+     * @throws IOException
+     */
+    public byte[] head(byte[] key, final int n) throws IOException {
+        assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
+        if (this.index == null) return null;
+        key = normalizeKey(key);
+
+        synchronized (this.index) {
+            // check if the index contains the key
+            final long pos = this.index.get(key);
+            if (pos < 0) return null;
+
+            // access the file and read the size of the container
+            this.file.seek(pos);
+            final int len = this.file.readInt() - this.keylength;
+            if (len < 0) return null;
+            this.file.seek(pos + 4 + this.keylength);
+            final byte[] head = new byte[Math.min(n, len)];
+            this.file.readFully(head, 0, head.length);
+            return head;
+        }
+    }
+
     /**
      * close the BLOB table
      */
@@ -52,7 +52,6 @@ import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
-import net.yacy.data.ymark.YMarkUtil;
 import net.yacy.kelondro.util.FileUtils;
 
 
@@ -64,6 +63,7 @@ public class Tables implements Iterable<String> {
     private final static String CIDX = "_cidx";
     private final static int NOINDEX = 50000;
     private final static int RAMINDEX = 100000;
+    private final static int STRIPES = 64; // number of row locks, must be a power of 2
 
 	private static final String suffix = ".bheap";
     private static final String system_table_pkcounter = "pkcounter";
@@ -72,6 +72,7 @@ public class Tables implements Iterable<String> {
     private final File location;
     private final ConcurrentHashMap<String, BEncodedHeap> tables;
     private final ConcurrentHashMap<String, TablesColumnIndex> cidx;
+    private final Object[] stripes;
     private int keymaxlen;
 
     // use our own formatter to prevent concurrency locks with other processes
@@ -95,6 +96,61 @@ public class Tables implements Iterable<String> {
             }
         }
         this.cidx = new ConcurrentHashMap<String, TablesColumnIndex>();
+        this.stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) this.stripes[i] = new Object();
+    }
+
+    /**
+     * Writes on the same row are serialized with a lock from a fixed set of locks, chosen by the hash
+     * of table name and primary key. Updates are read-modify-write operations which must not overlap
+     * for the same row, while writes on different rows only rarely wait for each other.
+     */
+    private Object stripe(final String table, final byte[] pk) {
+        return this.stripes[(table.hashCode() * 31 + Arrays.hashCode(pk)) & (STRIPES - 1)];
+    }
+
+    /**
+     * create a persistent index for columns of a table. The index is stored beside the table and is opened
+     * again together with the table. It is maintained on every insert, update and delete which is done
+     * with the methods of this class; changes made directly on the heap of the table are not indexed.
+     * If an index with the same columns exists already, it is used as it is, otherwise the index is built
+     * with a full scan of the table. This should be done before the table is written concurrently.
+     * @param table the table name
+     * @param columns a map of column names and separators; a column value is split with a non-empty separator into several indexed values
+     * @return the index
+     * @throws IOException
+     */
+    public TablesColumnIndex createIndex(final String table, final Map<String, String> columns) throws IOException {
+        getHeap(table); // opens an existing index
+        TablesColumnIndex index = this.cidx.get(table);
+        if (index != null && index.getType() == TablesColumnIndex.INDEXTYPE.BLOB && index.indexColumns().equals(columns)) return index;
+        index = new TablesColumnBLOBIndex(getHeap(table + CIDX));
+        this.cidx.put(table, index);
+        index.buildIndex(columns, iterator(table));
+        return index;
+    }
+
+    /**
+     * update the index of a table after a change of a row
+     * @param table the table name
+     * @param pk the primary key of the changed row
+     * @param map the complete row or null if the row must be read from the table
+     */
+    private void indexRow(final String table, final byte[] pk, Map<String, byte[]> map) throws IOException {
+        final TablesColumnIndex index = this.cidx.get(table);
+        if (index == null) return;
+        final Map<String, String> columns = index.indexColumns();
+        if (columns.isEmpty()) return; // the index is maintained by its creator
+        if (map == null) try {
+            map = getHeap(table).get(pk);
+        } catch (final SpaceExceededException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (map == null) {
+            index.delete(pk);
+        } else {
+            index.update(columns, new Row(pk, map));
+        }
     }
 
     public TablesColumnIndex getIndex(final String tableName, TablesColumnIndex.INDEXTYPE indexType) throws TableColumnIndexException, IOException {
@@ -161,18 +217,13 @@ public class Tables implements Iterable<String> {
     }
 
     public boolean hasIndex(final String tableName, final String columnName) {
-        final TablesColumnIndex tci = this.cidx.get(tableName);
-    	if (tci != null) {
-    		return tci.hasIndex(columnName);
-    	}
     	try {
-			if(this.has(tableName+CIDX, YMarkUtil.getKeyId(columnName))) {
-				return true;
-			}
+			getHeap(tableName); // opens an existing persistent index
 		} catch (final IOException e) {
 			ConcurrentLog.logException(e);
 		}
-    	return false;
+        final TablesColumnIndex tci = this.cidx.get(tableName);
+    	return tci != null && tci.hasIndex(columnName);
     }
 
     public Iterator<Row> getByIndex(final String table, final String whereColumn, final String separator, final String whereValue) {
@@ -295,6 +346,9 @@ public class Tables implements Iterable<String> {
         } finally {
             this.tables.remove(tablename);
         }
+        // an index of the table stays defined but is now empty
+        final TablesColumnIndex index = this.cidx.get(tablename);
+        if (index != null) index.buildIndex(index.indexColumns(), new ArrayList<Row>(0).iterator());
     }
 
     /**
@@ -320,6 +374,12 @@ public class Tables implements Iterable<String> {
         final File heapf = new File(this.location, table);
         heap = new BEncodedHeap(heapf, this.keymaxlen);
         this.tables.put(tablename, heap);
+
+        // open a persistent index of the table
+        if (!tablename.endsWith(CIDX) && !this.cidx.containsKey(tablename) && new File(this.location, tablename + CIDX + suffix).exists()) {
+            final TablesColumnBLOBIndex index = new TablesColumnBLOBIndex(getHeap(tablename + CIDX));
+            if (index.size() > 0) this.cidx.putIfAbsent(tablename, index);
+        }
         return heap;
     }
 
@@ -384,38 +444,34 @@ public class Tables implements Iterable<String> {
 
     public void insert(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
+        synchronized (stripe(table, pk)) {
+            try {
+                heap.insert(pk, map);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            indexRow(table, pk, map);
         }
     }
 
     public void insert(final String table, final Row row) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(row.pk, row);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        insert(table, row.pk, row);
     }
 
     public void update(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.update(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
+        synchronized (stripe(table, pk)) {
+            try {
+                heap.update(pk, map);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            indexRow(table, pk, null);
         }
     }
 
     public void update(final String table, final Row row) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.update(row.pk, row);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        update(table, row.pk, row);
     }
 
     public byte[] createRow(final String table) throws IOException, SpaceExceededException {
@@ -431,7 +487,11 @@ public class Tables implements Iterable<String> {
 
     public void delete(final String table, final byte[] pk) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        heap.delete(pk);
+        synchronized (stripe(table, pk)) {
+            heap.delete(pk);
+            final TablesColumnIndex index = this.cidx.get(table);
+            if (index != null && !index.indexColumns().isEmpty()) index.delete(pk);
+        }
     }
 
     public boolean has(final String table, final byte[] key) throws IOException {
@@ -454,6 +514,11 @@ public class Tables implements Iterable<String> {
     }
 
     public Iterator<Row> iterator(final String table, final String whereColumn, final byte[] whereValue) throws IOException {
+        getHeap(table); // opens an existing persistent index
+        final TablesColumnIndex index = this.cidx.get(table);
+        if (index != null && "".equals(index.indexColumns().get(whereColumn))) {
+            return new IndexRowIterator(table, whereColumn, whereValue, index.get(whereColumn, UTF8.String(whereValue)));
+        }
         return new HeapRowIterator(table, whereColumn, whereValue);
     }
 
@@ -628,11 +693,12 @@ public class Tables implements Iterable<String> {
     	DESC
     }
 
+    /**
+     * iterator over the rows of a table. The conditions are evaluated by the heap on the encoded rows,
+     * so that only the matching rows are decoded.
+     */
     public class HeapRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
 
-        private final String whereColumn;
-        private final byte[] whereValue;
-        private final Pattern wherePattern;
         private final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i;
 
         /**
@@ -641,9 +707,6 @@ public class Tables implements Iterable<String> {
          * @throws IOException
          */
         public HeapRowIterator(final String table) throws IOException {
-            this.whereColumn = null;
-            this.whereValue = null;
-            this.wherePattern = null;
             final BEncodedHeap heap = getHeap(table);
             this.i = heap.iterator();
         }
@@ -658,11 +721,8 @@ public class Tables implements Iterable<String> {
          */
         public HeapRowIterator(final String table, final String whereColumn, final byte[] whereValue) throws IOException {
             assert whereColumn != null || whereValue == null;
-            this.whereColumn = whereColumn;
-            this.whereValue = whereValue;
-            this.wherePattern = null;
             final BEncodedHeap heap = getHeap(table);
-            this.i = heap.iterator();
+            this.i = whereValue == null ? heap.iterator() : heap.iterator(whereColumn, whereValue);
         }
 
         /**
@@ -674,11 +734,8 @@ public class Tables implements Iterable<String> {
          * @throws IOException
          */
         public HeapRowIterator(final String table, final String whereColumn, final Pattern wherePattern) throws IOException {
-            this.whereColumn = whereColumn;
-            this.whereValue = null;
-            this.wherePattern = wherePattern == null || wherePattern.toString().isEmpty() ? null : wherePattern;
             final BEncodedHeap heap = getHeap(table);
-            this.i = heap.iterator();
+            this.i = wherePattern == null || wherePattern.toString().isEmpty() ? heap.iterator() : heap.iterator(whereColumn, wherePattern);
         }
 
         /**
@@ -689,35 +746,43 @@ public class Tables implements Iterable<String> {
          * @throws IOException
          */
         public HeapRowIterator(final String table, final Pattern pattern) throws IOException {
-            this.whereColumn = null;
-            this.whereValue = null;
-            this.wherePattern = pattern == null || pattern.toString().isEmpty() ? null : pattern;
             final BEncodedHeap heap = getHeap(table);
-            this.i = heap.iterator();
+            this.i = pattern == null || pattern.toString().isEmpty() ? heap.iterator() : heap.iterator(null, pattern);
         }
 
         @Override
         protected Row next0() {
-            if (this.i == null) return null;
-        	Row r;
-            while (this.i.hasNext()) {
-                r = new Row(this.i.next());
-                if (this.whereValue != null) {
-                    if (Arrays.equals(r.get(this.whereColumn), this.whereValue)) {
-                    	return r;
-                    }
-                } else if (this.wherePattern != null) {
-                    if (this.whereColumn == null) {
-                        // shall match any column
-                        for (final byte[] b: r.values()) {
-                            if (this.wherePattern.matcher(UTF8.String(b)).matches()) return r;
-                        }
-                    } else {
-                        // must match the given column
-                        if (this.wherePattern.matcher(UTF8.String(r.get(this.whereColumn))).matches()) return r;
-                    }
-                } else {
-                    return r;
+            if (this.i == null || !this.i.hasNext()) return null;
+            return new Row(this.i.next());
+        }
+    }
+
+    /**
+     * iterator over the rows of a table with given primary keys found in a column index
+     */
+    private class IndexRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
+
+        private final String table;
+        private final String whereColumn;
+        private final byte[] whereValue;
+        private final Iterator<byte[]> pks;
+
+        private IndexRowIterator(final String table, final String whereColumn, final byte[] whereValue, final Collection<byte[]> pks) {
+            this.table = table;
+            this.whereColumn = whereColumn;
+            this.whereValue = whereValue;
+            this.pks = pks.iterator();
+        }
+
+        @Override
+        protected Row next0() {
+            while (this.pks.hasNext()) {
+                try {
+                    final Row r = select(this.table, this.pks.next());
+                    // the row may have been changed since the index was read
+                    if (r != null && Arrays.equals(r.get(this.whereColumn), this.whereValue)) return r;
+                } catch (IOException | SpaceExceededException e) {
+                    continue;
                 }
             }
             return null;
@@ -20,31 +20,66 @@
 // along with this program; if not, write to the Free Software
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
+
 package net.yacy.kelondro.blob;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
+import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.util.ByteBuffer;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
-import net.yacy.data.ymark.YMarkUtil;
 
+/**
+ * A persistent column index stored in a BEncodedHeap.
+ * The index has one row for each indexed column value, which holds the primary keys of the table rows
+ * having that value, and one row for each indexed table row, which holds the keys of the value rows
+ * containing its primary key. A change of a table row therefore touches only the index rows of its own
+ * values, the index is never rebuilt or rewritten as a whole. The indexed columns are also stored,
+ * so that an index can be used and maintained again after a restart.
+ */
 public class TablesColumnBLOBIndex extends TablesColumnIndex{
 
-	// Map<ColumnName, Map<ColumnValue, T<PrimaryKey>>>
-	private final BEncodedHeap index;
 	private final static byte SEPERATOR = (byte) ',';
 
+	// column names of the three kinds of index rows
+	private final static String COL_INDEX = "index";         // definition row: the name of the indexed column
+	private final static String COL_SEPARATOR = "separator"; // definition row: the value separator of the column
+	private final static String COL_COLUMN = "column";       // value row: the name of the column
+	private final static String COL_VALUE = "value";         // value row: the column value
+	private final static String COL_PKS = "pks";             // value row: the primary keys of the rows having the value
+	private final static String COL_ROW = "row";             // row entry: the primary key of the table row
+	private final static String COL_KEYS = "keys";           // row entry: the concatenated keys of the value rows of the table row
+
+	private final static Pattern ANY = Pattern.compile(".*", Pattern.DOTALL);
+
+	private final BEncodedHeap index;
+	private final int keylength;
+
     public TablesColumnBLOBIndex(final BEncodedHeap bheap) {
     	super(TablesColumnIndex.INDEXTYPE.BLOB);
     	this.index = bheap;
+    	this.keylength = bheap.encodedKey(COL_INDEX).length;
+    	final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = this.index.iterator(COL_INDEX, ANY);
+    	while (i != null && i.hasNext()) {
+    		final Map<String, byte[]> definition = i.next().getValue();
+    		final byte[] separator = definition.get(COL_SEPARATOR);
+    		this.indexColumns.put(UTF8.String(definition.get(COL_INDEX)), separator == null ? "" : UTF8.String(separator));
+    	}
+    	if (this.indexColumns.isEmpty() && !this.index.isEmpty()) {
+    		// an index with the former layout (one row per column), it must be built again
+    		ConcurrentLog.info("TablesColumnBLOBIndex", "clearing index " + this.index.getFile().getName() + " with outdated layout");
+    		this.index.clear();
+    	}
     }
 
     public static Collection<byte[]> byteToCollection(final byte[] b) {
@@ -64,44 +99,90 @@ public class TablesColumnBLOBIndex extends TablesColumnIndex{
     	return b;
     }
 
+    private byte[] definitionKey(final String columnName) {
+    	return this.index.encodedKey(COL_INDEX + ":" + columnName);
+    }
+
+    private byte[] valueKey(final String columnName, final String columnValue) {
+    	return this.index.encodedKey(COL_VALUE + ":" + columnName + "\n" + columnValue);
+    }
+
+    private byte[] rowKey(final byte[] pk) {
+    	return this.index.encodedKey(COL_ROW + ":" + UTF8.String(pk));
+    }
+
+    /**
+     * @return the value row of a column value or null if no row has this value
+     */
+    private Map<String, byte[]> valueRow(final String columnName, final String columnValue) throws IOException, SpaceExceededException {
+    	final Map<String, byte[]> row = this.index.get(valueKey(columnName, columnValue));
+    	// the keys are hashes: check that the row really belongs to the value
+    	if (row == null || !columnName.equals(UTF8.String(row.get(COL_COLUMN))) || !columnValue.equals(UTF8.String(row.get(COL_VALUE)))) return null;
+    	return row;
+    }
+
     @Override
-    public void deleteIndex(final String columnName) {
-    	final byte[] column = YMarkUtil.getKeyId(columnName);
+    protected synchronized void defineColumns(final Map<String, String> columns) {
+    	super.defineColumns(columns);
     	try {
-			this.index.remove(column);
-		} catch (final IOException e) {
-			ConcurrentLog.logException(e);
-		} catch (final SpaceExceededException e) {
-			ConcurrentLog.logException(e);
-		}
+    		for (final Map.Entry<String, String> column : columns.entrySet()) {
+    			final Map<String, byte[]> definition = new HashMap<String, byte[]>();
+    			definition.put(COL_INDEX, UTF8.getBytes(column.getKey()));
+    			definition.put(COL_SEPARATOR, UTF8.getBytes(column.getValue()));
+    			this.index.insert(definitionKey(column.getKey()), definition);
+    		}
+    	} catch (final IOException e) {
+    		ConcurrentLog.logException(e);
+    	} catch (final SpaceExceededException e) {
+    		ConcurrentLog.logException(e);
+    	}
+    }
+
+    @Override
+    public synchronized void deleteIndex(final String columnName) {
+    	this.indexColumns.remove(columnName);
+    	try {
+    		this.index.delete(definitionKey(columnName));
+    		final List<byte[]> valueKeys = new ArrayList<byte[]>();
+    		final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = this.index.iterator(COL_COLUMN, UTF8.getBytes(columnName));
+    		while (i != null && i.hasNext()) valueKeys.add(i.next().getKey());
+    		// the row entries may still point to the deleted value rows, these references are ignored
+    		for (final byte[] key : valueKeys) this.index.delete(key);
+    	} catch (final IOException e) {
+    		ConcurrentLog.logException(e);
+    	}
     }
 
 	@Override
-    protected void  insertPK(final String columnName, final String columnValue, final byte[] pk) {
-		Map<String, byte[]> valueIdxMap;
-		Collection<byte[]> PKset;
-		final byte[] column = YMarkUtil.getKeyId(columnName);
+    protected synchronized void insertPK(final String columnName, final String columnValue, final byte[] pk) {
 		try {
-			valueIdxMap = this.index.get(column);
-			if(valueIdxMap != null) {
-				if(valueIdxMap.containsKey(columnValue)) {
-					PKset = byteToCollection(valueIdxMap.get(columnValue));
-					if(!ByteBuffer.contains(PKset, pk)) {
-						PKset.add(pk);
-					}
-				} else {
-					PKset = new ArrayList<byte[]>(1);
-					PKset.add(pk);
-					valueIdxMap.put(columnValue, CollectionToByte(PKset));
-				}
-			} else {
+			// add the primary key to the value row
+			final byte[] valueKey = valueKey(columnName, columnValue);
+			Map<String, byte[]> valueRow = valueRow(columnName, columnValue);
+			final Collection<byte[]> PKset;
+			if (valueRow == null) {
+				valueRow = new HashMap<String, byte[]>();
+				valueRow.put(COL_COLUMN, UTF8.getBytes(columnName));
+				valueRow.put(COL_VALUE, UTF8.getBytes(columnValue));
 				PKset = new ArrayList<byte[]>(1);
+			} else {
+				PKset = byteToCollection(valueRow.get(COL_PKS));
+			}
+			if (!ByteBuffer.contains(PKset, pk)) {
 				PKset.add(pk);
-				valueIdxMap = new ConcurrentHashMap<String, byte[]>();
+				valueRow.put(COL_PKS, CollectionToByte(PKset));
+				this.index.insert(valueKey, valueRow);
+			}
+
+			// remember the value row in the row entry of the primary key
+			final byte[] rowKey = rowKey(pk);
+			final byte[] keys = this.index.getProp(rowKey, COL_KEYS);
+			if (keys == null || indexOf(keys, valueKey) < 0) {
+				final Map<String, byte[]> rowEntry = new HashMap<String, byte[]>();
+				rowEntry.put(COL_ROW, pk);
+				rowEntry.put(COL_KEYS, keys == null ? valueKey : concat(keys, valueKey));
+				this.index.insert(rowKey, rowEntry);
 			}
-			valueIdxMap.put(columnValue, CollectionToByte(PKset));
-			this.index.insert(column, valueIdxMap);
-			return;
 		} catch (final IOException e) {
 			ConcurrentLog.logException(e);
 		} catch (final SpaceExceededException e) {
@@ -109,85 +190,95 @@ public class TablesColumnBLOBIndex extends TablesColumnIndex{
 		}
 	}
 
+	private static byte[] concat(final byte[] a, final byte[] b) {
+		final byte[] c = new byte[a.length + b.length];
+		System.arraycopy(a, 0, c, 0, a.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+	private int indexOf(final byte[] keys, final byte[] key) {
+		outer: for (int p = 0; p + this.keylength <= keys.length; p += this.keylength) {
+			for (int j = 0; j < this.keylength; j++) if (keys[p + j] != key[j]) continue outer;
+			return p;
+		}
+		return -1;
+	}
+
 	@Override
-    protected void removePK(final byte[] pk) {
-		final Iterator<Map.Entry<byte[], Map<String, byte[]>>> niter = this.index.iterator();
-		while (niter.hasNext()) {
-			final Map.Entry<byte[], Map<String,byte[]>> entry = niter.next();
-			final Iterator<Map.Entry<String, byte[]>> viter = entry.getValue().entrySet().iterator();
-			while(viter.hasNext()) {
-				final Map.Entry<String, byte[]> columnValue = viter.next();
-				final Collection<byte[]> PKset = byteToCollection(columnValue.getValue());
+    protected synchronized void removePK(final byte[] pk) {
+		try {
+			final byte[] rowKey = rowKey(pk);
+			final byte[] keys = this.index.getProp(rowKey, COL_KEYS);
+			if (keys == null) return;
+			for (int p = 0; p + this.keylength <= keys.length; p += this.keylength) {
+				final byte[] valueKey = new byte[this.keylength];
+				System.arraycopy(keys, p, valueKey, 0, this.keylength);
+				final Map<String, byte[]> valueRow = this.index.get(valueKey);
+				if (valueRow == null || valueRow.get(COL_PKS) == null) continue;
+				final Collection<byte[]> PKset = byteToCollection(valueRow.get(COL_PKS));
 				ByteBuffer.remove(PKset, pk);
-				if(PKset.isEmpty()) {
-					viter.remove();
+				if (PKset.isEmpty()) {
+					this.index.delete(valueKey);
 				} else {
-					columnValue.setValue(CollectionToByte(PKset));
+					valueRow.put(COL_PKS, CollectionToByte(PKset));
+					this.index.insert(valueKey, valueRow);
 				}
 			}
-			try {
-				this.index.insert(entry.getKey(), entry.getValue());
-			} catch (final SpaceExceededException e) {
-				ConcurrentLog.logException(e);
-			} catch (final IOException e) {
-				ConcurrentLog.logException(e);
-			}
+			this.index.delete(rowKey);
+		} catch (final IOException e) {
+			ConcurrentLog.logException(e);
+		} catch (final SpaceExceededException e) {
+			ConcurrentLog.logException(e);
 		}
 	}
 
 	@Override
-    public void clear() {
+    public synchronized void clear() {
 		this.index.clear();
+		this.indexColumns.clear();
 	}
 
 	@Override
     public Collection<String> columns() {
-		return this.index.columns();
+		return new ArrayList<String>(this.indexColumns.keySet());
 	}
 
 	@Override
     public Set<String> keySet(final String columnName) {
-		final byte[] column = YMarkUtil.getKeyId(columnName);
 		// a TreeSet is used to get sorted set of keys (e.g. folders)
-		if(this.index.containsKey(column)) {
-			try {
-				return new TreeSet<String>(this.index.get(column).keySet());
-			} catch (final IOException e) {
-				ConcurrentLog.logException(e);
-			} catch (final SpaceExceededException e) {
-				ConcurrentLog.logException(e);
-			}
+		final Set<String> keys = new TreeSet<String>();
+		final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = this.index.iterator(COL_COLUMN, UTF8.getBytes(columnName));
+		while (i != null && i.hasNext()) {
+			final byte[] value = i.next().getValue().get(COL_VALUE);
+			if (value != null) keys.add(UTF8.String(value));
 		}
-		return new TreeSet<String>();
+		return keys;
 	}
 
 	@Override
     public boolean containsKey(final String columnName, final String key) {
-		final byte[] column = YMarkUtil.getKeyId(columnName);
-		if(this.index.containsKey(column)) {
-			try {
-				return this.index.get(column).containsKey(key);
-			} catch (final IOException e) {
-				ConcurrentLog.logException(e);
-			} catch (final SpaceExceededException e) {
-				ConcurrentLog.logException(e);
-			}
+		try {
+			return valueRow(columnName, key) != null;
+		} catch (final IOException e) {
+			ConcurrentLog.logException(e);
+		} catch (final SpaceExceededException e) {
+			ConcurrentLog.logException(e);
 		}
 		return false;
 	}
 
 	@Override
     public boolean hasIndex(final String columnName) {
-		final byte[] column = YMarkUtil.getKeyId(columnName);
-		return this.index.containsKey(column);
+		return this.indexColumns.containsKey(columnName);
 	}
 
 	@Override
     public Collection<byte[]> get(final String columnName, final String key) {
-		final byte[] column = YMarkUtil.getKeyId(columnName);
 		// deserialize
 		try {
-			return byteToCollection(this.index.get(column).get(key));
+			final Map<String, byte[]> valueRow = valueRow(columnName, key);
+			if (valueRow != null && valueRow.get(COL_PKS) != null) return byteToCollection(valueRow.get(COL_PKS));
 		} catch (final IOException e) {
 			ConcurrentLog.logException(e);
 		} catch (final SpaceExceededException e) {
@@ -198,21 +289,18 @@ public class TablesColumnBLOBIndex extends TablesColumnIndex{
 
 	@Override
     public int size(final String columnName) {
-		final byte[] column = YMarkUtil.getKeyId(columnName);
-		if(this.index.containsKey(column)) {
-			try {
-				return this.index.get(column).size();
-			} catch (final IOException e) {
-				ConcurrentLog.logException(e);
-			} catch (final SpaceExceededException e) {
-				ConcurrentLog.logException(e);
-			}
+		if (!this.hasIndex(columnName)) return -1;
+		int size = 0;
+		final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = this.index.iterator(COL_COLUMN, UTF8.getBytes(columnName));
+		while (i != null && i.hasNext()) {
+			i.next();
+			size++;
 		}
-		return -1;
+		return size;
 	}
 
 	@Override
     public int size() {
-		return this.index.size();
+		return this.indexColumns.size();
 	}
-}
\ No newline at end of file
+}
@@ -24,9 +24,11 @@ package net.yacy.kelondro.blob;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.order.NaturalOrder;
@@ -39,6 +41,8 @@ public abstract class TablesColumnIndex {
 
 	public static enum INDEXTYPE {RAM, BLOB}
 	private INDEXTYPE type;
+	// Map<ColumnName, Separator> of the columns given to buildIndex
+	protected final Map<String, String> indexColumns = new ConcurrentHashMap<String, String>();
 	// Map<ColumnName, Map<ColumnValue, T<PrimaryKey>>>
 	// private final Map<String, Map<String, TreeSet<byte[]>>> index;
 	
@@ -64,6 +68,23 @@ public abstract class TablesColumnIndex {
     public INDEXTYPE getType() {
     	return this.type;
     }
+
+    /**
+     * @return a copy of the map of column names and separators of the columns given to {@link #buildIndex(Map, Iterator)},
+     * which is empty if the index has not been built with this method.
+     */
+    public Map<String, String> indexColumns() {
+    	return new HashMap<String, String>(this.indexColumns);
+    }
+
+    /**
+     * set the columns which are covered by this index
+     * @param columns - a map of column names and separators
+     */
+    protected void defineColumns(final Map<String, String> columns) {
+    	this.indexColumns.clear();
+    	this.indexColumns.putAll(columns);
+    }
     
     /**
      * create an index for a given table and given columns
@@ -73,12 +94,21 @@ public abstract class TablesColumnIndex {
      */  
     public synchronized void buildIndex(final Map<String,String> columns, final Iterator<Tables.Row> table) {
     	this.clear();
+    	this.defineColumns(columns);
     	// loop through all rows of the table     
     	while (table.hasNext()) {
     		this.add(columns, table.next());
     	}
     }
 	
+	private void insertPK(final String columnName, final String columnValue, final String separator, final byte[] pk) {
+		if (columnValue == null) return; // the row has no value in this column
+		if (separator.isEmpty())
+			this.insertPK(columnName, columnValue, pk);
+		else
+			this.insertPK(columnName, columnValue.split(separator), pk);
+	}
+
 	private void insertPK(final String columnName, final String[] columnValues, final byte[] pk) {
 		for (String columnValue : columnValues) {						
 			this.insertPK(columnName, columnValue, pk);
@@ -100,47 +130,33 @@ public abstract class TablesColumnIndex {
 	}
 
 	public void add(final String columnName, final String separator, final Map<String,String> map, final byte[] pk) {
-        if(separator.isEmpty())
-        	this.insertPK(columnName, map.get(columnName), pk);
-        else
-        	this.insertPK(columnName, map.get(columnName).split(separator), pk);
+		this.insertPK(columnName, map.get(columnName), separator, pk);
 	}
 	
 	public void add(final String columnName, final String separator, final Tables.Data row, final byte[] pk) {
-        if(separator.isEmpty())
-        	this.insertPK(columnName, UTF8.String(row.get(columnName)), pk);
-        else
-        	this.insertPK(columnName, UTF8.String(row.get(columnName)).split(separator), pk);
+		this.insertPK(columnName, value(row, columnName), separator, pk);
 	}
 	
 	public void add(final String columnName, final String separator, final Tables.Row row) {
-        if(separator.isEmpty())
-        	this.insertPK(columnName, UTF8.String(row.get(columnName)), row.getPK());	
-        else
-        	this.insertPK(columnName, UTF8.String(row.get(columnName)).split(separator), row.getPK());
+		this.insertPK(columnName, value(row, columnName), separator, row.getPK());
 	}
 	
 	public void add(final Map<String,String> columns, final Map<String,String> map, final byte[] pk) {
-		final Iterator<String> iter = columns.keySet().iterator();
-		while (iter.hasNext()) {
-			final String columnName = iter.next();
-			if(columns.get(columnName).isEmpty())
-				this.insertPK(columnName, map.get(columnName), pk);
-            else
-            	this.insertPK(columnName, map.get(columnName).split(columns.get(columnName)), pk);
+		for (final Map.Entry<String, String> column : columns.entrySet()) {
+			this.insertPK(column.getKey(), map.get(column.getKey()), column.getValue(), pk);
 		}
 	}
 	
 	public void add(final Map<String,String> columns, final Tables.Data row, final byte[] pk) {
-		final Iterator<String> iter = columns.keySet().iterator();
-		while (iter.hasNext()) {
-			final String columnName = iter.next();
-			if(columns.get(columnName).isEmpty())
-				this.insertPK(columnName, UTF8.String(row.get(columnName)), pk);
-            else
-            	this.insertPK(columnName, UTF8.String(row.get(columnName)).split(columns.get(columnName)), pk);
+		for (final Map.Entry<String, String> column : columns.entrySet()) {
+			this.insertPK(column.getKey(), value(row, column.getKey()), column.getValue(), pk);
 		}
 	}
+
+	private static String value(final Tables.Data row, final String columnName) {
+		final byte[] b = row.get(columnName);
+		return b == null ? null : UTF8.String(b);
+	}
 	
 	public void add(final Map<String,String> columns, final Tables.Row row) {
 		this.add(columns, row, row.getPK());
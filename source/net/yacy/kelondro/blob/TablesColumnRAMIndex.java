@@ -22,6 +22,7 @@
 
 package net.yacy.kelondro.blob;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -46,11 +47,12 @@ public class TablesColumnRAMIndex extends TablesColumnIndex{
     
     @Override
     public void deleteIndex(final String columnName) {
+    	this.indexColumns.remove(columnName);
     	this.index.remove(columnName);
     }
          
 	@Override
-    protected void insertPK(final String columnName, final String columnValue, final byte[] pk) {
+    protected synchronized void insertPK(final String columnName, final String columnValue, final byte[] pk) {
 		Map<String, TreeSet<byte[]>> valueIdxMap;
 		TreeSet<byte[]> PKset;		
 		if(this.index.containsKey(columnName)) {
@@ -116,8 +118,11 @@ public class TablesColumnRAMIndex extends TablesColumnIndex{
 	}
 	
 	@Override
-    public Collection<byte[]> get(final String columnName, final String key) {
-		return this.index.get(columnName).get(key);
+    public synchronized Collection<byte[]> get(final String columnName, final String key) {
+		final Map<String, TreeSet<byte[]>> valueIdxMap = this.index.get(columnName);
+		final TreeSet<byte[]> PKset = valueIdxMap == null ? null : valueIdxMap.get(key);
+		// a copy is returned because the set may be changed concurrently
+		return PKset == null ? new ArrayList<byte[]>(0) : new ArrayList<byte[]>(PKset);
 	}
 	
 	@Override
@@ -38,6 +38,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.MemoryBudget;
 import net.yacy.kelondro.util.MemoryControl;
 
 public class Word {
@@ -53,6 +54,7 @@ public class Word {
     public static final Base64Order commonHashOrder  = Base64Order.enhancedCoder;
 
     private static final int hashCacheSize = Math.max(20000, Math.min(200000, (int) (MemoryControl.available() / 40000L)));
+    private static final long hashCacheEntryMemory = 120; // estimated bytes of a word, its hash and the cache node
     private static ARC<String, byte[]> hashCache = null;
     static {
         try {
@@ -62,6 +64,19 @@ public class Word {
             hashCache = new ConcurrentARC<String, byte[]>(1000, Math.min(8, 1 + Runtime.getRuntime().availableProcessors()));
             ConcurrentLog.info("Word", "hashCache.size = " + 1000);
         }
+        MemoryBudget.register("word hashes", MemoryBudget.PRIORITY_WORD_HASHES, new MemoryBudget.Consumer() {
+            @Override
+            public long memoryUsed() {
+                return hashCache.size() * hashCacheEntryMemory;
+            }
+
+            @Override
+            public long shrink(final long bytes) {
+                final long used = memoryUsed();
+                hashCache.clear();
+                return used;
+            }
+        });
     }
 
     // object carries statistics for words and sentences
@@ -123,12 +138,8 @@ public class Word {
     	    h[commonHashLength - 1] = lowByte;
     	}
         assert h[2] != '@';
-        if (MemoryControl.shortStatus()) {
-            hashCache.clear();
-        } else {
-            //hashCache.putIfAbsent(wordlc, h); // prevent expensive MD5 computation and encoding
-            hashCache.insertIfAbsent(wordlc, h); // prevent expensive MD5 computation and encoding
-        }
+        //hashCache.putIfAbsent(wordlc, h); // prevent expensive MD5 computation and encoding
+        hashCache.insertIfAbsent(wordlc, h); // prevent expensive MD5 computation and encoding
         return h;
     }
 
@@ -33,6 +33,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
@@ -45,6 +46,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.util.MemoryBudget;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MergeIterator;
 import net.yacy.search.EventTracker;
@@ -66,12 +68,16 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     private static final long cleanupCycle =  60000;
     private static final long dumpCycle    = 600000;
+    private static final int  maxSpillRuns =     16;
 
     // class variables
     private final ReferenceContainerArray<ReferenceType> array;
+    private final ReferenceContainerArray<ReferenceType> spill; // sorted runs of the ram, written under memory pressure and merged into one BLOB of the array
     private       ReferenceContainerCache<ReferenceType> ram;
     private final ComparableARC<byte[], Integer>         countCache;
     private       int                                    maxRamEntries;
+    private       long                                   maxRamBytes;
+    private final AtomicLong                             ramBytes; // running estimate of ram.usedMemory(), corrected when it exceeds maxRamBytes
     private       IODispatcher                           merger; // pointer to shared merger
     private       long                                   lastCleanup;
     private long  lastDump;
@@ -79,6 +85,8 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     private final int                                    writeBufferSize;
     private final Map<byte[], HandleSet>                 removeDelayedURLs; // mapping from word hashes to a list of url hashes
     private       boolean                                flushShallRun;
+    private volatile boolean                             spillRequested; // set by the memory budget under memory pressure
+    private final String                                 budgetName;
     private final Thread                                 flushThread;
 
     public IndexCell(
@@ -97,9 +105,12 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
         this.merger = merger;
         this.array = new ReferenceContainerArray<ReferenceType>(cellPath, prefix, factory, termOrder, termSize);
+        this.spill = new ReferenceContainerArray<ReferenceType>(new File(cellPath, prefix + ".spill"), prefix, factory, termOrder, termSize);
         this.ram = new ReferenceContainerCache<ReferenceType>(factory, termOrder, termSize);
         this.countCache = new ComparableARC<byte[], Integer>(1000, termOrder);
         this.maxRamEntries = maxRamEntries;
+        this.maxRamBytes = Math.max(16L * 1024L * 1024L, MemoryControl.maxMemory() / 10);
+        this.ramBytes = new AtomicLong(0L);
         this.lastCleanup = System.currentTimeMillis();
         this.lastDump = System.currentTimeMillis();
         this.targetFileSize = targetFileSize;
@@ -107,8 +118,25 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.writeBufferSize = writeBufferSize;
         this.removeDelayedURLs = new TreeMap<byte[], HandleSet>(Word.commonHashOrder);
         this.flushShallRun = true;
+        this.spillRequested = false;
         this.flushThread = new FlushThread(cellPath.toString());
         this.flushThread.start();
+
+        // under memory pressure the flush thread writes the ram as a sorted run
+        this.budgetName = "RWI buffer " + new File(cellPath, prefix);
+        MemoryBudget.register(this.budgetName, MemoryBudget.PRIORITY_RWI_BUFFER, new MemoryBudget.Consumer() {
+            @Override
+            public long memoryUsed() {
+                return IndexCell.this.ramBytes.get();
+            }
+
+            @Override
+            public long shrink(final long bytes) {
+                if (IndexCell.this.ram.size() <= 3000) return 0;
+                IndexCell.this.spillRequested = true;
+                return IndexCell.this.ramBytes.get();
+            }
+        });
     }
 
     private class FlushThread extends Thread {
@@ -132,18 +160,13 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
             // dump the cache if necessary
             final long t = System.currentTimeMillis();
-            if ((IndexCell.this.ram.size() >= IndexCell.this.maxRamEntries ||
-                (IndexCell.this.ram.size() > 3000 && !MemoryControl.request(80L * 1024L * 1024L, false)) ||
-                (!IndexCell.this.ram.isEmpty() && IndexCell.this.lastDump + dumpCycle < t))) {
+            if (dumpRequired(t) || spillRequired()) {
                 synchronized (IndexCell.this.merger) {
-                    if (IndexCell.this.ram.size() >= IndexCell.this.maxRamEntries ||
-                        (IndexCell.this.ram.size() > 3000 && !MemoryControl.request(80L * 1024L * 1024L, false)) ||
-                        (!IndexCell.this.ram.isEmpty() && IndexCell.this.lastDump + dumpCycle < t)) try {
-                            IndexCell.this.lastDump = System.currentTimeMillis();
+                    final boolean dump = dumpRequired(System.currentTimeMillis());
+                    if (dump || spillRequired()) try {
+                        IndexCell.this.lastDump = System.currentTimeMillis();
                         // removed delayed
                         try {removeDelayed();} catch (final IOException e) {}
-                        // dump the ram
-                        final File dumpFile = IndexCell.this.array.newContainerBLOBFile();
                         // a critical point: when the ram is handed to the dump job,
                         // don't write into it any more. Use a fresh one instead
                         ReferenceContainerCache<ReferenceType> ramdump;
@@ -153,10 +176,22 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
                             ramdump = IndexCell.this.ram;
                             // get a fresh ram cache
                             IndexCell.this.ram = new ReferenceContainerCache<ReferenceType>(IndexCell.this.factory, termOrder, termSize);
+                            IndexCell.this.ramBytes.set(0L);
                         }
                         // WARNING : if this cell is queried before this dump termination, terms are no longer in the cache and would therefore not be found
-                        // dump the buffer
-                        IndexCell.this.merger.dump(ramdump, dumpFile, IndexCell.this.array);
+                        IndexCell.this.spillRequested = false;
+                        if (!dump) {
+                            // memory is short: write the ram as a sorted run instead of a new small BLOB of the array
+                            spillRun(ramdump);
+                            if (IndexCell.this.spill.entries() >= maxSpillRuns) mergeSpill();
+                        } else if (IndexCell.this.spill.entries() == 0) {
+                            // dump the buffer
+                            if (!ramdump.isEmpty()) IndexCell.this.merger.dump(ramdump, IndexCell.this.array.newContainerBLOBFile(), IndexCell.this.array);
+                        } else {
+                            // the ram becomes the last run and all runs are merged into a single BLOB
+                            spillRun(ramdump);
+                            mergeSpill();
+                        }
                         IndexCell.this.lastDump = System.currentTimeMillis();
                     } catch (final Throwable e) {
                         // catch all exceptions
@@ -183,6 +218,47 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     }
 
+    /**
+     * @return true if the ram shall be written to the array, because it is full or old
+     */
+    private boolean dumpRequired(final long t) {
+        return this.ram.size() >= this.maxRamEntries ||
+               ((!this.ram.isEmpty() || this.spill.entries() > 0) && this.lastDump + dumpCycle < t);
+    }
+
+    /**
+     * @return true if the ram shall be written as a sorted run because memory is short
+     */
+    private boolean spillRequired() {
+        if (this.ram.size() <= 3000) return false;
+        if (this.spillRequested) return true;
+        if (this.ramBytes.get() <= this.maxRamBytes) return false;
+        // the estimate ignores removals and allocation overhead: measure the ram only when the estimate exceeds the limit
+        final long used = this.ram.usedMemory();
+        this.ramBytes.set(used);
+        return used > this.maxRamBytes;
+    }
+
+    /**
+     * write a ram cache as a sorted run to the spill array, where it can still be read
+     */
+    private void spillRun(final ReferenceContainerCache<ReferenceType> ramdump) throws IOException {
+        if (ramdump.isEmpty()) return;
+        final File runFile = this.spill.newContainerBLOBFile();
+        ramdump.dump(runFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
+        this.spill.mountBLOBFile(runFile);
+    }
+
+    /**
+     * merge all sorted runs in one pass into a single new BLOB of the array
+     */
+    private void mergeSpill() throws IOException {
+        final int runs = this.spill.entries();
+        if (runs == 0) return;
+        final File merged = this.spill.mergeInto(this.array, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
+        ConcurrentLog.info("IndexCell", "merged " + runs + " spilled runs into " + (merged == null ? "nothing" : merged.getName()));
+    }
+
     private boolean shrink(final long targetFileSize, final long maxFileSize) {
         if (this.array.entries() < 2) return false;
         boolean donesomething = false;
@@ -282,7 +358,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
             this.ram.add(newEntries);
         }
-
+        this.ramBytes.addAndGet(((long) newEntries.size()) * this.array.rowdef().objectsize);
     }
 
     @Override
@@ -297,6 +373,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
             this.ram.add(termHash, entry);
         }
+        this.ramBytes.addAndGet(this.array.rowdef().objectsize);
     }
 
     /**
@@ -305,7 +382,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     @Override
     public boolean has(final byte[] termHash) {
         if (this.ram.has(termHash)) return true;
-        return this.array.has(termHash);
+        return this.array.has(termHash) || this.spill.has(termHash);
     }
 
     /**
@@ -321,6 +398,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         // read fresh values from file
         try {
             countFile = this.array.count(termHash);
+            if (this.spill.entries() > 0) countFile += this.spill.count(termHash);
         } catch (final Throwable e) {
             ConcurrentLog.logException(e);
         }
@@ -352,30 +430,8 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     @Override
     public ReferenceContainer<ReferenceType> get(final byte[] termHash, final HandleSet urlselection) throws IOException {
         final ReferenceContainer<ReferenceType> c0 = this.ram.get(termHash, null);
-        ReferenceContainer<ReferenceType> c1 = null;
-        try {
-            c1 = this.array.get(termHash);
-        } catch (final SpaceExceededException e2) {
-            ConcurrentLog.logException(e2);
-        }
-        ReferenceContainer<ReferenceType> result = null;
-        if (c0 != null && c1 != null) {
-            try {
-                result = c1.merge(c0);
-            } catch (final SpaceExceededException e) {
-                // try to free some ram
-                try {
-                    result = c1.merge(c0);
-                } catch (final SpaceExceededException e1) {
-                    // go silently over the problem
-                    result = (c1.size() > c0.size()) ? c1: c0;
-                }
-            }
-        } else if (c0 != null) {
-            result = c0;
-        } else if (c1 != null) {
-            result = c1;
-        }
+        final ReferenceContainer<ReferenceType> c1 = getStored(termHash);
+        final ReferenceContainer<ReferenceType> result = merge(c1, c0);
         if (result == null) return null;
         // remove the failed urls
         synchronized (this.removeDelayedURLs) {
@@ -386,23 +442,20 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     }
 
     /**
-     * deleting a container affects the containers in RAM and all the BLOB files
-     * the deleted containers are merged and returned as result of the method
-     * @throws IOException
+     * get the merged containers of the BLOB files and the spilled runs
      */
-    @Override
-    public ReferenceContainer<ReferenceType> remove(final byte[] termHash) throws IOException {
-        removeDelayed();
-        ReferenceContainer<ReferenceType> c1 = null;
+    private ReferenceContainer<ReferenceType> getStored(final byte[] termHash) throws IOException {
+        ReferenceContainer<ReferenceType> c1 = null, c2 = null;
         try {
             c1 = this.array.get(termHash);
+            if (this.spill.entries() > 0) c2 = this.spill.get(termHash);
         } catch (final SpaceExceededException e2) {
             ConcurrentLog.logException(e2);
         }
-        if (c1 != null) {
-            this.array.delete(termHash);
-        }
-        final ReferenceContainer<ReferenceType> c0 = this.ram.remove(termHash);
+        return merge(c1, c2);
+    }
+
+    private ReferenceContainer<ReferenceType> merge(final ReferenceContainer<ReferenceType> c1, final ReferenceContainer<ReferenceType> c0) {
         if (c1 == null) return c0;
         if (c0 == null) return c1;
         try {
@@ -418,6 +471,23 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         }
     }
 
+    /**
+     * deleting a container affects the containers in RAM and all the BLOB files
+     * the deleted containers are merged and returned as result of the method
+     * @throws IOException
+     */
+    @Override
+    public ReferenceContainer<ReferenceType> remove(final byte[] termHash) throws IOException {
+        removeDelayed();
+        final ReferenceContainer<ReferenceType> c1 = getStored(termHash);
+        if (c1 != null) {
+            this.array.delete(termHash);
+            this.spill.delete(termHash);
+        }
+        final ReferenceContainer<ReferenceType> c0 = this.ram.remove(termHash);
+        return merge(c1, c0);
+    }
+
     @Override
     public void delete(final byte[] termHash) throws IOException {
         removeDelayed();
@@ -430,6 +500,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         if (c1 != null) {
             this.array.delete(termHash);
         }
+        this.spill.delete(termHash);
         this.ram.delete(termHash);
         return;
     }
@@ -485,6 +556,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         //final long am = this.array.mem();
         try {
             reduced = this.array.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashes));
+            if (this.spill.entries() > 0) reduced += this.spill.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashes));
         } catch (final SpaceExceededException e) {
             reduced = 0;
             ConcurrentLog.warn("IndexCell", "not possible to remove urlHashes from a RWI because of too low memory. Remove was not applied. Please increase RAM assignment");
@@ -501,6 +573,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         //final long am = this.array.mem();
         try {
             reduced = this.array.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashBytes));
+            if (this.spill.entries() > 0) reduced += this.spill.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashBytes));
         } catch (final SpaceExceededException e) {
             reduced = 0;
             ConcurrentLog.warn("IndexCell", "not possible to remove urlHashes from a RWI because of too low memory. Remove was not applied. Please increase RAM assignment");
@@ -533,6 +606,16 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             return container;
         }
 
+        @Override
+        public boolean mayReduce(final ReferenceContainerCodec.Reader rows) {
+            // each lookup decodes one block; with more url hashes than blocks a complete decoding is cheaper
+            if (this.urlHashes.size() > rows.blocks()) return true;
+            for (final byte[] urlHash: this.urlHashes) {
+                if (rows.get(urlHash) != null) return true;
+            }
+            return false;
+        }
+
     }
 
     @Override
@@ -561,7 +644,14 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             this.ram.referenceContainerIterator(startTermHash, rot, excludePrivate),
             new MergeIterator<ReferenceContainer<ReferenceType>>(
                 this.ram.referenceContainerIterator(startTermHash, false, excludePrivate),
-                this.array.referenceContainerIterator(startTermHash, false, excludePrivate),
+                this.spill.entries() == 0 ?
+                    this.array.referenceContainerIterator(startTermHash, false, excludePrivate) :
+                    new MergeIterator<ReferenceContainer<ReferenceType>>(
+                        this.array.referenceContainerIterator(startTermHash, false, excludePrivate),
+                        this.spill.referenceContainerIterator(startTermHash, false, excludePrivate),
+                        containerOrder,
+                        ReferenceContainer.containerMergeMethod,
+                        true),
                 containerOrder,
                 ReferenceContainer.containerMergeMethod,
                 true),
@@ -579,7 +669,9 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.countCache.clear();
         this.removeDelayedURLs.clear();
         this.ram.clear();
+        this.ramBytes.set(0L);
         this.array.clear();
+        this.spill.clear();
         if (Switchboard.getSwitchboard() != null &&
                 Switchboard.getSwitchboard().peers != null &&
                 Switchboard.getSwitchboard().peers.mySeed() != null) Switchboard.getSwitchboard().peers.mySeed().resetCounters();
@@ -596,19 +688,33 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      */
     @Override
     public synchronized void close() {
+        MemoryBudget.deregister(this.budgetName);
         this.countCache.clear();
         try {removeDelayed();} catch (final IOException e) {}
+        synchronized (this.merger) {
+            if (this.spill.entries() > 0) try {
+                // the ram becomes the last run and all runs are merged into a single BLOB
+                spillRun(this.ram);
+                this.ram = new ReferenceContainerCache<ReferenceType>(this.factory, this.ram.termKeyOrdering(), this.ram.termKeyLength());
+                this.ramBytes.set(0L);
+                mergeSpill();
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
         if (!this.ram.isEmpty()) this.ram.dump(this.array.newContainerBLOBFile(), (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
         // close all
         this.flushShallRun = false;
         if (this.flushThread != null) try { this.flushThread.join(); } catch (final InterruptedException e) {}
         this.ram.close();
         this.array.close();
+        this.spill.close();
     }
 
     public boolean isEmpty() {
         if (this.ram.size() > 0) return false;
         for (int s: this.array.sizes()) if (s > 0) return false;
+        for (int s: this.spill.sizes()) if (s > 0) return false;
         return true;
     }
 
@@ -637,7 +743,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     }
 
     public int getSegmentCount() {
-        return this.array.entries();
+        return this.array.entries() + this.spill.entries();
     }
 
     @Override
@@ -680,4 +786,13 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.maxRamEntries = maxWords;
     }
 
+    /**
+     * set the memory limit of the write buffer. If the buffer uses more memory, it is written
+     * as a sorted run to disk; the runs are merged into one BLOB when the buffer is dumped.
+     * @param maxBytes the maximum number of bytes used by the buffer
+     */
+    public void setBufferMaxBytes(final long maxBytes) {
+        this.maxRamBytes = maxBytes;
+    }
+
 }
@@ -26,6 +26,7 @@ package net.yacy.kelondro.rwi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 
@@ -44,6 +45,7 @@ import net.yacy.kelondro.index.RowSet;
 public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     private final static long METHOD_MAXRUNTIME = 5000L;
+    private final static int REWRITE_BUFFER_SIZE = 64 * 1024;
 
     private final ReferenceFactory<ReferenceType> factory;
     private final ArrayStack array;
@@ -99,6 +101,24 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         this.array.mountBLOB(location, false);
     }
 
+    /**
+     * merge all BLOB files of this array in one pass into a single new BLOB file of another array.
+     * The files of this array are deleted when the new file is mounted in the target.
+     * @param target the array that receives the merged file
+     * @param writeBuffer
+     * @return the new file of the target or null if nothing was merged
+     * @throws IOException
+     */
+    public File mergeInto(final ReferenceContainerArray<ReferenceType> target, final int writeBuffer) throws IOException {
+        final File[] files = this.array.locations();
+        if (files.length == 0) return null;
+        final File merged = ArrayStack.mergeAll(files, this.factory, this.array.keylength(), this.array.ordering(), target.newContainerBLOBFile(), writeBuffer);
+        if (merged != null) target.mountBLOBFile(merged);
+        // the content of the files is now either in the target or was empty
+        for (final File f: files) this.array.deleteBLOB(f);
+        return merged;
+    }
+
     public Row rowdef() {
         return this.factory.getRow();
     }
@@ -308,13 +328,13 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	if (entries == null || !entries.hasNext()) return null;
     	final byte[] a = entries.next();
     	int k = 1;
-    	ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(a, this.factory.getRow()));
+    	ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(this.factory, termHash, ReferenceContainerCodec.importRowSet(a, this.factory.getRow()));
     	if (System.currentTimeMillis() > timeout) {
     	    ConcurrentLog.warn("ReferenceContainerArray", "timout in get() (1): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
     	    return c;
     	}
     	while (entries.hasNext()) {
-    		c = c.merge(new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(entries.next(), this.factory.getRow())));
+    		c = c.merge(new ReferenceContainer<ReferenceType>(this.factory, termHash, ReferenceContainerCodec.importRowSet(entries.next(), this.factory.getRow())));
     		k++;
     		if (System.currentTimeMillis() > timeout) {
     		    ConcurrentLog.warn("ReferenceContainerArray", "timout in get() (2): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
@@ -326,18 +346,18 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     public int count(final byte[] termHash) throws IOException {
         final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
-        final Iterator<Long> entries = this.array.lengthAll(termHash).iterator();
+        final Iterator<byte[]> entries = this.array.headAll(termHash, ReferenceContainerCodec.HEAD_SIZE).iterator();
         if (entries == null || !entries.hasNext()) return 0;
-        final Long a = entries.next();
+        final byte[] a = entries.next();
         int k = 1;
-        int c = RowSet.importRowCount(a, this.factory.getRow());
+        int c = ReferenceContainerCodec.importRowCount(a);
         assert c >= 0;
         if (System.currentTimeMillis() > timeout) {
             ConcurrentLog.warn("ReferenceContainerArray", "timout in count() (1): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
             return c;
         }
         while (entries.hasNext()) {
-            c += RowSet.importRowCount(entries.next(), this.factory.getRow());
+            c += ReferenceContainerCodec.importRowCount(entries.next());
             assert c >= 0;
             k++;
             if (System.currentTimeMillis() > timeout) {
@@ -360,28 +380,78 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	this.array.delete(termHash);
     }
 
+    /**
+     * reduce the containers of a term in all BLOBs
+     * @param termHash the term
+     * @param reducer the reducer which removes rows from the containers
+     * @return the number of removed rows multiplied with the row size
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
     public int reduce(final byte[] termHash, final ContainerReducer<ReferenceType> reducer) throws IOException, SpaceExceededException {
-        return this.array.reduce(termHash, new BLOBReducer(termHash, reducer));
+        synchronized (this.array) {
+            final BLOBReducer blobReducer = new BLOBReducer(termHash, reducer);
+            this.array.reduce(termHash, blobReducer);
+            if (blobReducer.overflow) {
+                // at least one reduced container did not fit into the space of the old one:
+                // replace all containers of the term with one reduced container in a new BLOB
+                ReferenceContainer<ReferenceType> c = null;
+                for (final byte[] b: this.array.getAll(termHash)) {
+                    final ReferenceContainer<ReferenceType> r = new ReferenceContainer<ReferenceType>(this.factory, termHash, ReferenceContainerCodec.importRowSet(b, this.factory.getRow()));
+                    c = c == null ? r : c.merge(r);
+                }
+                if (c != null) {
+                    c = reducer.reduce(c);
+                    this.array.delete(termHash);
+                    if (c != null && !c.isEmpty()) {
+                        final ReferenceContainerCache<ReferenceType> cache = new ReferenceContainerCache<ReferenceType>(this.factory, this.array.ordering(), this.array.keylength());
+                        cache.add(c);
+                        Date d = new Date();
+                        File f = this.array.newBLOB(d);
+                        while (f.exists()) f = this.array.newBLOB(d = new Date(d.getTime() + 1));
+                        cache.dump(f, REWRITE_BUFFER_SIZE, true);
+                        mountBLOBFile(f);
+                    }
+                }
+            }
+            return blobReducer.removed * this.factory.getRow().objectsize;
+        }
     }
 
     public class BLOBReducer implements BLOB.Reducer {
 
         ContainerReducer<ReferenceType> rewriter;
         byte[] wordHash;
+        int removed;
+        boolean overflow;
 
         public BLOBReducer(final byte[] wordHash, final ContainerReducer<ReferenceType> rewriter) {
             this.rewriter = rewriter;
             this.wordHash = wordHash;
+            this.removed = 0;
+            this.overflow = false;
         }
 
         @Override
         public byte[] rewrite(final byte[] b) throws SpaceExceededException {
             if (b == null) return null;
-            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, RowSet.importRowSet(b, ReferenceContainerArray.this.factory.getRow())));
+            final Row rowdef = ReferenceContainerArray.this.factory.getRow();
+            if (ReferenceContainerCodec.isEncoded(b) && !this.rewriter.mayReduce(new ReferenceContainerCodec.Reader(b, rowdef))) return b;
+            final RowSet rows = ReferenceContainerCodec.importRowSet(b, rowdef);
+            final int size = rows.size();
+            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, rows));
             if (c == null) return null;
-            final byte bb[] = c.exportCollection();
-            assert bb.length <= b.length;
-            return bb;
+            if (c.size() == size) return b; // nothing removed
+            this.removed += size - c.size();
+            final byte bb[] = ReferenceContainerCodec.export(c);
+            if (bb.length == b.length || bb.length <= b.length - 4) return bb;
+            // the bit widths of the compressed blocks may grow when rows are removed;
+            // the compressed format ignores trailing bytes and can be padded to the old size
+            final byte[] encoded = ReferenceContainerCodec.encode(c);
+            if (encoded.length <= b.length) return Arrays.copyOf(encoded, b.length);
+            // the container is replaced in reduce() after all BLOBs are reduced
+            this.overflow = true;
+            return b;
         }
     }
 
@@ -389,6 +459,15 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
         public ReferenceContainer<ReferenceType> reduce(ReferenceContainer<ReferenceType> container);
 
+        /**
+         * test if the reducer can change an encoded container at all, so that it does not need to be decoded
+         * @param rows lazy access to the rows of the container
+         * @return false if reduce() would not change the container
+         */
+        public default boolean mayReduce(final ReferenceContainerCodec.Reader rows) {
+            return true;
+        }
+
     }
     
     public CloneableIterator<byte[]> keys(boolean up, boolean rotating) throws IOException {
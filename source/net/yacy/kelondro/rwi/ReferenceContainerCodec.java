@@ -0,0 +1,495 @@
+// ReferenceContainerCodec.java
+// (C) 2026 by the YaCy contributors
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.util.MemoryControl;
+
+/**
+ * Compressed columnar encoding of reference containers, used for the BLOB dumps of the RWI.
+ *
+ * The rows of a container are sorted by their primary key (the url hash) and cut into blocks
+ * of {@link #BLOCK_SIZE} rows. Within a block, every key is stored as the length of the prefix
+ * it shares with the previous key followed by the remaining suffix; base64 keys are packed with
+ * six bits per character. All other columns are stored
+ * column by column as bit-packed offsets to the minimum value of the column in the block; most
+ * of these columns (word counts, positions, dates, flags) need only a few bits instead of full bytes.
+ *
+ * Layout:
+ * <pre>
+ * magic (4) | row count (4) | row object size (2) | block size (2) | block offsets (4 * blocks) | blocks
+ * block: key mode (1) | keys | per column: bits (1), minimum (cell width), packed values
+ * keys, plain mode: first key | (prefix length (1), key suffix)*
+ * keys, base64 mode: bit-packed (prefix length, 6-bit key suffix characters)*, the prefix length of the first key is 0
+ * </pre>
+ * Blocks are decoded independently, so a single row can be found by decoding only one block.
+ * Bytes after the last block are ignored, so an encoded container can be padded to the size of the container it replaces.
+ * The magic cannot appear at the start of a container exported with {@link RowSet#exportCollection()},
+ * whose first four bytes are the non-negative row count; both formats are read with {@link #importRowSet(byte[], Row)}.
+ */
+public final class ReferenceContainerCodec {
+
+    /** magic at the start of an encoded container: 0xC1 'R' 'C' and the format version */
+    private static final byte[] MAGIC = new byte[]{(byte) 0xC1, 'R', 'C', 1};
+
+    /** number of rows in a block */
+    public static final int BLOCK_SIZE = 128;
+
+    /** number of bytes at the start of any exported container that are sufficient to compute its row count */
+    public static final int HEAD_SIZE = 8;
+
+    private static final int HEADER_SIZE = 12;
+
+    /** size of the header of containers exported with {@link RowSet#exportCollection()} */
+    private static final int EXPORT_OVERHEAD_SIZE = 14;
+
+    /** key modes */
+    private static final int KEYS_PLAIN = 0, KEYS_BASE64 = 1;
+
+    /** marker for columns which are wider than a long and therefore stored uncompressed */
+    private static final int RAW_COLUMN = 0xFF;
+
+    private ReferenceContainerCodec() {
+    }
+
+    /**
+     * @param b an exported container or the first {@link #HEAD_SIZE} bytes of it
+     * @return true if the container was exported in the compressed format
+     */
+    public static boolean isEncoded(final byte[] b) {
+        if (b == null || b.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) if (b[i] != MAGIC[i]) return false;
+        return true;
+    }
+
+    /**
+     * export a container for a BLOB dump. The compressed format is used unless the plain format
+     * of {@link RowSet#exportCollection()} is smaller, which is the case for containers with very few rows.
+     * @param rows the container; it is sorted by this method
+     * @return the exported container, readable with {@link #importRowSet(byte[], Row)}
+     */
+    public static byte[] export(final RowSet rows) {
+        final long plainSize = EXPORT_OVERHEAD_SIZE + ((long) rows.size()) * rows.row().objectsize;
+        if (rows.size() > 1) {
+            final byte[] encoded = encode(rows);
+            if (encoded.length < plainSize) return encoded;
+        }
+        return rows.exportCollection();
+    }
+
+    /**
+     * encode a row set in the compressed format
+     * @param rows the rows; they are sorted by this method
+     * @return the encoded rows
+     */
+    public static byte[] encode(final RowSet rows) {
+        rows.sort();
+        final Row rowdef = rows.row();
+        final int size = rows.size();
+        final int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int objectsize = rowdef.objectsize;
+        final byte[] raw = new byte[Math.min(size, BLOCK_SIZE) * objectsize];
+        final ByteWriter out = new ByteWriter(HEADER_SIZE + 4 * blocks + size * objectsize / 2 + 64);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeInt(size, 4);
+        out.writeInt(objectsize, 2);
+        out.writeInt(BLOCK_SIZE, 2);
+        final int directory = out.size();
+        for (int i = 0; i < blocks; i++) out.writeInt(0, 4);
+        final int data = out.size();
+        for (int block = 0; block < blocks; block++) {
+            final int first = block * BLOCK_SIZE;
+            final int n = Math.min(BLOCK_SIZE, size - first);
+            for (int i = 0; i < n; i++) rows.get(first + i, false).writeToArray(raw, i * objectsize);
+            out.setInt(directory + 4 * block, out.size() - data, 4);
+            encodeBlock(rowdef, raw, n, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static void encodeBlock(final Row rowdef, final byte[] raw, final int n, final ByteWriter out) {
+        final int objectsize = rowdef.objectsize;
+        final int keylength = rowdef.primaryKeyLength;
+
+        // keys: the first key complete, then the suffix after the prefix shared with the previous key
+        final Base64Order b64 = rowdef.objectOrder instanceof Base64Order ? (Base64Order) rowdef.objectOrder : null;
+        boolean base64 = b64 != null;
+        for (int i = 0; base64 && i < n; i++) base64 = b64.wellformed(raw, i * objectsize, keylength);
+        if (base64) {
+            out.write(KEYS_BASE64);
+            final int prefixBits = prefixBits(keylength);
+            final BitWriter packer = new BitWriter(out);
+            for (int i = 0; i < n; i++) {
+                final int p = i * objectsize;
+                int prefix = 0;
+                if (i > 0) while (prefix < keylength && raw[p + prefix] == raw[p - objectsize + prefix]) prefix++;
+                packer.write(prefix, prefixBits);
+                for (int j = prefix; j < keylength; j++) packer.write(b64.decodeByte(raw[p + j]), 6);
+            }
+            packer.flush();
+        } else {
+            out.write(KEYS_PLAIN);
+            out.write(raw, 0, keylength);
+            for (int i = 1; i < n; i++) {
+                final int p = i * objectsize;
+                final int q = p - objectsize;
+                int prefix = 0;
+                while (prefix < keylength && raw[p + prefix] == raw[q + prefix]) prefix++;
+                out.write(prefix);
+                out.write(raw, p + prefix, keylength - prefix);
+            }
+        }
+
+        // other columns: bit-packed offsets to the block minimum
+        int offset = keylength;
+        for (int col = 1; col < rowdef.columns(); col++) {
+            final int width = rowdef.width(col);
+            if (width > 8) {
+                out.write(RAW_COLUMN);
+                for (int i = 0; i < n; i++) out.write(raw, i * objectsize + offset, width);
+            } else {
+                long min = -1L, max = 0L; // compared unsigned
+                for (int i = 0; i < n; i++) {
+                    final long v = Row.bytes2long(raw, i * objectsize + offset, width);
+                    if (Long.compareUnsigned(v, min) < 0) min = v;
+                    if (Long.compareUnsigned(v, max) > 0) max = v;
+                }
+                final int bits = 64 - Long.numberOfLeadingZeros(max - min);
+                out.write(bits);
+                out.writeLong(min, width);
+                if (bits > 0) {
+                    final BitWriter packer = new BitWriter(out);
+                    for (int i = 0; i < n; i++) packer.write(Row.bytes2long(raw, i * objectsize + offset, width) - min, bits);
+                    packer.flush();
+                }
+            }
+            offset += width;
+        }
+    }
+
+    private static int prefixBits(final int keylength) {
+        return 32 - Integer.numberOfLeadingZeros(keylength);
+    }
+
+    /**
+     * compute the number of rows of an exported container
+     * @param head the exported container or at least its first {@link #HEAD_SIZE} bytes
+     * @return the number of rows
+     */
+    public static int importRowCount(final byte[] head) {
+        if (head == null || head.length < HEAD_SIZE) return 0;
+        final int offset = isEncoded(head) ? MAGIC.length : 0;
+        final int c = (int) NaturalOrder.decodeLong(head, offset, 4);
+        return Math.max(0, c);
+    }
+
+    /**
+     * import an exported container in any of both formats
+     * @param b the exported container
+     * @param rowdef the row definition
+     * @return the rows of the container
+     * @throws SpaceExceededException if there is not enough memory for the decoded rows
+     */
+    public static RowSet importRowSet(final byte[] b, final Row rowdef) throws SpaceExceededException {
+        if (!isEncoded(b)) return RowSet.importRowSet(b, rowdef);
+        final Reader reader = new Reader(b, rowdef);
+        final long alloc = ((long) reader.size()) * rowdef.objectsize;
+        if (alloc > Integer.MAX_VALUE) throw new SpaceExceededException(alloc, "ReferenceContainerCodec.importRowSet: alloc > Integer.MAX_VALUE");
+        MemoryControl.request(alloc, true);
+        final byte[] chunkcache;
+        try {
+            chunkcache = new byte[(int) alloc];
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException(alloc, "ReferenceContainerCodec.importRowSet: OutOfMemoryError");
+        }
+        for (int block = 0; block < reader.blocks(); block++) {
+            reader.decodeBlock(block, chunkcache, block * BLOCK_SIZE * rowdef.objectsize);
+        }
+        return new RowSet(rowdef, reader.size(), chunkcache, reader.size());
+    }
+
+    /**
+     * Lazy access to an encoded container: blocks are only decoded when they are requested.
+     */
+    public static final class Reader {
+
+        private final byte[] b;
+        private final Row rowdef;
+        private final int size, blocks, data;
+
+        public Reader(final byte[] b, final Row rowdef) {
+            if (!isEncoded(b) || b.length < HEADER_SIZE) throw new IllegalArgumentException("not an encoded reference container");
+            this.b = b;
+            this.rowdef = rowdef;
+            this.size = (int) NaturalOrder.decodeLong(b, 4, 4);
+            final int objectsize = (int) NaturalOrder.decodeLong(b, 8, 2);
+            if (objectsize != rowdef.objectsize) throw new IllegalArgumentException("row object size " + objectsize + " does not match row definition " + rowdef.objectsize);
+            if (NaturalOrder.decodeLong(b, 10, 2) != BLOCK_SIZE) throw new IllegalArgumentException("unsupported block size");
+            this.blocks = (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            this.data = HEADER_SIZE + 4 * this.blocks;
+        }
+
+        /**
+         * @return the number of rows
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * @return the number of blocks
+         */
+        public int blocks() {
+            return this.blocks;
+        }
+
+        private int blockStart(final int block) {
+            return this.data + (int) NaturalOrder.decodeLong(this.b, HEADER_SIZE + 4 * block, 4);
+        }
+
+        /**
+         * @return the primary key of the first row of the block, without decoding the block
+         */
+        public byte[] firstKey(final int block) {
+            final int start = blockStart(block);
+            final byte[] key = new byte[this.rowdef.primaryKeyLength];
+            if (this.b[start] == KEYS_BASE64) {
+                final Base64Order b64 = (Base64Order) this.rowdef.objectOrder;
+                final BitReader unpacker = new BitReader(this.b, start + 1);
+                unpacker.read(prefixBits(key.length));
+                for (int j = 0; j < key.length; j++) key[j] = (byte) b64.encodeByte((byte) unpacker.read(6));
+            } else {
+                System.arraycopy(this.b, start + 1, key, 0, key.length);
+            }
+            return key;
+        }
+
+        /**
+         * decode the rows of a block
+         * @param block the block number
+         * @param target the array receiving the rows
+         * @param targetOffset the position of the first row of the block in target
+         * @return the number of decoded rows
+         */
+        public int decodeBlock(final int block, final byte[] target, final int targetOffset) {
+            final int objectsize = this.rowdef.objectsize;
+            final int keylength = this.rowdef.primaryKeyLength;
+            final int n = Math.min(BLOCK_SIZE, this.size - block * BLOCK_SIZE);
+            int pos = blockStart(block);
+
+            // keys
+            if (this.b[pos++] == KEYS_BASE64) {
+                final Base64Order b64 = (Base64Order) this.rowdef.objectOrder;
+                final int prefixBits = prefixBits(keylength);
+                final BitReader unpacker = new BitReader(this.b, pos);
+                for (int i = 0; i < n; i++) {
+                    final int p = targetOffset + i * objectsize;
+                    final int prefix = (int) unpacker.read(prefixBits);
+                    if (prefix > 0) System.arraycopy(target, p - objectsize, target, p, prefix);
+                    for (int j = prefix; j < keylength; j++) target[p + j] = (byte) b64.encodeByte((byte) unpacker.read(6));
+                }
+                pos = unpacker.position();
+            } else {
+                System.arraycopy(this.b, pos, target, targetOffset, keylength);
+                pos += keylength;
+                for (int i = 1; i < n; i++) {
+                    final int p = targetOffset + i * objectsize;
+                    final int prefix = this.b[pos++] & 0xFF;
+                    System.arraycopy(target, p - objectsize, target, p, prefix);
+                    System.arraycopy(this.b, pos, target, p + prefix, keylength - prefix);
+                    pos += keylength - prefix;
+                }
+            }
+
+            // other columns
+            int offset = keylength;
+            for (int col = 1; col < this.rowdef.columns(); col++) {
+                final int width = this.rowdef.width(col);
+                final int bits = this.b[pos++] & 0xFF;
+                if (bits == RAW_COLUMN) {
+                    for (int i = 0; i < n; i++) {
+                        System.arraycopy(this.b, pos, target, targetOffset + i * objectsize + offset, width);
+                        pos += width;
+                    }
+                } else {
+                    final long min = Row.bytes2long(this.b, pos, width);
+                    pos += width;
+                    if (bits == 0) {
+                        for (int i = 0; i < n; i++) Row.long2bytes(min, target, targetOffset + i * objectsize + offset, width);
+                    } else {
+                        final BitReader unpacker = new BitReader(this.b, pos);
+                        for (int i = 0; i < n; i++) Row.long2bytes(min + unpacker.read(bits), target, targetOffset + i * objectsize + offset, width);
+                        pos += (n * bits + 7) / 8;
+                    }
+                }
+                offset += width;
+            }
+            return n;
+        }
+
+        /**
+         * find a row by its primary key, decoding only the block which may contain it
+         * @param key the primary key
+         * @return the row or null if the container does not contain the key
+         */
+        public Row.Entry get(final byte[] key) {
+            int lo = 0, hi = this.blocks - 1, block = -1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.rowdef.objectOrder.compare(firstKey(mid), key) <= 0) {
+                    block = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (block < 0) return null;
+            final byte[] rows = new byte[BLOCK_SIZE * this.rowdef.objectsize];
+            final int n = decodeBlock(block, rows, 0);
+            final int keylength = this.rowdef.primaryKeyLength;
+            for (int i = 0; i < n; i++) {
+                if (this.rowdef.objectOrder.compare(rows, i * this.rowdef.objectsize, key, 0, keylength) == 0) {
+                    return this.rowdef.newEntry(rows, i * this.rowdef.objectsize, true);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class ByteWriter {
+        private byte[] buffer;
+        private int size;
+
+        private ByteWriter(final int initialSize) {
+            this.buffer = new byte[Math.max(16, initialSize)];
+            this.size = 0;
+        }
+
+        private void ensure(final int additional) {
+            if (this.size + additional <= this.buffer.length) return;
+            final byte[] b = new byte[Math.max(this.buffer.length * 2, this.size + additional)];
+            System.arraycopy(this.buffer, 0, b, 0, this.size);
+            this.buffer = b;
+        }
+
+        private void write(final int v) {
+            ensure(1);
+            this.buffer[this.size++] = (byte) v;
+        }
+
+        private void write(final byte[] b, final int offset, final int length) {
+            ensure(length);
+            System.arraycopy(b, offset, this.buffer, this.size, length);
+            this.size += length;
+        }
+
+        private void writeInt(final int v, final int width) {
+            writeLong(v, width);
+        }
+
+        private void writeLong(final long v, final int width) {
+            ensure(width);
+            Row.long2bytes(v, this.buffer, this.size, width);
+            this.size += width;
+        }
+
+        private void setInt(final int pos, final int v, final int width) {
+            Row.long2bytes(v, this.buffer, pos, width);
+        }
+
+        private int size() {
+            return this.size;
+        }
+
+        private byte[] toByteArray() {
+            final byte[] b = new byte[this.size];
+            System.arraycopy(this.buffer, 0, b, 0, this.size);
+            return b;
+        }
+    }
+
+    private static final class BitWriter {
+        private final ByteWriter out;
+        private long acc;
+        private int n;
+
+        private BitWriter(final ByteWriter out) {
+            this.out = out;
+            this.acc = 0;
+            this.n = 0;
+        }
+
+        private void write(final long v, final int bits) {
+            int remaining = bits;
+            while (remaining > 0) {
+                final int take = Math.min(8 - this.n, remaining);
+                remaining -= take;
+                this.acc = (this.acc << take) | ((v >>> remaining) & ((1L << take) - 1));
+                this.n += take;
+                if (this.n == 8) {
+                    this.out.write((int) this.acc);
+                    this.acc = 0;
+                    this.n = 0;
+                }
+            }
+        }
+
+        private void flush() {
+            if (this.n > 0) this.out.write((int) (this.acc << (8 - this.n)));
+            this.acc = 0;
+            this.n = 0;
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] b;
+        private long bitpos;
+
+        private BitReader(final byte[] b, final int pos) {
+            this.b = b;
+            this.bitpos = ((long) pos) << 3;
+        }
+
+        private long read(final int bits) {
+            long v = 0;
+            int remaining = bits;
+            while (remaining > 0) {
+                final int p = (int) (this.bitpos >>> 3);
+                final int available = 8 - (int) (this.bitpos & 7);
+                final int take = Math.min(available, remaining);
+                v = (v << take) | (((this.b[p] & 0xFF) >>> (available - take)) & ((1 << take) - 1));
+                this.bitpos += take;
+                remaining -= take;
+            }
+            return v;
+        }
+
+        /**
+         * @return the position of the first byte after the bits read so far
+         */
+        private int position() {
+            return (int) ((this.bitpos + 7) >>> 3);
+        }
+    }
+}
@@ -65,7 +65,7 @@ public class ReferenceIterator <ReferenceType extends Reference> extends LookAhe
             entry = this.blobs.next();
             if (entry == null) break;
             try {
-                row = RowSet.importRowSet(entry.getValue(), this.factory.getRow());
+                row = ReferenceContainerCodec.importRowSet(entry.getValue(), this.factory.getRow());
                 if (row == null) {
                     ConcurrentLog.severe("ReferenceIterator", "lost entry '" + UTF8.String(entry.getKey()) + "' because importRowSet returned null");
                     continue; // thats a fail but not as REALLY bad if the whole method would crash here
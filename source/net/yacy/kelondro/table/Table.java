@@ -53,6 +53,7 @@ import net.yacy.kelondro.index.RowSet;
 import net.yacy.kelondro.io.BufferedRecords;
 import net.yacy.kelondro.io.Records;
 import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.MemoryBudget;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.kelondroException;
 
@@ -76,13 +77,46 @@ public class Table implements Index, Iterable<Row.Entry> {
     private final static TreeMap<String, Table> tableTracker = new TreeMap<String, Table>();
     private final static long maxarraylength = 134217727L; // (2^27-1) that may be the maximum size of array length in some JVMs
 
+    static {
+        // under memory pressure the RAM copies of the largest tables are abandoned first
+        MemoryBudget.register("table copies", MemoryBudget.PRIORITY_TABLES, new MemoryBudget.Consumer() {
+            @Override
+            public long memoryUsed() {
+                long mem = 0;
+                for (final Table t: tables()) {
+                    final RowSet copy = t.table;
+                    if (copy != null) mem += copy.mem();
+                }
+                return mem;
+            }
+
+            @Override
+            public long shrink(final long bytes) {
+                final List<Table> tables = tables();
+                tables.sort((a, b) -> Long.compare(b.tableCopyMem(), a.tableCopyMem()));
+                long freed = 0;
+                for (final Table t: tables) {
+                    if (freed >= bytes) break;
+                    freed += t.abandonTableCopy();
+                }
+                return freed;
+            }
+        });
+    }
+
+    private static List<Table> tables() {
+        synchronized (tableTracker) {
+            return new ArrayList<Table>(tableTracker.values());
+        }
+    }
+
     private final long minmemremaining; // if less than this memory is remaininig, the memory copy of a table is abandoned
     private final int buffersize;
     private final Row rowdef;
     private final Row taildef;
     private       HandleMap index;
     private       BufferedRecords file;
-    private       RowSet table;
+    private volatile RowSet table; // may be dropped by the memory budget thread, see abandonTableCopy()
 
     public Table(
     		final File tablefile,
@@ -318,12 +352,30 @@ public class Table implements Index, Iterable<Row.Entry> {
     @Override
     public void optimize() {
         this.index.optimize();
-        if (this.table != null) this.table.optimize();
+        final RowSet copy = this.table; // the copy may be abandoned concurrently
+        if (copy != null) copy.optimize();
     }
 
     @Override
     public long mem() {
-        return this.index.mem() + ((this.table == null) ? 0 : this.table.mem());
+        return this.index.mem() + tableCopyMem();
+    }
+
+    private long tableCopyMem() {
+        final RowSet copy = this.table;
+        return copy == null ? 0 : copy.mem();
+    }
+
+    /**
+     * drop the RAM copy of the table; the rows are read from the file afterwards
+     * @return the memory of the dropped copy in bytes
+     */
+    private synchronized long abandonTableCopy() {
+        if (this.table == null) return 0;
+        final long mem = this.table.mem();
+        this.table = null;
+        log.info("abandoned the RAM copy of " + (this.file == null ? "a closed table" : filename()) + " to release " + (mem >> 20) + " MB");
+        return mem;
     }
 
     private boolean abandonTable() {
@@ -451,9 +503,10 @@ public class Table implements Index, Iterable<Row.Entry> {
         	stats.keyChunkSize = (((RowHandleMap) this.index).row().objectsize);
             stats.keyMem = (long)((RowHandleMap) this.index).row().objectsize * (long)this.index.size();
         }
-        if(table != null) {
-        	stats.valueChunkSize = this.table.row().objectsize;
-        	stats.valueMem = (long)this.table.row().objectsize * (long)this.table.size();
+        final RowSet copy = this.table; // the copy may be abandoned concurrently
+        if(copy != null) {
+        	stats.valueChunkSize = copy.row().objectsize;
+        	stats.valueMem = (long)copy.row().objectsize * (long)copy.size();
         }
 
         return stats;
@@ -589,7 +642,7 @@ public class Table implements Index, Iterable<Row.Entry> {
         this.table = null;
         if (this.index != null) this.index.close();
         this.index = null;
-		if (tablefile != null) tableTracker.remove(tablefile);
+		if (tablefile != null) synchronized (tableTracker) {tableTracker.remove(tablefile);}
     }
 
     @Override
@@ -622,7 +675,8 @@ public class Table implements Index, Iterable<Row.Entry> {
         if (i == -1) return null;
         final byte[] b = new byte[this.rowdef.objectsize];
         final Row.Entry cacherow;
-        if (this.table == null || (cacherow = this.table.get(i, false)) == null) {
+        final RowSet copy = this.table; // the copy may be abandoned concurrently
+        if (copy == null || (cacherow = copy.get(i, false)) == null) {
             // read row from the file
             try {
                 this.file.get(i, b, 0);
@@ -630,7 +684,7 @@ public class Table implements Index, Iterable<Row.Entry> {
                 // there must be a problem with the table index
                 log.severe("IndexOutOfBoundsException: " + e.getMessage(), e);
                 this.index.remove(key);
-                if (this.table != null) this.table.remove(key);
+                if (copy != null) copy.remove(key);
                 return null;
             }
         } else {
@@ -1118,8 +1172,9 @@ public class Table implements Index, Iterable<Row.Entry> {
             this.c = (int) Table.this.index.get(k);
             if (this.c < 0) throw new ConcurrentModificationException(); // this should only happen if the table was modified during the iteration
             final byte[] b = new byte[Table.this.rowdef.objectsize];
+            final RowSet copy = Table.this.table; // the copy may be abandoned concurrently
             final Row.Entry cacherow;
-            if (Table.this.table == null || (cacherow = Table.this.table.get(this.c, false)) == null) {
+            if (copy == null || (cacherow = copy.get(this.c, false)) == null) {
                 // read from file
                 try {
                     Table.this.file.get(this.c, b, 0);
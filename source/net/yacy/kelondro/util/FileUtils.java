@@ -893,7 +893,7 @@ public final class FileUtils {
      * @param to
      * @throws IOException
      */
-    private static void forceMove(final File from, final File to) throws IOException {
+    public static void forceMove(final File from, final File to) throws IOException {
         if ( !(to.delete() && from.renameTo(to)) ) {
             // do it manually
             Files.copy(from, to);
@@ -0,0 +1,248 @@
+/**
+ *  MemoryBudget
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * The memory budget of the caches and buffers of the subsystems.
+ * <p>
+ * Subsystems register their caches as consumers with a priority. When the available heap memory falls
+ * below a low water mark, the consumers are asked to shrink in the order of their priority, lowest first,
+ * until the freed memory is expected to lift the available memory to a high water mark.
+ * So the subsystems do not have to poll {@link MemoryControl#shortStatus()} to decide on their own when to free memory,
+ * and memory is taken first from the caches which are cheapest to rebuild.
+ * </p>
+ * The budget is checked every second and at once when a {@link MemoryControl#request(long, boolean)} fails.
+ * Because the available memory includes garbage which is not collected yet, a low value is confirmed
+ * by a garbage collection or by a failed memory request before the consumers are asked to shrink.
+ */
+public class MemoryBudget {
+
+    private static final ConcurrentLog log = new ConcurrentLog("MEMORY");
+
+    /**
+     * a cache or buffer which can release memory
+     */
+    public interface Consumer {
+
+        /**
+         * @return an estimation of the memory held by the consumer, in bytes
+         */
+        public long memoryUsed();
+
+        /**
+         * release memory; this is called by the thread of the memory budget and must not wait for long
+         * @param bytes the amount of memory which should be released, in bytes
+         * @return an estimation of the released memory, in bytes
+         */
+        public long shrink(long bytes);
+    }
+
+    /** search events are cheap to compute again */
+    public static final int PRIORITY_SEARCH_EVENTS = 10;
+
+    /** word hashes are cheap to compute again */
+    public static final int PRIORITY_WORD_HASHES = 20;
+
+    /** the buffers of the web cache are written to disk anyway */
+    public static final int PRIORITY_HTCACHE = 30;
+
+    /** without the RAM copy of a table each read needs disk IO */
+    public static final int PRIORITY_TABLES = 40;
+
+    /** the RWI write buffer is spilled to disk and must be merged later */
+    public static final int PRIORITY_RWI_BUFFER = 50;
+
+    private static final long CHECK_INTERVAL = 1000;
+
+    /** the minimum time between two garbage collections which confirm the memory pressure */
+    private static final int CONFIRM_GC_INTERVAL = 10000;
+
+    private static class Registration {
+        private final String name;
+        private final int priority;
+        private final Consumer consumer;
+
+        private Registration(final String name, final int priority, final Consumer consumer) {
+            this.name = name;
+            this.priority = priority;
+            this.consumer = consumer;
+        }
+    }
+
+    private static final Map<String, Registration> consumers = new ConcurrentHashMap<String, Registration>();
+    private static final AtomicBoolean checkScheduled = new AtomicBoolean(false);
+    private static volatile long lowWater = -1, highWater = -1;
+    private static ScheduledThreadPoolExecutor scheduler = null;
+
+    private MemoryBudget() {
+    }
+
+    /**
+     * register a consumer; a consumer with the same name is replaced
+     * @param name the unique name of the consumer
+     * @param priority the consumers with lower priority are asked to shrink first
+     * @param consumer the consumer
+     */
+    public static void register(final String name, final int priority, final Consumer consumer) {
+        consumers.put(name, new Registration(name, priority, consumer));
+        startScheduler();
+    }
+
+    /**
+     * remove a consumer, i.e. when its cache is closed
+     * @param name the name of the consumer
+     */
+    public static void deregister(final String name) {
+        consumers.remove(name);
+    }
+
+    /**
+     * set the water marks of the available memory
+     * @param low the available memory in bytes below which the consumers are asked to shrink; -1 for the default
+     * @param high the available memory in bytes which shall be reached by shrinking; -1 for the default
+     */
+    public static void setWaterMarks(final long low, final long high) {
+        lowWater = low;
+        highWater = high;
+    }
+
+    private static long lowWater() {
+        return lowWater >= 0 ? lowWater : Math.max(64L * 1024L * 1024L, MemoryControl.maxMemory() / 10);
+    }
+
+    private static long highWater() {
+        return Math.max(lowWater(), highWater >= 0 ? highWater : Math.max(128L * 1024L * 1024L, MemoryControl.maxMemory() / 5));
+    }
+
+    /**
+     * @return true if the available memory is below the low water mark
+     */
+    public static boolean pressure() {
+        return MemoryControl.available() < lowWater();
+    }
+
+    /**
+     * check the budget soon, i.e. because a memory request failed; does not block the calling thread
+     */
+    public static void alarm() {
+        final ScheduledThreadPoolExecutor s = scheduler;
+        if (s == null || !checkScheduled.compareAndSet(false, true)) return;
+        s.execute(new Runnable() {
+            @Override
+            public void run() {
+                checkScheduled.set(false);
+                checkConfirmed();
+            }
+        });
+    }
+
+    /**
+     * ask the consumers to shrink if the memory pressure is confirmed: the available memory must still be below
+     * the low water mark after a garbage collection, or a memory request must have failed if a garbage collection
+     * was done too recently
+     * @return the estimated released memory in bytes
+     */
+    private static long checkConfirmed() {
+        if (!pressure()) return 0;
+        if (!MemoryControl.gc(CONFIRM_GC_INTERVAL, "MemoryBudget.check") && !MemoryControl.shortStatus()) return 0;
+        return check(MemoryControl.available());
+    }
+
+    /**
+     * ask the consumers to shrink if the available memory is below the low water mark
+     * @param available the available memory in bytes
+     * @return the estimated released memory in bytes
+     */
+    static long check(final long available) {
+        if (available >= lowWater()) return 0;
+        final long freed = shrink(highWater() - available);
+        if (freed > 0 || log.isFine()) log.info("available memory " + (available >> 20) + " MB is below " + (lowWater() >> 20) + " MB, released about " + (freed >> 20) + " MB from caches");
+        return freed;
+    }
+
+    /**
+     * ask the consumers in the order of their priority to release memory until the given amount is released
+     * @param bytes the amount of memory to release, in bytes
+     * @return the estimated released memory in bytes
+     */
+    public static synchronized long shrink(final long bytes) {
+        long freed = 0;
+        for (Registration r: registrations()) {
+            if (freed >= bytes) break;
+            final long used = r.consumer.memoryUsed();
+            if (used <= 0) continue;
+            try {
+                final long f = r.consumer.shrink(bytes - freed);
+                if (log.isFine()) log.fine("cache '" + r.name + "' released about " + (f >> 10) + " KB of " + (used >> 10) + " KB");
+                freed += Math.max(0, f);
+            } catch (final Throwable e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * @return the estimated memory of the consumers by name, in the order they are asked to shrink
+     */
+    public static Map<String, Long> usage() {
+        final Map<String, Long> usage = new LinkedHashMap<String, Long>();
+        for (Registration r: registrations()) usage.put(r.name, r.consumer.memoryUsed());
+        return usage;
+    }
+
+    private static List<Registration> registrations() {
+        final List<Registration> list = new ArrayList<Registration>(consumers.values());
+        Collections.sort(list, (a, b) -> a.priority != b.priority ? Integer.compare(a.priority, b.priority) : a.name.compareTo(b.name));
+        return list;
+    }
+
+    private static synchronized void startScheduler() {
+        if (scheduler != null) return;
+        final ThreadFactory prefixFactory = new NamePrefixThreadFactory(MemoryBudget.class.getSimpleName());
+        scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = prefixFactory.newThread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkConfirmed();
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
@@ -125,7 +125,9 @@ public class MemoryControl {
      */
     public static boolean request(final long size, final boolean force) {
         if (size < 1024) return true; // to speed up things. If this would fail, it would be much too late to check this.
-        return getStrategy().request(size, force, shortStatus);
+        final boolean r = getStrategy().request(size, force, shortStatus);
+        if (!r) MemoryBudget.alarm(); // let the caches shrink
+        return r;
     }
 
     /**
@@ -237,7 +237,7 @@ public abstract class AbstractBusyThread extends AbstractThread implements BusyT
                 idletime += System.currentTimeMillis() - timestamp;
             } catch (final SocketException e) {
                 // in case that a socket is interrupted, this method must die silently (shutdown)
-                log.fine("socket-job interrupted: " + e.getMessage());
+                log.fine(() -> "socket-job interrupted: " + e.getMessage());
             } catch (final Exception e) {
                 // handle exceptions: thread must not die on any unexpected exceptions
                 // if the exception is too bad it should call terminate()
@@ -63,7 +63,7 @@ public class InstantBlockingThread<J extends WorkflowJob> extends AbstractBlocki
         } else if (next == WorkflowJob.poisonPill || next.status == WorkflowJob.STATUS_POISON) {
             out = next;
         } else {
-            final long t = System.currentTimeMillis();
+            final long t = System.nanoTime();
 
             instantThreadCounter.incrementAndGet();
             //System.out.println("started job " + this.handle + ": " + this.getName());
@@ -78,7 +78,7 @@ public class InstantBlockingThread<J extends WorkflowJob> extends AbstractBlocki
                 ConcurrentLog.severe(BLOCKINGTHREAD, "Runtime Error in serverInstantThread.job, thread '" + getName() + "': " + e.getMessage());
             }
             instantThreadCounter.decrementAndGet();
-            getManager().increaseJobTime(System.currentTimeMillis() - t);
+            getManager().increaseJobTime(System.nanoTime() - t);
         }
         return out;
     }
@@ -33,6 +33,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
@@ -50,8 +52,9 @@ public class WorkflowProcessor<J extends WorkflowJob> {
     private final WorkflowTask<J> task;
     private final String processName, description;
     private final String[] childs;
-    private long blockTime, execTime, passOnTime;
+    private long blockTime, execTime, passOnTime; // execTime is in nanoseconds
     private long execCount;
+    private final Histogram jobTime;
 
     public WorkflowProcessor(
             final String name, final String description, final String[] childnames,
@@ -79,6 +82,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         this.execTime = 0;
         this.passOnTime = 0;
         this.execCount = 0;
+        this.jobTime = Metrics.histogram("workflow_" + name + "_seconds", "processing time of a job in the workflow step " + name + ": " + description);
 
         // store this object for easy monitoring
         processMonitor.add(this);
@@ -253,9 +257,13 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         return processMonitor.iterator();
     }
 
+    /**
+     * @param time the processing time of a job in nanoseconds
+     */
     protected void increaseJobTime(final long time) {
         this.execTime += time;
         this.execCount++;
+        this.jobTime.record(time);
     }
 
     public String getName() {
@@ -288,7 +296,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
      * @return
      */
     public long getExecTime() {
-        return this.execTime;
+        return this.execTime / 1000000L;
     }
     public long getExecCount() {
         return this.execCount;
@@ -40,6 +40,7 @@ import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 
 import com.google.common.io.Files;
+import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
 import net.yacy.cora.protocol.TimeoutRequest;
 import net.yacy.cora.storage.Configuration.Entry;
 import net.yacy.cora.util.ConcurrentLog;
@@ -480,8 +481,9 @@ public class migration {
         CollectionConfiguration colcfg = Switchboard.getSwitchboard().index.fulltext().getDefaultConfiguration();
         ReindexSolrBusyThread reidx = new ReindexSolrBusyThread(null); // ("*:*" would reindex all);
         
-        try { // get all fields contained in index
-            Collection<FieldInfo> solrfields = Switchboard.getSwitchboard().index.fulltext().getDefaultEmbeddedConnector().getFields();
+        final EmbeddedSolrConnector esc = Switchboard.getSwitchboard().index.fulltext().getDefaultEmbeddedConnector();
+        if (esc != null) try { // get all fields contained in index; there is no single embedded core if the local index is split into shards
+            Collection<FieldInfo> solrfields = esc.getFields();
             for (FieldInfo solrfield : solrfields) {
                 if (!colcfg.contains(solrfield.getName()) && !omitFields.contains(solrfield.getName()) && !solrfield.getName().startsWith(CollectionSchema.VOCABULARY_PREFIX)) { // add found fields not in config for reindexing but omit the vocabulary fields
                     reidx.addSelectFieldname(solrfield.getName());
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
@@ -88,23 +89,31 @@ public class DHTSelection {
             final OrderedScoreMap<Seed> seedSelection = new OrderedScoreMap<Seed>(null);
             
             // create sets that contains only robinson/node/large/young peers
-            Iterator<Seed> dhtEnum = seedDB.seedsConnected(true, false, null, 0.50f);
+            // the values of the peers are taken from the DHT ring, a seed is only decoded if the peer can be selected
+            final SeedRing ring = seedDB.activeRing();
+            final long now = System.currentTimeMillis();
             Seed seed;
-            while (dhtEnum.hasNext()) {
-                seed = dhtEnum.next();
+            for (int p = 0; p < ring.size(); p++) {
+                if (!ring.hasVersion(p, 0.50f)) continue;
+                final SeedRing.Entry entry = ring.get(p);
+                if (Math.abs(now - entry.lastSeen) > 3600000) continue; // do not ask peers that had not been seen more than one hour (happens during a startup situation)
+                if (!ring.hasFlag(p, SeedRing.FLAG_SOLR_AVAILABLE)) continue; // extra peers always use solr direct, skip if solr interface is not available
+                final boolean robinson = !ring.hasFlag(p, SeedRing.FLAG_ACCEPT_REMOTE_INDEX);
+                final boolean rootNode = ring.hasFlag(p, SeedRing.FLAG_ROOT_NODE);
+                final int age = ring.age(p, now);
+                if (!robinson && !rootNode && age >= minage && entry.linkCount < 100000) continue; // no chance to be selected
+                seed = seedDB.getConnected(entry.hash);
                 if (seed == null) continue;
                 if (omit != null && omit.contains(seed)) continue; // sort out peers that are target for DHT
-                if (seed.isLastSeenTimeout(3600000)) continue; // do not ask peers that had not been seen more than one hour (happens during a startup situation)
-                if (!seed.getFlagSolrAvailable()) continue; // extra peers always use solr direct, skip if solr interface is not available
-                if (!seed.getFlagAcceptRemoteIndex() && seed.matchPeerTags(wordhashes)) seedSelection.dec(seed, r.nextInt(10) + 2); // robinson peers with matching peer tags
-                if (seed.getFlagRootNode()) seedSelection.dec(seed, r.nextInt(30) + 6); // root nodes (fast peers)
-                if (seed.getAge() < minage) seedSelection.dec(seed, r.nextInt(15) + 3); // young peers (with fresh info)
-                if (seed.getAge() < 1) seedSelection.dec(seed, r.nextInt(40) + 8); // the 'workshop feature', fresh peers should be seen
-                if (seed.getLinkCount() >= 100000 && seed.getLinkCount() < 1000000) { // peers above 100.000 links take part on a selection of medium-size peers
+                if (robinson && seed.matchPeerTags(wordhashes)) seedSelection.dec(seed, r.nextInt(10) + 2); // robinson peers with matching peer tags
+                if (rootNode) seedSelection.dec(seed, r.nextInt(30) + 6); // root nodes (fast peers)
+                if (age < minage) seedSelection.dec(seed, r.nextInt(15) + 3); // young peers (with fresh info)
+                if (age < 1) seedSelection.dec(seed, r.nextInt(40) + 8); // the 'workshop feature', fresh peers should be seen
+                if (entry.linkCount >= 100000 && entry.linkCount < 1000000) { // peers above 100.000 links take part on a selection of medium-size peers
                     seedSelection.dec(seed, r.nextInt(25) + 5);
                 }
-                if (seed.getLinkCount() >= 1000000) { // peers above 1 million links take part on a selection of large peers
-                    int pf = 1 + (int) (20000000 / seed.getLinkCount());
+                if (entry.linkCount >= 1000000) { // peers above 1 million links take part on a selection of large peers
+                    int pf = 1 + (int) (20000000 / entry.linkCount);
                     seedSelection.dec(seed, r.nextInt(pf) + pf / 5); // large peers; choose large one less frequent to reduce load on their peer
                 }
             }
@@ -139,20 +148,34 @@ public class DHTSelection {
      * @return a list of matching candidate seeds for remote RWI search
      */
     public static Set<Seed> selectDHTSearchTargets(final SeedDB seedDB, final HandleSet wordhashes, final int minage, final int minWordCount, final int redundancy, final int maxredundancy, final Random random) {
+        return selectDHTSearchTargets(seedDB, wordhashes, minage, minWordCount, redundancy, maxredundancy, random, null);
+    }
+
+    /**
+     * @param seedDB the seeds database.
+     * @param wordhashes hashes of the words we are searching for
+     * @param minage the minimum age of each seed in days
+     * @param minWordCount the minimum RWI words count of each seed
+     * @param random a random generator instance
+     * @param backups when not null, receives for a selected peer hash a peer of the same DHT position which was not selected;
+     *        a request to the backup peer can replace a slow request to the selected peer
+     * @return a list of matching candidate seeds for remote RWI search
+     */
+    public static Set<Seed> selectDHTSearchTargets(final SeedDB seedDB, final HandleSet wordhashes, final int minage, final int minWordCount, final int redundancy, final int maxredundancy, final Random random, final Map<String, Seed> backups) {
 
         // put in seeds according to dht
         Set<Seed> seeds = new LinkedHashSet<>(); // dht position seeds
         if (seedDB != null) {
             Iterator<byte[]> iter = wordhashes.iterator();
             while (iter.hasNext()) {
-                seeds.addAll(collectHorizontalDHTPositions(seedDB, iter.next(), minage, minWordCount, redundancy, maxredundancy, random));
+                seeds.addAll(collectHorizontalDHTPositions(seedDB, iter.next(), minage, minWordCount, redundancy, maxredundancy, random, backups));
             }
         }
         
         return seeds;
     }
 
-    private static ArrayList<Seed> collectHorizontalDHTPositions(final SeedDB seedDB, final byte[] wordhash, final int minage, final int minWordCount, final int redundancy, final int maxredundancy, final Random random) {
+    private static ArrayList<Seed> collectHorizontalDHTPositions(final SeedDB seedDB, final byte[] wordhash, final int minage, final int minWordCount, final int redundancy, final int maxredundancy, final Random random, final Map<String, Seed> backups) {
         // this method is called from the search target computation
         ArrayList<Seed> collectedSeeds = new ArrayList<>(redundancy * seedDB.scheme.verticalPartitions());
         for (int verticalPosition = 0; verticalPosition < seedDB.scheme.verticalPartitions(); verticalPosition++) {
@@ -163,8 +186,19 @@ public class DHTSelection {
                 // we pick some random peers from the vertical position.
                 // All of them should be valid, but picking a random subset is a distributed load balancing on the whole YaCy network.
                 // without picking a random subset, always the same peers would be targeted for the same word resulting in (possible) DoS on the target.
+                // The random choice prefers peers which answered fast and reliably in the past.
+                final List<Seed> picked = new ArrayList<>(redundancy);
                 for (int i = 0; i < redundancy; i++) {
-                    collectedSeeds.add(seeds.remove(random.nextInt(seeds.size())));
+                    picked.add(seedDB.searchStatistics.pick(seeds, random));
+                }
+                collectedSeeds.addAll(picked);
+                // the fastest remaining peers of the position are the backups of the picked peers
+                if (backups != null) {
+                    for (final Seed seed: picked) {
+                        final Seed backup = seedDB.searchStatistics.fastest(seeds);
+                        if (backup == null) break;
+                        backups.put(seed.hash, backup);
+                    }
                 }
             }
         }
@@ -203,18 +237,20 @@ public class DHTSelection {
         ArrayList<Seed> seeds = new ArrayList<>(redundancy);
         final long dhtVerticalTarget = seedDB.scheme.verticalDHTPosition(wordhash, verticalPosition);
         final byte[] verticalhash = Distribution.positionToHash(dhtVerticalTarget);
-        final Iterator<Seed> dhtEnum = getAcceptRemoteIndexSeeds(seedDB, verticalhash, redundancy, false);
-        int c = Math.min(seedDB.sizeConnected(), redundancy);
+        final SeedRing ring = seedDB.activeRing();
+        final DHTWalk dhtWalk = new DHTWalk(ring, verticalhash, Math.min(redundancy, ring.size()), null);
+        final long now = System.currentTimeMillis();
+        int c = Math.min(ring.size(), redundancy);
         int cc = 20; // in case that the network grows rapidly, we may jump to several additional peers but that must have a limit
-        while (dhtEnum.hasNext() && c > 0 && cc-- > 0) {
-            Seed seed = dhtEnum.next();
-            if (seed == null || seed.hash == null) continue;
-            if (!seed.getFlagAcceptRemoteIndex()) continue; // probably a robinson peer
-            if (seed.getAge() < minage) continue; // prevent bad results because of too strong network growth
-            if(seed.getWordCount() < minWordCount) {
+        int p;
+        while (c > 0 && cc-- > 0 && (p = dhtWalk.next()) != DHTWalk.END) {
+            if (ring.age(p, now) < minage) continue; // prevent bad results because of too strong network growth
+            if (ring.get(p).wordCount < minWordCount) {
             	/* Even if the peer is not a robinson and has the required minimum age, it may have an empty or disabled RWI */
             	continue;
             }
+            Seed seed = seedDB.getConnected(ring.get(p).hash);
+            if (seed == null) continue; // removed in the meantime
             if (RemoteSearch.log.isInfo()) RemoteSearch.log.info("selectPeers/DHTorder: " + seed.hash + ":" + seed.getName() + "/ score " + c);
             seeds.add(seed);
             c--;
@@ -253,112 +289,87 @@ public class DHTSelection {
      * @return
      */
     public static Iterator<Seed> getAcceptRemoteIndexSeeds(final SeedDB seedDB, final byte[] starthash, final int max, final boolean alsoMyOwn) {
-        return new acceptRemoteIndexSeedEnum(seedDB, starthash, Math.min(max, seedDB.sizeConnected()), alsoMyOwn);
+        return new acceptRemoteIndexSeedEnum(seedDB, starthash, max, alsoMyOwn);
     }
 
     private static class acceptRemoteIndexSeedEnum extends LookAheadIterator<Seed> implements Iterator<Seed>, Iterable<Seed> {
 
-        private final Iterator<Seed> se;
         private final SeedDB seedDB;
-        private int remaining;
-        private final boolean alsoMyOwn;
+        private final SeedRing ring;
+        private final DHTWalk dhtWalk;
 
         private acceptRemoteIndexSeedEnum(SeedDB seedDB, final byte[] starthash, int max, boolean alsoMyOwn) {
             this.seedDB = seedDB;
-            this.se = new seedDHTEnum(seedDB, starthash, alsoMyOwn);
-            this.remaining = max;
-            this.alsoMyOwn = alsoMyOwn;
+            this.ring = seedDB.activeRing();
+            this.dhtWalk = new DHTWalk(this.ring, starthash, Math.min(max, this.ring.size()), alsoMyOwn ? ASCII.getBytes(seedDB.mySeed().hash) : null);
         }
 
         @Override
         protected Seed next0() {
-            if (this.remaining <= 0) return null;
-            Seed s = null;
-            try {
-                while (this.se.hasNext()) {
-                    s = this.se.next();
-                    if (s == null) return null;
-                    if (s.getFlagAcceptRemoteIndex() ||
-                        (this.alsoMyOwn && s.hash.equals(this.seedDB.mySeed().hash)) // Accept own peer regardless of FlagAcceptRemoteIndex
-                       ) {
-                        this.remaining--;
-                        break;
-                    }
-                }
-                return s;
-            } catch (final kelondroException e) {
-                System.out.println("DEBUG acceptRemoteIndexSeedEnum:" + e.getMessage());
-                Network.log.severe("database inconsistency (" + e.getMessage() + "), re-set of db.");
-                this.seedDB.resetActiveTable();
-                return null;
+            int p;
+            while ((p = this.dhtWalk.next()) != DHTWalk.END) {
+                if (p == DHTWalk.OWN) return this.seedDB.mySeed(); // Accept own peer regardless of FlagAcceptRemoteIndex
+                final Seed s = this.seedDB.getConnected(this.ring.get(p).hash);
+                if (s != null) return s;
             }
+            return null;
         }
 
     }
     
-    private static class seedDHTEnum implements Iterator<Seed> {
-
-        private Iterator<Seed> e;
-        private int steps;
-        private final SeedDB seedDB;
-        private boolean alsoMyOwn;
-        private int pass, insertOwnInPass;
-        private Seed nextSeed;
-
-        private seedDHTEnum(final SeedDB seedDB, final byte[] firstHash, final boolean alsoMyOwn) {
-            this.seedDB = seedDB;
-            this.steps = seedDB.sizeConnected() + ((alsoMyOwn) ? 1 : 0);
-            this.e = seedDB.seedsConnected(true, false, firstHash, yacyVersion.YACY_HANDLES_COLLECTION_INDEX);
-            this.pass = 1;
-            this.alsoMyOwn = alsoMyOwn;
-            if (alsoMyOwn) {
-                this.insertOwnInPass = (Base64Order.enhancedCoder.compare(ASCII.getBytes(seedDB.mySeed().hash), firstHash) > 0) ? 1 : 2;
+    /**
+     * A walk once around the DHT ring, starting at a given position. It returns the peers which accept remote indexes
+     * and have a version which can handle the collection index. The own peer, which is not contained in the ring,
+     * can be inserted at its position.
+     */
+    private static class DHTWalk {
+
+        private static final int OWN = -1, END = -2;
+
+        private final SeedRing ring;
+        private final int start, count;
+        private int step, remaining, ownStep;
+
+        /**
+         * @param ring the connected peers
+         * @param starthash the DHT position where the walk starts
+         * @param max the maximum number of returned peers, including the own peer
+         * @param ownhash the hash of the own peer, or null if the own peer shall not be returned
+         */
+        private DHTWalk(final SeedRing ring, final byte[] starthash, final int max, final byte[] ownhash) {
+            this.ring = ring;
+            this.count = ring.size();
+            final int first = ring.lowerBound(starthash);
+            this.start = this.count == 0 ? 0 : first % this.count;
+            this.step = 0;
+            this.remaining = max;
+            if (ownhash == null) {
+                this.ownStep = -1;
             } else {
-                this.insertOwnInPass = 0;
+                // the own peer is placed before the first peer with a greater hash; behind the start hash this is in the first round, otherwise after the wrap-around
+                final int next = ring.upperBound(ownhash);
+                this.ownStep = Base64Order.enhancedCoder.compare(ownhash, starthash) > 0 ? next - first : next - first + this.count;
             }
-            this.nextSeed = nextInternal();
-        }
-
-        @Override
-        public boolean hasNext() {
-            return (this.nextSeed != null) || this.alsoMyOwn;
         }
 
-        public Seed nextInternal() {
-            if (this.steps == 0) return null;
-            this.steps--;
-
-            if (!this.e.hasNext() && this.pass == 1) {
-                // rotate from the beginning; this closes the ordering of the DHT at the ends
-                this.e = this.seedDB.seedsConnected(true, false, null, yacyVersion.YACY_HANDLES_COLLECTION_INDEX);
-                this.pass = 2;
-            }
-            if (this.e.hasNext()) {
-                return this.e.next();
-            }
-            this.steps = 0;
-            return null;
-        }
-
-        @Override
-        public Seed next() {
-            if (this.alsoMyOwn &&
-                ((this.pass > this.insertOwnInPass) ||
-                 (this.pass == this.insertOwnInPass && this.nextSeed == null) || // Own hash is last in line
-                 (this.pass == this.insertOwnInPass && this.nextSeed != null && (Base64Order.enhancedCoder.compare(ASCII.getBytes(this.seedDB.mySeed().hash), ASCII.getBytes(this.nextSeed.hash)) < 0)))
-               ) {
-                // take my own seed hash instead the enumeration result
-                this.alsoMyOwn = false;
-                return this.seedDB.mySeed();
+        /**
+         * @return the index of the next peer in the ring, OWN for the own peer or END
+         */
+        private int next() {
+            while (this.remaining > 0) {
+                if (this.step == this.ownStep) {
+                    this.ownStep = -1;
+                    this.remaining--;
+                    return OWN;
+                }
+                if (this.step >= this.count) return END;
+                final int p = (this.start + this.step++) % this.count;
+                if (!this.ring.hasVersion(p, yacyVersion.YACY_HANDLES_COLLECTION_INDEX)) continue;
+                if (!this.ring.hasFlag(p, SeedRing.FLAG_ACCEPT_REMOTE_INDEX)) continue; // probably a robinson peer
+                this.remaining--;
+                return p;
             }
-            final Seed next = this.nextSeed;
-            this.nextSeed = nextInternal();
-            return next;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+            return END;
         }
     }
 
@@ -280,7 +280,7 @@ public final class Protocol {
         }
         mySeed.setFlagRootNode(
                 (mytype.equals(Seed.PEERTYPE_SENIOR) || mytype.equals(Seed.PEERTYPE_PRINCIPAL)) &&
-                Switchboard.getSwitchboard().index.fulltext().connectedLocalSolr() &&
+                (Switchboard.getSwitchboard().index.fulltext().connectedLocalSolr() || Switchboard.getSwitchboard().index.fulltext().connectedLocalShards()) &&
                 responseTime < 1000 && Domains.isThisHostIP(mySeed.getIPs())
                 );
         
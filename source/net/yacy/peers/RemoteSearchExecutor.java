@@ -0,0 +1,161 @@
+/**
+ *  RemoteSearchExecutor
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.search.query.SearchEvent;
+
+/**
+ * Runs the requests of remote searches to other peers on a shared bounded thread pool,
+ * so a burst of global searches does not create a thread for each target peer of each search.
+ * <p>
+ * A request which could not start before its deadline is dropped. The number of concurrent
+ * requests to one peer is limited, a request waits for a free slot until its deadline.
+ * A request counts as a feeder of the search event from its submission until it is done or cancelled,
+ * so the search event does not regard the feeding as finished while requests are queued.
+ * </p>
+ */
+public final class RemoteSearchExecutor {
+
+    /** the maximum number of concurrent requests to remote peers */
+    public static final int POOL_SIZE = Math.max(32, 8 * Runtime.getRuntime().availableProcessors());
+
+    /** the maximum number of requests waiting for a thread of the pool */
+    public static final int QUEUE_SIZE = 4 * POOL_SIZE;
+
+    /** the maximum number of concurrent requests to one peer */
+    public static final int PEER_MAX_CONCURRENT = 2;
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        final ThreadFactory prefixFactory = new NamePrefixThreadFactory(RemoteSearchExecutor.class.getSimpleName());
+        EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = prefixFactory.newThread(r);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** starts backup requests for slow requests */
+    private static final ScheduledThreadPoolExecutor SCHEDULER;
+    static {
+        final ThreadFactory prefixFactory = new NamePrefixThreadFactory(RemoteSearchExecutor.class.getSimpleName() + ".scheduler");
+        SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = prefixFactory.newThread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    /** the request slots of the peers, by peer hash */
+    private static final Map<String, Semaphore> peerSlots = new ConcurrentHashMap<String, Semaphore>();
+
+    private RemoteSearchExecutor() {
+    }
+
+    /**
+     * submit a request to a remote peer
+     * @param event the search event which is fed by the request
+     * @param target the target peer
+     * @param deadline the time in milliseconds after which the request is not started any more
+     * @param name the name of the request, used as thread name while it runs
+     * @param request the request
+     * @return the future of the request; cancel it to stop the request
+     */
+    public static Future<?> submit(final SearchEvent event, final Seed target, final long deadline, final String name, final Runnable request) {
+        final FutureTask<Void> task = new FutureTask<Void>(() -> run(target, deadline, name, request), null) {
+            @Override
+            protected void done() {
+                event.oneFeederTerminated();
+            }
+        };
+        event.oneFeederStarted();
+        try {
+            EXECUTOR.execute(task);
+        } catch (final RejectedExecutionException e) {
+            RemoteSearch.log.info("remote search pool is busy, request to peer " + target.getName() + " dropped");
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    private static void run(final Seed target, final long deadline, final String name, final Runnable request) {
+        final long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+            RemoteSearch.log.info("remote search request to peer " + target.getName() + " not started before the deadline");
+            return;
+        }
+        final Semaphore slots = peerSlots.computeIfAbsent(target.hash, hash -> new Semaphore(PEER_MAX_CONCURRENT));
+        try {
+            if (!slots.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                RemoteSearch.log.info("peer " + target.getName() + " is busy with " + PEER_MAX_CONCURRENT + " requests, remote search request dropped");
+                return;
+            }
+        } catch (final InterruptedException e) {
+            return; // cancelled
+        }
+        final Thread thread = Thread.currentThread();
+        final String threadName = thread.getName();
+        thread.setName(name);
+        try {
+            request.run();
+        } finally {
+            thread.setName(threadName);
+            slots.release();
+        }
+    }
+
+    /**
+     * run a task after a delay, i.e. to check if a request is slower than expected
+     * @param task a short task; requests must be submitted to the pool
+     * @param delay the delay in milliseconds
+     */
+    public static void schedule(final Runnable task, final long delay) {
+        SCHEDULER.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of requests which are running or waiting for a thread
+     */
+    public static int pending() {
+        return EXECUTOR.getActiveCount() + EXECUTOR.getQueue().size();
+    }
+}
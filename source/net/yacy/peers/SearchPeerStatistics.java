@@ -0,0 +1,344 @@
+/**
+ *  SearchPeerStatistics
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.util.CommonPattern;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * The latency, throughput and error rate of the answers of other peers to remote search requests.
+ * The statistics are used to prefer fast and reliable peers when several peers hold the same DHT position,
+ * and to compute the time after which a backup request is sent to another peer.
+ * They are stored in a file of the network directory, so they survive a restart.
+ */
+public class SearchPeerStatistics {
+
+    private static final ConcurrentLog log = new ConcurrentLog("SearchPeerStatistics");
+
+    /** the weight of a new sample in the moving averages */
+    static final double ALPHA = 0.2d;
+
+    /** the number of answers of a peer before its statistics are used */
+    public static final int MIN_SAMPLES = 5;
+
+    /** the latency assumed for peers without enough answers */
+    public static final long DEFAULT_LATENCY = 2000;
+
+    /** the number of latency buckets; the upper limit of bucket i is 16ms * 2^(i/2) */
+    static final int BUCKETS = 40;
+
+    /** the number of samples in the buckets after which all buckets are halved, so old samples fade out */
+    static final int BUCKET_DECAY = 1000;
+
+    /** statistics of peers which did not answer for this time are not stored */
+    static final long MAX_AGE = TimeUnit.DAYS.toMillis(30);
+
+    private static final long SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * the statistics of one peer
+     */
+    public static final class Stats {
+        private double latency;    // moving average of the latency in milliseconds
+        private double throughput; // moving average of the results per second
+        private double errors;     // moving average of failed requests, between 0 and 1
+        private long count;        // the number of requests
+        private long last;         // the time of the last request
+        private final int[] buckets = new int[BUCKETS];
+        private int total;         // the sum of the buckets
+
+        private Stats() {
+            this.latency = DEFAULT_LATENCY;
+            this.throughput = 0.0d;
+            this.errors = 0.0d;
+            this.count = 0;
+            this.last = 0;
+            this.total = 0;
+        }
+
+        private synchronized void success(final long ms, final int results) {
+            this.latency = this.count == 0 ? ms : this.latency + ALPHA * (ms - this.latency);
+            final double rps = results * 1000.0d / Math.max(1, ms);
+            this.throughput = this.count == 0 ? rps : this.throughput + ALPHA * (rps - this.throughput);
+            this.errors = this.errors * (1.0d - ALPHA);
+            this.add(ms);
+        }
+
+        private synchronized void failure(final long ms) {
+            // a fast failure tells nothing about the latency, a timeout is a lower bound of it
+            if (ms > this.latency) {
+                this.latency = this.count == 0 ? ms : this.latency + ALPHA * (ms - this.latency);
+                this.add(ms);
+            } else {
+                this.count++;
+                this.last = System.currentTimeMillis();
+            }
+            this.errors = this.errors + ALPHA * (1.0d - this.errors);
+        }
+
+        private void add(final long ms) {
+            this.count++;
+            this.last = System.currentTimeMillis();
+            this.buckets[bucket(ms)]++;
+            if (++this.total >= BUCKET_DECAY) {
+                this.total = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    this.buckets[i] /= 2;
+                    this.total += this.buckets[i];
+                }
+            }
+        }
+
+        /**
+         * @return the moving average of the latency in milliseconds
+         */
+        public synchronized double latency() {
+            return this.latency;
+        }
+
+        /**
+         * @return the moving average of the number of results per second
+         */
+        public synchronized double throughput() {
+            return this.throughput;
+        }
+
+        /**
+         * @return the moving average of the error rate, between 0 and 1
+         */
+        public synchronized double errors() {
+            return this.errors;
+        }
+
+        /**
+         * @return the number of recorded requests
+         */
+        public synchronized long count() {
+            return this.count;
+        }
+
+        /**
+         * @param q the quantile, between 0 and 1
+         * @return the upper limit of the latency bucket which holds the quantile, in milliseconds
+         */
+        public synchronized long quantile(final double q) {
+            if (this.total == 0) return (long) this.latency;
+            final long rank = (long) Math.ceil(q * this.total);
+            long c = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                c += this.buckets[i];
+                if (c >= rank && c > 0) return limit(i);
+            }
+            return limit(BUCKETS - 1);
+        }
+
+        private synchronized String serialize() {
+            final StringBuilder sb = new StringBuilder(BUCKETS * 3 + 60);
+            sb.append((long) this.latency).append(',').append(Math.round(this.throughput * 1000.0d) / 1000.0d).append(',')
+              .append(Math.round(this.errors * 1000.0d) / 1000.0d).append(',').append(this.count).append(',').append(this.last).append(',');
+            for (int i = 0; i < BUCKETS; i++) {
+                if (i > 0) sb.append(' ');
+                sb.append(this.buckets[i]);
+            }
+            return sb.toString();
+        }
+
+        private static Stats parse(final String s) {
+            final String[] a = CommonPattern.COMMA.split(s);
+            if (a.length != 6) return null;
+            try {
+                final Stats stats = new Stats();
+                stats.latency = Double.parseDouble(a[0]);
+                stats.throughput = Double.parseDouble(a[1]);
+                stats.errors = Double.parseDouble(a[2]);
+                stats.count = Long.parseLong(a[3]);
+                stats.last = Long.parseLong(a[4]);
+                final String[] b = CommonPattern.SPACE.split(a[5]);
+                for (int i = 0; i < Math.min(BUCKETS, b.length); i++) {
+                    stats.buckets[i] = Integer.parseInt(b[i]);
+                    stats.total += stats.buckets[i];
+                }
+                return stats;
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final Map<String, Stats> stats;
+    private final File file;
+    private long lastSave;
+
+    /**
+     * @param file the file of the statistics; null for statistics which are not stored
+     */
+    public SearchPeerStatistics(final File file) {
+        this.stats = new ConcurrentHashMap<String, Stats>();
+        this.file = file;
+        this.lastSave = System.currentTimeMillis();
+        if (file != null && file.exists()) {
+            final Map<String, String> m = FileUtils.loadMap(file);
+            if (m != null) {
+                for (Map.Entry<String, String> e: m.entrySet()) {
+                    final Stats s = Stats.parse(e.getValue());
+                    if (s != null) this.stats.put(e.getKey(), s);
+                }
+            }
+            log.info("loaded search statistics of " + this.stats.size() + " peers from " + file);
+        }
+    }
+
+    static int bucket(final long ms) {
+        if (ms <= 16) return 0;
+        // two buckets for each doubling of the latency
+        int b = Math.min(BUCKETS - 1, (int) Math.ceil(2.0d * Math.log(ms / 16.0d) / Math.log(2.0d)));
+        // correct the rounding of the limits: the bucket is the first one with a limit not below the latency
+        while (b > 0 && limit(b - 1) >= ms) b--;
+        while (b < BUCKETS - 1 && limit(b) < ms) b++;
+        return b;
+    }
+
+    static long limit(final int bucket) {
+        return Math.round(16.0d * Math.pow(2.0d, bucket / 2.0d));
+    }
+
+    private Stats stats(final String peerhash) {
+        return this.stats.computeIfAbsent(peerhash, h -> new Stats());
+    }
+
+    /**
+     * record the answer of a peer
+     * @param peerhash the hash of the peer
+     * @param ms the time from the request to the answer in milliseconds
+     * @param results the number of results in the answer
+     */
+    public void recordSuccess(final String peerhash, final long ms, final int results) {
+        stats(peerhash).success(ms, results);
+        saveIfDue();
+    }
+
+    /**
+     * record a failed or cancelled request
+     * @param peerhash the hash of the peer
+     * @param ms the time from the request to the failure in milliseconds
+     */
+    public void recordFailure(final String peerhash, final long ms) {
+        stats(peerhash).failure(ms);
+        saveIfDue();
+    }
+
+    /**
+     * @return the statistics of the peer or null if no request to the peer is recorded
+     */
+    public Stats get(final String peerhash) {
+        return this.stats.get(peerhash);
+    }
+
+    /**
+     * @return the expected time in milliseconds until a useful answer from the peer; failed requests increase the time
+     */
+    public double expectedLatency(final String peerhash) {
+        final Stats s = this.stats.get(peerhash);
+        if (s == null || s.count() < MIN_SAMPLES) return DEFAULT_LATENCY;
+        return s.latency() / (1.0d - Math.min(0.9d, s.errors()));
+    }
+
+    /**
+     * @param peerhash the hash of the peer
+     * @param defaultDelay the delay for peers without enough recorded answers
+     * @return the time in milliseconds after which a request to the peer is slower than usual: the 90th latency percentile
+     */
+    public long hedgeDelay(final String peerhash, final long defaultDelay) {
+        final Stats s = this.stats.get(peerhash);
+        if (s == null || s.count() < MIN_SAMPLES) return defaultDelay;
+        return s.quantile(0.9d);
+    }
+
+    /**
+     * remove a peer from a list of candidates by a random choice which prefers fast and reliable peers.
+     * The choice stays random, so that the load is spread over all peers of a DHT position.
+     * @param candidates the candidate peers, not empty
+     * @param random the random generator
+     * @return the chosen peer, which is removed from the candidates
+     */
+    public Seed pick(final List<Seed> candidates, final Random random) {
+        final double[] weights = new double[candidates.size()];
+        double sum = 0.0d;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1.0d / Math.max(1.0d, expectedLatency(candidates.get(i).hash));
+            sum += weights[i];
+        }
+        double r = random.nextDouble() * sum;
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0.0d) return candidates.remove(i);
+        }
+        return candidates.remove(weights.length - 1);
+    }
+
+    /**
+     * remove the fastest peer from a list of candidates
+     * @param candidates the candidate peers
+     * @return the peer with the lowest expected latency or null if there are no candidates
+     */
+    public Seed fastest(final List<Seed> candidates) {
+        int best = -1;
+        double bestLatency = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            final double l = expectedLatency(candidates.get(i).hash);
+            if (l < bestLatency) {
+                bestLatency = l;
+                best = i;
+            }
+        }
+        return best < 0 ? null : candidates.remove(best);
+    }
+
+    private void saveIfDue() {
+        if (this.file == null || System.currentTimeMillis() - this.lastSave < SAVE_INTERVAL) return;
+        save();
+    }
+
+    /**
+     * store the statistics of the peers which answered within the last {@link #MAX_AGE}
+     */
+    public synchronized void save() {
+        this.lastSave = System.currentTimeMillis();
+        if (this.file == null) return;
+        final Map<String, String> m = new HashMap<String, String>();
+        for (Map.Entry<String, Stats> e: this.stats.entrySet()) {
+            if (this.lastSave - e.getValue().last > MAX_AGE) {
+                this.stats.remove(e.getKey());
+                continue;
+            }
+            m.put(e.getKey(), e.getValue().serialize());
+        }
+        FileUtils.saveMap(this.file, m, "search statistics of peers: latency,throughput,errors,count,last,latency buckets");
+    }
+}
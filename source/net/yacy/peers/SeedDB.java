@@ -77,6 +77,9 @@ public final class SeedDB implements AlternativeDomainNames {
      */
     public static final String DBFILE_OWN_SEED = "mySeed.txt";
 
+    /** Name of the file holding the search statistics of other peers */
+    public static final String DBFILE_SEARCH_STATISTICS = "searchPeerStatistics.txt";
+
     public static final String[]      sortFields = new String[] {Seed.LCOUNT, Seed.RCOUNT, Seed.ICOUNT, Seed.UPTIME, Seed.VERSION, Seed.LASTSEEN};
     public static final String[]   longaccFields = new String[] {Seed.LCOUNT, Seed.ICOUNT, Seed.ISPEED};
     public static final String[] doubleaccFields = new String[] {Seed.RSPEED};
@@ -85,6 +88,7 @@ public final class SeedDB implements AlternativeDomainNames {
     private File seedActiveDBFile, seedPassiveDBFile, seedPotentialDBFile;
     private File myOwnSeedFile;
     private MapDataMining seedActiveDB, seedPassiveDB, seedPotentialDB;
+    private volatile SeedRing activeRing = SeedRing.EMPTY; // the connected peers in DHT order, replaced on every change
 
     protected int lastSeedUpload_seedDBSize = 0;
     public long lastSeedUpload_timeStamp = System.currentTimeMillis();
@@ -92,6 +96,7 @@ public final class SeedDB implements AlternativeDomainNames {
 
     public  PeerActions peerActions;
     public  NewsPool newsPool;
+    public  SearchPeerStatistics searchStatistics;
 
     private int netRedundancy;
     public  Distribution scheme;
@@ -123,6 +128,7 @@ public final class SeedDB implements AlternativeDomainNames {
 
         // check if we are in the seedCaches: this can happen if someone else published our seed
         removeMySeed();
+        initActiveRing();
 
         this.lastSeedUpload_seedDBSize = sizeConnected();
 
@@ -131,6 +137,9 @@ public final class SeedDB implements AlternativeDomainNames {
 
         // deploy peer actions
         this.peerActions = new PeerActions(this, this.newsPool);
+
+        // load the search statistics of the peers
+        this.searchStatistics = new SearchPeerStatistics(new File(networkRoot, DBFILE_SEARCH_STATISTICS));
     }
 
     public void relocate(
@@ -146,6 +155,7 @@ public final class SeedDB implements AlternativeDomainNames {
         this.seedPotentialDB.close();
         this.newsPool.close();
         this.peerActions.close();
+        this.searchStatistics.save();
 
         // open new according to the newNetworkRoot
         this.seedActiveDBFile = new File(newNetworkRoot, this.seedActiveDBFile.getName());
@@ -171,6 +181,7 @@ public final class SeedDB implements AlternativeDomainNames {
 
         // check if we are in the seedCaches: this can happen if someone else published our seed
         removeMySeed();
+        initActiveRing();
 
         this.lastSeedUpload_seedDBSize = sizeConnected();
 
@@ -179,6 +190,9 @@ public final class SeedDB implements AlternativeDomainNames {
 
         // deploy peer actions
         this.peerActions = new PeerActions(this, this.newsPool);
+
+        // the statistics of the peers of the other network
+        this.searchStatistics = new SearchPeerStatistics(new File(newNetworkRoot, DBFILE_SEARCH_STATISTICS));
     }
 
     private synchronized void initMySeed() {
@@ -273,11 +287,26 @@ public final class SeedDB implements AlternativeDomainNames {
         try {
             final byte[] mySeedHash = ASCII.getBytes(this.mySeed.hash);
             this.seedActiveDB.delete(mySeedHash);
+            this.activeRing = this.activeRing.remove(mySeedHash);
             this.seedPassiveDB.delete(mySeedHash);
             this.seedPotentialDB.delete(mySeedHash);
         } catch (final IOException e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
     }
 
+    /**
+     * build the index of the connected peers from the seed database
+     */
+    private synchronized void initActiveRing() {
+        this.activeRing = SeedRing.of(seedsConnected(true, false, null, 0.0d));
+    }
+
+    /**
+     * @return the connected peers in DHT order; the returned ring is not changed when peers are added or removed
+     */
+    SeedRing activeRing() {
+        return this.activeRing;
+    }
+
     public void saveMySeed() {
         try {
           mySeed().save(this.myOwnSeedFile);
@@ -323,7 +352,10 @@ public final class SeedDB implements AlternativeDomainNames {
         return seedDB;
     }
 
-    public synchronized void resetActiveTable() { this.seedActiveDB = resetSeedTable(this.seedActiveDB, this.seedActiveDBFile); }
+    public synchronized void resetActiveTable() {
+        this.seedActiveDB = resetSeedTable(this.seedActiveDB, this.seedActiveDBFile);
+        this.activeRing = SeedRing.EMPTY;
+    }
     private synchronized void resetPassiveTable() { this.seedPassiveDB = resetSeedTable(this.seedPassiveDB, this.seedPassiveDBFile); }
     private synchronized void resetPotentialTable() { this.seedPotentialDB = resetSeedTable(this.seedPotentialDB, this.seedPotentialDBFile); }
 
@@ -333,6 +365,7 @@ public final class SeedDB implements AlternativeDomainNames {
         if (this.seedPotentialDB != null) this.seedPotentialDB.close();
         this.newsPool.close();
         this.peerActions.close();
+        this.searchStatistics.save();
     }
 
     public Iterator<Seed> seedsSortedConnected(final boolean up, final String field) {
@@ -484,6 +517,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             try {
                 this.seedActiveDB.insert(ASCII.getBytes(seed.hash), seedPropMap);
+                this.activeRing = this.activeRing.put(seed);
                 this.seedPassiveDB.delete(ASCII.getBytes(seed.hash));
                 this.seedPotentialDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) {
@@ -497,6 +531,7 @@ public final class SeedDB implements AlternativeDomainNames {
         if (seed.isProper(false) != null) return;
         synchronized (this) {
             try {
+                this.activeRing = this.activeRing.remove(ASCII.getBytes(seed.hash));
                 this.seedActiveDB.delete(ASCII.getBytes(seed.hash));
                 this.seedPotentialDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
@@ -516,6 +551,7 @@ public final class SeedDB implements AlternativeDomainNames {
         final ConcurrentMap<String, String> seedPropMap = seed.getMap();
         synchronized (this) {
             try {
+                this.activeRing = this.activeRing.remove(ASCII.getBytes(seed.hash));
                 this.seedActiveDB.delete(ASCII.getBytes(seed.hash));
                 this.seedPassiveDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
@@ -636,6 +672,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             if (this.seedActiveDB.containsKey(ASCII.getBytes(seed.hash))) try {
                 this.seedActiveDB.insert(ASCII.getBytes(seed.hash), seedPropMap);
+                this.activeRing = this.activeRing.put(seed);
             } catch (final Exception e) {
                 Network.log.severe("ERROR add: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
                 resetActiveTable();
@@ -1031,13 +1068,13 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 this.it = null;
             } catch (final kelondroException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 this.it = null;
             }
@@ -1051,7 +1088,7 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final kelondroException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 if (database == SeedDB.this.seedPotentialDB) SeedDB.this.seedPotentialDB = resetSeedTable(SeedDB.this.seedPotentialDB, SeedDB.this.seedPotentialDBFile);
                 this.it = null;
@@ -1083,7 +1120,7 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final Exception e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR internalNext: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (this.database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (this.database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (this.database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 if (this.database == SeedDB.this.seedPotentialDB) SeedDB.this.seedPotentialDB = resetSeedTable(SeedDB.this.seedPotentialDB, SeedDB.this.seedPotentialDBFile);
                 return null;
@@ -1104,6 +1141,7 @@ public final class SeedDB implements AlternativeDomainNames {
             	// emergency reset
             	Network.log.severe("seed-db emergency reset", e);
             	this.database.clear();
+            	if (this.database == SeedDB.this.seedActiveDB) SeedDB.this.activeRing = SeedRing.EMPTY;
 				this.nextSeed = null;
 				return null;
             }
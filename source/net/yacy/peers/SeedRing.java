@@ -0,0 +1,212 @@
+/**
+ *  SeedRing
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.federate.yacy.Distribution;
+import net.yacy.cora.order.Base64Order;
+
+/**
+ * An immutable index of the connected peers, sorted by their position in the DHT.
+ * <p>
+ * The values needed for the peer selection are held in primitive arrays, so that the DHT targets of a word
+ * are found with a binary search and filtered without decoding a {@link Seed} from the seed database.
+ * The {@link SeedDB} replaces its ring with a modified copy whenever a connected peer is added, updated or removed,
+ * so that readers never need a lock.
+ * </p>
+ */
+final class SeedRing {
+
+    static final int FLAG_ACCEPT_REMOTE_INDEX = 1;
+    static final int FLAG_ROOT_NODE = 2;
+    static final int FLAG_SOLR_AVAILABLE = 4;
+
+    static final SeedRing EMPTY = new SeedRing(new Entry[0]);
+
+    /** the values of one peer */
+    static final class Entry {
+        final byte[] hash;
+        final long position;  // the horizontal DHT position
+        final double version;
+        final int flags;
+        final long lastSeen;  // UTC milliseconds
+        final long birthdate; // UTC milliseconds
+        final long wordCount;
+        final long linkCount;
+        final int ppm;        // pages per minute
+
+        Entry(final Seed seed) {
+            this.hash = ASCII.getBytes(seed.hash);
+            this.position = Distribution.horizontalDHTPosition(this.hash);
+            this.version = seed.getVersion().doubleValue();
+            this.flags = (seed.getFlagAcceptRemoteIndex() ? FLAG_ACCEPT_REMOTE_INDEX : 0)
+                    | (seed.getFlagRootNode() ? FLAG_ROOT_NODE : 0)
+                    | (seed.getFlagSolrAvailable() ? FLAG_SOLR_AVAILABLE : 0);
+            this.lastSeen = seed.getLastSeenUTC();
+            this.birthdate = seed.getBirthdate();
+            this.wordCount = seed.getWordCount();
+            this.linkCount = seed.getLinkCount();
+            this.ppm = seed.getPPM();
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry o1, final Entry o2) {
+            return Base64Order.enhancedCoder.compare(o1.hash, o2.hash);
+        }
+    };
+
+    private final Entry[] entries;
+    private final long[] positions; // the positions of all entries, ascending
+
+    private SeedRing(final Entry[] entries) {
+        this.entries = entries;
+        this.positions = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) this.positions[i] = entries[i].position;
+    }
+
+    /**
+     * @return a ring of all given seeds; seeds with a hash outside of the DHT are omitted
+     */
+    static SeedRing of(final Iterator<Seed> seeds) {
+        final List<Entry> list = new ArrayList<Entry>();
+        while (seeds.hasNext()) {
+            final Seed seed = seeds.next();
+            if (seed == null) continue;
+            final Entry e = new Entry(seed);
+            if (e.position >= 0) list.add(e);
+        }
+        Collections.sort(list, ORDER);
+        return new SeedRing(list.toArray(new Entry[list.size()]));
+    }
+
+    /**
+     * @return a copy of this ring with the seed added or replaced
+     */
+    SeedRing put(final Seed seed) {
+        final Entry e = new Entry(seed);
+        if (e.position < 0) return this;
+        final int i = lowerBound(e.hash, e.position);
+        final Entry[] a;
+        if (i < this.entries.length && Base64Order.enhancedCoder.equal(this.entries[i].hash, e.hash)) {
+            a = this.entries.clone();
+        } else {
+            a = new Entry[this.entries.length + 1];
+            System.arraycopy(this.entries, 0, a, 0, i);
+            System.arraycopy(this.entries, i, a, i + 1, this.entries.length - i);
+        }
+        a[i] = e;
+        return new SeedRing(a);
+    }
+
+    /**
+     * @return a copy of this ring without the peer, or this ring if the peer is not contained
+     */
+    SeedRing remove(final byte[] hash) {
+        final int i = indexOf(hash);
+        if (i < 0) return this;
+        final Entry[] a = new Entry[this.entries.length - 1];
+        System.arraycopy(this.entries, 0, a, 0, i);
+        System.arraycopy(this.entries, i + 1, a, i, a.length - i);
+        return new SeedRing(a);
+    }
+
+    int size() {
+        return this.entries.length;
+    }
+
+    Entry get(final int i) {
+        return this.entries[i];
+    }
+
+    /**
+     * @return the index of the peer or -1 if the peer is not contained
+     */
+    int indexOf(final byte[] hash) {
+        final long position = Distribution.horizontalDHTPosition(hash);
+        final int i = lowerBound(hash, position);
+        return i < this.entries.length && Base64Order.enhancedCoder.equal(this.entries[i].hash, hash) ? i : -1;
+    }
+
+    /**
+     * @return the index of the first peer with a hash not smaller than the given hash, which is size() if there is none
+     */
+    int lowerBound(final byte[] hash) {
+        return lowerBound(hash, Distribution.horizontalDHTPosition(hash));
+    }
+
+    /**
+     * @return the index of the first peer with a hash greater than the given hash, which is size() if there is none
+     */
+    int upperBound(final byte[] hash) {
+        int i = lowerBound(hash);
+        while (i < this.entries.length && Base64Order.enhancedCoder.compare(this.entries[i].hash, hash) <= 0) i++;
+        return i;
+    }
+
+    private int lowerBound(final byte[] hash, final long position) {
+        // the position is a prefix of the hash, so the hashes are compared only if the positions are equal
+        int low = 0, high = this.positions.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final long p = this.positions[mid];
+            if (p < position || (p == position && Base64Order.enhancedCoder.compare(this.entries[mid].hash, hash) < 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the peer has the version which is needed, like in {@link SeedDB#seedsConnected(boolean, boolean, byte[], double)}
+     */
+    boolean hasVersion(final int i, final double minVersion) {
+        final double version = this.entries[i].version;
+        return version >= minVersion || version == 0.0d; // include 0.0 to access always developer peers
+    }
+
+    boolean hasFlag(final int i, final int flag) {
+        return (this.entries[i].flags & flag) != 0;
+    }
+
+    /**
+     * @return the age of the peer in number of days, like {@link Seed#getAge()}
+     */
+    int age(final int i, final long now) {
+        return (int) Math.abs((now - this.entries[i].birthdate) / 1000 / 60 / 60 / 24);
+    }
+
+    @Override
+    public String toString() {
+        final String[] s = new String[this.entries.length];
+        for (int i = 0; i < s.length; i++) s[i] = ASCII.String(this.entries[i].hash);
+        return Arrays.toString(s);
+    }
+}
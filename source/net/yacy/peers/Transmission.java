@@ -33,6 +33,9 @@ import java.util.Random;
 import java.util.Set;
 
 import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
@@ -52,6 +55,11 @@ public class Transmission {
     // anything beyond that might get discarded without notice
     public static final int maxRWIsCount = 1000; // since SVN 7993 hardcoded in htroot/yacy/transferRWI.java:161
 
+    private static final Histogram transferTime = Metrics.histogram("dht_transfer_seconds", "duration of an index transfer of a chunk to a remote peer, including failed transfers");
+    private static final Counter transferredTerms = Metrics.counter("dht_transferred_terms_total", "number of term containers successfully transferred to remote peers");
+    private static final Counter transferredURLs = Metrics.counter("dht_transferred_urls_total", "number of urls successfully transferred to remote peers");
+    private static final Counter failedTransfers = Metrics.counter("dht_failed_transfers_total", "number of failed index transfers to remote peers");
+
     /** The Switchboard instance holding the server environment */
     private final Switchboard env;
     
@@ -221,10 +229,14 @@ public class Transmission {
             }
             Transmission.this.log.info("starting new index transmission request to " + this.dhtTarget.getName());
             final long start = System.currentTimeMillis();
+            final long startNanos = System.nanoTime();
 			final String error = Protocol.transferIndex(Transmission.this.env, this.dhtTarget, this.containers,
 					this.references, Transmission.this.segment, Transmission.this.gzipBody4Transfer,
 					Transmission.this.timeout4Transfer);
+            transferTime.recordSince(startNanos);
             if (error == null) {
+                transferredTerms.add(this.containers.size());
+                transferredURLs.add(this.references.size());
                 // words successfully transfered
                 final long transferTime = System.currentTimeMillis() - start;
                 final Iterator<ReferenceContainer<WordReference>> i = this.containers.iterator();
@@ -243,6 +255,7 @@ public class Transmission {
                 Transmission.this.log.info("Transfer finished of chunk to target " + this.dhtTarget.hash + "/" + this.dhtTarget.getName());
                 return true;
             }
+            failedTransfers.inc();
             Transmission.this.log.info(
                     "Index transfer to peer " + this.dhtTarget.getName() + ":" + this.dhtTarget.hash +
                     " failed: " + error);
@@ -0,0 +1,500 @@
+/**
+ *  HostGraph
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers.graphics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * The host link graph of the {@link WebStructureGraph}.
+ * <p>
+ * Every host hash is interned to an int id once; a host which is only known as link target has an id but no host name.
+ * The links are stored in compressed sparse row format for both directions: the targets of host i are
+ * outTargets[outOffsets[i]..outOffsets[i+1]-1] and the sources linking to host i are inSources[inOffsets[i]..inOffsets[i+1]-1],
+ * with the link counts in parallel arrays. Rows which are changed after the arrays were built are held in an overlay
+ * and are merged into new arrays when the overlay grows too large or before a complete scan of the graph.
+ * </p>
+ * All methods are synchronized on the graph.
+ */
+final class HostGraph {
+
+    /** first bytes of the binary dump, "YWSG" */
+    private static final int MAGIC = 0x59575347;
+    private static final int VERSION = 1;
+
+    /** the counts are stored with 16 bits, like in the former text dump */
+    static final int MAX_COUNT = 0xFFFF;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();    // host hash to id
+    private final Map<String, int[]> names = new HashMap<String, int[]>();       // lower case host name to ids
+    private String[] hashes = new String[64];
+    private String[] hostnames = new String[64]; // null if the host is only known as link target
+    private int[] dates = new int[64];           // yyyymmdd of the latest change
+    private final BitSet latest = new BitSet();  // hosts changed since the last joinOldNew()
+    private int size = 0;                        // number of ids
+    private int hostCount = 0;                   // number of ids with a host name
+
+    // the compressed rows of the ids 0..frozen-1
+    private int frozen = 0;
+    private int[] outOffsets = new int[] {0}, outTargets = EMPTY, outCounts = EMPTY;
+    private int[] inOffsets = new int[] {0}, inSources = EMPTY, inCounts = EMPTY;
+
+    // rows changed since the compression, indexed by id
+    private int[][] changedTargets = new int[64][];
+    private int[][] changedCounts = new int[64][];
+    private int[] changedIds = new int[16];
+    private int changed = 0;
+
+    /**
+     * @return the id of the host hash or -1 if the hash is not known, neither as host nor as link target
+     */
+    synchronized int id(final String hosthash) {
+        final Integer id = this.ids.get(hosthash);
+        return id == null ? -1 : id.intValue();
+    }
+
+    private int intern(final String hosthash) {
+        final Integer id = this.ids.get(hosthash);
+        if (id != null) return id.intValue();
+        if (this.size == this.hashes.length) {
+            final int capacity = this.size * 2;
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.hostnames = Arrays.copyOf(this.hostnames, capacity);
+            this.dates = Arrays.copyOf(this.dates, capacity);
+            this.changedTargets = Arrays.copyOf(this.changedTargets, capacity);
+            this.changedCounts = Arrays.copyOf(this.changedCounts, capacity);
+        }
+        final int i = this.size++;
+        this.hashes[i] = hosthash;
+        this.ids.put(hosthash, Integer.valueOf(i));
+        return i;
+    }
+
+    /**
+     * @return the number of hosts with a host name
+     */
+    synchronized int size() {
+        return this.hostCount;
+    }
+
+    /**
+     * @return the number of ids, including the hosts which are only known as link target
+     */
+    synchronized int idCount() {
+        return this.size;
+    }
+
+    synchronized String hash(final int id) {
+        return this.hashes[id];
+    }
+
+    /**
+     * @return the host name or null if the host is only known as link target
+     */
+    synchronized String hostname(final int id) {
+        return this.hostnames[id];
+    }
+
+    /**
+     * @return the date of the latest change as yyyymmdd
+     */
+    synchronized String date(final int id) {
+        return formatDate(this.dates[id]);
+    }
+
+    synchronized boolean exists(final String hosthash) {
+        final Integer id = this.ids.get(hosthash);
+        return id != null && this.hostnames[id.intValue()] != null;
+    }
+
+    /**
+     * add a host; a host which is already known keeps its links, date and name
+     * @param date the date as yyyymmdd
+     * @return the id of the host
+     */
+    synchronized int addHost(final String hosthash, final String hostname, final String date, final boolean isLatest) {
+        final int id = intern(hosthash);
+        if (this.hostnames[id] == null) {
+            this.hostnames[id] = hostname;
+            this.dates[id] = parseDate(date);
+            this.hostCount++;
+            final String key = hostname.toLowerCase(Locale.ROOT);
+            final int[] a = this.names.get(key);
+            if (a == null) {
+                this.names.put(key, new int[] {id});
+            } else {
+                final int[] b = Arrays.copyOf(a, a.length + 1);
+                b[a.length] = id;
+                this.names.put(key, b);
+            }
+            if (isLatest) this.latest.set(id);
+        }
+        return id;
+    }
+
+    /**
+     * remove the host name and the outgoing links of a host; links from other hosts to it are kept
+     */
+    synchronized void removeHost(final int id) {
+        final String hostname = this.hostnames[id];
+        if (hostname == null) return;
+        setRow(id, EMPTY, EMPTY);
+        this.hostnames[id] = null;
+        this.dates[id] = 0;
+        this.latest.clear(id);
+        this.hostCount--;
+        final String key = hostname.toLowerCase(Locale.ROOT);
+        final int[] a = this.names.get(key);
+        int n = 0;
+        final int[] b = new int[a.length - 1];
+        for (final int i: a) if (i != id) b[n++] = i;
+        if (n == 0) this.names.remove(key); else this.names.put(key, b);
+    }
+
+    /**
+     * @return the ids of all hosts with that name, for all protocols and ports
+     */
+    synchronized int[] hostIds(final String hostname) {
+        final int[] a = this.names.get(hostname.toLowerCase(Locale.ROOT));
+        return a == null ? EMPTY : a.clone();
+    }
+
+    /**
+     * @return the number of hosts linked from the host
+     */
+    synchronized int outdegree(final int id) {
+        final int[] t = this.changedTargets[id];
+        if (t != null) return t.length;
+        return id < this.frozen ? this.outOffsets[id + 1] - this.outOffsets[id] : 0;
+    }
+
+    /**
+     * @return the host hashes linked from the host, mapped to the number of links
+     */
+    synchronized Map<String, Integer> outgoing(final int id) {
+        final int[] t = this.changedTargets[id];
+        final Map<String, Integer> map;
+        if (t != null) {
+            final int[] c = this.changedCounts[id];
+            map = new HashMap<String, Integer>(t.length * 4 / 3 + 1);
+            for (int i = 0; i < t.length; i++) map.put(this.hashes[t[i]], Integer.valueOf(c[i]));
+        } else if (id < this.frozen) {
+            final int start = this.outOffsets[id], end = this.outOffsets[id + 1];
+            map = new HashMap<String, Integer>((end - start) * 4 / 3 + 1);
+            for (int k = start; k < end; k++) map.put(this.hashes[this.outTargets[k]], Integer.valueOf(this.outCounts[k]));
+        } else {
+            map = new HashMap<String, Integer>();
+        }
+        return map;
+    }
+
+    /**
+     * @return the host hashes linking to the host, mapped to the number of links
+     */
+    synchronized Map<String, Integer> incoming(final int id) {
+        final Map<String, Integer> map = new HashMap<String, Integer>();
+        if (id < this.frozen) {
+            for (int k = this.inOffsets[id]; k < this.inOffsets[id + 1]; k++) {
+                final int source = this.inSources[k];
+                if (this.changedTargets[source] == null) map.put(this.hashes[source], Integer.valueOf(this.inCounts[k]));
+            }
+        }
+        for (int j = 0; j < this.changed; j++) {
+            final int source = this.changedIds[j];
+            final int[] t = this.changedTargets[source];
+            for (int i = 0; i < t.length; i++) {
+                if (t[i] == id) {
+                    map.put(this.hashes[source], Integer.valueOf(this.changedCounts[source][i]));
+                    break;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * replace the outgoing links of a host
+     * @param id the id of a host added with {@link #addHost(String, String, String, boolean)}
+     * @param references the linked host hashes mapped to the number of links
+     * @param date the date of the change as yyyymmdd
+     */
+    synchronized void setOutgoing(final int id, final Map<String, Integer> references, final String date) {
+        final int[] t = new int[references.size()];
+        final int[] c = new int[t.length];
+        int i = 0;
+        for (final Map.Entry<String, Integer> e: references.entrySet()) {
+            t[i] = intern(e.getKey());
+            c[i++] = Math.min(MAX_COUNT, Math.max(0, e.getValue().intValue()));
+        }
+        setRow(id, t, c);
+        this.dates[id] = parseDate(date);
+        this.latest.set(id);
+    }
+
+    private void setRow(final int id, final int[] targets, final int[] counts) {
+        if (this.changedTargets[id] == null) {
+            if (this.changed == this.changedIds.length) this.changedIds = Arrays.copyOf(this.changedIds, this.changed * 2);
+            this.changedIds[this.changed++] = id;
+        }
+        this.changedTargets[id] = targets;
+        this.changedCounts[id] = counts;
+        if (this.changed > Math.max(1024, this.size / 8)) compress();
+    }
+
+    /**
+     * @return the ids of the hosts which were changed since the last {@link #joinOldNew()} (latest = true) or the other hosts, ordered by host hash
+     */
+    synchronized List<Integer> hosts(final boolean isLatest) {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (int id = 0; id < this.size; id++) {
+            if (this.hostnames[id] != null && this.latest.get(id) == isLatest) list.add(Integer.valueOf(id));
+        }
+        final String[] h = this.hashes;
+        Collections.sort(list, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return h[o1.intValue()].compareTo(h[o2.intValue()]);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * visit all links in the order of the linked hosts
+     */
+    interface LinkVisitor {
+        /**
+         * @param target a host which is linked from other hosts
+         * @param sources the linking hosts are sources[start..end-1]
+         * @param counts the number of links from each linking host
+         */
+        void links(int target, int[] sources, int[] counts, int start, int end);
+    }
+
+    /**
+     * visit the incoming links of all hosts, in the order of the ids of the linked hosts
+     */
+    synchronized void incomingLinks(final LinkVisitor visitor) {
+        compress();
+        for (int target = 0; target < this.frozen; target++) {
+            if (this.inOffsets[target] < this.inOffsets[target + 1]) {
+                visitor.links(target, this.inSources, this.inCounts, this.inOffsets[target], this.inOffsets[target + 1]);
+            }
+        }
+    }
+
+    /**
+     * mark all hosts as not changed
+     */
+    synchronized void joinOldNew() {
+        this.latest.clear();
+    }
+
+    synchronized void clear() {
+        this.ids.clear();
+        this.names.clear();
+        Arrays.fill(this.hashes, null);
+        Arrays.fill(this.hostnames, null);
+        Arrays.fill(this.changedTargets, null);
+        Arrays.fill(this.changedCounts, null);
+        this.latest.clear();
+        this.size = 0;
+        this.hostCount = 0;
+        this.changed = 0;
+        this.frozen = 0;
+        this.outOffsets = new int[] {0};
+        this.inOffsets = new int[] {0};
+        this.outTargets = this.outCounts = this.inSources = this.inCounts = EMPTY;
+    }
+
+    /**
+     * merge the changed rows into new compressed arrays for both directions
+     */
+    synchronized void compress() {
+        if (this.changed == 0 && this.frozen == this.size) return;
+        final int n = this.size;
+        final int[] oo = new int[n + 1];
+        for (int id = 0; id < n; id++) oo[id + 1] = oo[id] + outdegree(id);
+        final int[] ot = new int[oo[n]];
+        final int[] oc = new int[oo[n]];
+        for (int id = 0; id < n; id++) {
+            final int[] t = this.changedTargets[id];
+            if (t != null) {
+                System.arraycopy(t, 0, ot, oo[id], t.length);
+                System.arraycopy(this.changedCounts[id], 0, oc, oo[id], t.length);
+            } else if (id < this.frozen) {
+                final int start = this.outOffsets[id];
+                System.arraycopy(this.outTargets, start, ot, oo[id], this.outOffsets[id + 1] - start);
+                System.arraycopy(this.outCounts, start, oc, oo[id], this.outOffsets[id + 1] - start);
+            }
+        }
+        this.outOffsets = oo;
+        this.outTargets = ot;
+        this.outCounts = oc;
+        this.frozen = n;
+        rebuildIncoming();
+        for (int j = 0; j < this.changed; j++) {
+            this.changedTargets[this.changedIds[j]] = null;
+            this.changedCounts[this.changedIds[j]] = null;
+        }
+        this.changed = 0;
+    }
+
+    /**
+     * write the graph to a binary dump: magic, version, the number of ids, then for every id the hash (6 bytes),
+     * the host name (empty if the id is only a link target) and the date (int yyyymmdd), then for every id
+     * the number of links and the links as id (int) and count (unsigned short)
+     */
+    synchronized void save(final File file) throws IOException {
+        compress();
+        final File tf = new File(file.toString() + "." + (System.currentTimeMillis() % 1000));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tf), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.size);
+            for (int id = 0; id < this.size; id++) {
+                out.write(ASCII.getBytes(this.hashes[id]), 0, 6);
+                out.writeUTF(this.hostnames[id] == null ? "" : this.hostnames[id]);
+                out.writeInt(this.dates[id]);
+            }
+            for (int id = 0; id < this.size; id++) {
+                final int start = this.outOffsets[id], end = this.outOffsets[id + 1];
+                out.writeInt(end - start);
+                for (int k = start; k < end; k++) {
+                    out.writeInt(this.outTargets[k]);
+                    out.writeShort(this.outCounts[k]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        FileUtils.forceMove(tf, file);
+    }
+
+    /**
+     * @return true if the file starts like a dump written by {@link #save(File)}
+     */
+    static boolean isDump(final File file) {
+        try (final DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * read a dump written by {@link #save(File)} into the empty graph
+     */
+    synchronized void load(final File file) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a web structure dump: " + file);
+            final int version = in.readInt();
+            if (version != VERSION) throw new IOException("unknown web structure dump version " + version + ": " + file);
+            final int n = in.readInt();
+            final byte[] hash = new byte[6];
+            for (int i = 0; i < n; i++) {
+                in.readFully(hash);
+                final int id = intern(ASCII.String(hash));
+                if (id != i) throw new IOException("duplicate host hash in " + file);
+                final String hostname = in.readUTF();
+                final int date = in.readInt();
+                if (!hostname.isEmpty()) addHost(this.hashes[id], hostname, formatDate(date), false);
+            }
+            final int[] oo = new int[n + 1];
+            int[] ot = new int[Math.max(16, n * 4)], oc = new int[ot.length];
+            for (int id = 0; id < n; id++) {
+                final int degree = in.readInt();
+                oo[id + 1] = oo[id] + degree;
+                if (oo[id + 1] > ot.length) {
+                    ot = Arrays.copyOf(ot, Math.max(oo[id + 1], ot.length * 2));
+                    oc = Arrays.copyOf(oc, ot.length);
+                }
+                for (int k = oo[id]; k < oo[id + 1]; k++) {
+                    ot[k] = in.readInt();
+                    oc[k] = in.readUnsignedShort();
+                    if (ot[k] < 0 || ot[k] >= n) throw new IOException("link target out of range in " + file);
+                }
+            }
+            this.outOffsets = oo;
+            this.outTargets = Arrays.copyOf(ot, oo[n]);
+            this.outCounts = Arrays.copyOf(oc, oo[n]);
+            this.frozen = n;
+            rebuildIncoming();
+        }
+    }
+
+    /**
+     * build the incoming direction from the outgoing rows of the ids 0..frozen-1
+     */
+    private void rebuildIncoming() {
+        final int n = this.frozen;
+        final int[] io = new int[n + 1];
+        for (final int t: this.outTargets) io[t + 1]++;
+        for (int id = 0; id < n; id++) io[id + 1] += io[id];
+        final int[] fill = Arrays.copyOf(io, n);
+        final int[] is = new int[this.outTargets.length];
+        final int[] ic = new int[this.outTargets.length];
+        for (int source = 0; source < n; source++) {
+            for (int k = this.outOffsets[source]; k < this.outOffsets[source + 1]; k++) {
+                final int p = fill[this.outTargets[k]]++;
+                is[p] = source;
+                ic[p] = this.outCounts[k];
+            }
+        }
+        this.inOffsets = io;
+        this.inSources = is;
+        this.inCounts = ic;
+    }
+
+    static int parseDate(final String date) {
+        if (date == null || date.length() < 8) return 0;
+        try {
+            return Integer.parseInt(date.substring(0, 8));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String formatDate(final int date) {
+        final String s = Integer.toString(date);
+        return s.length() >= 8 ? s : "00000000".substring(s.length()) + s;
+    }
+}
@@ -30,6 +30,7 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -124,9 +125,14 @@ public class NetworkGraph {
     public static RasterPlotter getSearchEventPicture(final SeedDB seedDB, final String eventID, final int coronaangle, final int cyc) {
         final SearchEvent event = SearchEventCache.getEvent(eventID);
         if (event == null) return null;
-        final List<RemoteSearch> primarySearches = event.getPrimarySearchThreads();
+        final List<RemoteSearch> primarySearchThreads = event.getPrimarySearchThreads();
         //final Thread[] secondarySearches = event.getSecondarySearchThreads();
-        if (primarySearches == null) return null; // this was a local search and there are no threads
+        if (primarySearchThreads == null) return null; // this was a local search and there are no threads
+        // backup requests are added while the search is running, so the synchronized list is copied under its lock
+        final List<RemoteSearch> primarySearches;
+        synchronized (primarySearchThreads) {
+            primarySearches = new ArrayList<RemoteSearch>(primarySearchThreads);
+        }
 
         // get a copy of a recent network picture
         final RasterPlotter eventPicture = getNetworkPicture(seedDB, 640, 480, 300, 300, 9000, coronaangle, -1, Switchboard.getSwitchboard().getConfig(SwitchboardConstants.NETWORK_NAME, "unspecified"), Switchboard.getSwitchboard().getConfig("network.unit.description", "unspecified"), COL_BACKGROUND, cyc);
@@ -28,16 +28,16 @@
 package net.yacy.peers.graphics;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -85,18 +85,11 @@ public class WebStructureGraph {
     private final File structureFile;
     
     /** 
-     * <p>Older structure entries (notably loaded from the backup file).</p>
-     * <p>Maps from two parts concatenated string keys to byte array encoded references lists : 
-     * "'b64hash(6)','hostname" to 'date-yyyymmdd(8)'{'target-b64hash(6)''target-count-hex(4)'}*</p> 
-     * */
-    private final TreeMap<String, byte[]> structure_old;
-    
-    /** 
-     * <p>Recently computed structure entries</p>
-     * <p>Maps from two parts concatenated string keys to byte array encoded references lists : 
-     * "'b64hash(6)','hostname" to 'date-yyyymmdd(8)'{'target-b64hash(6)''target-count-hex(4)'}*</p> 
-     *  */
-    private final TreeMap<String, byte[]> structure_new;
+     * <p>The host link graph: hosts with their name and date of latest change and the number of links between hosts in both directions.</p>
+     * <p>Hosts changed since the last {@link #joinOldNew()} are the latest computed entries, all others are the elder entries
+     * (notably loaded from the backup file).</p>
+     */
+    private final HostGraph graph;
     
     /** Queue used to receive new entries to store */
     private final BlockingQueue<LearnObject> publicRefDNSResolvingQueue;
@@ -131,44 +124,42 @@ public class WebStructureGraph {
 	 *            backup file
 	 */
     public WebStructureGraph(final File structureFile) {
-        this.structure_old = new TreeMap<String, byte[]>();
-        this.structure_new = new TreeMap<String, byte[]>();
+        this.graph = new HostGraph();
         this.structureFile = structureFile;
         this.publicRefDNSResolvingQueue = new LinkedBlockingQueue<LearnObject>();
 
         // load web structure from file if exists
-        Map<String, byte[]> loadedStructureB;
         try {
         	if(this.structureFile != null && this.structureFile.exists()) {
-        		loadedStructureB = FileUtils.loadMapB(this.structureFile);
-                log.info("loaded dump of " + loadedStructureB.size() + " entries from " + this.structureFile.toString());
-        	} else {
-        		loadedStructureB = new TreeMap<String, byte[]>();
+        		if (HostGraph.isDump(this.structureFile)) {
+        			this.graph.load(this.structureFile);
+        		} else {
+        			// the text dump written by former versions
+        			loadMap(FileUtils.loadMapB(this.structureFile));
+        		}
+                log.info("loaded dump of " + this.graph.size() + " entries from " + this.structureFile.toString());
         	}
+        } catch (final IOException e ) {
+            log.warn("cannot load the web structure from " + this.structureFile.toString() + ": " + e.getMessage());
+            this.graph.clear();
         } catch (final OutOfMemoryError e ) {
-            loadedStructureB = new TreeMap<String, byte[]>();
+            this.graph.clear();
         }
-        this.structure_old.putAll(loadedStructureB);
         
         // delete out-dated entries in case the structure is too big
-        if ( this.structure_old.size() > maxhosts ) {
+        if ( this.graph.size() > maxhosts ) {
             // fill a set with last-modified - dates of the structure
             final TreeSet<String> delset = new TreeSet<String>();
-            String key;
-            byte[] value;
-            for ( final Map.Entry<String, byte[]> entry : this.structure_old.entrySet() ) {
-                key = entry.getKey();
-                value = entry.getValue();
-                if ( value != null && value.length >= 8 ) {
-                    delset.add(UTF8.String(value).substring(0, 8) + key);
-                }
+            for ( final Integer id : this.graph.hosts(false) ) {
+                delset.add(this.graph.date(id.intValue()) + this.graph.hash(id.intValue()));
             }
-            int delcount = this.structure_old.size() - (maxhosts * 9 / 10);
+            int delcount = this.graph.size() - (maxhosts * 9 / 10);
             final Iterator<String> j = delset.iterator();
             while ( (delcount > 0) && (j.hasNext()) ) {
-                this.structure_old.remove(j.next().substring(8));
+                this.graph.removeHost(this.graph.id(j.next().substring(8)));
                 delcount--;
             }
+            this.graph.compress();
         }
 
         this.publicRefDNSResolvingWorker = new PublicRefDNSResolvingProcess();
@@ -199,8 +190,25 @@ public class WebStructureGraph {
      * Clear the complete web structure.
      */
     public void clear() {
-        this.structure_old.clear();
-        this.structure_new.clear();
+        this.graph.clear();
+    }
+
+    /**
+     * Add the entries of a web structure text dump of former versions as elder entries.
+     * @param map maps from "'b64hash(6)','hostname" to 'date-yyyymmdd(8)'{'target-b64hash(6)''target-count-hex(4)'}*
+     */
+    private void loadMap(final Map<String, byte[]> map) {
+        for ( final Map.Entry<String, byte[]> entry : map.entrySet() ) {
+            final String key = entry.getKey();
+            final String refs = UTF8.String(entry.getValue());
+            if ( key.length() < 8 || refs.length() < 8 || (refs.length() - 8) % 10 != 0 ) {
+                continue;
+            }
+            final int id = this.graph.addHost(key.substring(0, 6), key.substring(7), refs, false);
+            this.graph.setOutgoing(id, refstr2map(refs), refs);
+        }
+        this.graph.joinOldNew();
+        this.graph.compress();
     }
     
     public void generateCitationReference(final DigestURL url, final Document document) {
@@ -253,16 +261,6 @@ public class WebStructureGraph {
         }
     }
 
-    /**
-     * @param refs references information serialized in a string
-     * @return the decoded references map size
-     */
-    private static int refstr2count(final String refs) {
-        if (refs == null || refs.length() <= 8) return 0;
-        assert (refs.length() - 8) % 10 == 0 : "refs = " + refs + ", length = " + refs.length();
-        return (refs.length() - 8) / 10;
-    }
-
     /**
      * @param refs references information serialized in a string
      * @return the decoded references mapping from host hashes to counts
@@ -271,7 +269,7 @@ public class WebStructureGraph {
         if (refs == null || refs.length() <= 8) return new HashMap<String, Integer>();
         final Map<String, Integer> map = new HashMap<String, Integer>();
         String c;
-        final int refsc = refstr2count(refs);
+        final int refsc = (refs.length() - 8) / 10;
         int d;
         for (int i = 0; i < refsc; i++) {
             c = refs.substring(8 + i * 10, 8 + (i + 1) * 10);
@@ -285,69 +283,13 @@ public class WebStructureGraph {
         return map;
     }
 
-    /**
-     * @return an empty references map serialized to a string
-     */
-    private static String none2refstr() {
-        return GenericFormatter.SHORT_DAY_FORMATTER.format();
-    }
-    
-    /**
-     * @param map references mapping from host hashes to counts
-     * @return the map serialized as a string
-     */
-    private static String map2refstr(final Map<String, Integer> map) {
-        final StringBuilder s = new StringBuilder(GenericFormatter.PATTERN_SHORT_DAY.length() + map.size() * 10);
-        s.append(GenericFormatter.SHORT_DAY_FORMATTER.format());
-        String h;
-        for ( final Map.Entry<String, Integer> entry : map.entrySet() ) {
-            s.append(entry.getKey());
-            h = Integer.toHexString(entry.getValue().intValue());
-            final int hl = h.length();
-            if ( hl == 0 ) {
-                s.append("0000");
-            } else if ( hl == 1 ) {
-                s.append("000").append(h);
-            } else if ( hl == 2 ) {
-                s.append("00").append(h);
-            } else if ( hl == 3 ) {
-                s.append('0').append(h);
-            } else if ( hl == 4 ) {
-                s.append(h);
-            } else {
-                s.append("FFFF");
-            }
-        }
-        return s.toString();
-    }
-
     /**
      * @param hosthash host hash
      * @return true when this host hash is present in this web structure (either in latest or elder known entries)
      */
     public boolean exists(final String hosthash) {
-        // returns a map with a hosthash(String):refcount(Integer) relation
         assert hosthash.length() == 6;
-        SortedMap<String, byte[]> tailMap;
-        synchronized ( this.structure_old ) {
-            tailMap = this.structure_old.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    return true;
-                }
-            }
-        }
-        synchronized ( this.structure_new ) {
-            tailMap = this.structure_new.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return this.graph.exists(hosthash);
     }
     
     /**
@@ -358,41 +300,15 @@ public class WebStructureGraph {
     public StructureEntry outgoingReferences(final String hosthash) {
         // returns a map with a hosthash(String):refcount(Integer) relation
         assert hosthash.length() == 6;
-        SortedMap<String, byte[]> tailMap;
-        Map<String, Integer> h = new HashMap<String, Integer>();
-        String hostname = "";
-        String date = "";
-        String ref;
-        synchronized ( this.structure_old ) {
-            tailMap = this.structure_old.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    hostname = key.substring(7);
-                    ref = ASCII.String(tailMap.get(key));
-                    date = ref.substring(0, 8);
-                    h = refstr2map(ref);
-                }
-            }
-        }
-        synchronized ( this.structure_new ) {
-            tailMap = this.structure_new.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    ref = ASCII.String(tailMap.get(key));
-                    if ( hostname.isEmpty() ) {
-                        hostname = key.substring(7);
-                    }
-                    if ( date.isEmpty() ) {
-                        date = ref.substring(0, 8);
-                    }
-                    h.putAll(refstr2map(ref));
-                }
+        synchronized ( this.graph ) {
+            final int id = this.graph.id(hosthash);
+            if ( id < 0 || this.graph.hostname(id) == null ) {
+                return null;
             }
+            final Map<String, Integer> h = this.graph.outgoing(id);
+            if (h.isEmpty()) return null;
+            return new StructureEntry(hosthash, this.graph.hostname(id), this.graph.date(id), h);
         }
-        if (h.isEmpty()) return null;
-        return new StructureEntry(hosthash, hostname, date, h);
     }
     
     /**
@@ -432,26 +348,16 @@ public class WebStructureGraph {
      * @return incoming structure with references mapped from source host hashes to counts or null when the target is not known
      */
     public StructureEntry incomingReferences(final String hosthash) {
-        final String hostname = hostHash2hostName(hosthash);
-        if ( hostname == null ) {
-            return null;
-        }
-        // collect the references
-        WebStructureGraph.StructureEntry sentry;
-        final HashMap<String, Integer> hosthashes = new HashMap<String, Integer>();
-        Iterator<WebStructureGraph.StructureEntry> i = new StructureIterator(false);
-        while ( i.hasNext() ) {
-            sentry = i.next();
-            if ( sentry.references.containsKey(hosthash) ) {
-                hosthashes.put(sentry.hosthash, sentry.references.get(hosthash));
-            }
-        }
-        i = new StructureIterator(true);
-        while ( i.hasNext() ) {
-            sentry = i.next();
-            if ( sentry.references.containsKey(hosthash) ) {
-                hosthashes.put(sentry.hosthash, sentry.references.get(hosthash));
+        final Map<String, Integer> hosthashes;
+        final String hostname;
+        synchronized ( this.graph ) {
+            final int id = this.graph.id(hosthash);
+            hostname = id < 0 ? null : this.graph.hostname(id);
+            if ( hostname == null ) {
+                return null;
             }
+            // collect the references from the incoming adjacency of the host
+            hosthashes = this.graph.incoming(id);
         }
         // construct a new structureEntry Object
         return new StructureEntry(
@@ -580,10 +486,7 @@ public class WebStructureGraph {
         final ReferenceContainerCache<HostReference> idx =
             new ReferenceContainerCache<HostReference>(hostReferenceFactory, Base64Order.enhancedCoder, 6);
 
-        // we iterate over all structure entries.
-        // one structure entry has information that a specific host links to a list of other hosts
-        incomingReferencesEnrich(idx, new StructureIterator(false), 3000);
-        incomingReferencesEnrich(idx, new StructureIterator(true), 3000);
+        incomingReferencesEnrich(idx);
 
         // fill the cache again and set fill time
         hostReferenceIndexCache = idx;
@@ -592,48 +495,37 @@ public class WebStructureGraph {
         return hostReferenceIndexCache;
     }
 
-    private void incomingReferencesEnrich(
-        final ReferenceContainerCache<HostReference> idx,
-        final Iterator<WebStructureGraph.StructureEntry> structureIterator,
-        final long time) {
-        // we iterate over all structure entries.
-        // one structure entry has information that a specific host links to a list of other hosts
-        final long timeout = time == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + time;
-        byte[] term;
-        HostReference hr;
-        WebStructureGraph.StructureEntry sentry;
-        structureLoop: while ( structureIterator.hasNext() ) {
-            sentry = structureIterator.next();
-            // then we loop over all the hosts that are linked from sentry.hosthash
-            refloop: for ( final Map.Entry<String, Integer> refhosthashandcounter : sentry.references
-                .entrySet() ) {
-                term = UTF8.getBytes(refhosthashandcounter.getKey());
-                try {
-                    hr =
-                        new HostReference(
-                            ASCII.getBytes(sentry.hosthash),
-                            GenericFormatter.SHORT_DAY_FORMATTER.parse(sentry.date, 0).getTime().getTime(),
-                            refhosthashandcounter.getValue().intValue());
-                } catch (final ParseException e ) {
-                    continue refloop;
-                }
-                // each term refers to an index entry. look if we already have such an entry
-                ReferenceContainer<HostReference> r = idx.get(term, null);
-                try {
-                    if ( r == null ) {
-                        r = new ReferenceContainer<HostReference>(hostReferenceFactory, term);
-                        r.add(hr);
+    private void incomingReferencesEnrich(final ReferenceContainerCache<HostReference> idx) {
+        // we iterate over the incoming links of all hosts: one container lists all hosts that link to a specific host
+        synchronized ( this.graph ) {
+            final long[] modified = new long[this.graph.idCount()];
+            Arrays.fill(modified, -1);
+            this.graph.incomingLinks(new HostGraph.LinkVisitor() {
+                @Override
+                public void links(final int target, final int[] sources, final int[] counts, final int start, final int end) {
+                    final byte[] term = ASCII.getBytes(WebStructureGraph.this.graph.hash(target));
+                    try {
+                        final ReferenceContainer<HostReference> r = new ReferenceContainer<HostReference>(hostReferenceFactory, term, end - start);
+                        for ( int k = start; k < end; k++ ) {
+                            final int source = sources[k];
+                            if ( modified[source] == -1 ) {
+                                try {
+                                    modified[source] = GenericFormatter.SHORT_DAY_FORMATTER.parse(WebStructureGraph.this.graph.date(source), 0).getTime().getTime();
+                                } catch (final ParseException e ) {
+                                    modified[source] = -2;
+                                }
+                            }
+                            if ( modified[source] == -2 ) {
+                                continue;
+                            }
+                            r.add(new HostReference(ASCII.getBytes(WebStructureGraph.this.graph.hash(source)), modified[source], counts[k]));
+                        }
                         idx.add(r);
-                    } else {
-                        r.put(hr);
+                    } catch (final SpaceExceededException e ) {
+                        // skip this host
                     }
-                } catch (final SpaceExceededException e ) {
-                    continue refloop;
                 }
-            }
-            if ( System.currentTimeMillis() > timeout ) {
-                break structureLoop;
-            }
+            });
         }
     }
 
@@ -645,31 +537,10 @@ public class WebStructureGraph {
     public int referencesCount(final String hosthash) {
         assert hosthash.length() == 6 : "hosthash = " + hosthash;
         if (hosthash == null || hosthash.length() != 6) return 0;
-        SortedMap<String, byte[]> tailMap;
-        int c = 0;
-        try {
-        synchronized ( this.structure_old ) {
-            tailMap = this.structure_old.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    c = refstr2count(UTF8.String(tailMap.get(key)));
-                }
-            }
-        }
-        synchronized ( this.structure_new ) {
-            tailMap = this.structure_new.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    c += refstr2count(UTF8.String(tailMap.get(key)));
-                }
-            }
-        }
-        } catch (final Throwable t) {
-            this.clear();
+        synchronized ( this.graph ) {
+            final int id = this.graph.id(hosthash);
+            return id < 0 ? 0 : this.graph.outdegree(id);
         }
-        return c;
     }
 
     /**
@@ -679,26 +550,10 @@ public class WebStructureGraph {
     public String hostHash2hostName(final String hosthash) {
         // returns the host as string, null if unknown
         assert hosthash.length() == 6;
-        SortedMap<String, byte[]> tailMap;
-        synchronized ( this.structure_old ) {
-            tailMap = this.structure_old.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    return key.substring(7);
-                }
-            }
-        }
-        synchronized ( this.structure_new ) {
-            tailMap = this.structure_new.tailMap(hosthash);
-            if ( !tailMap.isEmpty() ) {
-                final String key = tailMap.firstKey();
-                if ( key.startsWith(hosthash) ) {
-                    return key.substring(7);
-                }
-            }
+        synchronized ( this.graph ) {
+            final int id = this.graph.id(hosthash);
+            return id < 0 ? null : this.graph.hostname(id);
         }
-        return null;
     }
     
 	/**
@@ -714,24 +569,9 @@ public class WebStructureGraph {
 	 */
 	public Set<String> hostName2HostHashes(final String hostName) {
 		Set<String> hashes = new HashSet<>();
-		synchronized (this.structure_old) {
-			String keyHostName, hash;
-			for (String key : structure_old.keySet()) {
-				hash = key.substring(0, 6);
-				keyHostName = key.substring(7);
-				if (keyHostName.equalsIgnoreCase(hostName)) {
-					hashes.add(hash);
-				}
-			}
-		}
-		synchronized (this.structure_new) {
-			String keyHostName, hash;
-			for (String key : structure_new.keySet()) {
-				hash = key.substring(0, 6);
-				keyHostName = key.substring(7);
-				if (keyHostName.equalsIgnoreCase(hostName)) {
-					hashes.add(hash);
-				}
+		synchronized (this.graph) {
+			for (final int id : this.graph.hostIds(hostName)) {
+				hashes.add(this.graph.hash(id));
 			}
 		}
 		return hashes;
@@ -741,86 +581,64 @@ public class WebStructureGraph {
     protected void learnrefs(final LearnObject lro) {
         final DigestURL url = lro.url;
         final String sourceHosthash = url.hosthash();
-
-        // parse the new reference string and join it with the stored references
-        final StructureEntry structure = outgoingReferences(sourceHosthash);
-        final Map<String, Integer> refs = (structure == null) ? new HashMap<String, Integer>() : structure.references;
-        int c;
-        for (final DigestURL u : lro.globalRefURLs) {
-        	String domain = u.hosthash();
-        	if (Switchboard.getSwitchboard() != null && Switchboard.getSwitchboard().shallTerminate()) break;
-            if (!exists(domain)) {
-                // this must be recorded as an host with no references
-                synchronized ( this.structure_new ) {
-                    this.structure_new.put(domain + "," + u.getHost(), UTF8.getBytes(none2refstr()));
+        final String date = GenericFormatter.SHORT_DAY_FORMATTER.format();
+
+        synchronized ( this.graph ) {
+            // join the new references with the stored references
+            final int sourceId = this.graph.id(sourceHosthash);
+            final Map<String, Integer> refs = sourceId < 0 ? new HashMap<String, Integer>() : this.graph.outgoing(sourceId);
+            int c;
+            for (final DigestURL u : lro.globalRefURLs) {
+                String domain = u.hosthash();
+                if (Switchboard.getSwitchboard() != null && Switchboard.getSwitchboard().shallTerminate()) break;
+                if (!exists(domain)) {
+                    // this must be recorded as an host with no references
+                    this.graph.addHost(domain, u.getHost(), date, true);
                 }
-            }
-            c = 0;
-            Integer existingCount = refs.get(domain);
-            if ( existingCount != null) {
-                c = existingCount.intValue();
-            }
-            refs.put(domain, Integer.valueOf(++c));
-        }
-
-        // check if the maxref is exceeded
-        if ( refs.size() > maxref ) {
-            int shrink = refs.size() - (maxref * 9 / 10);
-            delloop: while ( shrink > 0 ) {
-                // shrink the references: the entry with the smallest number of references is removed
-                int minrefcount = Integer.MAX_VALUE;
-                String minrefkey = null;
-                findloop: for ( final Map.Entry<String, Integer> entry : refs.entrySet() ) {
-                    if ( entry.getValue().intValue() < minrefcount ) {
-                        minrefcount = entry.getValue().intValue();
-                        minrefkey = entry.getKey();
+                c = 0;
+                Integer existingCount = refs.get(domain);
+                if ( existingCount != null) {
+                    c = existingCount.intValue();
+                }
+                refs.put(domain, Integer.valueOf(++c));
+            }
+
+            // check if the maxref is exceeded
+            if ( refs.size() > maxref ) {
+                int shrink = refs.size() - (maxref * 9 / 10);
+                delloop: while ( shrink > 0 ) {
+                    // shrink the references: the entry with the smallest number of references is removed
+                    int minrefcount = Integer.MAX_VALUE;
+                    String minrefkey = null;
+                    findloop: for ( final Map.Entry<String, Integer> entry : refs.entrySet() ) {
+                        if ( entry.getValue().intValue() < minrefcount ) {
+                            minrefcount = entry.getValue().intValue();
+                            minrefkey = entry.getKey();
+                        }
+                        if ( minrefcount == 1 ) {
+                            break findloop;
+                        }
                     }
-                    if ( minrefcount == 1 ) {
-                        break findloop;
+                    // remove the smallest
+                    if ( minrefkey == null ) {
+                        break delloop;
                     }
+                    refs.remove(minrefkey);
+                    shrink--;
                 }
-                // remove the smallest
-                if ( minrefkey == null ) {
-                    break delloop;
-                }
-                refs.remove(minrefkey);
-                shrink--;
             }
-        }
-
-        // store the map back to the structure
-        synchronized ( this.structure_new ) {
-            this.structure_new.put(sourceHosthash + "," + url.getHost(), UTF8.getBytes(map2refstr(refs)));
-        }
-    }
 
-    private static void joinStructure(final TreeMap<String, byte[]> into, final TreeMap<String, byte[]> from) {
-        for ( final Map.Entry<String, byte[]> e : from.entrySet() ) {
-            if ( into.containsKey(e.getKey()) ) {
-                final Map<String, Integer> s0 = refstr2map(UTF8.String(into.get(e.getKey())));
-                final Map<String, Integer> s1 = refstr2map(UTF8.String(e.getValue()));
-                for ( final Map.Entry<String, Integer> r : s1.entrySet() ) {
-                    if ( s0.containsKey(r.getKey()) ) {
-                        s0.put(r.getKey(), s0.get(r.getKey()).intValue() + r.getValue().intValue());
-                    } else {
-                        s0.put(r.getKey(), r.getValue().intValue());
-                    }
-                }
-                into.put(e.getKey(), UTF8.getBytes(map2refstr(s0)));
-            } else {
-                into.put(e.getKey(), e.getValue());
-            }
+            // store the references back to the graph
+            final int id = this.graph.addHost(sourceHosthash, url.getHost(), date, true);
+            this.graph.setOutgoing(id, refs, date);
         }
     }
 
     /**
-     * Feed the elder entries structure map with latest computed entries map and then clear this last one.
+     * Turn the latest computed entries into elder entries.
      */
     public void joinOldNew() {
-        synchronized ( this.structure_new ) {
-            joinStructure(this.structure_old, this.structure_new);
-            this.structure_new.clear();
-        }
+        this.graph.joinOldNew();
     }
 
     /**
@@ -828,37 +646,18 @@ public class WebStructureGraph {
      */
     public String hostWithMaxReferences() {
         // find host with most references
-        Map<String, Integer> hostNamesToRefsNb = new TreeMap<>();
-        int refsize, maxref = 0;
+        Map<String, Integer> hostNamesToRefsNb = new HashMap<>();
+        int maxref = 0;
         String hostName, maxHostName = null;
         Integer refsNb;
-        synchronized ( this.structure_old ) {
-            for ( final Map.Entry<String, byte[]> entry : this.structure_old.entrySet() ) {
-                refsize = entry.getValue().length;
-                hostName = entry.getKey().substring(7);
-                refsNb = hostNamesToRefsNb.get(hostName);
-                if(refsNb == null) {
-                	refsNb = refsize;
-                } else {
-                	refsNb += refsize;
-                }
-                if ( refsNb > maxref ) {
-                    maxref = refsNb;
-                    maxHostName = hostName;
+        synchronized ( this.graph ) {
+            for ( int id = 0; id < this.graph.idCount(); id++ ) {
+                hostName = this.graph.hostname(id);
+                if ( hostName == null ) {
+                    continue;
                 }
-                hostNamesToRefsNb.put(hostName, refsNb);
-            }
-        }
-        synchronized ( this.structure_new ) {
-            for ( final Map.Entry<String, byte[]> entry : this.structure_new.entrySet() ) {
-                refsize = entry.getValue().length;
-                hostName = entry.getKey().substring(7);
                 refsNb = hostNamesToRefsNb.get(hostName);
-                if(refsNb == null) {
-                	refsNb = refsize;
-                } else {
-                	refsNb += refsize;
-                }
+                refsNb = (refsNb == null ? 0 : refsNb.intValue()) + this.graph.outdegree(id);
                 if ( refsNb > maxref ) {
                     maxref = refsNb;
                     maxHostName = hostName;
@@ -871,14 +670,12 @@ public class WebStructureGraph {
     
     public ReversibleScoreMap<String> hostReferenceScore() {
         ReversibleScoreMap<String> result = new ClusteredScoreMap<String>(ASCII.identityASCIIComparator);
-        synchronized ( this.structure_old ) {
-            for ( final Map.Entry<String, byte[]> entry : this.structure_old.entrySet() ) {
-                result.set(entry.getKey().substring(7), (entry.getValue().length - 8) / 10);
-            }
-        }
-        synchronized ( this.structure_new ) {
-            for ( final Map.Entry<String, byte[]> entry : this.structure_new.entrySet() ) {
-                result.set(entry.getKey().substring(7), (entry.getValue().length - 8) / 10);
+        synchronized ( this.graph ) {
+            for ( int id = 0; id < this.graph.idCount(); id++ ) {
+                final String hostName = this.graph.hostname(id);
+                if ( hostName != null ) {
+                    result.set(hostName, this.graph.outdegree(id));
+                }
             }
         }
         return result;
@@ -900,8 +697,8 @@ public class WebStructureGraph {
      */
     private class StructureIterator extends LookAheadIterator<StructureEntry> implements Iterator<StructureEntry> {
 
-    	/** Internal iterator instance */
-        private final Iterator<Map.Entry<String, byte[]>> i;
+    	/** Internal iterator over the host ids, ordered by host hash */
+        private final Iterator<Integer> i;
 
         /**
          * @param latest <ul>
@@ -910,40 +707,25 @@ public class WebStructureGraph {
          * </ul>
          */
         private StructureIterator(final boolean latest) {
-            this.i = ((latest) ? WebStructureGraph.this.structure_new : WebStructureGraph.this.structure_old).entrySet().iterator();
+            this.i = WebStructureGraph.this.graph.hosts(latest).iterator();
         }
 
         /**
-         * Iterate to the next structure entry, decoding on the fly the references information from the byte array
+         * Iterate to the next structure entry, reading on the fly the references from the graph
          */
         @Override
         public StructureEntry next0() {
-            Map.Entry<String, byte[]> entry = null;
-            String dom = null;
-            byte[] ref = null;
-            String refs;
+            final HostGraph g = WebStructureGraph.this.graph;
             while ( this.i.hasNext() ) {
-                entry = this.i.next();
-                ref = entry.getValue();
-                if ( (ref.length - 8) % 10 != 0 ) {
-                    continue;
-                }
-                dom = entry.getKey();
-                if ( dom.length() >= 8 ) {
-                    break;
+                final int id = this.i.next().intValue();
+                synchronized ( g ) {
+                    final String hostname = g.hostname(id);
+                    if ( hostname != null ) {
+                        return new StructureEntry(g.hash(id), hostname, g.date(id), g.outgoing(id));
+                    }
                 }
-                dom = null;
             }
-            if ( entry == null || dom == null ) {
-                return null;
-            }
-            assert (ref.length - 8) % 10 == 0 : "refs = " + ref + ", length = " + ref.length;
-            refs = UTF8.String(ref);
-            return new StructureEntry(
-                dom.substring(0, 6),
-                dom.substring(7),
-                refs.substring(0, 8),
-                refstr2map(refs));
+            return null;
         }
     }
 
@@ -1010,33 +792,27 @@ public class WebStructureGraph {
 
         // save to web structure file
         if(this.structureFile != null) {
-        	log.info("Saving Web Structure File: new = "
-        			+ this.structure_new.size()
-        			+ " entries, old = "
-        			+ this.structure_old.size()
-        			+ " entries");
+        	log.info("Saving Web Structure File: " + this.graph.size() + " entries");
         	final long time = System.currentTimeMillis();
         	joinOldNew();
-        	log.info("dumping " + structure_old.size() + " entries to " + structureFile.toString());
-        	if ( !this.structure_old.isEmpty() ) {
-        		synchronized ( this.structure_old ) {
-        			if ( !this.structure_old.isEmpty() ) {
-        				FileUtils
-                        	.saveMapB(
-                        			this.structureFile,
-                        			this.structure_old,
-                        			"Web Structure Syntax: <b64hash(6)>','<host> to <date-yyyymmdd(8)>{<target-b64hash(6)><target-count-hex(4)>}*");
+        	log.info("dumping " + this.graph.size() + " entries to " + structureFile.toString());
+        	synchronized ( this.graph ) {
+        		if ( this.graph.size() > 0 ) {
+        			try {
+        				this.graph.save(this.structureFile);
         				final long t = Math.max(1, System.currentTimeMillis() - time);
         				log.info("Saved Web Structure File: "
-        						+ this.structure_old.size()
+        						+ this.graph.size()
         						+ " entries in "
         						+ t
         						+ " milliseconds, "
-        						+ (this.structure_old.size() * 1000 / t)
+        						+ (this.graph.size() * 1000 / t)
         						+ " entries/second");
+        			} catch (final IOException e ) {
+        				log.warn("cannot save the web structure to " + this.structureFile.toString() + ": " + e.getMessage());
         			}
-        			this.structure_old.clear();
         		}
+        		this.graph.clear();
         	}
         }
     }
@@ -40,7 +40,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -106,6 +105,7 @@ public class Blacklist {
     private final ConcurrentMap<BlacklistType, HandleSet> cachedUrlHashs;
     private final ConcurrentMap<BlacklistType, Map<String, Set<Pattern>>> hostpaths_matchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
     private final ConcurrentMap<BlacklistType, Map<String, Set<Pattern>>> hostpaths_notmatchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
+    private final ConcurrentMap<BlacklistType, BlacklistMatcher> matchers; // the compiled blacklists, created when needed
 
     public Blacklist(final File rootPath) {
 
@@ -115,6 +115,7 @@ public class Blacklist {
         this.hostpaths_matchable = new ConcurrentHashMap<BlacklistType, Map<String, Set<Pattern>>>();
         this.hostpaths_notmatchable = new ConcurrentHashMap<BlacklistType, Map<String, Set<Pattern>>>();
         this.cachedUrlHashs = new ConcurrentHashMap<BlacklistType, HandleSet>();
+        this.matchers = new ConcurrentHashMap<BlacklistType, BlacklistMatcher>();
 
         for (final BlacklistType blacklistType : BlacklistType.values()) {
             this.hostpaths_matchable.put(blacklistType, new ConcurrentHashMap<String, Set<Pattern>>());
@@ -159,6 +160,23 @@ public class Blacklist {
         return this.cachedUrlHashs.get(blacklistType);
     }
 
+    /**
+     * @return the compiled form of the blacklist; it is created from the blacklist maps when the blacklist was changed
+     */
+    private final BlacklistMatcher getMatcher(final BlacklistType blacklistType) {
+        final BlacklistMatcher matcher = this.matchers.get(blacklistType);
+        if (matcher != null) return matcher;
+        // a concurrent invalidate() waits until the compilation is finished, so no outdated matcher remains
+        return this.matchers.computeIfAbsent(blacklistType, type -> new BlacklistMatcher(getBlacklistMap(type, true), getBlacklistMap(type, false)));
+    }
+
+    /**
+     * drop the compiled blacklist and its cached results after a change of the blacklist maps
+     */
+    private final void invalidate(final BlacklistType blacklistType) {
+        this.matchers.remove(blacklistType);
+    }
+
     public final File getRootPath() {
     	return blacklistRootPath;
     }
@@ -173,6 +191,7 @@ public class Blacklist {
         for (final HandleSet entry : this.cachedUrlHashs.values()) {
             entry.clear();
         }
+        this.matchers.clear();
     }
 
     public final int size() {
@@ -256,6 +275,7 @@ public class Blacklist {
                 }
             }
         }
+        invalidate(blFile.getType());
     }
 
     public final void loadList(final BlacklistType blacklistType, final String fileNames, final String sep) {
@@ -279,6 +299,7 @@ public class Blacklist {
 
         final Map<String, Set<Pattern>> blacklistMapNotMatch = getBlacklistMap(blacklistType, false);
         removePatternFromMap(host, path, blacklistMapNotMatch);
+        invalidate(blacklistType);
 
         //TODO: check if delete from blacklist is desired, on reload entry will not be available in any blacklist
         //      even if remove (above) from internal maps (at runtime) is only done for given blacklistType
@@ -412,6 +433,7 @@ public class Blacklist {
 					Pattern pattern = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
 
 					hostList.add(pattern);
+					invalidate(blacklistType);
 
 					// Append the line to the file.
 					final String newEntry = h + "/" + pattern;
@@ -489,6 +511,7 @@ public class Blacklist {
                     blacklistMap.put(h, (hostList = new HashSet<Pattern>()));
                 }
                 hostList.add(pattern);
+                invalidate(supportedBlacklistType);
             }
         }
 
@@ -581,30 +604,32 @@ public class Blacklist {
         if (url.getHost() == null) {
             return false;
         }
+        final byte[] urlHash = url.hash();
         HandleSet urlHashCache = getCacheUrlHashsSet(blacklistType);
         if (urlHashCache == null) {
             urlHashCache = new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 0);
-            if (isListed(blacklistType, url.getHost().toLowerCase(Locale.ROOT), url.getFile())) {
-                try {
-                    urlHashCache.put(url.hash());
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.logException(e);
-                }
-                this.cachedUrlHashs.put(blacklistType, urlHashCache);
-            }
+            this.cachedUrlHashs.put(blacklistType, urlHashCache);
         }
-        if (!urlHashCache.has(url.hash())) {
-            final boolean temp = isListed(blacklistType, url.getHost().toLowerCase(Locale.ROOT), url.getFile());
-            if (temp) {
-                try {
-                    urlHashCache.put(url.hash());
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.logException(e);
-                }
+        if (urlHashCache.has(urlHash)) {
+            return true;
+        }
+
+        // the matcher caches the latest positive and negative results until the blacklist is changed
+        final BlacklistMatcher matcher = getMatcher(blacklistType);
+        final Boolean cached = matcher.cached(urlHash);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        final boolean temp = isListed(matcher, url.getHost().toLowerCase(Locale.ROOT), url.getFile());
+        matcher.cache(urlHash, temp);
+        if (temp) {
+            try {
+                urlHashCache.put(urlHash);
+            } catch (final SpaceExceededException e) {
+                ConcurrentLog.logException(e);
             }
-            return temp;
         }
-        return true;
+        return temp;
     }
 
     private static final Pattern m1 = Pattern.compile("^[a-z0-9.-]*$");       // simple Domain (yacy.net or www.yacy.net)
@@ -633,16 +658,28 @@ public class Blacklist {
             throw new IllegalArgumentException("path may not be null");
         }
 
-        // getting the proper blacklists
-        final Map<String, Set<Pattern>> blacklistMapMatched = getBlacklistMap(blacklistType, true);
-        
-        final Map<String, Set<Pattern>> blacklistMapNotMatched = getBlacklistMap(blacklistType, false);
+        return isListed(getMatcher(blacklistType), hostlow, path);
+    }
 
-        return Blacklist.isListed(hostlow, path, blacklistMapMatched, blacklistMapNotMatched);
+    private static boolean isListed(final BlacklistMatcher matcher, final String hostlow, final String path) {
+        long beginTime = 0;
+        if (log.isFine()) {
+            beginTime = System.nanoTime();
+        }
+        final boolean matched = matcher.isListed(hostlow, path);
+        if (log.isFine()) {
+            /* Trace URLs spending too much CPU time : set Blacklist.level = FINE in yacy.logging file */
+            long timeInSeconds = (System.nanoTime() - beginTime) / 1000000000;
+            if (timeInSeconds > 10) {
+                log.fine("Long processing : " + timeInSeconds + " seconds. URL :  " + hostlow + path);
+            }
+        }
+        return matched;
     }
 
     /**
      * Check if the URL made of the specified host and path is blacklisted. All parameters must not be null.
+     * The blacklist maps are compiled for this single test; a Blacklist instance keeps its compiled maps.
      * @param hostlow host part
      * @param path path on the host
      * @param blacklistMapMatched blacklist patterns indexed by matched hosts
@@ -652,89 +689,7 @@ public class Blacklist {
 	protected final static boolean isListed(final String hostlow, final String path,
 			final Map<String, Set<Pattern>> blacklistMapMatched,
 			final Map<String, Set<Pattern>> blacklistMapNotMatched) {
-		long beginTime = 0;
-		if(log.isFine()) {
-			beginTime = System.nanoTime();
-		}
-		final String p = (!path.isEmpty() && path.charAt(0) == '/') ? path.substring(1) : path;
-
-        Pattern[] app;
-        boolean matched = false;
-        Pattern pp; // path-pattern
-
-        // try to match complete domain
-        if (!matched && blacklistMapMatched.get(hostlow) != null) {
-            app = blacklistMapMatched.get(hostlow).toArray(new Pattern[0]);
-            for (int i = app.length - 1; !matched && i > -1; i--) {
-                pp = app[i];
-                matched |= pp.matcher(p).matches();
-            }
-        }
-        // first try to match the domain with wildcard '*'
-        // [TL] While "." are found within the string
-        int index = 0;
-        while (!matched && (index = hostlow.indexOf('.', index + 1)) != -1) {
-            if (blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*") != null) {
-                app = blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*").toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-            if (blacklistMapMatched.get(hostlow.substring(0, index)) != null) {
-                app = blacklistMapMatched.get(hostlow.substring(0, index)).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-        }
-        index = hostlow.length();
-        while (!matched && (index = hostlow.lastIndexOf('.', index - 1)) != -1) {
-            if (blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length())) != null) {
-                app = blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length())).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-            if (blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length())) != null) {
-                app = blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length())).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-        }
-
-
-        // loop over all Regex-entries
-        if (!matched) {
-            String key;
-            for (final Entry<String, Set<Pattern>> entry : blacklistMapNotMatched.entrySet()) {
-                key = entry.getKey();
-                try {
-                    if (Pattern.matches(key, hostlow)) {
-                        app = entry.getValue().toArray(new Pattern[0]);
-                        for (final Pattern ap : app) {
-                            if (ap.matcher(p).matches()) {
-                                return true;
-                            }
-                        }
-                    }
-                } catch (final PatternSyntaxException e) {
-                    //System.out.println(e.toString());
-                }
-            }
-        }
-        if(log.isFine()) {
-        	/* Trace URLs spending too much CPU time : set Blacklist.level = FINE in yacy.logging file */
-        	long timeInSeconds = (System.nanoTime() - beginTime) / 1000000000;
-        	if(timeInSeconds > 10) {
-        		log.fine("Long processing : " + timeInSeconds + " seconds. URL :  " + hostlow + path);
-        	}
-        }
-        return matched;
+		return isListed(new BlacklistMatcher(blacklistMapMatched, blacklistMapNotMatched), hostlow, path);
 	}
 
     public static BlacklistError checkError(final String element, final Map<String, String> properties) {
@@ -0,0 +1,266 @@
+/**
+ *  BlacklistMatcher
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.yacy.cora.storage.ConcurrentARC;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * The compiled form of the host and path patterns of one blacklist type.
+ * <p>
+ * The host entries which can be matched without a regular expression are stored in two tries of host name labels:
+ * the entries <code>domain.tld</code> and <code>*.domain.tld</code> in a trie of the reversed labels, and the entries
+ * <code>domain.tld</code> and <code>www.domain.*</code> in a trie of the labels in their natural order, so all entries for a host are
+ * found with one walk through each trie. All path patterns of a host entry are combined into one regular expression.
+ * The host regular expressions are compiled once and not for each test.
+ * </p><p>
+ * A matcher is immutable; the {@link Blacklist} creates a new one when the blacklist is changed.
+ * It also holds a bounded cache of the latest results, which is dropped together with the matcher.
+ * </p>
+ */
+final class BlacklistMatcher {
+
+    private static final ConcurrentLog log = new ConcurrentLog(BlacklistMatcher.class.getSimpleName());
+
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * the path patterns of a host entry
+     */
+    static final class PathMatcher {
+        private final boolean any;        // one of the patterns is '.*'
+        private final Pattern[] patterns; // the combined patterns, one for each combination of pattern flags
+
+        private PathMatcher(final Collection<Pattern> patterns) {
+            boolean any = false;
+            final Map<Integer, List<Pattern>> byFlags = new LinkedHashMap<Integer, List<Pattern>>();
+            final List<Pattern> single = new ArrayList<Pattern>();
+            for (final Pattern p: patterns) {
+                if (".*".equals(p.pattern())) any = true;
+                if (hasBackReference(p.pattern())) {
+                    single.add(p); // the group numbers would change in a combined pattern
+                    continue;
+                }
+                List<Pattern> l = byFlags.get(p.flags());
+                if (l == null) byFlags.put(p.flags(), l = new ArrayList<Pattern>());
+                l.add(p);
+            }
+            this.any = any;
+            if (!any) {
+                for (final Map.Entry<Integer, List<Pattern>> e: byFlags.entrySet()) {
+                    if (e.getValue().size() == 1) {
+                        single.add(e.getValue().get(0));
+                        continue;
+                    }
+                    final StringBuilder sb = new StringBuilder();
+                    for (final Pattern p: e.getValue()) {
+                        if (sb.length() > 0) sb.append('|');
+                        sb.append("(?:").append(p.pattern()).append(')');
+                    }
+                    try {
+                        single.add(Pattern.compile(sb.toString(), e.getKey().intValue()));
+                    } catch (final PatternSyntaxException ex) {
+                        single.addAll(e.getValue());
+                    }
+                }
+            }
+            this.patterns = any ? new Pattern[0] : single.toArray(new Pattern[single.size()]);
+        }
+
+        boolean matches(final String path) {
+            if (this.any) return true;
+            for (final Pattern p: this.patterns) {
+                if (p.matcher(path).matches()) return true;
+            }
+            return false;
+        }
+
+        private static boolean hasBackReference(final String pattern) {
+            for (int i = 0; i < pattern.length() - 1; i++) {
+                if (pattern.charAt(i) == '\\') {
+                    final char c = pattern.charAt(i + 1);
+                    if ((c >= '1' && c <= '9') || c == 'k') return true;
+                    i++;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * a node in a trie of host name labels
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private List<Pattern> selfPatterns, belowPatterns;
+        private PathMatcher self;  // the patterns of the entry which ends here
+        private PathMatcher below; // the patterns of the entry which ends here, for hosts with more labels only
+
+        private Node child(final String label) {
+            Node n = this.children.get(label);
+            if (n == null) this.children.put(label, n = new Node());
+            return n;
+        }
+
+        private void compile() {
+            if (this.selfPatterns != null) this.self = new PathMatcher(this.selfPatterns);
+            if (this.belowPatterns != null) this.below = new PathMatcher(this.belowPatterns);
+            this.selfPatterns = null;
+            this.belowPatterns = null;
+            for (final Node n: this.children.values()) n.compile();
+        }
+    }
+
+    private final Node suffixes; // the labels from the top level domain to the left
+    private final Node prefixes; // the labels from the left to the top level domain
+    private final Pattern[] hostPatterns;
+    private final PathMatcher[] hostPaths;
+    private final ConcurrentARC<byte[], Boolean> results; // url hash to result
+
+    /**
+     * compile the blacklist maps
+     * @param blacklistMapMatched blacklist patterns indexed by matchable hosts, see {@link Blacklist#isMatchable(String)}
+     * @param blacklistMapNotMatched blacklist patterns indexed by host regular expressions
+     */
+    BlacklistMatcher(final Map<String, Set<Pattern>> blacklistMapMatched, final Map<String, Set<Pattern>> blacklistMapNotMatched) {
+        this.suffixes = new Node();
+        this.prefixes = new Node();
+        for (final Map.Entry<String, Set<Pattern>> entry: blacklistMapMatched.entrySet()) {
+            final String key = entry.getKey();
+            final Set<Pattern> patterns = entry.getValue();
+            if (key.startsWith("*.")) {
+                // '*.domain.tld' matches all sub-domains
+                add(this.suffixes, reverse(labels(key.substring(2))), patterns, false);
+            } else if (key.endsWith(".*")) {
+                // 'www.domain.*' matches all hosts which start with the labels
+                if (key.length() > 2) add(this.prefixes, labels(key.substring(0, key.length() - 2)), patterns, false);
+            } else {
+                // 'domain.tld' matches the host, all sub-domains and all hosts which start with the labels
+                add(this.suffixes, reverse(labels(key)), patterns, true);
+                if (!key.isEmpty()) add(this.prefixes, labels(key), patterns, false);
+            }
+        }
+        this.suffixes.compile();
+        this.prefixes.compile();
+
+        final List<Pattern> hosts = new ArrayList<Pattern>();
+        final List<PathMatcher> paths = new ArrayList<PathMatcher>();
+        for (final Map.Entry<String, Set<Pattern>> entry: blacklistMapNotMatched.entrySet()) {
+            try {
+                hosts.add(Pattern.compile(entry.getKey()));
+                paths.add(new PathMatcher(new ArrayList<Pattern>(entry.getValue())));
+            } catch (final PatternSyntaxException e) {
+                log.warn("ignored blacklist host with invalid regular expression: " + entry.getKey());
+            }
+        }
+        this.hostPatterns = hosts.toArray(new Pattern[hosts.size()]);
+        this.hostPaths = paths.toArray(new PathMatcher[paths.size()]);
+        this.results = new ConcurrentARC<byte[], Boolean>(CACHE_SIZE, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()), Word.commonHashOrder);
+    }
+
+    private static void add(final Node root, final String[] labels, final Set<Pattern> patterns, final boolean self) {
+        Node n = root;
+        for (final String label: labels) n = n.child(label);
+        if (self) {
+            if (n.selfPatterns == null) n.selfPatterns = new ArrayList<Pattern>();
+            n.selfPatterns.addAll(patterns);
+        } else {
+            if (n.belowPatterns == null) n.belowPatterns = new ArrayList<Pattern>();
+            n.belowPatterns.addAll(patterns);
+        }
+    }
+
+    /**
+     * Check if the URL made of the specified host and path is blacklisted.
+     * @param hostlow host part in lower case
+     * @param path path on the host
+     * @return true when host/path is blacklisted
+     */
+    boolean isListed(final String hostlow, final String path) {
+        final String p = (!path.isEmpty() && path.charAt(0) == '/') ? path.substring(1) : path;
+        final String[] labels = labels(hostlow);
+
+        // the host and its parent domains
+        Node n = this.suffixes;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            n = n.children.get(labels[i]);
+            if (n == null) break;
+            if (n.self != null && n.self.matches(p)) return true;
+            if (i > 0 && n.below != null && n.below.matches(p)) return true;
+        }
+
+        // the host name prefixes
+        n = this.prefixes;
+        for (int i = 0; i < labels.length - 1; i++) {
+            n = n.children.get(labels[i]);
+            if (n == null) break;
+            if (n.below != null && n.below.matches(p)) return true;
+        }
+
+        // the host regular expressions
+        for (int i = 0; i < this.hostPatterns.length; i++) {
+            if (this.hostPatterns[i].matcher(hostlow).matches() && this.hostPaths[i].matches(p)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the cached result for the url hash or null if the url was not tested with this matcher
+     */
+    Boolean cached(final byte[] urlHash) {
+        return this.results.get(urlHash);
+    }
+
+    void cache(final byte[] urlHash, final boolean listed) {
+        this.results.put(urlHash, Boolean.valueOf(listed));
+    }
+
+    private static String[] labels(final String host) {
+        int count = 1;
+        for (int i = 0; i < host.length(); i++) if (host.charAt(i) == '.') count++;
+        final String[] labels = new String[count];
+        int start = 0, k = 0;
+        for (int i = 0; i < host.length(); i++) {
+            if (host.charAt(i) == '.') {
+                labels[k++] = host.substring(start, i);
+                start = i + 1;
+            }
+        }
+        labels[k] = host.substring(start);
+        return labels;
+    }
+
+    private static String[] reverse(final String[] a) {
+        final String[] r = new String[a.length];
+        for (int i = 0; i < a.length; i++) r[i] = a[a.length - 1 - i];
+        return r;
+    }
+}
@@ -46,6 +46,9 @@ import net.yacy.cora.document.id.AnchorURL;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.solr.FailCategory;
 import net.yacy.cora.federate.yacy.CacheStrategy;
+import net.yacy.cora.metrics.Counter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.protocol.ClientIdentification;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
@@ -72,6 +75,9 @@ public final class LoaderDispatcher {
     private final static int accessTimeMaxsize = 1000;
     private final static ConcurrentLog log = new ConcurrentLog("LOADER");
     private static final ConcurrentHashMap<String, Long> accessTime = new ConcurrentHashMap<String, Long>(); // to protect targets from DDoS
+    private static final Histogram fetchTime = Metrics.histogram("crawler_fetch_seconds", "duration of loading a resource from the network or file system, including failed attempts");
+    private static final Counter fetchBytes = Metrics.counter("crawler_fetch_bytes_total", "number of content bytes loaded from the network or file system");
+    private static final Counter fetchErrors = Metrics.counter("crawler_fetch_errors_total", "number of failed attempts to load a resource from the network or file system");
 
     private final Switchboard sb;
     private final HashSet<String> supportedProtocols;
@@ -239,23 +245,34 @@ public final class LoaderDispatcher {
         }
 
         // load resource from the internet
-        if (protocol.equals("http") || protocol.equals("https")) {
-            response = this.httpLoader.load(request, crawlProfile, maxFileSize, blacklistType, agent);
-        } else if (protocol.equals("ftp")) {
-            response = this.ftpLoader.load(request, true);
-        } else if (protocol.equals("smb")) {
-            response = this.smbLoader.load(request, true);
-        } else if (protocol.equals("file")) {
-            response = this.fileLoader.load(request, true);
-        } else {
-            throw new IOException("Unsupported protocol '" + protocol + "' in url " + url);
+        final long start = System.nanoTime();
+        try {
+            if (protocol.equals("http") || protocol.equals("https")) {
+                response = this.httpLoader.load(request, crawlProfile, maxFileSize, blacklistType, agent);
+            } else if (protocol.equals("ftp")) {
+                response = this.ftpLoader.load(request, true);
+            } else if (protocol.equals("smb")) {
+                response = this.smbLoader.load(request, true);
+            } else if (protocol.equals("file")) {
+                response = this.fileLoader.load(request, true);
+            } else {
+                throw new IOException("Unsupported protocol '" + protocol + "' in url " + url);
+            }
+        } catch (final IOException e) {
+            fetchErrors.inc();
+            throw e;
+        } finally {
+            fetchTime.recordSince(start);
         }
         if (response == null) {
+            fetchErrors.inc();
             throw new IOException("no response (NULL) for url " + url);
         }
         if (response.getContent() == null) {
+            fetchErrors.inc();
             throw new IOException("empty response (code " + response.getStatus() + ") for url " + url.toNormalform(true));
         }
+        fetchBytes.add(response.getContent().length);
 
         // we got something. Now check if we want to store that to the cache
         // first check looks if we want to store the content to the cache
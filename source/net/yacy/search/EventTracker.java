@@ -29,13 +29,17 @@ package net.yacy.search;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import net.yacy.cora.date.GenericFormatter;
+import net.yacy.cora.metrics.Histogram;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.peers.graphics.ProfilingGraph;
+import net.yacy.search.query.SearchEventType;
 
 
 public class EventTracker {
@@ -56,12 +60,25 @@ public class EventTracker {
     private final static Map<EClass, Queue<Event>> historyMaps = new ConcurrentHashMap<EClass, Queue<Event>>();
     private final static Map<EClass, Long> eventAccess = new ConcurrentHashMap<EClass, Long>(); // value: last time when this was accessed
 
+    // the durations of the search events are also counted in the metrics, one histogram for each phase of a search
+    private final static Histogram[] searchPhases = new Histogram[SearchEventType.values().length];
+    static {
+        for (final SearchEventType type: SearchEventType.values()) {
+            searchPhases[type.ordinal()] = Metrics.histogram("search_" + type.name().toLowerCase(Locale.ROOT) + "_seconds", "duration of the search phase " + type.name());
+        }
+    }
+
     public final static void delete(final EClass eventName) {
         historyMaps.remove(eventName);
         eventAccess.remove(eventName);
     }
 
     public final static void update(final EClass eventName, final Object eventPayload, final boolean useProtection) {
+        if (eventPayload instanceof ProfilingGraph.EventSearch) {
+            final ProfilingGraph.EventSearch event = (ProfilingGraph.EventSearch) eventPayload;
+            if (event.processName != null) searchPhases[event.processName.ordinal()].record(event.duration * 1000000L);
+        }
+
         // check protection against too heavy access
         if (useProtection) {
             final Long lastAcc = eventAccess.get(eventName);
@@ -121,6 +121,7 @@ import net.yacy.cora.federate.solr.instance.EmbeddedInstance;
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.lod.vocabulary.Tagging;
+import net.yacy.cora.metrics.Metrics;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.order.Digest;
 import net.yacy.cora.order.NaturalOrder;
@@ -141,6 +142,7 @@ import net.yacy.crawler.CrawlStacker;
 import net.yacy.crawler.CrawlSwitchboard;
 import net.yacy.crawler.HarvestProcess;
 import net.yacy.crawler.data.Cache;
+import net.yacy.crawler.data.CrawlFilter;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.CrawlProfile.CrawlAttribute;
 import net.yacy.crawler.data.CrawlQueues;
@@ -771,7 +773,9 @@ public final class Switchboard extends serverSwitch {
 				getConfigLong(SwitchboardConstants.HTCACHE_SYNC_LOCK_TIMEOUT,
 						SwitchboardConstants.HTCACHE_SYNC_LOCK_TIMEOUT_DEFAULT),
 				getConfigInt(SwitchboardConstants.HTCACHE_COMPRESSION_LEVEL,
-						SwitchboardConstants.HTCACHE_COMPRESSION_LEVEL_DEFAULT));
+						SwitchboardConstants.HTCACHE_COMPRESSION_LEVEL_DEFAULT),
+				getConfigBool(SwitchboardConstants.HTCACHE_COMPRESSION_DICTIONARIES,
+						SwitchboardConstants.HTCACHE_COMPRESSION_DICTIONARIES_DEFAULT));
         final File transactiondir = new File(this.htCachePath, "snapshots");
 		Transactions.init(transactiondir, getConfigLong(SwitchboardConstants.SNAPSHOTS_WKHTMLTOPDF_TIMEOUT,
 				SwitchboardConstants.SNAPSHOTS_WKHTMLTOPDF_TIMEOUT_DEFAULT));
@@ -1280,8 +1284,27 @@ public final class Switchboard extends serverSwitch {
 
         this.trail = new LinkedBlockingQueue<String>();
 
+        initMetrics();
+
         this.log.config("Finished Switchboard Initialization");
     }
+
+    /**
+     * register the statistics which are maintained by the components themselves in the metrics registry
+     * and export the registry via JMX
+     */
+    private void initMetrics() {
+        Metrics.counter("htcache_requests_total", "number of requests to the HTCACHE", Cache::getTotalRequests);
+        Metrics.counter("htcache_hits_total", "number of requests to the HTCACHE which found the content", Cache::getHits);
+        Metrics.counter("search_eventcache_hits_total", "number of searches answered from the search event cache", () -> SearchEventCache.cacheHit);
+        Metrics.counter("search_eventcache_misses_total", "number of searches not found in the search event cache", () -> SearchEventCache.cacheMiss);
+        Metrics.counter("search_eventcache_inserts_total", "number of search events put into the search event cache", () -> SearchEventCache.cacheInsert);
+        Metrics.gauge("crawler_local_queue_size", "number of urls in the local crawl queues", () -> this.crawlQueues.coreCrawlJobSize());
+        Metrics.gauge("crawler_indexing_ppm", "indexed pages per minute", () -> currentPPM());
+        Metrics.gauge("index_rwi_buffer_size", "number of word references in the RWI write buffer", () -> this.index.RWIBufferCount());
+        Metrics.gauge("memory_used_bytes", "used heap memory of the JVM", MemoryControl::used);
+        Metrics.registerJMX();
+    }
     
 	/**
 	 * Initialize outgoing connections custom settings
@@ -2596,6 +2619,9 @@ public final class Switchboard extends serverSwitch {
         try {
             clearCaches();
 
+            // remove unused compression dictionaries of the HTCACHE
+            Cache.cleanup();
+
             // clear caches if necessary
             if ( !MemoryControl.request(128000000L, false) ) {
                 this.index.clearCaches();
@@ -3107,16 +3133,14 @@ public final class Switchboard extends serverSwitch {
             (
                 response.profile() == null ||
                 response.depth() < response.profile().depth() ||
-                response.profile().crawlerNoDepthLimitMatchPattern().matcher(response.url().toNormalform(true)).matches()
+                response.profile().crawlerNoDepthLimitMatchFilter().matches(response.url().toNormalform(true))
             )
            ) {
             
-			final Pattern crawlerOriginUrlMustMatch = response.profile().getCrawlerOriginUrlMustMatchPattern();
-			final Pattern crawlerOriginUrlMustNotMatch = response.profile().getCrawlerOriginUrlMustNotMatchPattern();
-			if (!(crawlerOriginUrlMustMatch == CrawlProfile.MATCH_ALL_PATTERN
-					|| crawlerOriginUrlMustMatch.matcher(response.url().toNormalform(true)).matches())
-					|| (crawlerOriginUrlMustNotMatch != CrawlProfile.MATCH_NEVER_PATTERN
-							&& crawlerOriginUrlMustNotMatch.matcher(response.url().toNormalform(true)).matches())) {
+			final CrawlFilter crawlerOriginUrlMustMatch = response.profile().getCrawlerOriginUrlMustMatchFilter();
+			final CrawlFilter crawlerOriginUrlMustNotMatch = response.profile().getCrawlerOriginUrlMustNotMatchFilter();
+			if (!crawlerOriginUrlMustMatch.matches(response.url().toNormalform(true))
+					|| crawlerOriginUrlMustNotMatch.matches(response.url().toNormalform(true))) {
 				if (this.log.isInfo()) {
 					this.log.info("CRAWL: Ignored links from document at " + response.url().toNormalform(true)
 							+ " : prevented by regular expression on URL origin of links, "
@@ -3250,8 +3274,7 @@ public final class Switchboard extends serverSwitch {
                 return new IndexingQueueEntry(in.queueEntry, in.documents, null);
             }
         }
-        if (!(profile.indexUrlMustMatchPattern() == CrawlProfile.MATCH_ALL_PATTERN || profile.indexUrlMustMatchPattern().matcher(urls).matches()) ||
-             (profile.indexUrlMustNotMatchPattern() != CrawlProfile.MATCH_NEVER_PATTERN && profile.indexUrlMustNotMatchPattern().matcher(urls).matches())) {
+        if (!profile.indexUrlMustMatchFilter().matches(urls) || profile.indexUrlMustNotMatchFilter().matches(urls)) {
             if (this.log.isInfo()) this.log.info("Not Condensed Resource '" + urls + "': indexing prevented by regular expression on url; indexUrlMustMatchPattern = " + profile.indexUrlMustMatchPattern().pattern() + ", indexUrlMustNotMatchPattern = " + profile.indexUrlMustNotMatchPattern().pattern());
             // create a new errorURL DB entry
             this.crawlQueues.errorURL.push(in.queueEntry.url(), in.queueEntry.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "indexing prevented by regular expression on url; indexUrlMustMatchPattern = " + profile.indexUrlMustMatchPattern().pattern() + ", indexUrlMustNotMatchPattern = " + profile.indexUrlMustNotMatchPattern().pattern(), -1);
@@ -335,6 +335,15 @@ public final class SwitchboardConstants {
     /** Default setting value controlling whether to use or not an embedded Solr instance */
     public static final boolean CORE_SERVICE_FULLTEXT_DEFAULT   = true;
     
+    /** Key of the setting controlling the number of embedded Solr cores the local index is split into */
+    public static final String CORE_SERVICE_FULLTEXT_SHARDS     = "core.service.fulltext.shards";
+    
+    /** Default number of embedded Solr cores of the local index */
+    public static final int CORE_SERVICE_FULLTEXT_SHARDS_DEFAULT = 1;
+    
+    /** Key of the setting with the comma-separated directories of the second and further embedded Solr cores */
+    public static final String CORE_SERVICE_FULLTEXT_SHARDS_PATHS = "core.service.fulltext.shards.paths";
+    
     public static final String CORE_SERVICE_RWI                 = "core.service.rwi.tmp";
     public static final String CORE_SERVICE_CITATION            = "core.service.citation.tmp";
     public static final String CORE_SERVICE_WEBGRAPH            = "core.service.webgraph.tmp";
@@ -422,6 +431,12 @@ public final class SwitchboardConstants {
     
     /** Default compression level for cached content */
     public static final int HTCACHE_COMPRESSION_LEVEL_DEFAULT = Deflater.BEST_COMPRESSION;
+
+    /** Key of the setting enabling the compression of cached content with dictionaries trained for each host */
+    public static final String HTCACHE_COMPRESSION_DICTIONARIES = "proxyCache.compressionDictionaries";
+
+    /** Default for the compression with dictionaries: cached content is compressed with gzip only */
+    public static final boolean HTCACHE_COMPRESSION_DICTIONARIES_DEFAULT = false;
     
     /** Key of the setting configuring Cache synchronization lock timeout on getContent/store operations*/
     public static final String HTCACHE_SYNC_LOCK_TIMEOUT   = "proxyCache.sync.lockTimeout";
@@ -67,6 +67,7 @@ import net.yacy.cora.sorting.WeakPriorityBlockingQueue;
 import net.yacy.cora.storage.ZIPReader;
 import net.yacy.cora.storage.ZIPWriter;
 import net.yacy.cora.util.CRIgnoreWriter;
+import net.yacy.cora.util.CommonPattern;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.document.parser.html.CharacterCoding;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
@@ -97,6 +98,7 @@ public final class Fulltext {
     private final File                    archivePath;
     private       Export                  exportthread; // will have a export thread assigned if exporter is running
     private       InstanceMirror          solrInstances;
+    private       boolean                 localShards; // true if the local index is split into several embedded cores
     
     /** Synchronization lock for solrInstances property */
     private ReentrantLock solrInstancesLock;
@@ -111,6 +113,7 @@ public final class Fulltext {
         this.archivePath = archivePath;
         this.exportthread = null; // will have a export thread assigned if exporter is running
         this.solrInstances = new InstanceMirror();
+        this.localShards = false;
         this.solrInstancesLock = new ReentrantLock();
         this.collectionConfiguration = collectionConfiguration;
         this.webgraphConfiguration = webgraphConfiguration;
@@ -133,10 +136,20 @@ public final class Fulltext {
         return this.webgraphConfiguration;
     }
 
+    /**
+     * @return true if the local index is a single embedded core which can be accessed with getDefaultEmbeddedConnector()
+     */
     public boolean connectedLocalSolr() {
         return this.solrInstances.isConnectedEmbedded();
     }
 
+    /**
+     * @return true if the local index is split into several embedded cores; they are accessed with getDefaultConnector() only
+     */
+    public boolean connectedLocalShards() {
+        return this.localShards;
+    }
+
     public void connectLocalSolr() throws IOException {
         File solrLocation = new File(this.segmentPath, SOLR_PATH);
         // migrate old solr to new
@@ -150,6 +163,13 @@ public final class Fulltext {
             }
         }
         
+        final Switchboard sb = Switchboard.getSwitchboard();
+        final int shards = sb == null ? 1 : sb.getConfigInt(SwitchboardConstants.CORE_SERVICE_FULLTEXT_SHARDS, SwitchboardConstants.CORE_SERVICE_FULLTEXT_SHARDS_DEFAULT);
+        if (shards > 1) {
+            connectLocalShards(solrLocation, shards, sb.getConfig(SwitchboardConstants.CORE_SERVICE_FULLTEXT_SHARDS_PATHS, ""));
+            return;
+        }
+        
         EmbeddedInstance localCollectionInstance = new EmbeddedInstance(new File(new File(Switchboard.getSwitchboard().appPath, "defaults"), "solr"), solrLocation, CollectionSchema.CORE_NAME, new String[]{CollectionSchema.CORE_NAME, WebgraphSchema.CORE_NAME});
         Version luceneVersion = localCollectionInstance.getDefaultCore().getSolrConfig().getLuceneVersion("luceneMatchVersion");
         String lvn = luceneVersion.major + "_" + luceneVersion.minor;
@@ -159,19 +179,61 @@ public final class Fulltext {
         this.solrInstances.connectEmbedded(localCollectionInstance);
     }
 
+    /**
+     * Split the local index into several embedded Solr cores, i.e. to spread it over several disks.
+     * The documents are assigned to the cores by the hash of their host, queries are sent to all cores
+     * in parallel and the responses are merged. The cores are connected with the shard connector
+     * which is otherwise used for remote Solr instances, so a remote Solr cannot be used at the same time.
+     * @param solrLocation the location of the first core, the location of the unsharded index
+     * @param shards the number of cores
+     * @param paths comma-separated directories for the other cores; cores without a directory are placed next to the first core
+     */
+    private void connectLocalShards(final File solrLocation, final int shards, final String paths) throws IOException {
+        final String[] dirs = paths == null || paths.trim().isEmpty() ? new String[0] : CommonPattern.COMMA.split(paths.trim());
+        final File solrConfig = new File(new File(Switchboard.getSwitchboard().appPath, "defaults"), "solr");
+        final ArrayList<EmbeddedInstance> instances = new ArrayList<EmbeddedInstance>(shards);
+        try {
+            for (int i = 0; i < shards; i++) {
+                File location = solrLocation;
+                if (i > 0) {
+                    final String dir = i - 1 < dirs.length ? dirs[i - 1].trim() : "";
+                    location = dir.isEmpty() ? new File(this.segmentPath, SOLR_PATH + "_shard" + i) : new File(new File(dir), SOLR_PATH);
+                }
+                instances.add(new EmbeddedInstance(solrConfig, location, CollectionSchema.CORE_NAME, new String[]{CollectionSchema.CORE_NAME, WebgraphSchema.CORE_NAME}));
+                ConcurrentLog.info("Fulltext", "connected solr shard " + i + " in " + location.toString());
+            }
+        } catch (final IOException e) {
+            for (EmbeddedInstance instance: instances) instance.close();
+            throw e;
+        }
+        this.solrInstances.disconnectRemote();
+        this.solrInstances.connectRemote(new ShardInstance(instances, ShardSelection.Method.MODULO_HOST_MD5, true));
+        this.localShards = true;
+    }
+
     public void disconnectLocalSolr() {
+        if (this.localShards) {
+            this.solrInstances.disconnectRemote();
+            this.localShards = false;
+            return;
+        }
         this.solrInstances.disconnectEmbedded();
     }
 
     public boolean connectedRemoteSolr() {
-        return this.solrInstances.isConnectedRemote();
+        return this.solrInstances.isConnectedRemote() && !this.localShards;
     }
 
     public void connectRemoteSolr(final ArrayList<RemoteInstance> instances, final ShardSelection.Method shardMethod, final boolean writeEnabled) {
+        if (this.localShards) {
+            ConcurrentLog.warn("Fulltext", "the local index is split into shards, a remote solr cannot be connected");
+            return;
+        }
         this.solrInstances.connectRemote(new ShardInstance(instances, shardMethod, writeEnabled));
     }
 
     public void disconnectRemoteSolr() {
+        if (this.localShards) return;
         this.solrInstances.disconnectRemote();
     }
 
@@ -262,6 +324,11 @@ public final class Fulltext {
                     this.solrInstances.getEmbeddedConnector(name).clear();
                 }
                 this.commit(false);
+            } else if (this.localShards) {
+                for (String name: this.solrInstances.getRemote().getCoreNames()) {
+                    this.solrInstances.getRemoteConnector(name).clear();
+                }
+                this.commit(false);
             }
             this.solrInstances.clearCaches();
         } finally {
@@ -310,6 +377,8 @@ public final class Fulltext {
 
     public void close() {
         try {
+            // the shards of the local index are connected as remote instance, which is not closed with the mirror
+            if (this.localShards) this.disconnectLocalSolr();
             this.solrInstances.close();
         } catch (Throwable e) {
         	ConcurrentLog.logException(e);
@@ -32,9 +32,11 @@ import net.yacy.kelondro.workflow.AbstractBusyThread;
 import net.yacy.search.Switchboard;
 import net.yacy.search.schema.CollectionConfiguration;
 
+import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
 
    
     /**
@@ -63,7 +65,7 @@ import org.apache.solr.common.SolrInputDocument;
         Semaphore sem = new Semaphore(1);
         OrderedScoreMap<String> querylist = new OrderedScoreMap<String>(null); // list of select statements to reindex with number of documents as score
         String currentquery = null;
-        int start = 0; // startindex
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START; // position of the next chunk in the current query
         int chunksize = 100; // number of documents to reindex per cycle
         
         /**        
@@ -119,14 +121,15 @@ import org.apache.solr.common.SolrInputDocument;
                 if (sem.tryAcquire()) { // allow only one working cycle
                     try {
                         currentquery = querylist.keys(true).next(); // get next query with lowest number of documents found
-                        SolrDocumentList xdocs = esc.getDocumentListByQuery(currentquery, null, start, chunksize);
+                        QueryResponse rsp = esc.getCursorPageByQuery(currentquery, null, cursorMark, chunksize);
+                        SolrDocumentList xdocs = rsp.getResults() == null ? new SolrDocumentList() : rsp.getResults();
                         
-                        if (xdocs.size() == 0) { // no documents returned = all of current query reindexed (or eventual start to large)                                                       
+                        if (xdocs.size() == 0) { // no documents returned = all of current query reindexed
 
-                            if (start > 0) { // if previous cycle reindexed, commit to prevent reindex of same documents
+                            if (!CursorMarkParams.CURSOR_MARK_START.equals(cursorMark)) { // if previous cycle reindexed, commit to prevent reindex of same documents
                                 esc.commit(true);
-                                start = 0;
-                            } else { // if start == 0 and nothing found, query can be deleted for sure
+                                cursorMark = CursorMarkParams.CURSOR_MARK_START;
+                            } else { // if at the start and nothing found, query can be deleted for sure
                                querylist.delete(currentquery); // remove current query
                             }
                             
@@ -135,8 +138,8 @@ import org.apache.solr.common.SolrInputDocument;
                             }
                         } else {
                             docstoreindex = (int) xdocs.getNumFound();
-                            ConcurrentLog.info("MIGRATION-REINDEX", "reindex docs with query=" + currentquery + " found=" + docstoreindex + " start=" + start);
-                            start = start + chunksize;
+                            ConcurrentLog.info("MIGRATION-REINDEX", "reindex docs with query=" + currentquery + " found=" + docstoreindex + " cursor=" + cursorMark);
+                            if (rsp.getNextCursorMark() != null) cursorMark = rsp.getNextCursorMark();
                             querylist.set(currentquery, docstoreindex);
                             for (SolrDocument doc : xdocs) {
                                 URIMetadataNode pdoc = new URIMetadataNode(doc); // use Metadata as it verifies correct/current Doc.ID
@@ -214,7 +217,7 @@ import org.apache.solr.common.SolrInputDocument;
                 this.chunksize = this.chunksize / 2;
             }
             esc.commit(true);
-            start = 0;            
+            cursorMark = CursorMarkParams.CURSOR_MARK_START;
         }
 
     }
@@ -29,6 +29,7 @@ package net.yacy.search.query;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
@@ -43,6 +44,7 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -141,8 +143,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     final WorkTables workTables;
     public final SecondarySearchSuperviser secondarySearchSuperviser;
     public final List<RemoteSearch> primarySearchThreadsL;
-    public final List<Thread> nodeSearchThreads;
-    public Thread[] secondarySearchThreads;
+    public final List<Future<?>> nodeSearchTasks;
+    public Future<?>[] secondarySearchTasks;
     public final SortedSet<byte[]> preselectedPeerHashes;
     private final SortedMap<byte[], Integer> IACount;
     private final SortedMap<byte[], String> IAResults;
@@ -389,7 +391,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.snippets = new ConcurrentHashMap<String, LinkedHashSet<String>>(); 
         this.secondarySearchSuperviser = (this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
         if (this.secondarySearchSuperviser != null) this.secondarySearchSuperviser.start();
-        this.secondarySearchThreads = null;
+        this.secondarySearchTasks = null;
         this.preselectedPeerHashes = preselectedPeerHashes;
         this.IAResults = new TreeMap<byte[], String>(Base64Order.enhancedCoder);
         this.IACount = new TreeMap<byte[], Integer>(Base64Order.enhancedCoder);
@@ -463,10 +465,10 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             final long timer = System.currentTimeMillis();
             if (this.query.getQueryGoal().getIncludeHashes().isEmpty()) {
                 this.primarySearchThreadsL = null;
-                this.nodeSearchThreads = null;
+                this.nodeSearchTasks = null;
             } else {
-                this.primarySearchThreadsL = new ArrayList<RemoteSearch>();
-                this.nodeSearchThreads = new ArrayList<Thread>();
+                this.primarySearchThreadsL = Collections.synchronizedList(new ArrayList<RemoteSearch>());
+                this.nodeSearchTasks = Collections.synchronizedList(new ArrayList<Future<?>>());
                 // start this concurrently because the remote search needs an enumeration
                 // of the remote peers which may block in some cases when i.e. DHT is active
                 // at the same time.
@@ -497,7 +499,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             }
         } else {
             this.primarySearchThreadsL = null;
-            this.nodeSearchThreads = null;
+            this.nodeSearchTasks = null;
             this.pollImmediately = !query.getSegment().connectedRWI() || !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false);
             if ( generateAbstracts ) {
                 // we need the results now
@@ -849,25 +851,24 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         if (this.localsolrsearch != null) {
             if (localsolrsearch.isAlive()) synchronized (this.localsolrsearch) {this.localsolrsearch.interrupt();}
         }
-        if (this.nodeSearchThreads != null) {
-            for (final Thread search : this.nodeSearchThreads) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
+        // cancel the requests to remote peers, also those which wait in the remote search pool
+        if (this.nodeSearchTasks != null) {
+            synchronized (this.nodeSearchTasks) {
+                for (final Future<?> search : this.nodeSearchTasks) {
+                    if (search != null) search.cancel(true);
                 }
             }
         }
         if (this.primarySearchThreadsL != null) {
-            for (final RemoteSearch search : this.primarySearchThreadsL) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
+            synchronized (this.primarySearchThreadsL) {
+                for (final RemoteSearch search : this.primarySearchThreadsL) {
+                    if (search != null) search.interrupt();
                 }
             }
         }
-        if (this.secondarySearchThreads != null) {
-            for (final Thread search : this.secondarySearchThreads ) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
-                }
+        if (this.secondarySearchTasks != null) {
+            for (final Future<?> search : this.secondarySearchTasks) {
+                if (search != null) search.cancel(true);
             }
         }
 
@@ -909,8 +910,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         return this.primarySearchThreadsL;
     }
 
-    public Thread[] getSecondarySearchThreads() {
-        return this.secondarySearchThreads;
+    public Future<?>[] getSecondarySearchTasks() {
+        return this.secondarySearchTasks;
     }
 
     public void addHeuristic(final byte[] urlhash, final String heuristicName, final boolean redundant) {
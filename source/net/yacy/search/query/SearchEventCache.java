@@ -33,6 +33,7 @@ import java.util.SortedSet;
 
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.data.WorkTables;
+import net.yacy.kelondro.util.MemoryBudget;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.peers.SeedDB;
 import net.yacy.repository.LoaderDispatcher;
@@ -47,15 +48,32 @@ public class SearchEventCache {
     private static final long eventLifetimeShortMem = 10000; // the time an event will stay in the cache when memory is low, 10 seconds
     private static final long memlimitHigh = 600 * 1024 * 1024; // 400 MB
     private static final long memlimitMedium = 200 * 1024 * 1024; // 100 MB
+    private static final long eventMemory = 4 * 1024 * 1024; // the estimated memory of an event with its results and snippets, 4 MB
     public volatile static String lastEventID = "";
     public static long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheDelete = 0;
 
+    static {
+        // under memory pressure the oldest events are removed first
+        MemoryBudget.register("search events", MemoryBudget.PRIORITY_SEARCH_EVENTS, new MemoryBudget.Consumer() {
+            @Override
+            public long memoryUsed() {
+                return size() * eventMemory;
+            }
+
+            @Override
+            public long shrink(final long bytes) {
+                final int before = size();
+                cleanupEvents(Math.max(0, before - (int) ((bytes + eventMemory - 1) / eventMemory)));
+                return (before - size()) * eventMemory;
+            }
+        });
+    }
+
     public static int size() {
         return lastEvents.size();
     }
 
     protected static void put(final String eventID, final SearchEvent event) {
-        if (MemoryControl.shortStatus()) cleanupEvents(false);
         lastEventID = eventID;
         synchronized (lastEvents) {
             final SearchEvent oldEvent = lastEvents.put(eventID, event);
@@ -74,7 +92,6 @@ public class SearchEventCache {
 
     public static void cleanupEvents(boolean all) {
         // remove old events in the event cache
-        if (MemoryControl.shortStatus()) all = true;
         // the less memory is there, the less time is acceptable for elements in the cache
         final long memx = MemoryControl.available();
         final long acceptTime = memx > memlimitHigh ? eventLifetimeBigMem : memx > memlimitMedium ? eventLifetimeMediumMem : eventLifetimeShortMem;
@@ -97,7 +114,6 @@ public class SearchEventCache {
     
     public static void cleanupEvents(int maxsize) {
         // remove old events in the event cache
-        if (MemoryControl.shortStatus()) {cleanupEvents(true); return;}
         Map.Entry<String, SearchEvent> eventEntry;
         synchronized (lastEvents) {
             final Iterator<Map.Entry<String, SearchEvent>> i = lastEvents.entrySet().iterator(); // iterates in order of entry
@@ -141,7 +157,6 @@ public class SearchEventCache {
             final int remote_maxcount,
             final long remote_maxtime) {
 
-        if (MemoryControl.shortStatus()) cleanupEvents(true);
         final String id = query.id(false);
         SearchEvent event = getEvent(id);
         if (Switchboard.getSwitchboard() != null && !Switchboard.getSwitchboard().crawlQueues.noticeURL.isEmpty() && event != null && System.currentTimeMillis() - event.getEventTime() > 60000) {
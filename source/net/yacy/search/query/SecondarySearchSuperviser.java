@@ -8,6 +8,7 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -168,7 +169,7 @@ public class SecondarySearchSuperviser extends Thread {
 
         // compute words for secondary search and start the secondary searches
         Set<String> words;
-        this.searchEvent.secondarySearchThreads = new Thread[(mypeerinvolved) ? secondarySearchURLs.size() - 1 : secondarySearchURLs.size()];
+        this.searchEvent.secondarySearchTasks = new Future<?>[(mypeerinvolved) ? secondarySearchURLs.size() - 1 : secondarySearchURLs.size()];
         int c = 0;
         for ( final Map.Entry<String, Set<String>> entry : secondarySearchURLs.entrySet() ) {
             String peer = entry.getKey();
@@ -185,7 +186,7 @@ public class SecondarySearchSuperviser extends Thread {
             }
             ConcurrentLog.info("SearchEvent.SecondarySearchSuperviser", "asking peer " + peer + " for urls: " + urls + " from words: " + words);
             this.checkedPeers.add(peer);
-            this.searchEvent.secondarySearchThreads[c++] =
+            this.searchEvent.secondarySearchTasks[c++] =
                 RemoteSearch.secondaryRemoteSearch(
                     this.searchEvent,
                     words,
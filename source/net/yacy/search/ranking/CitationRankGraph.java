@@ -0,0 +1,223 @@
+/**
+ *  CitationRankGraph
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.search.ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * The link graph of the documents of one host, used to compute the citation rank.
+ * <p>
+ * The graph is stored in compressed sparse row format: the nodes are numbered 0..n-1,
+ * and the ids of the nodes linking to node i are stored in sources[offsets[i]..offsets[i+1]-1].
+ * All rank values are held in primitive arrays, and every iteration step is computed
+ * concurrently on partitions of the node range.
+ * </p>
+ */
+public final class CitationRankGraph {
+
+    private final int[] offsets;   // start of the inbound links of every node in sources, length n + 1
+    private final int[] sources;   // node numbers of the linking documents
+    private final int[] outdegree; // number of host-internal links of every node
+    private double[] cr;           // the current citation rank
+
+    private CitationRankGraph(final int[] offsets, final int[] sources, final int[] outdegree) {
+        this.offsets = offsets;
+        this.sources = sources;
+        this.outdegree = outdegree;
+        this.cr = new double[outdegree.length];
+        Arrays.fill(this.cr, 1.0d / Math.max(1, outdegree.length));
+    }
+
+    /**
+     * Collects the inbound links of all nodes. The links of different nodes may be set concurrently.
+     */
+    public static final class Builder {
+        private final int[] outdegree;
+        private final int[][] inbound;
+
+        /**
+         * @param outdegree the number of host-internal links of every node. Links from nodes with an outdegree of 0 are ignored.
+         */
+        public Builder(final int[] outdegree) {
+            this.outdegree = outdegree;
+            this.inbound = new int[outdegree.length][];
+        }
+
+        /**
+         * set the nodes which link to a node
+         * @param node the linked node
+         * @param from the linking nodes
+         */
+        public void setInbound(final int node, final int[] from) {
+            this.inbound[node] = from;
+        }
+
+        public CitationRankGraph build() {
+            final int n = this.outdegree.length;
+            final int[] offsets = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] = offsets[i] + (this.inbound[i] == null ? 0 : this.inbound[i].length);
+            }
+            final int[] sources = new int[offsets[n]];
+            for (int i = 0; i < n; i++) {
+                if (this.inbound[i] == null) continue;
+                System.arraycopy(this.inbound[i], 0, sources, offsets[i], this.inbound[i].length);
+                this.inbound[i] = null; // free memory as early as possible
+            }
+            return new CitationRankGraph(offsets, sources, this.outdegree);
+        }
+    }
+
+    public int size() {
+        return this.cr.length;
+    }
+
+    public int links() {
+        return this.sources.length;
+    }
+
+    /**
+     * @param node a node number
+     * @return the current citation rank of the node
+     */
+    public double rank(final int node) {
+        return this.cr[node];
+    }
+
+    /**
+     * Repeat the citation rank computation until the values converge to stable values.
+     * @param damping the damping factor, i.e. 0.85
+     * @param convergeDigits the number of digits which must be stable
+     * @param maxSteps the maximum number of iteration steps
+     * @param concurrency the number of threads computing a step
+     * @return the number of computed steps
+     */
+    public int converge(final double damping, final int convergeDigits, final int maxSteps, final int concurrency) {
+        final int n = this.cr.length;
+        if (n == 0) return 0;
+        final int partitions = Math.max(1, Math.min(concurrency, n / 1000 + 1));
+        final ExecutorService service = partitions == 1 ? null :
+                Executors.newFixedThreadPool(partitions, new NamePrefixThreadFactory(CitationRankGraph.class.getSimpleName()));
+        try {
+            final long convergeFactor = (long) Math.pow(10.0d, convergeDigits);
+            final double df = (1.0d - damping) / n;
+            final double[] contribution = new double[n];
+            double[] next = new double[n];
+            int step = 0;
+            while (step++ < maxSteps) {
+                final double[] current = this.cr;
+                final double[] result = next;
+                // the rank which a node passes to each of its link targets
+                for (int i = 0; i < n; i++) contribution[i] = this.outdegree[i] > 0 ? current[i] / this.outdegree[i] : 0.0d;
+                final boolean convergence = run(service, partitions, (from, to) -> {
+                    boolean c = true;
+                    for (int i = from; i < to; i++) {
+                        double ncr = 0.0d;
+                        for (int j = this.offsets[i]; j < this.offsets[i + 1]; j++) ncr += contribution[this.sources[j]];
+                        ncr = df + damping * ncr;
+                        if (c && (long) (ncr * convergeFactor) != (long) (current[i] * convergeFactor)) c = false;
+                        result[i] = ncr;
+                    }
+                    return c;
+                });
+                next = current;
+                this.cr = result;
+                if (convergence) break;
+            }
+            return Math.min(step, maxSteps);
+        } finally {
+            if (service != null) service.shutdown();
+        }
+    }
+
+    private interface Partition {
+        boolean compute(int from, int to);
+    }
+
+    private boolean run(final ExecutorService service, final int partitions, final Partition partition) {
+        final int n = this.cr.length;
+        if (service == null) return partition.compute(0, n);
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            final int from = (int) ((long) n * p / partitions), to = (int) ((long) n * (p + 1) / partitions);
+            results.add(service.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return partition.compute(from, to);
+                }
+            }));
+        }
+        boolean convergence = true;
+        for (final Future<Boolean> f: results) {
+            try {
+                if (!f.get().booleanValue()) convergence = false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (final ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return convergence;
+    }
+
+    /**
+     * Compute simple integer ranking values out of the rank values: the nodes are sorted by their rank,
+     * the lower half of the nodes get the lowest value, the lower half of the remaining nodes the next value
+     * and so on. Nodes with the same rank always get the same value. The maximum value is 10.
+     * @return the normalized rank of every node
+     */
+    public int[] normalize() {
+        final int n = this.cr.length;
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(this.cr[a], this.cr[b]));
+        final int[] crn = new int[n];
+        int nextcount = (n + 1) / 2;
+        int nextcrn = 0;
+        int p = 0;
+        while (p < n) {
+            int count = nextcount;
+            while (p < n && count > 0) {
+                // all nodes with the same rank are assigned together
+                final double r = this.cr[order[p]];
+                while (p < n && this.cr[order[p]] == r) {
+                    crn[order[p++]] = nextcrn;
+                    count--;
+                }
+            }
+            nextcrn++;
+            nextcount = Math.max(1, (nextcount + count + 1) / 2);
+        }
+        // finally, increase the crn number in such a way that the maximum is always 10
+        final int inc = 11 - nextcrn; // nextcrn is +1
+        for (int i = 0; i < n; i++) crn[i] += inc;
+        return crn;
+    }
+}
@@ -32,6 +32,7 @@ import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -43,9 +44,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
@@ -77,7 +81,6 @@ import net.yacy.cora.federate.solr.logic.Disjunction;
 import net.yacy.cora.federate.solr.logic.LongLiteral;
 import net.yacy.cora.federate.solr.logic.Negation;
 import net.yacy.cora.federate.solr.logic.StringLiteral;
-import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.ResponseHeader;
@@ -98,14 +101,15 @@ import net.yacy.document.parser.html.IconEntry;
 import net.yacy.document.parser.html.ImageEntry;
 import net.yacy.kelondro.data.citation.CitationReference;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
-import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.search.index.Segment;
 import net.yacy.search.index.Segment.ReferenceReport;
 import net.yacy.search.index.Segment.ReferenceReportCache;
 import net.yacy.search.query.QueryParams;
+import net.yacy.search.ranking.CitationRankGraph;
 
 
 public class CollectionConfiguration extends SchemaConfiguration implements Serializable {
@@ -1649,7 +1653,7 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
 			final SolrConnector collectionConnector, ReversibleScoreMap<String> collection1hosts) {
 		final Map<String, CRV> rankings = new ConcurrentHashMap<String, CRV>();
         try {
-            int concurrency = Math.min(collection1hosts.size(), Runtime.getRuntime().availableProcessors());
+            int concurrency = Runtime.getRuntime().availableProcessors(); // the computation for each host uses all cores
             postprocessingActivity = "collecting cr for " + collection1hosts.size() + " hosts, concurrency = " + concurrency;
             ConcurrentLog.info("CollectionConfiguration", postprocessingActivity);
             int countcheck = 0;
@@ -1699,17 +1703,9 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 // do the citation rank computation
                 if (collection1hosts.get(host) <= 0) continue;
                 // select all documents for each host
-                CRHost crh = new CRHost(segment, rrCache, host, 0.85d, 6);
-                int convergence_attempts = 0;
-                while (convergence_attempts++ < 30) {
-                    ConcurrentLog.info("CollectionConfiguration", "convergence step " + convergence_attempts + " for host " + host + " ...");
-                    if (crh.convergenceStep()) break;
-                    if (MemoryControl.shortStatus()) {
-                        ConcurrentLog.warn("CollectionConfiguration", "terminated convergenceStep during postprocessing because of short memory");
-                        break;
-                    }
-                }
-                ConcurrentLog.info("CollectionConfiguration", "convergence for host " + host + " after " + convergence_attempts + " steps");
+                CRHost crh = new CRHost(segment, rrCache, host, 0.85d, 6, concurrency);
+                int convergence_attempts = crh.converge(30);
+                ConcurrentLog.info("CollectionConfiguration", "convergence for host " + host + " (" + crh.size() + " documents, " + crh.links() + " links) after " + convergence_attempts + " steps");
                 // we have now the cr for all documents of a specific host; we store them for later use
                 Map<String, CRV> crn = crh.normalize();
                 //crh.log(crn);
@@ -1956,25 +1952,28 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
      */
     private static final class CRHost {
         private final Segment segment;
-        private final Map<String, double[]> crt;
-        private final int cr_host_count;
-        private final RowHandleMap internal_links_counter;
-        private double damping;
-        private int converge_eq_factor;
-        private ReferenceReportCache rrCache;
-        public CRHost(final Segment segment, final ReferenceReportCache rrCache, final String host, final double damping, final int converge_digits) {
+        private final String[] ids; // sorted ids of all documents of the host; the index of an id is its node number in the graph
+        private final CitationRankGraph graph;
+        private final double damping;
+        private final int converge_digits;
+        private final int concurrency;
+        public CRHost(final Segment segment, final ReferenceReportCache rrCache, final String host, final double damping, final int converge_digits, final int concurrency) {
             this.segment = segment;
             this.damping = damping;
-            this.rrCache = rrCache;
-            this.converge_eq_factor = (int) Math.pow(10.0d, converge_digits);
+            this.converge_digits = converge_digits;
+            this.concurrency = concurrency;
             SolrConnector connector = segment.fulltext().getDefaultConnector();
-            this.crt = new ConcurrentHashMap<String, double[]>();
+
+            // select all documents for each host together with their number of internal links in one pass
+            final List<Object[]> nodes = new ArrayList<Object[]>();
+            BlockingQueue<SolrDocument> docs = connector.concurrentDocumentsByQuery("{!cache=false raw f=" + CollectionSchema.host_s.getSolrFieldName() + "}" + host, CollectionSchema.url_chars_i.getSolrFieldName() + " asc", 0, 100000000, 86400000, 200, 1, false,
+                    CollectionSchema.id.getSolrFieldName(), CollectionSchema.inboundlinkscount_i.getSolrFieldName());
             try {
-                // select all documents for each host
-                BlockingQueue<String> ids = connector.concurrentIDsByQuery("{!cache=false raw f=" + CollectionSchema.host_s.getSolrFieldName() + "}" + host, CollectionSchema.url_chars_i.getSolrFieldName() + " asc", 0, 100000000, 86400000, 200, 1);
-                String id;
-                while ((id = ids.take()) != AbstractSolrConnector.POISON_ID) {
-                    this.crt.put(id, new double[]{0.0d,0.0d}); //{old value, new value}
+                SolrDocument doc;
+                while ((doc = docs.take()) != AbstractSolrConnector.POISON_DOCUMENT) {
+                    Object x = doc.getFieldValue(CollectionSchema.inboundlinkscount_i.getSolrFieldName());
+                    int il = (x == null) ? 0 : (x instanceof Integer) ? ((Integer) x).intValue() : (x instanceof Long) ? ((Long) x).intValue() : 0;
+                    nodes.add(new Object[]{doc.getFieldValue(CollectionSchema.id.getSolrFieldName()), il});
                     if (MemoryControl.shortStatus()) {
                         ConcurrentLog.warn("CollectionConfiguration", "terminated CRHost collection during postprocessing because of short memory");
                         break;
@@ -1982,41 +1981,82 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 }
             } catch (final InterruptedException e2) {
             }
-            this.cr_host_count = this.crt.size();
-            double initval = 1.0d / cr_host_count;
-            for (Map.Entry<String, double[]> entry: this.crt.entrySet()) entry.getValue()[0] = initval;
-            this.internal_links_counter = new RowHandleMap(12, Base64Order.enhancedCoder, 8, 100, "internal_links_counter");
+            nodes.sort((a, b) -> ((String) a[0]).compareTo((String) b[0]));
+            this.ids = new String[nodes.size()];
+            final int[] outdegree = new int[nodes.size()];
+            for (int i = 0; i < this.ids.length; i++) {
+                this.ids[i] = (String) nodes.get(i)[0];
+                outdegree[i] = (Integer) nodes.get(i)[1];
+            }
+            nodes.clear();
+
+            // load the internal references of all documents once and concurrently
+            final CitationRankGraph.Builder builder = new CitationRankGraph.Builder(outdegree);
+            final int threads = Math.max(1, Math.min(concurrency, this.ids.length / 100 + 1));
+            final ExecutorService service = Executors.newFixedThreadPool(threads, new NamePrefixThreadFactory("CRHost"));
+            final List<Future<?>> loaders = new ArrayList<Future<?>>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int from = (int) ((long) this.ids.length * t / threads), to = (int) ((long) this.ids.length * (t + 1) / threads);
+                loaders.add(service.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        if (MemoryControl.shortStatus()) {
+                            ConcurrentLog.warn("CollectionConfiguration", "terminated CRHost link collection during postprocessing because of short memory");
+                            return;
+                        }
+                        try {
+                            builder.setInbound(i, internalLinks(rrCache.getReferenceReport(this.ids[i], false), outdegree));
+                        } catch (final IOException e) {
+                            ConcurrentLog.logException(e);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> f: loaders) try {
+                f.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException e) {
+                ConcurrentLog.logException(e.getCause());
+            }
+            service.shutdown();
+            this.graph = builder.build();
+        }
+        /**
+         * @return the node numbers of the documents of the host which link to the document of a reference report
+         */
+        private int[] internalLinks(final ReferenceReport rr, final int[] outdegree) {
+            HandleSet iids = rr.getInternallIDs();
+            int[] from = new int[iids.size()];
+            int c = 0;
+            for (byte[] iid: iids) {
+                int node = Arrays.binarySearch(this.ids, ASCII.String(iid));
+                if (node >= 0 && outdegree[node] > 0 && c < from.length) from[c++] = node; // if (outdegree == 0) then the reference report is wrong!
+            }
+            return c == from.length ? from : Arrays.copyOf(from, c);
+        }
+        /**
+         * compute the citation rank until the values converge to stable values
+         * @param maxSteps the maximum number of iteration steps
+         * @return the number of computed steps
+         */
+        public int converge(final int maxSteps) {
+            return this.graph.converge(this.damping, this.converge_digits, maxSteps, this.concurrency);
+        }
+        public int size() {
+            return this.ids.length;
+        }
+        public int links() {
+            return this.graph.links();
         }
         /**
          * produce a map from IDs to CRV records, normalization entries containing the values that are stored to solr.
          * @return
          */
         public Map<String, CRV> normalize() {
-            final TreeMap<Double, List<byte[]>> reorder = new TreeMap<Double, List<byte[]>>();
-            for (Map.Entry<String, double[]> entry: this.crt.entrySet()) {
-                Double d = entry.getValue()[0];
-                List<byte[]> ds = reorder.get(d);
-                if (ds == null) {ds = new ArrayList<byte[]>(); reorder.put(d, ds);}
-                ds.add(ASCII.getBytes(entry.getKey()));
-            }
-            int nextcount = (this.cr_host_count + 1) / 2;
-            int nextcrn = 0;
+            final int[] crn = this.graph.normalize();
             Map<String, CRV> r = new HashMap<String, CRV>();
-            while (reorder.size() > 0) {
-                int count = nextcount;
-                while (reorder.size() > 0 && count > 0) {
-                    Map.Entry<Double, List<byte[]>> next = reorder.pollFirstEntry();
-                    List<byte[]> ids = next.getValue();
-                    count -= ids.size();
-                    double cr = next.getKey();
-                    for (byte[] id: ids) r.put(ASCII.String(id), new CRV(this.cr_host_count, cr, nextcrn));
-                }
-                nextcrn++;
-                nextcount = Math.max(1, (nextcount + count + 1) / 2);
-            }
-            // finally, increase the crn number in such a way that the maximum is always 10
-            int inc = 11 - nextcrn; // nextcrn is +1
-            for (Map.Entry<String, CRV> entry: r.entrySet()) entry.getValue().crn += inc;
+            for (int i = 0; i < this.ids.length; i++) r.put(this.ids[i], new CRV(this.ids.length, this.graph.rank(i), crn[i]));
             return r;
         }
         /**
@@ -2038,86 +2078,6 @@ public class CollectionConfiguration extends SchemaConfiguration implements Seri
                 }
             }
         }
-        /**
-         * Calculate the number of internal links from a specific document, denoted by the document ID.
-         * This is a very important attribute for the ranking computation because it is the dividend for the previous ranking attribute.
-         * The internalLinks value will be requested several times for the same id during the convergenceStep()-steps; therefore it should use a cache.
-         * This cache is part of the CRHost data structure.
-         * @param id
-         * @return the number of links from the document, denoted by the ID to documents within the same domain
-         */
-        public int getInternalLinks(final byte[] id) {
-            int il = (int) this.internal_links_counter.get(id);
-            if (il >= 0) return il;
-            SolrConnector connector = this.segment.fulltext().getDefaultConnector();
-            if (connector == null) return 0;
-            try {
-                SolrDocument doc = connector.getDocumentById(ASCII.String(id), CollectionSchema.inboundlinkscount_i.getSolrFieldName());
-                if (doc == null) {
-                    this.internal_links_counter.put(id, 0);
-                    return 0;
-                }
-                Object x = doc.getFieldValue(CollectionSchema.inboundlinkscount_i.getSolrFieldName());
-                il = (x == null) ? 0 : (x instanceof Integer) ? ((Integer) x).intValue() : (x instanceof Long) ? ((Long) x).intValue() : 0;
-                this.internal_links_counter.put(id, il);
-                return il;
-            } catch (final IOException e) {
-                ConcurrentLog.logException(e);
-            } catch (final SpaceExceededException e) {
-                ConcurrentLog.logException(e);
-            }
-            try {this.internal_links_counter.put(id, 0);} catch (final SpaceExceededException e) {}
-            return 0;
-        }
-        /**
-         * Use the crt cache to compute the next generation of crt values.
-         * @return
-         */
-        public boolean convergenceStep() {
-            boolean convergence = true;
-            double df = (1.0d - damping) / this.cr_host_count;
-            try {
-                for (Map.Entry<String, double[]> entry: this.crt.entrySet()) {
-                    String id = entry.getKey();
-                    ReferenceReport rr = this.rrCache.getReferenceReport(id, false);
-                    // sum up the cr of the internal links
-                    HandleSet iids = rr.getInternallIDs();
-                    double ncr = 0.0d;
-                    for (byte[] iid: iids) {
-                        int ilc = getInternalLinks(iid);
-                        if (ilc > 0) { // if (ilc == 0) then the reference report is wrong!
-                            double[] d = this.crt.get(ASCII.String(iid));
-                            // d[] could be empty at some situations
-                            if (d != null && d.length > 0) {
-                                ncr += d[0] / ilc;
-                            } else {
-                                // Output a warning that d[] is empty
-                                ConcurrentLog.warn("COLLECTION", "d[] is empty, iid="  + ASCII.String(iid));
-                                break;
-                            }
-                        }
-                    }
-                    ncr = df + damping * ncr;
-                    if (convergence && !eqd(ncr, entry.getValue()[0])) convergence = false;
-                    entry.getValue()[1] = ncr;
-                }
-                // after the loop, replace the old value with the new value in crt
-                for (Map.Entry<String, double[]> entry: this.crt.entrySet()) {
-                    entry.getValue()[0] = entry.getValue()[1];
-                }
-            } catch (final IOException e) {
-            }
-            return convergence;
-        }
-        /**
-         * helper method to check if two doubles are equal using a specific number of digits
-         * @param a
-         * @param b
-         * @return
-         */
-        private boolean eqd(final double a, final double b) {
-            return ((int) (a * this.converge_eq_factor)) == ((int) (b * this.converge_eq_factor));
-        }
     }
     
     /**
@@ -46,20 +46,20 @@
 
 package net.yacy.server.http;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
-import net.yacy.cora.util.ByteBuffer;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.server.serverObjects;
@@ -119,414 +119,455 @@ import net.yacy.server.serverObjects;
  * </ul>
  * <i>#(alternative)#::#{repeat}##[test]##{/repeat}##(/alternative)#</i><br>
  * would be adressed as "alternative_repeat_"+number+"_test"
+ * <p>
+ * <b>Compilation</b><br>
+ * A template is parsed only once into an immutable tree of text, pattern, multi, alternative
+ * and include nodes. Compiled template files and include files are cached and recompiled
+ * when the file is changed; the least recently used files are dropped from the caches.
+ * Rendering only walks the tree and writes to the output stream.
  */
 public final class TemplateEngine {
 
     private final static byte hashChar = (byte)'#';
-    private final static byte[] slashChar = {(byte)'/'};
     private final static byte pcChar  = (byte)'%';
     private final static byte[] dpdpa = "::".getBytes();
 
     private final static byte lbr  = (byte)'[';
     private final static byte rbr  = (byte)']';
-    //private final static byte[] pOpen  = {hashChar, lbr};
     private final static byte[] pClose = {rbr, hashChar};
 
     private final static byte lcbr  = (byte)'{';
     private final static byte rcbr  = (byte)'}';
-    private final static byte[] mOpen  = {hashChar, lcbr};
     private final static byte[] mClose = {rcbr, hashChar};
 
     private final static byte lrbr  = (byte)'(';
     private final static byte rrbr  = (byte)')';
-    private final static byte[] aOpen  = {hashChar, lrbr};
     private final static byte[] aClose = {rrbr, hashChar};
 
-    //private final static byte[] iOpen  = {hashChar, pcChar};
     private final static byte[] iClose = {pcChar, hashChar};
 
-    private final static byte[] ul = "_".getBytes();
-
-    private final static byte[] alternative_which = " type=\"alternative\" which=\"".getBytes();
-    private final static byte[] multi_num = " type=\"multi\" num=\"".getBytes();
-    private final static byte[] open_endtag = "</".getBytes();
-    private final static byte[] close_quotetagn = "\">\n".getBytes();
-    private final static byte[] close_tagn = ">\n".getBytes();
     private final static byte[] PP = "%%".getBytes();
-    private final static byte[] hash_brackopen_slash = "#(/".getBytes();
-    private final static byte[] brackclose_hash = ")#".getBytes();
 
     private final static byte[] UNRESOLVED_PATTERN = "-UNRESOLVED_PATTERN-".getBytes();
 
+    /** files larger than this are compiled for each request and not cached */
+    private final static long MAX_CACHED_FILE_SIZE = 4 * 1024 * 1024;
+
+    /** maximum number of files in each of the template and include caches */
+    private final static int MAX_CACHED_FILES = 1000;
+
+    private final static Map<File, CachedTemplate> templateCache = newFileCache();
+    private final static Map<File, CachedTemplate> includeCache = newFileCache(); // include file names may be given by patterns
+
     /**
-     * transfer until a specified pattern is found; everything but the pattern is transfered so far
-     * the function returns true, if the pattern is found
+     * @return a map of compiled files, dropping the least recently used file when MAX_CACHED_FILES is exceeded
      */
-    private final static boolean transferUntil(final PushbackInputStream i, final OutputStream o, final byte[] pattern) throws IOException {
-        int b, bb;
-        boolean equal;
-        while ((b = i.read()) > 0) {
-            if ((b & 0xFF) == pattern[0]) {
-                // read the whole pattern
-                equal = true;
-                lo: for (int n = 1; n < pattern.length; n++) {
-                    if (((bb = i.read()) & 0xFF) != pattern[n]) {
-                        // push back all
-                        i.unread(bb);
-                        equal = false;
-                        for (int nn = n - 1; nn > 0; nn--) i.unread(pattern[nn]);
-                        break lo;
+    private static Map<File, CachedTemplate> newFileCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<File, CachedTemplate>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override protected boolean removeEldestEntry(final Map.Entry<File, CachedTemplate> eldest) {
+                return size() > MAX_CACHED_FILES;
+            }
+        });
+    }
+
+    /**
+     * A node of a compiled template
+     */
+    private static abstract class Node {
+        /**
+         * write the node with the values of the pattern
+         * @return false if the rendering of the enclosing template part shall stop
+         */
+        abstract boolean render(OutputStream out, serverObjects pattern, String prefix) throws IOException;
+    }
+
+    /**
+     * A compiled template file together with the file properties used to detect changes
+     */
+    private static final class CachedTemplate {
+        private final long lastModified, length;
+        private final Node[] nodes;
+        private CachedTemplate(final File f, final Node[] nodes) {
+            this.lastModified = f.lastModified();
+            this.length = f.length();
+            this.nodes = nodes;
+        }
+        private boolean isValid(final File f) {
+            return this.lastModified == f.lastModified() && this.length == f.length();
+        }
+    }
+
+    /**
+     * Plain text
+     */
+    private static final class Text extends Node {
+        private final byte[] text;
+        private Text(final byte[] text) {
+            this.text = text;
+        }
+        @Override
+        boolean render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            out.write(this.text);
+            return true;
+        }
+    }
+
+    /**
+     * A normal template #[key]#
+     */
+    private static final class Replacement extends Node {
+        private final String key;
+        private Replacement(final String key) {
+            this.key = key;
+        }
+        @Override
+        boolean render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            out.write(replacePattern(prefix + this.key, pattern));
+            return true;
+        }
+    }
+
+    /**
+     * A multi template #{key}#...#{/key}#
+     */
+    private static final class Multi extends Node {
+        private final String key, keyPrefix;
+        private final Node[] body;
+        private Multi(final String key, final Node[] body) {
+            this.key = key;
+            this.keyPrefix = key + "_";
+            this.body = body;
+        }
+        @Override
+        boolean render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            final String value = pattern.get(prefix + this.key);
+            int num = 0;
+            if (value != null && !value.isEmpty()) {
+                try {
+                    num = Integer.parseInt(value); // Key contains the iteration number as string
+                } catch (final NumberFormatException e) {
+                    ConcurrentLog.logException(e);
+                    num = 0;
+                }
+            }
+            for (int i = 0; i < num; i++) {
+                renderNodes(this.body, out, pattern, prefix + this.keyPrefix + i + "_");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An alternative template #(key)#...::...#(/key)#
+     */
+    private static final class Alternative extends Node {
+        private final String servletname, key, keyPrefix;
+        private final Node[][] alternatives;
+        private final byte[] body; // the uncompiled alternatives, only needed for alternatives selected by name
+        private final Map<String, Node[]> byName;
+        private Alternative(final String servletname, final String key, final Node[][] alternatives, final byte[] body) {
+            this.servletname = servletname;
+            this.key = key;
+            this.keyPrefix = key + "_";
+            this.alternatives = alternatives;
+            this.body = body;
+            this.byName = new ConcurrentHashMap<String, Node[]>();
+        }
+        @Override
+        boolean render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            final String patternKey = prefix + this.key;
+            final String patternId = pattern.get(patternKey);
+            // lazy parsing of pattern value; numeric values, "true", "false" and no value allowed
+            int whichPattern = 0;
+            if (patternId != null) {
+                if ("true".equals(patternId)) {
+                    whichPattern = 1;
+                } else if ("false".equals(patternId)) {
+                    whichPattern = 0;
+                } else try {
+                    whichPattern = Integer.parseInt(patternId); //index
+                } catch (final NumberFormatException e) {
+                    final Node[] named = named(patternId);
+                    if (named == null) {
+                        ConcurrentLog.severe("TEMPLATE", "Bad Key-Value pair in #()# construct: key=\"" + patternKey + "\", value=\"" + patternId + "\" in " + this.servletname);
+                        return false;
                     }
+                    renderNodes(named, out, pattern, prefix + this.keyPrefix);
+                    return true;
                 }
-                if (equal) return true;
             }
-            o.write(b);
+            // a missing alternative is replaced by the last one
+            final Node[] selected = whichPattern >= 0 && whichPattern < this.alternatives.length ? this.alternatives[whichPattern] : this.alternatives[this.alternatives.length - 1];
+            renderNodes(selected, out, pattern, prefix + this.keyPrefix);
+            return true;
+        }
+        /**
+         * @return the compiled alternative which is marked with %%name, or null if there is no such alternative
+         */
+        private Node[] named(final String name) {
+            Node[] named = this.byName.get(name);
+            if (named != null) return named;
+            final byte[] mark = appendBytes(PP, UTF8.getBytes(name));
+            final int start = find(this.body, 0, this.body.length, mark);
+            if (start < 0) return null;
+            int end = find(this.body, start + mark.length, this.body.length, dpdpa);
+            if (end < 0) end = this.body.length;
+            named = compile(this.servletname, this.body, start + mark.length, end);
+            this.byName.put(name, named);
+            return named;
+        }
+    }
+
+    /**
+     * An include template #%filename%# or #%[key]%#
+     */
+    private static final class Include extends Node {
+        private final byte[] filename;
+        private final String key; // the key of the file name, or null if the file name is given
+        private Include(final byte[] filename) {
+            //if(filename.startsWith( Character.toString((char)lbr) ) && filename.endsWith( Character.toString((char)rbr) )){ //simple pattern for filename
+            if (filename.length >= 2 && filename[0] == lbr && filename[filename.length - 1] == rbr) { //simple pattern for filename
+                this.filename = null;
+                this.key = UTF8.String(filename, 1, filename.length - 2);
+            } else {
+                this.filename = filename;
+                this.key = null;
+            }
+        }
+        @Override
+        boolean render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            final byte[] filename = this.key == null ? this.filename : replacePattern(prefix + this.key, pattern);
+            if (filename.length == 0 || Arrays.equals(filename, UNRESOLVED_PATTERN)) return true;
+            final String clientbrowserlang = pattern.get("clientlanguage"); // preferred language or null (used for include files)
+            final File f = HTTPDFileHandler.getLocalizedFile(UTF8.String(filename), clientbrowserlang); //YaCy (with Locales)
+            final Node[] include;
+            try {
+                include = compileInclude(f);
+            } catch (final IOException e) {
+                //file not found?
+                ConcurrentLog.severe("FILEHANDLER","Include Error with file " + UTF8.String(filename) + ": " + e.getMessage());
+                return true;
+            }
+            renderNodes(include, out, pattern, ""); //clear pattern prefix for include
+            return true;
         }
-        return false;
     }
 
-    private final static boolean transferUntil(final PushbackInputStream i, final OutputStream o, final byte p) throws IOException {
-        int b;
-        while ((b = i.read()) > 0) {
-            if ((b & 0xFF) == p) return true;
-            o.write(b);
+    private final static void renderNodes(final Node[] nodes, final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+        for (final Node node: nodes) {
+            if (!node.render(out, pattern, prefix)) return;
         }
-        return false;
     }
 
+    /**
+     * Reads a input stream, and writes the data with replaced templates on a output stream
+     */
     public final static void writeTemplate(final String servletname, final InputStream in, final OutputStream out, final serverObjects pattern) throws IOException {
         if (pattern == null) {
             FileUtils.copy(in, out);
         } else {
-            writeTemplate(servletname, in, out, pattern, new byte[0]);
+            final byte[] b = FileUtils.read(in);
+            renderNodes(compile(servletname, b, 0, b.length), out, pattern, "");
         }
     }
 
     /**
-     * Reads a input stream, and writes the data with replaced templates on a output stream
+     * Writes a template file with replaced templates on a output stream. The compiled template is
+     * cached and compiled again when the file is changed.
      */
-    private final static byte[] writeTemplate(final String servletname, final InputStream in, final OutputStream out, final serverObjects pattern, final byte[] prefix) throws IOException {
-        final PushbackInputStream pis = new PushbackInputStream(in, 100);
-        final ByteArrayOutputStream keyStream = new ByteArrayOutputStream(4048);
-        byte[] key;
-        byte[] multi_key;
-        byte[] replacement;
-        int bb;
-        final ByteBuffer structure = new ByteBuffer();
-        final String clientbrowserlang = pattern.get("clientlanguage"); // preferred language or null (used for include files)
-        while (transferUntil(pis, out, hashChar)) {
-            bb = pis.read();
-            keyStream.reset();
+    public final static void writeTemplate(final File file, final OutputStream out, final serverObjects pattern) throws IOException {
+        if (pattern == null) {
+            FileUtils.copy(file, out);
+            return;
+        }
+        CachedTemplate template = templateCache.get(file);
+        if (template == null || !template.isValid(file)) {
+            if (template != null) templateCache.remove(file); // changed or deleted
+            final byte[] b = FileUtils.read(file);
+            template = new CachedTemplate(file, compile(file.getName(), b, 0, b.length));
+            if (b.length <= MAX_CACHED_FILE_SIZE) templateCache.put(file, template);
+        }
+        renderNodes(template.nodes, out, pattern, "");
+    }
 
-            // #{
-            if ((bb & 0xFF) == lcbr) { //multi
-                if (transferUntil(pis, keyStream, mClose)) { //close tag
-                    //multi_key =  "_" + keyStream.toString(); //for _Key
-                    bb = pis.read();
-                    if ((bb & 0xFF) != 10){ //kill newline
-                        pis.unread(bb);
-                    }
-                    multi_key = keyStream.toByteArray(); //IMPORTANT: no prefix here
-                    keyStream.reset(); //reset stream
-
-                    //this needs multi_key without prefix
-                    if (transferUntil(pis, keyStream, appendBytes(mOpen, slashChar, multi_key, mClose))){
-                        bb = pis.read();
-                        if((bb & 0xFF) != 10){ //kill newline
-                            pis.unread(bb);
-                        }
+    /**
+     * @return the compiled include file; the lines of include files are always terminated with CRLF
+     */
+    private final static Node[] compileInclude(final File f) throws IOException {
+        CachedTemplate template = includeCache.get(f);
+        if (template != null) {
+            if (template.isValid(f)) return template.nodes;
+            includeCache.remove(f); // changed or deleted
+        }
+        final String content = new String(FileUtils.read(f), StandardCharsets.UTF_8);
+        final StringBuilder include = new StringBuilder(content.length() + 100);
+        int p = 0;
+        while (p < content.length()) {
+            int e = p;
+            while (e < content.length() && content.charAt(e) != '\n' && content.charAt(e) != '\r') e++;
+            include.append(content, p, e).append(net.yacy.server.serverCore.CRLF_STRING);
+            if (e < content.length()) {
+                e += content.charAt(e) == '\r' && e + 1 < content.length() && content.charAt(e + 1) == '\n' ? 2 : 1;
+            }
+            p = e;
+        }
+        final byte[] b = UTF8.getBytes(include.toString());
+        template = new CachedTemplate(f, compile(f.getName(), b, 0, b.length));
+        if (b.length <= MAX_CACHED_FILE_SIZE) includeCache.put(f, template);
+        return template.nodes;
+    }
 
-                        final byte[] text=keyStream.toByteArray(); //text between #{key}# an #{/key}#
-                        int num=0;
-                        final String patternKey = getPatternKey(prefix, multi_key);
-                        if(pattern.containsKey(patternKey) && !pattern.get(patternKey).isEmpty()){
-                            try{
-                                num=Integer.parseInt(pattern.get(patternKey)); // Key contains the iteration number as string
-                            }catch(final NumberFormatException e){
-                                ConcurrentLog.logException(e);
-                                num=0;
-                            }
-                        }
+    /**
+     * Compile a part of a template.
+     * @param servletname the template name used in log messages
+     * @param b the template
+     * @param from start of the part
+     * @param to end of the part
+     * @return the template nodes
+     */
+    private final static Node[] compile(final String servletname, final byte[] b, final int from, final int to) {
+        final List<Node> nodes = new ArrayList<Node>();
+        int p = from, text = from;
+        scan: while (p < to) {
+            if (b[p] == 0) break; // the template ends here
+            if (b[p] != hashChar) {
+                p++;
+                continue;
+            }
+            final int hash = p;
+            if (++p >= to) break;
+            final byte bb = b[p++];
+            // # - no special character. This is simply a '#' without meaning
+            if (bb != lcbr && bb != lrbr && bb != lbr && bb != pcChar) continue;
+            if (hash > text) nodes.add(new Text(Arrays.copyOfRange(b, text, hash)));
 
-                        structure.append('<')
-                                 .append(multi_key)
-                                 .append(multi_num)
-                                 .append(ASCII.getBytes(Integer.toString(num)))
-                                 .append(close_quotetagn);
-                        for(int i=0;i < num;i++) {
-                            final PushbackInputStream pis2 = new PushbackInputStream(new ByteArrayInputStream(text));
-                            //System.out.println("recursing with text(prefix="+ multi_key + "_" + i + "_" +"):"); //DEBUG
-                            //System.out.println(text);
-                            structure.append(writeTemplate(servletname, pis2, out, pattern, newPrefix(prefix,multi_key,i)));
-                        }//for
-                        structure.append(open_endtag).append(multi_key).append(close_tagn);
-                    } else {//transferUntil
-                        ConcurrentLog.severe("TEMPLATE", "No Close Key found for #{"+UTF8.String(multi_key)+"}#" + " in " + servletname); //prefix here?
-                    }
+            // #{
+            if (bb == lcbr) { //multi
+                final int keyEnd = find(b, p, to, mClose);
+                if (keyEnd < 0) {text = to; break scan;}
+                final byte[] multi_key = Arrays.copyOfRange(b, p, keyEnd);
+                p = keyEnd + mClose.length;
+                if (p < to && b[p] == '\n') p++; //kill newline
+                final byte[] close = appendBytes(new byte[]{hashChar, lcbr, '/'}, multi_key, mClose);
+                final int textEnd = find(b, p, to, close);
+                if (textEnd < 0) {
+                    ConcurrentLog.severe("TEMPLATE", "No Close Key found for #{"+UTF8.String(multi_key)+"}#" + " in " + servletname); //prefix here?
+                    text = to;
+                    break scan;
                 }
+                final Node[] body = compile(servletname, b, p, textEnd); //text between #{key}# an #{/key}#
+                p = textEnd + close.length;
+                if (p < to && b[p] == '\n') p++; //kill newline
+                nodes.add(new Multi(UTF8.String(multi_key), body));
 
             // #(
-            } else if ((bb & 0xFF) == lrbr) { //alternative
-                int others=0;
-                final ByteBuffer text = new ByteBuffer();
-
-                transferUntil(pis, keyStream, aClose);
-                key = keyStream.toByteArray(); //Caution: Key does not contain prefix
-
-                keyStream.reset(); //clear
-
-                boolean byName=false;
-                int whichPattern=0;
-                byte[] patternName = new byte[0];
-                final String patternKey = getPatternKey(prefix, key);
-                final String patternId = pattern.get(patternKey);
-                // lazy parsing of pattern value; numeric values, "true", "false" and no value allowed
-                if (patternId == null) {
-                    whichPattern = 0;
-                } else {
-                    if ("true".equals(patternId)) {
-                        whichPattern = 1;
-                    } else if ("false".equals(patternId)) {
-                        whichPattern = 0;
-                    } else try {
-                        whichPattern = Integer.parseInt(patternId); //index
-                    } catch(final NumberFormatException e){
-                        whichPattern = 0;
-                        byName = true;
-                        patternName = UTF8.getBytes(patternId);
+            } else if (bb == lrbr) { //alternative
+                final int keyEnd = find(b, p, to, aClose);
+                if (keyEnd < 0) {text = to; break scan;}
+                final byte[] key = Arrays.copyOfRange(b, p, keyEnd);
+                final byte[] close = appendBytes(new byte[]{'/'}, key);
+                p = keyEnd + aClose.length;
+                final int start = p;
+                final List<Node[]> alternatives = new ArrayList<Node[]>();
+                int others = 0, alternative = p, end = to;
+                while (p < to) {
+                    final byte c = b[p++];
+                    if (c == hashChar && p < to && b[p] == lrbr) {
+                        final int nestedEnd = find(b, ++p, to, aClose);
+                        if (nestedEnd < 0) {p = to; break;}
+                        final int nestedStart = p;
+                        p = nestedEnd + aClose.length;
+                        if (nestedEnd - nestedStart == close.length && equalsAt(b, nestedStart, close)) {
+                            //reached the end. output last string.
+                            end = nestedStart - 2;
+                            break;
+                        } else if (others > 0 && b[nestedStart] == '/') { //close nested
+                            others--;
+                        } else { //nested
+                            others++;
+                        }
+                    } else if (c == ':' && others == 0 && p < to) { //ignore :: in nested Expressions
+                        if (b[p++] == ':') {
+                            alternatives.add(compile(servletname, b, alternative, p - 2));
+                            alternative = p;
+                        }
                     }
                 }
+                if (alternative > end) alternative = end;
+                alternatives.add(compile(servletname, b, alternative, end));
+                nodes.add(new Alternative(servletname, UTF8.String(key), alternatives.toArray(new Node[alternatives.size()][]), Arrays.copyOfRange(b, start, end)));
 
-                int currentPattern=0;
-                boolean found=false;
-                keyStream.reset(); //reset stream
-                PushbackInputStream pis2;
-                if (byName) {
-                    transferUntil(pis, keyStream, appendBytes(PP, patternName, null, null));
-                    if(pis.available()==0){
-                        ConcurrentLog.severe("TEMPLATE", "Bad Key-Value pair in #()# construct: key=\"" + patternKey + "\", value=\"" + UTF8.String(patternName) + "\" in " + servletname);
-                        final byte[] sb = structure.getBytes();
-                        structure.close();
-                        text.close();
-                        return sb;
-                    }
-                    keyStream.reset();
-                    transferUntil(pis, keyStream, dpdpa);
-                    pis2 = new PushbackInputStream(new ByteArrayInputStream(keyStream.toByteArray()));
-                    structure.append(writeTemplate(servletname, pis2, out, pattern, newPrefix(prefix,key)));
-                    transferUntil(pis, keyStream, appendBytes(hash_brackopen_slash, key, brackclose_hash, null));
-                    if(pis.available()==0){
-                        ConcurrentLog.severe("TEMPLATE", "No Close Key found for #("+UTF8.String(key)+")# (by Name) in " + servletname);
-                    }
-                } else {
-                    while(!found){
-                        bb=pis.read(); // performance problem? trace always points to this line
-                        if ((bb & 0xFF) == hashChar){
-                            bb=pis.read();
-                            if ((bb & 0xFF) == lrbr){
-                                transferUntil(pis, keyStream, aClose);
-
-                                //reached the end. output last string.
-                                if (java.util.Arrays.equals(keyStream.toByteArray(),appendBytes(slashChar, key, null,null))) {
-                                    pis2 = new PushbackInputStream(new ByteArrayInputStream(text.getBytes()));
-                                    //this maybe the wrong, but its the last
-                                    structure.append('<').append(key).append(alternative_which).append(ASCII.getBytes(Integer.toString(whichPattern))).append(ASCII.getBytes("\" found=\"0\">\n"));
-                                    structure.append(writeTemplate(servletname, pis2, out, pattern, newPrefix(prefix,key)));
-                                    structure.append(open_endtag).append(key).append(close_tagn);
-                                    found=true;
-                                }else if(others >0 && keyStream.toString().startsWith("/")){ //close nested
-                                    others--;
-                                    text.append(aOpen).append(keyStream.toByteArray()).append(brackclose_hash);
-                                } else { //nested
-                                    others++;
-                                    text.append(aOpen).append(keyStream.toByteArray()).append(brackclose_hash);
-                                }
-                                keyStream.reset(); //reset stream
-                                continue;
-                            } //is not #(
-                            pis.unread(bb);//is processed in next loop
-                            bb = (hashChar);//will be added to text this loop
-                            //text += "#";
-                        }else if ((bb & 0xFF) == ':' && others==0){//ignore :: in nested Expressions
-                            bb=pis.read();
-                            if ((bb & 0xFF) == ':'){
-                                if(currentPattern == whichPattern){ //found the pattern
-                                    pis2 = new PushbackInputStream(new ByteArrayInputStream(text.getBytes()));
-                                    structure.append('<').append(key).append(alternative_which).append(ASCII.getBytes(Integer.toString(whichPattern))).append(ASCII.getBytes("\" found=\"0\">\n"));
-                                    structure.append(writeTemplate(servletname, pis2, out, pattern, newPrefix(prefix,key)));
-                                    structure.append(open_endtag).append(key).append(close_tagn);
-
-                                    transferUntil(pis, keyStream, appendBytes(hash_brackopen_slash, key, brackclose_hash,null));//to #(/key)#.
-
-                                    found=true;
-                                }
-                                currentPattern++;
-                                text.clear();
-                                continue;
-                            }
-                            text.append(':');
-                        }
-                        if(!found){
-                            text.append((byte)bb);/*
-                            if(pis.available()==0){
-                                serverLog.logSevere("TEMPLATE", "No Close Key found for #("+UTF8.String(key)+")# (by Index)");
-                                found=true;
-                            }*/
-                        }
-                    }//while
-                }//if(byName) (else branch)
-                text.close();
             // #[
-            } else if ((bb & 0xFF) == lbr) { //normal
-                if (transferUntil(pis, keyStream, pClose)) {
-                    // pattern detected, write replacement
-                    key = keyStream.toByteArray();
-                    final String patternKey = getPatternKey(prefix, key);
-                    replacement = replacePattern(patternKey, pattern); //replace
-                    structure.append('<').append(key)
-                            .append(ASCII.getBytes(" type=\"normal\">\n"));
-                    structure.append(replacement);
-                    structure.append(ASCII.getBytes("</")).append(key)
-                            .append(close_tagn);
-
-                    FileUtils.copy(replacement, out);
-                } else {
-                    // inconsistency, simply finalize this
-                    FileUtils.copy(pis, out);
-                    pis.close();
-                    final byte[] sb = structure.getBytes();
-                    structure.close();
-                    keyStream.close();
-                    return sb;
-                }
+            } else if (bb == lbr) { //normal
+                final int keyEnd = find(b, p, to, pClose);
+                // inconsistency, simply finalize this
+                if (keyEnd < 0) {text = to; break scan;}
+                nodes.add(new Replacement(UTF8.String(b, p, keyEnd - p)));
+                p = keyEnd + pClose.length;
 
             // #%
-            } else if ((bb & 0xFF) == pcChar) { //include
-                keyStream.reset(); //reset stream
-                if(transferUntil(pis, keyStream, iClose)){
-                    byte[] filename = keyStream.toByteArray();
-                    //if(filename.startsWith( Character.toString((char)lbr) ) && filename.endsWith( Character.toString((char)rbr) )){ //simple pattern for filename
-                    if((filename[0] == lbr) && (filename[filename.length-1] == rbr)){ //simple pattern for filename
-                        final byte[] newFilename = new byte[filename.length-2];
-                        System.arraycopy(filename, 1, newFilename, 0, newFilename.length);
-                        final String patternkey = getPatternKey(prefix, newFilename);
-                        filename= replacePattern(patternkey, pattern);
-                    }
-                    if (filename.length > 0 && !java.util.Arrays.equals(filename, UNRESOLVED_PATTERN)) {
-                        final ByteBuffer include = new ByteBuffer();
-                        BufferedReader br = null;
-                        try{
-                            //br = new BufferedReader(new InputStreamReader(new FileInputStream( filename ))); //Simple Include
-                            br = new BufferedReader( new InputStreamReader(new FileInputStream( HTTPDFileHandler.getLocalizedFile(UTF8.String(filename), clientbrowserlang)), StandardCharsets.UTF_8) ); //YaCy (with Locales)
-                            //Read the Include
-                            String line = "";
-                            while ((line = br.readLine()) != null) {
-                                include.append(UTF8.getBytes(line)).append(ASCII.getBytes(net.yacy.server.serverCore.CRLF_STRING));
-                            }
-                        } catch (final IOException e) {
-                            //file not found?
-                            ConcurrentLog.severe("FILEHANDLER","Include Error with file " + UTF8.String(filename) + ": " + e.getMessage());
-                        } finally {
-                            if (br != null) try { br.close(); br=null; } catch (final Exception e) {
-                            	ConcurrentLog.warn("FILEHANDLER","Could not close buffered reader on file " + UTF8.String(filename));
-                            }
-                        }
-                        final PushbackInputStream pis2 = new PushbackInputStream(new ByteArrayInputStream(include.getBytes()));
-                        structure.append(ASCII.getBytes("<fileinclude file=\"")).append(filename).append(close_tagn);
-                        structure.append(writeTemplate(servletname, pis2, out, pattern, new byte[0])); //clear pattern prefix for include
-                        structure.append(ASCII.getBytes("</fileinclude>\n"));
-                        include.close();
-                    }
-                }
-            // # - no special character. This is simply a '#' without meaning
-            } else { //no match, but a single hash (output # + bb)
-                out.write(hashChar);
-                out.write(bb);
+            } else { //include
+                final int keyEnd = find(b, p, to, iClose);
+                if (keyEnd < 0) {text = to; break scan;}
+                if (keyEnd > p) nodes.add(new Include(Arrays.copyOfRange(b, p, keyEnd)));
+                p = keyEnd + iClose.length;
             }
+            text = p;
         }
-        final byte[] sb = structure.getBytes();
-        structure.close();
-        return sb;
+        if (p > to) p = to;
+        if (p > text) nodes.add(new Text(Arrays.copyOfRange(b, text, p)));
+        return nodes.toArray(new Node[nodes.size()]);
     }
 
-    private final static byte[] replacePattern(final String key, final serverObjects pattern) {
-        byte[] replacement;
-        Object value;
-        if (pattern.containsKey(key)) {
-            value = pattern.get(key);
-            if (value instanceof byte[]) {
-                replacement = (byte[]) value;
-            } else if (value instanceof String) {
-                //replacement = ((String) value).getBytes();
-                replacement = UTF8.getBytes(((String) value));
-            } else {
-                //replacement = value.toString().getBytes();
-                replacement = UTF8.getBytes(value.toString());
+    /**
+     * find a pattern in a part of a template
+     * @return the position of the pattern or -1 if the pattern is not found before the end or a 0-byte
+     */
+    private final static int find(final byte[] b, final int from, final int to, final byte[] pattern) {
+        final int last = to - pattern.length;
+        search: for (int p = from; p < to; p++) {
+            if (b[p] == 0) return -1;
+            if (p > last || b[p] != pattern[0]) continue;
+            for (int n = 1; n < pattern.length; n++) {
+                if (b[p + n] != pattern[n]) continue search;
             }
-        } else {
-            replacement = UNRESOLVED_PATTERN;
-        }
-        return replacement;
-    }
-
-    private final static byte[] newPrefix(final byte[] oldPrefix, final byte[] key) {
-        final ByteBuffer newPrefix = new ByteBuffer(oldPrefix.length + key.length + 1);
-        newPrefix.append(oldPrefix).append(key).append(ul);
-        final byte[] result = newPrefix.getBytes();
-        try {
-            newPrefix.close();
-        } catch (final IOException e) {
-            ConcurrentLog.logException(e);
+            return p;
         }
-        return result;
+        return -1;
     }
 
-    private final static byte[] newPrefix(final byte[] oldPrefix, final byte[] multi_key, final int i) {
-        final ByteBuffer newPrefix = new ByteBuffer(oldPrefix.length + multi_key.length + 8);
-        newPrefix.append(oldPrefix).append(multi_key).append(ul).append(ASCII.getBytes(Integer.toString(i))).append(ul);
-        try {
-            newPrefix.close();
-        } catch (final IOException e) {
-            ConcurrentLog.logException(e);
+    private final static boolean equalsAt(final byte[] b, final int offset, final byte[] pattern) {
+        for (int n = 0; n < pattern.length; n++) {
+            if (b[offset + n] != pattern[n]) return false;
         }
-        return newPrefix.getBytes();
+        return true;
     }
 
-    private final static String getPatternKey(final byte[] prefix, final byte[] key) {
-        final ByteBuffer patternKey = new ByteBuffer(prefix.length + key.length);
-        patternKey.append(prefix).append(key);
-        try {
-            return UTF8.String(patternKey.getBytes());
-        } finally {
-            try {
-                patternKey.close();
-            } catch (final IOException e) {
-                ConcurrentLog.logException(e);
-            }
-        }
+    private final static byte[] replacePattern(final String key, final serverObjects pattern) {
+        final String value = pattern.get(key);
+        if (value == null) return UNRESOLVED_PATTERN;
+        return UTF8.getBytes(value);
     }
 
-    private final static byte[] appendBytes(final byte[] b1, final byte[] b2, final byte[] b3, final byte[] b4) {
-        final ByteBuffer byteArray = new ByteBuffer(b1.length + b2.length + (b3 == null ? 0 : b3.length) + (b4 == null ? 0 : b4.length));
-        byteArray.append(b1).append(b2);
-        if (b3 != null) byteArray.append(b3);
-        if (b4 != null) byteArray.append(b4);
-        final byte[] result = byteArray.getBytes();
-        try {
-            byteArray.close();
-        } catch (final IOException e) {
-            ConcurrentLog.logException(e);
+    private final static byte[] appendBytes(final byte[]... b) {
+        int length = 0;
+        for (final byte[] a: b) length += a.length;
+        final byte[] result = new byte[length];
+        int p = 0;
+        for (final byte[] a: b) {
+            System.arraycopy(a, 0, result, p, a.length);
+            p += a.length;
         }
         return result;
     }
 
     public static void main(final String[] args) {
-        // arg1 = test input; arg2 = replacement for pattern 'test'; arg3 = default replacement
+        // arg1 = test input; arg2 = replacement for pattern 'test'
         try {
-            final InputStream i = new ByteArrayInputStream(UTF8.getBytes(args[0]));
             final serverObjects h = new serverObjects();
             h.put("test", args[1]);
-            writeTemplate("test", new PushbackInputStream(i, 100), System.out, h, UTF8.getBytes(args[2]));
+            writeTemplate("test", new java.io.ByteArrayInputStream(UTF8.getBytes(args[0])), System.out, h);
             System.out.flush();
         } catch (final Exception e) {
             ConcurrentLog.logException(e);
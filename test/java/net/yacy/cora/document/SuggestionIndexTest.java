@@ -0,0 +1,130 @@
+/**
+ *  SuggestionIndexTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SuggestionIndex}
+ */
+public class SuggestionIndexTest {
+
+    @Test
+    public void testWithinOneEdit() {
+        assertTrue(SuggestionIndex.withinOneEdit("cat", "cat"));
+        assertTrue(SuggestionIndex.withinOneEdit("bat", "cat"));  // changing one letter
+        assertTrue(SuggestionIndex.withinOneEdit("bat", "boat")); // adding one letter
+        assertTrue(SuggestionIndex.withinOneEdit("frog", "fog")); // deleting one letter
+        assertTrue(SuggestionIndex.withinOneEdit("two", "tow"));  // reversing two consecutive letters
+        assertFalse(SuggestionIndex.withinOneEdit("abx", "xab"));
+        assertFalse(SuggestionIndex.withinOneEdit("bat", "cut"));
+        assertFalse(SuggestionIndex.withinOneEdit("bat", "batch"));
+    }
+
+    /**
+     * terms are lower-cased independently of the default locale, and batches count like single additions
+     */
+    @Test
+    public void testAddAll() {
+        final Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR")); // lower case of 'I' is the dotless i
+        try {
+            final SuggestionIndex index = new SuggestionIndex();
+            final Map<String, Integer> batch = new HashMap<String, Integer>();
+            batch.put("TITLE", 2);
+            batch.put("index", 1);
+            index.addAll(batch);
+            index.add("INDEX", 1);
+            assertEquals(2, index.size());
+            assertEquals(2, index.count("title"));
+            assertEquals(2, index.count("index"));
+            assertTrue(index.suggest("titel").containsKey("title"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testSuggest() {
+        final SuggestionIndex index = new SuggestionIndex();
+        index.add("Search", 5);
+        index.add("starch", 2);
+        index.add("research", 1);
+        index.add("search", 3);
+        assertEquals(3, index.size());
+        assertEquals(8, index.count("SEARCH"));
+        final Map<String, Integer> s = index.suggest("saerch");
+        assertEquals(1, s.size());
+        assertEquals(Integer.valueOf(8), s.get("search"));
+        assertEquals(2, index.suggest("searc").size() + index.suggest("serch").size());
+        assertTrue(index.suggest("starch").containsKey("starch"));
+        assertTrue(index.suggest("xyz").isEmpty());
+    }
+
+    /**
+     * the index finds the same terms as a test of all terms, with entries in the sorted part and in the unsorted tail
+     */
+    @Test
+    public void testCompareWithScan() {
+        final Random random = new Random(3);
+        final SuggestionIndex index = new SuggestionIndex();
+        final List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            final String t = word(random);
+            terms.add(t);
+            index.add(t, 1);
+            if (i % 997 == 0) check(index, terms, random);
+        }
+        index.shrinkToMaxSize(5000);
+        assertEquals(5000, index.size());
+        for (int i = 0; i < 200; i++) {
+            final String w = word(random);
+            for (final String t: index.suggest(w).keySet()) assertTrue(SuggestionIndex.withinOneEdit(w, t));
+        }
+    }
+
+    private static String word(final Random random) {
+        final char[] c = new char[3 + random.nextInt(5)];
+        for (int i = 0; i < c.length; i++) c[i] = (char) ('a' + random.nextInt(6));
+        return new String(c);
+    }
+
+    private static void check(final SuggestionIndex index, final List<String> terms, final Random random) {
+        for (int i = 0; i < 20; i++) {
+            final String w = word(random);
+            final Set<String> expected = new HashSet<String>();
+            for (final String t: terms) if (SuggestionIndex.withinOneEdit(w, t)) expected.add(t);
+            assertEquals(expected, index.suggest(w).keySet());
+        }
+    }
+}
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
 import net.yacy.cora.federate.solr.instance.EmbeddedInstance;
 import net.yacy.search.schema.CollectionSchema;
 import net.yacy.search.schema.WebgraphSchema;
@@ -173,6 +175,51 @@ public class EmbeddedSolrConnectorTest {
         assertEquals(id, foundid);
     }
 
+    /**
+     * Test of the deep scans with a Solr cursor
+     */
+    @Test
+    public void testCursorScan() throws IOException, InterruptedException {
+        final String host = "cursor" + System.currentTimeMillis() + ".yacy.net";
+        for (int i = 0; i < 250; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField(CollectionSchema.id.name(), host + i);
+            doc.addField(CollectionSchema.host_s.name(), host);
+            doc.addField(CollectionSchema.url_chars_i.name(), i % 7);
+            solr.add(doc);
+        }
+        solr.commit(true);
+        final String query = CollectionSchema.host_s.name() + ":\"" + host + "\"";
+
+        assertEquals("id asc", AbstractSolrConnector.cursorSort(null));
+        assertEquals("url_chars_i asc,id asc", AbstractSolrConnector.cursorSort("url_chars_i asc"));
+        assertEquals("id desc", AbstractSolrConnector.cursorSort("id desc"));
+
+        // the iterator visits each document once, also with a sort which is not unique
+        HashSet<String> ids = new HashSet<String>();
+        Iterator<SolrDocument> i = solr.documentsByQuery(query, CollectionSchema.url_chars_i.name() + " asc", Integer.MAX_VALUE, Long.MAX_VALUE, 30);
+        while (i.hasNext()) assertTrue(ids.add((String) i.next().getFieldValue(CollectionSchema.id.name())));
+        assertEquals(250, ids.size());
+        i = solr.documentsByQuery(query, null, 100, Long.MAX_VALUE, 30);
+        int count = 0;
+        while (i.hasNext()) {i.next(); count++;}
+        assertEquals(100, count);
+
+        // the id stream skips the offset
+        ids.clear();
+        BlockingQueue<String> idQueue = solr.concurrentIDsByQuery(query, null, 10, Integer.MAX_VALUE, Long.MAX_VALUE, 0, 1);
+        String id;
+        while ((id = idQueue.take()) != AbstractSolrConnector.POISON_ID) assertTrue(ids.add(id));
+        assertEquals(240, ids.size());
+
+        // the document stream
+        ids.clear();
+        BlockingQueue<SolrDocument> docQueue = solr.concurrentDocumentsByQuery(query, CollectionSchema.url_chars_i.name() + " desc", 0, Integer.MAX_VALUE, Long.MAX_VALUE, 40, 1, false);
+        SolrDocument doc;
+        while ((doc = docQueue.take()) != AbstractSolrConnector.POISON_DOCUMENT) assertTrue(ids.add((String) doc.getFieldValue(CollectionSchema.id.name())));
+        assertEquals(250, ids.size());
+    }
+
     /**
      * Test of close and reopen embedded Solr
      * test for issue http://mantis.tokeek.de/view.php?id=686
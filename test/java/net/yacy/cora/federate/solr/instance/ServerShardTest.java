@@ -0,0 +1,200 @@
+/**
+ *  ServerShardTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.instance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.Test;
+
+import net.yacy.cora.federate.solr.connector.ShardSelection;
+
+/**
+ * Unit tests for the query of several shards with {@link ServerShard}
+ */
+public class ServerShardTest {
+
+    /**
+     * a shard which holds documents sorted by score
+     */
+    @SuppressWarnings("serial")
+    private static class TestShard extends SolrClient {
+        private final List<SolrDocument> docs = new ArrayList<SolrDocument>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final int slowCall;  // the number of the call which is slow
+        private final int failCalls; // the number of calls which fail
+
+        private TestShard(final String name, final float[] scores, final int slowCall, final int failCalls) {
+            for (int i = 0; i < scores.length; i++) {
+                final SolrDocument doc = new SolrDocument();
+                doc.setField("id", name + i);
+                doc.setField("score", scores[i]);
+                doc.setField("host_s", name + ".org");
+                this.docs.add(doc);
+            }
+            this.slowCall = slowCall;
+            this.failCalls = failCalls;
+        }
+
+        @Override
+        public NamedList<Object> request(@SuppressWarnings("rawtypes") final SolrRequest request, final String collection) throws SolrServerException, IOException {
+            final int call = this.calls.incrementAndGet();
+            if (call <= this.failCalls) throw new IOException("shard not available");
+            if (call == this.slowCall) {
+                try {Thread.sleep(3000);} catch (final InterruptedException e) {throw new IOException("interrupted");}
+            }
+            final SolrParams params = request.getParams();
+            final int start = params.getInt("start", 0);
+            final int rows = params.getInt("rows", 10);
+            final SolrDocumentList sdl = new SolrDocumentList();
+            for (int i = start; i < Math.min(this.docs.size(), start + rows); i++) sdl.add(this.docs.get(i));
+            sdl.setNumFound(this.docs.size());
+            final NamedList<Object> rsp = new NamedList<Object>();
+            rsp.add("response", sdl);
+            final NamedList<Object> hosts = new NamedList<Object>();
+            hosts.add(this.docs.get(0).getFieldValue("host_s").toString(), this.docs.size());
+            hosts.add("common.org", 2);
+            final NamedList<Object> fields = new SimpleOrderedMap<Object>();
+            fields.add("host_s", hosts);
+            final NamedList<Object> facets = new SimpleOrderedMap<Object>();
+            facets.add("facet_queries", new SimpleOrderedMap<Object>());
+            facets.add("facet_fields", fields);
+            rsp.add("facet_counts", facets);
+            return rsp;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ServerShard shards(final String name, final TestShard ... shard) {
+        final ArrayList<SolrClient> server = new ArrayList<SolrClient>();
+        for (final TestShard s: shard) server.add(s);
+        return new ServerShard(server, ShardSelection.Method.MODULO_HOST_MD5, false, name);
+    }
+
+    private static List<Object> ids(final QueryResponse rsp) {
+        final List<Object> ids = new ArrayList<Object>();
+        for (final SolrDocument d: rsp.getResults()) ids.add(d.getFieldValue("id"));
+        return ids;
+    }
+
+    @Test
+    public void testMergeBySort() throws SolrServerException, IOException {
+        final ServerShard server = shards("merge",
+                new TestShard("a", new float[] {9f, 6f, 3f, 1f}, 0, 0),
+                new TestShard("b", new float[] {8f, 7f, 2f}, 0, 0),
+                new TestShard("c", new float[] {5f, 4f}, 0, 0));
+        final SolrQuery query = new SolrQuery("*:*");
+        query.setStart(2);
+        query.setRows(4);
+        query.set("sort", "score desc");
+        final QueryResponse rsp = server.query(query);
+        assertEquals(9, rsp.getResults().getNumFound());
+        final List<Object> expected = new ArrayList<Object>();
+        for (final String id: new String[] {"b1", "a1", "c0", "c1"}) expected.add(id);
+        assertEquals(expected, ids(rsp));
+
+        // without a sort parameter the documents are sorted by score
+        query.remove("sort");
+        assertEquals(expected, ids(server.query(query)));
+    }
+
+    @Test
+    public void testFacets() throws SolrServerException, IOException {
+        final ServerShard server = shards("facets",
+                new TestShard("a", new float[] {3f, 2f, 1f}, 0, 0),
+                new TestShard("b", new float[] {1f}, 0, 0));
+        final SolrQuery query = new SolrQuery("*:*");
+        query.setFacet(true);
+        query.addFacetField("host_s");
+        query.setFacetLimit(2);
+        final FacetField hosts = server.query(query).getFacetField("host_s");
+        assertEquals(2, hosts.getValueCount());
+        assertEquals("common.org", hosts.getValues().get(0).getName());
+        assertEquals(4, hosts.getValues().get(0).getCount());
+        assertEquals("a.org", hosts.getValues().get(1).getName());
+        assertEquals(3, hosts.getValues().get(1).getCount());
+    }
+
+    @Test
+    public void testHedgedRequest() throws SolrServerException, IOException {
+        final int warmup = ShardQueryCoordinator.HEDGE_MIN_SAMPLES + 5;
+        final ServerShard server = shards("hedge",
+                new TestShard("a", new float[] {2f, 1f}, 0, 0),
+                new TestShard("b", new float[] {1.5f}, warmup + 1, 0));
+        final SolrQuery query = new SolrQuery("*:*");
+        for (int i = 0; i < warmup; i++) server.query(query);
+
+        // the first request to shard b is slow, the hedged request answers
+        final long start = System.currentTimeMillis();
+        final QueryResponse rsp = server.query(query);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(3, rsp.getResults().size());
+        assertEquals("b0", rsp.getResults().get(1).getFieldValue("id"));
+    }
+
+    @Test
+    public void testFailedShard() throws SolrServerException, IOException {
+        final ServerShard server = shards("fail",
+                new TestShard("a", new float[] {2f, 1f}, 0, 0),
+                new TestShard("b", new float[] {1.5f}, 0, 1),
+                new TestShard("c", new float[] {3f}, 0, Integer.MAX_VALUE));
+        final QueryResponse rsp = server.query(new SolrQuery("*:*"));
+        // shard b answers the retry, shard c is left out
+        assertEquals(3, rsp.getResults().size());
+        assertEquals(3, rsp.getResults().getNumFound());
+    }
+
+    @Test
+    public void testFailedShardInCursorQuery() throws IOException {
+        final ServerShard server = shards("cursor",
+                new TestShard("a", new float[] {2f, 1f}, 0, 0),
+                new TestShard("b", new float[] {1.5f}, 0, Integer.MAX_VALUE));
+        final SolrQuery query = new SolrQuery("*:*");
+        query.set("sort", "id asc");
+        query.set(CursorMarkParams.CURSOR_MARK_PARAM, CursorMarkParams.CURSOR_MARK_START);
+        try {
+            server.query(query);
+            fail("a cursor query must fail if a shard is missing");
+        } catch (final SolrServerException e) {
+            // the next cursor mark would skip the documents of shard b
+        }
+    }
+}
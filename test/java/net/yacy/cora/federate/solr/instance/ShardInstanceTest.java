@@ -0,0 +1,134 @@
+/**
+ *  ShardInstanceTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.instance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.federate.solr.connector.AbstractSolrConnector;
+import net.yacy.cora.federate.solr.connector.EmbeddedSolrConnector;
+import net.yacy.cora.federate.solr.connector.RemoteSolrConnector;
+import net.yacy.cora.federate.solr.connector.ShardSelection;
+import net.yacy.cora.federate.solr.connector.SolrConnector;
+import net.yacy.search.schema.CollectionSchema;
+import net.yacy.search.schema.WebgraphSchema;
+
+/**
+ * Unit tests for a local index which is split into several embedded cores with a {@link ShardInstance}
+ */
+public class ShardInstanceTest {
+
+    private static final int SHARDS = 3;
+    private static final int HOSTS = 12;
+    private static final int DOCS_PER_HOST = 20;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static ArrayList<EmbeddedInstance> instances;
+    private static ShardInstance shardInstance;
+    private static SolrConnector solr;
+
+    @BeforeClass
+    public static void initTesting() throws IOException {
+        final File solrConfig = new File("defaults/solr");
+        instances = new ArrayList<EmbeddedInstance>();
+        for (int i = 0; i < SHARDS; i++) {
+            final File storage = folder.newFolder("solr_shard" + i);
+            instances.add(new EmbeddedInstance(solrConfig, storage, CollectionSchema.CORE_NAME, new String[]{CollectionSchema.CORE_NAME, WebgraphSchema.CORE_NAME}));
+        }
+        shardInstance = new ShardInstance(instances, ShardSelection.Method.MODULO_HOST_MD5, true);
+        solr = new RemoteSolrConnector(shardInstance, true);
+        solr.clear();
+        for (int h = 0; h < HOSTS; h++) {
+            for (int i = 0; i < DOCS_PER_HOST; i++) {
+                final SolrInputDocument doc = new SolrInputDocument();
+                doc.addField(CollectionSchema.id.name(), "doc" + h + "_" + i);
+                doc.addField(CollectionSchema.sku.name(), "http://host" + h + ".yacy.net/" + i + ".html");
+                doc.addField(CollectionSchema.host_s.name(), "host" + h + ".yacy.net");
+                doc.addField(CollectionSchema.url_chars_i.name(), i);
+                solr.add(doc);
+            }
+        }
+        solr.commit(true);
+    }
+
+    @AfterClass
+    public static void finalizeTesting() {
+        shardInstance.close();
+    }
+
+    @Test
+    public void testRouting() throws IOException {
+        long sum = 0;
+        for (EmbeddedInstance instance: instances) {
+            final EmbeddedSolrConnector core = new EmbeddedSolrConnector(instance);
+            final long count = core.getCountByQuery(AbstractSolrConnector.CATCHALL_QUERY);
+            assertTrue(count > 0);
+            // all documents of a host are in the same core
+            assertEquals(0, count % DOCS_PER_HOST);
+            sum += count;
+        }
+        assertEquals(HOSTS * DOCS_PER_HOST, sum);
+        assertEquals(HOSTS * DOCS_PER_HOST, solr.getCountByQuery(AbstractSolrConnector.CATCHALL_QUERY));
+    }
+
+    @Test
+    public void testMergedQuery() throws IOException {
+        final SolrDocumentList sdl = solr.getDocumentListByQuery(AbstractSolrConnector.CATCHALL_QUERY, CollectionSchema.url_chars_i.name() + " desc", 0, 30, CollectionSchema.id.name(), CollectionSchema.url_chars_i.name());
+        assertEquals(HOSTS * DOCS_PER_HOST, sdl.getNumFound());
+        assertEquals(30, sdl.size());
+        for (int i = 0; i < sdl.size(); i++) {
+            assertEquals(DOCS_PER_HOST - 1 - i / HOSTS, ((Integer) sdl.get(i).getFieldValue(CollectionSchema.url_chars_i.name())).intValue());
+        }
+    }
+
+    @Test
+    public void testCursorScan() {
+        // pages over the shards of different size, the sort field is not part of the requested fields
+        final Set<String> ids = new HashSet<String>();
+        final Iterator<SolrDocument> i = solr.documentsByQuery(AbstractSolrConnector.CATCHALL_QUERY, CollectionSchema.url_chars_i.name() + " asc", Integer.MAX_VALUE, Long.MAX_VALUE, 25, CollectionSchema.id.name());
+        int last = -1;
+        while (i.hasNext()) {
+            final SolrDocument doc = i.next();
+            assertTrue(ids.add((String) doc.getFieldValue(CollectionSchema.id.name())));
+            final int chars = ((Integer) doc.getFieldValue(CollectionSchema.url_chars_i.name())).intValue();
+            assertTrue(chars >= last);
+            last = chars;
+        }
+        assertEquals(HOSTS * DOCS_PER_HOST, ids.size());
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ *  ResponseWritersTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.federate.solr.responsewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequestBase;
+import org.apache.solr.response.QueryResponseWriter;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.Test;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.JSONArray;
+import net.yacy.cora.util.JSONObject;
+import net.yacy.search.schema.CollectionSchema;
+
+/**
+ * Tests and benchmark of the YaCy Solr response writers on a fixed result set.
+ */
+public class ResponseWritersTest {
+
+    /**
+     * @param count the number of documents
+     * @return a fixed result set similar to a search result page, with highlighting
+     */
+    private static SolrQueryResponse fixedResponse(final int count) {
+        final SolrDocumentList docs = new SolrDocumentList();
+        docs.setNumFound(count * 37);
+        docs.setStart(0);
+        final NamedList<Object> highlighting = new SimpleOrderedMap<>();
+        for (int i = 0; i < count; i++) {
+            final String id = String.format("%012d", i).replace('0', 'A');
+            final SolrDocument doc = new SolrDocument();
+            doc.setField(CollectionSchema.id.getSolrFieldName(), id);
+            doc.setField(CollectionSchema.sku.getSolrFieldName(), "http://www.example" + (i % 7) + ".org/docs/page" + i + (i % 10 == 0 ? ".png" : ".html"));
+            doc.setField(CollectionSchema.title.getSolrFieldName(), Arrays.asList("Example \"page\" number " + i + " </script>"));
+            doc.setField(CollectionSchema.description_txt.getSolrFieldName(), Arrays.asList("A description of page " + i + " with\ttabs and ümlauts and \u2028separators", "second description"));
+            doc.setField(CollectionSchema.url_paths_sxt.getSolrFieldName(), Arrays.asList("docs", "page" + i));
+            doc.setField(CollectionSchema.last_modified.getSolrFieldName(), new Date(1500000000000L + i * 86400000L));
+            doc.setField(CollectionSchema.size_i.getSolrFieldName(), Integer.valueOf(1000 + i * 997));
+            doc.setField(CollectionSchema.host_s.getSolrFieldName(), "www.example" + (i % 7) + ".org");
+            doc.setField(CollectionSchema.url_protocol_s.getSolrFieldName(), "http");
+            doc.setField(CollectionSchema.url_file_ext_s.getSolrFieldName(), i % 10 == 0 ? "png" : "html");
+            doc.setField(CollectionSchema.text_t.getSolrFieldName(), "The full text of page " + i + " & some <markup> to be escaped");
+            doc.setField(CollectionSchema.h1_txt.getSolrFieldName(), Arrays.asList("Headline " + i));
+            doc.setField(CollectionSchema.keywords.getSolrFieldName(), "example keywords");
+            if (i % 3 == 0) {
+                doc.setField(CollectionSchema.images_protocol_sxt.getSolrFieldName(), Arrays.asList("0", "1"));
+                doc.setField(CollectionSchema.images_urlstub_sxt.getSolrFieldName(), Arrays.asList("www.example.org/img" + i + ".jpg", "www.example.org/logo.png"));
+            }
+            docs.add(doc);
+            if (i % 2 == 0) {
+                final SimpleOrderedMap<Object> hl = new SimpleOrderedMap<>();
+                hl.add(CollectionSchema.text_t.getSolrFieldName(), new String[] {"The <b>full</b> text of page " + i, "short"});
+                highlighting.add(id, hl);
+            }
+        }
+        final NamedList<Object> values = new SimpleOrderedMap<>();
+        final SimpleOrderedMap<Object> header = new SimpleOrderedMap<>();
+        header.add("status", Integer.valueOf(0));
+        header.add("QTime", Integer.valueOf(3));
+        values.add("responseHeader", header);
+        values.add("response", docs);
+        values.add("highlighting", highlighting);
+        final SolrQueryResponse rsp = new SolrQueryResponse();
+        rsp.setAllValues(values);
+        return rsp;
+    }
+
+    private static SolrQueryRequest request(final int rows) {
+        final ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "example");
+        params.set("rows", rows);
+        return new SolrQueryRequestBase(null, params) {};
+    }
+
+    private static String write(final QueryResponseWriter responseWriter, final SolrQueryResponse rsp, final int rows) throws IOException {
+        final StringWriter out = new StringWriter();
+        try (final Writer writer = PooledFastWriter.wrap(out)) {
+            responseWriter.write(writer, request(rows), rsp);
+        }
+        return out.toString();
+    }
+
+    /**
+     * the yjson output must be valid json with one item for each document
+     */
+    @Test
+    public void testYJson() throws Exception {
+        final String json = write(new YJsonResponseWriter(), fixedResponse(100), 100);
+        final JSONObject channel = new JSONObject(json).getJSONArray("channels").getJSONObject(0);
+        assertEquals("3700", channel.getString("totalResults"));
+        final JSONArray items = channel.getJSONArray("items");
+        assertEquals(100, items.length());
+
+        final JSONObject first = items.getJSONObject(0);
+        assertEquals("AAAAAAAAAAAA", first.getString("guid"));
+        assertEquals("http://www.example0.org/docs/page0.png", first.getString("link"));
+        assertEquals("Example 'page' number 0 </script>", first.getString("title"));
+        assertEquals("/docs/page0", first.getString("path"));
+        assertEquals("http://www.example.org/img0.jpg", first.getString("image"));
+        assertEquals("The <b>full</b> text of page 0", first.getString("description"));
+
+        final JSONObject second = items.getJSONObject(1);
+        assertEquals("A description of page 1 with\ttabs and ümlauts and \u2028separators", second.getString("description"));
+        assertEquals("1997", second.getString("size"));
+        assertEquals("1 kbyte", second.getString("sizename"));
+        assertTrue(json.indexOf("<\\/script>") > 0);
+        assertTrue(json.indexOf("\\u2028") > 0);
+    }
+
+    /**
+     * the quoted json strings must be identical whether the characters are copied in runs or one by one
+     */
+    @Test
+    public void testQuote() throws Exception {
+        assertEquals("\"\"", JSONObject.quote(""));
+        assertEquals("\"plain text\"", JSONObject.quote("plain text"));
+        assertEquals("\"a\\\"b\\\\c<\\/d>/e\\n\\u0001\\u0085ä\\u2028\"", JSONObject.quote("a\"b\\c</d>/e\n\u0001\u0085ä\u2028"));
+    }
+
+    /**
+     * the rss output must contain one item for each document
+     */
+    @Test
+    public void testOpensearch() throws Exception {
+        final String rss = write(new OpensearchResponseWriter(), fixedResponse(10), 10);
+        assertTrue(rss.startsWith("<?xml"));
+        assertTrue(rss.endsWith("</rss>\n"));
+        assertEquals(10, rss.split("<item>", -1).length - 1);
+        assertTrue(rss.indexOf("<title>Example \"page\" number 3 &lt;/script&gt;</title>") > 0);
+        assertTrue(rss.indexOf("<description>The &lt;b&gt;full&lt;/b&gt; text of page 0</description>") > 0);
+    }
+
+    /**
+     * the enhanced xml output must contain all documents
+     */
+    @Test
+    public void testEnhancedXML() throws Exception {
+        final String xml = write(new EnhancedXMLResponseWriter(), fixedResponse(10), 10);
+        assertEquals(10, xml.split("<doc>", -1).length - 1);
+        assertTrue(xml.indexOf("<int name=\"size_i\">1000</int>") > 0);
+        assertTrue(xml.endsWith("</response>\n"));
+    }
+
+    /**
+     * the pooled buffers are returned on close and can be reused
+     */
+    @Test
+    public void testPooledFastWriter() throws Exception {
+        final StringWriter out = new StringWriter();
+        final PooledFastWriter w = PooledFastWriter.wrap(out);
+        final char[] big = new char[PooledFastWriter.BUFFER_SIZE + 10];
+        Arrays.fill(big, 'x');
+        w.write("abc");
+        w.write(big);
+        w.close();
+        w.close(); // closing twice must not put the buffer twice into the pool
+        assertEquals(3 + big.length, out.toString().length());
+        final StringWriter out2 = new StringWriter();
+        try (final PooledFastWriter w2 = PooledFastWriter.wrap(out2)) {
+            w2.write("def");
+        }
+        assertEquals("def", out2.toString());
+    }
+
+    /**
+     * Benchmark: serialize a 100 results page with each writer repeatedly and print the mean time per page.
+     * @param args optional: the number of pages to write, default 20000
+     */
+    public static void main(final String[] args) throws IOException {
+        final int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final SolrQueryResponse rsp = fixedResponse(100);
+        final QueryResponseWriter[] writers = new QueryResponseWriter[] {new YJsonResponseWriter(), new OpensearchResponseWriter(), new EnhancedXMLResponseWriter()};
+        try {
+            for (final QueryResponseWriter responseWriter: writers) {
+                // warm up
+                for (int i = 0; i < pages / 10; i++) {
+                    try (final Writer writer = PooledFastWriter.wrap(new NullOutputStream())) {
+                        responseWriter.write(writer, request(100), rsp);
+                    }
+                }
+                final long start = System.nanoTime();
+                for (int i = 0; i < pages; i++) {
+                    try (final Writer writer = PooledFastWriter.wrap(new NullOutputStream())) {
+                        responseWriter.write(writer, request(100), rsp);
+                    }
+                }
+                final long time = System.nanoTime() - start;
+                System.out.println(responseWriter.getClass().getSimpleName() + ": " + (time / pages / 1000) + " microseconds per 100 results page");
+            }
+        } finally {
+            ConcurrentLog.shutdown();
+        }
+    }
+}
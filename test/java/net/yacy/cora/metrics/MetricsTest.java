@@ -0,0 +1,131 @@
+/**
+ *  MetricsTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link Metrics} registry, its histograms and the exports.
+ */
+public class MetricsTest {
+
+    /**
+     * every value is counted in the bucket which contains it
+     */
+    @Test
+    public void testBuckets() {
+        assertEquals(0, Histogram.index(-5));
+        for (long v = 0; v < 100000; v++) {
+            final int i = Histogram.index(v);
+            assertTrue(v + " >= " + Histogram.lowerBound(i), v >= Histogram.lowerBound(i));
+            assertTrue(v + " < " + Histogram.lowerBound(i + 1), v < Histogram.lowerBound(i + 1));
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.index(Long.MAX_VALUE));
+    }
+
+    /**
+     * the quantiles are known with a relative error of a few percent
+     */
+    @Test
+    public void testQuantiles() {
+        final Histogram h = Metrics.histogram("test_quantiles_seconds", "test");
+        h.reset();
+        for (long v = 1; v <= 1000000; v++) h.record(v * 1000);
+        assertEquals(1000000, h.count());
+        assertEquals(1000000000L, h.max());
+        assertEquals(500000500L, h.mean());
+        for (final double q: Metrics.QUANTILES) {
+            final double expected = q * 1.0e9d;
+            assertTrue(q + ": " + h.quantile(q), Math.abs(h.quantile(q) - expected) < expected * 0.04d);
+        }
+        assertEquals(1000000000L, h.quantile(1.0d));
+    }
+
+    /**
+     * concurrent increments are not lost
+     */
+    @Test
+    public void testCounter() throws InterruptedException {
+        final Counter c = Metrics.counter("test_counter_total", "test");
+        assertSame(c, Metrics.counter("test_counter_total", "test"));
+        c.reset();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) c.inc();
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread t: threads) t.join();
+        assertEquals(400000, c.get());
+    }
+
+    /**
+     * the text export has the Prometheus format
+     */
+    @Test
+    public void testText() {
+        final AtomicLong source = new AtomicLong(42);
+        Metrics.gauge("test.gauge", "a\ngauge", source::get);
+        final Histogram h = Metrics.histogram("test_text_seconds", "test");
+        h.reset();
+        h.record(2000000000L);
+        final String text = Metrics.text();
+        assertTrue(text, text.contains("# HELP yacy_test_gauge a gauge\n# TYPE yacy_test_gauge gauge\nyacy_test_gauge 42\n"));
+        assertTrue(text, text.contains("# TYPE yacy_test_text_seconds summary\n"));
+        assertTrue(text, text.contains("yacy_test_text_seconds{quantile=\"0.99\"} 2.0\n"));
+        assertTrue(text, text.contains("yacy_test_text_seconds_sum 2.0\nyacy_test_text_seconds_count 1\n"));
+
+        // a gauge source which is re-initialized replaces the old one
+        Metrics.gauge("test.gauge", "a gauge", () -> 43L);
+        assertTrue(Metrics.text().contains("yacy_test_gauge 43\n"));
+    }
+
+    /**
+     * the metrics are readable as attributes of the JMX bean
+     */
+    @Test
+    public void testJMX() throws Exception {
+        Metrics.registerJMX();
+        Metrics.counter("test_jmx_total", "test").add(7);
+        final Histogram h = Metrics.histogram("test_jmx_seconds", "test");
+        h.reset();
+        h.record(1000000L);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(Long.valueOf(7), server.getAttribute(name, "yacy_test_jmx_total"));
+        assertEquals(Long.valueOf(1), server.getAttribute(name, "yacy_test_jmx_seconds_count"));
+        assertEquals(0.001d, ((Double) server.getAttribute(name, "yacy_test_jmx_seconds_p99")).doubleValue(), 0.0001d);
+        assertTrue(server.getMBeanInfo(name).getAttributes().length > 5);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ *  WeakPriorityBlockingQueueTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.sorting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.ReverseElement;
+
+/**
+ * Unit tests for {@link WeakPriorityBlockingQueue}
+ */
+public class WeakPriorityBlockingQueueTest {
+
+    @Test
+    public void testBoundedOrder() {
+        final WeakPriorityBlockingQueue<String> queue = new WeakPriorityBlockingQueue<String>(3, false);
+        for (int i = 0; i < 10; i++) queue.put(new ReverseElement<String>("e" + i, i));
+        queue.put(new ReverseElement<String>("e9", 9)); // double
+        queue.put(new ReverseElement<String>("e1", 1)); // below the threshold
+        assertEquals(3, queue.sizeAvailable());
+        assertEquals("e9", queue.peek().getElement());
+        assertEquals("e7", queue.getLastInQueue().getElement());
+        assertEquals("e9", queue.poll().getElement());
+        assertEquals("e8", queue.poll().getElement());
+        // the queue is not full any more, so a lower element is accepted
+        queue.put(new ReverseElement<String>("e1", 1));
+        assertEquals("e7", queue.poll().getElement());
+        assertEquals("e1", queue.poll().getElement());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.sizeQueue());
+    }
+
+    @Test
+    public void testDrained() {
+        final WeakPriorityBlockingQueue<String> queue = new WeakPriorityBlockingQueue<String>(10, true);
+        for (int i = 0; i < 5; i++) queue.put(new ReverseElement<String>("e" + i, i));
+        assertEquals("e4", queue.element(0).getElement());
+        assertEquals("e2", queue.element(2).getElement());
+        assertNull(queue.element(5));
+        // drained elements are not put again
+        queue.put(queue.element(0));
+        assertEquals(5, queue.sizeAvailable());
+        final List<Element<String>> list = queue.list(5);
+        assertEquals(5, list.size());
+        assertEquals("e0", list.get(4).getElement());
+
+        queue.requeueDrainedElements();
+        assertEquals(0, queue.sizeDrained());
+        assertEquals(5, queue.sizeQueue());
+        assertEquals("e4", queue.poll().getElement());
+    }
+
+    @Test
+    public void testPollTimeout() throws InterruptedException {
+        final WeakPriorityBlockingQueue<String> queue = new WeakPriorityBlockingQueue<String>(10, false);
+        long start = System.currentTimeMillis();
+        assertNull(queue.poll(100));
+        assertTrue(System.currentTimeMillis() - start >= 90);
+
+        // a waiting poll is woken up by a put
+        final AtomicReference<Element<String>> polled = new AtomicReference<Element<String>>();
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    polled.set(queue.poll(10000));
+                } catch (final InterruptedException e) {
+                }
+            }
+        };
+        start = System.currentTimeMillis();
+        consumer.start();
+        Thread.sleep(50);
+        queue.put(new ReverseElement<String>("late", 1));
+        consumer.join(5000);
+        assertEquals("late", polled.get().getElement());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testConcurrentFeeders() throws InterruptedException {
+        final int feeders = 8, perFeeder = 5000, maxsize = 100;
+        final WeakPriorityBlockingQueue<Integer> queue = new WeakPriorityBlockingQueue<Integer>(maxsize, false);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int f = 0; f < feeders; f++) {
+            final int feeder = f;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perFeeder; i++) {
+                        final int n = i * feeders + feeder;
+                        queue.put(new ReverseElement<Integer>(n, n));
+                    }
+                }
+            });
+        }
+        for (Thread t: threads) t.start();
+        for (Thread t: threads) t.join();
+
+        // the queue holds the best elements of all feeders
+        assertEquals(maxsize, queue.sizeAvailable());
+        final Set<Integer> taken = new HashSet<Integer>();
+        Element<Integer> e;
+        int last = Integer.MAX_VALUE;
+        while ((e = queue.poll()) != null) {
+            assertTrue(e.getElement() < last);
+            last = e.getElement();
+            taken.add(e.getElement());
+        }
+        assertEquals(maxsize, taken.size());
+        assertEquals(feeders * perFeeder - maxsize, last);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  ConcurrentLogTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the lock-free log queue and the level checks of {@link ConcurrentLog}.
+ */
+public class ConcurrentLogTest {
+
+    private static ConcurrentLog.Message message(final String m) {
+        return new ConcurrentLog.Message(null, Level.INFO, m, null);
+    }
+
+    /**
+     * the ring buffer is a bounded fifo queue, also after the positions wrapped around
+     */
+    @Test
+    public void testRingBuffer() {
+        final ConcurrentLog.RingBuffer ring = new ConcurrentLog.RingBuffer(4);
+        assertNull(ring.poll());
+        for (int round = 0; round < 3; round++) {
+            final ConcurrentLog.Message[] m = new ConcurrentLog.Message[4];
+            for (int i = 0; i < 4; i++) {
+                m[i] = message(round + "/" + i);
+                assertTrue(ring.offer(m[i]));
+            }
+            assertFalse(ring.offer(message("full")));
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; i++) assertSame(m[i], ring.poll());
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    /**
+     * no message is lost or duplicated when many threads write concurrently
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final ConcurrentLog.RingBuffer ring = new ConcurrentLog.RingBuffer(256);
+        final int producers = 4, count = 50000;
+        final ConcurrentLog.Message[][] messages = new ConcurrentLog.Message[producers][count];
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final ConcurrentLog.Message[] own = messages[p];
+            for (int i = 0; i < count; i++) own[i] = message(p + "/" + i);
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (final ConcurrentLog.Message m: own) while (!ring.offer(m)) Thread.yield();
+                }
+            };
+            threads[p].start();
+        }
+        // the messages of each producer must arrive in the order of that producer
+        final int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * count) {
+            final ConcurrentLog.Message m = ring.poll();
+            if (m == null) {
+                Thread.yield();
+                continue;
+            }
+            int p = 0;
+            while (p < producers && (next[p] >= count || messages[p][next[p]] != m)) p++;
+            assertTrue("unexpected message", p < producers);
+            next[p]++;
+            received++;
+        }
+        for (final Thread t: threads) t.join();
+        assertNull(ring.poll());
+    }
+
+    /**
+     * enabled messages are written by the worker, the supplier of a disabled level is not called
+     */
+    @Test
+    public void testLogging() throws InterruptedException {
+        final List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+        final Logger logger = Logger.getLogger("ConcurrentLogTest");
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                records.add(record);
+            }
+            @Override
+            public void flush() {
+            }
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            final ConcurrentLog log = new ConcurrentLog("ConcurrentLogTest");
+            for (int i = 0; i < 1000; i++) log.info("message " + i);
+            log.fine(() -> {
+                throw new AssertionError("the supplier of a disabled level must not be called");
+            });
+            ConcurrentLog.fine("ConcurrentLogTest", () -> {
+                throw new AssertionError("the supplier of a disabled level must not be called");
+            });
+            ConcurrentLog.warn("ConcurrentLogTest", () -> "from a supplier");
+            final long timeout = System.currentTimeMillis() + 10000;
+            while (records.size() < 1001 && System.currentTimeMillis() < timeout) Thread.sleep(10);
+            assertEquals(1001, records.size());
+            for (int i = 0; i < 1000; i++) assertEquals("message " + i, records.get(i).getMessage());
+            assertEquals("from a supplier", records.get(1000).getMessage());
+            assertEquals(Level.WARNING, records.get(1000).getLevel());
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+}
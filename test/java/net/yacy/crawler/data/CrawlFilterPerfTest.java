@@ -0,0 +1,109 @@
+/**
+ *  CrawlFilterPerfTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler.data;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Compare the evaluation of the url must-match and must-not-match filters of many crawl profiles
+ * with plain regular expressions and with {@link CrawlFilter} on a stream of links.
+ */
+public class CrawlFilterPerfTest {
+
+    private static final String MUSTNOTMATCH = ".*\\.(js|css|png|gif|jpg)|.*/(login|logout|cart)(/.*)?";
+
+    /**
+     * @param args an optional file with one url per line; otherwise a link stream is generated
+     */
+    public static void main(final String[] args) throws MalformedURLException {
+        try {
+            final Random random = new Random(42);
+            final List<String> hosts = new ArrayList<String>();
+            for (int i = 0; i < 5000; i++) hosts.add((random.nextInt(3) == 0 ? "www." : "") + "host" + i + (i % 3 == 0 ? ".com" : i % 3 == 1 ? ".org" : ".de"));
+
+            final List<String> links;
+            if (args.length > 0) {
+                links = FileUtils.getListArray(new File(args[0]));
+                System.out.println(links.size() + " URLs loaded from " + args[0]);
+            } else {
+                // most links point to a few popular hosts, like in crawled documents
+                links = new ArrayList<String>();
+                final String[] paths = {"/", "/index.html", "/news/2026/10/article.html", "/style.css", "/login", "/img/logo.png", "/docs/manual/chapter1.html", "/search?q=test"};
+                for (int i = 0; i < 200000; i++) {
+                    final int h = (int) Math.min(hosts.size() - 1, Math.abs(random.nextGaussian()) * hosts.size() / 4);
+                    links.add((random.nextBoolean() ? "https" : "http") + "://" + hosts.get(h) + paths[random.nextInt(paths.length)]);
+                }
+                System.out.println(links.size() + " URLs generated");
+            }
+
+            // 60 crawl profiles: site crawls with up to 20 start hosts and sub-path crawls
+            final int profileCount = 60;
+            final Pattern[][] patterns = new Pattern[profileCount][2];
+            final CrawlFilter[][] filters = new CrawlFilter[profileCount][2];
+            for (int p = 0; p < profileCount; p++) {
+                final List<MultiProtocolURL> start = new ArrayList<MultiProtocolURL>();
+                final int n = 1 + random.nextInt(20);
+                for (int i = 0; i < n; i++) start.add(new MultiProtocolURL("http://" + hosts.get(random.nextInt(hosts.size())) + "/docs/"));
+                final String mustmatch = p % 2 == 0 ? CrawlProfile.siteFilter(start) : CrawlProfile.subpathFilter(start);
+                patterns[p][0] = Pattern.compile(mustmatch, Pattern.CASE_INSENSITIVE);
+                patterns[p][1] = Pattern.compile(MUSTNOTMATCH, Pattern.CASE_INSENSITIVE);
+                filters[p][0] = CrawlFilter.compile(mustmatch);
+                filters[p][1] = CrawlFilter.compile(MUSTNOTMATCH);
+            }
+
+            for (int round = 0; round < 3; round++) {
+                long t = System.nanoTime();
+                int acceptedPattern = 0;
+                for (int i = 0; i < links.size(); i++) {
+                    final Pattern[] rules = patterns[i % profileCount];
+                    final String url = links.get(i);
+                    if (rules[0].matcher(url).matches() && !rules[1].matcher(url).matches()) acceptedPattern++;
+                }
+                final long patternTime = System.nanoTime() - t;
+
+                t = System.nanoTime();
+                int acceptedFilter = 0;
+                for (int i = 0; i < links.size(); i++) {
+                    final CrawlFilter[] rules = filters[i % profileCount];
+                    final String url = links.get(i);
+                    if (rules[0].matches(url) && !rules[1].matches(url)) acceptedFilter++;
+                }
+                final long filterTime = System.nanoTime() - t;
+
+                System.out.println("round " + round + ": regular expressions " + TimeUnit.NANOSECONDS.toMillis(patternTime) + " ms, "
+                        + "compiled filters " + TimeUnit.NANOSECONDS.toMillis(filterTime) + " ms, accepted "
+                        + acceptedPattern + " / " + acceptedFilter + " links");
+                if (acceptedPattern != acceptedFilter) System.out.println("ERROR: different results");
+            }
+        } finally {
+            ConcurrentLog.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ *  CrawlFilterTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+
+/**
+ * Unit tests for {@link CrawlFilter}
+ */
+public class CrawlFilterTest {
+
+    /**
+     * @return the expressions of typical crawl starts and some unusual expressions
+     */
+    static List<String> expressions() throws MalformedURLException {
+        final List<String> urls = new ArrayList<String>();
+        urls.add("http://www.example.org/docs/index.html");
+        urls.add("https://yacy.net/");
+        urls.add("ftp://ftp.Example.COM/pub/");
+        final List<MultiProtocolURL> u = new ArrayList<MultiProtocolURL>();
+        for (final String s: urls) u.add(new MultiProtocolURL(s));
+        final List<String> expressions = new ArrayList<String>();
+        expressions.add(CrawlProfile.siteFilter(u));
+        expressions.add(CrawlProfile.subpathFilter(u));
+        expressions.add(CrawlProfile.mustMatchFilterFullDomain(u.get(0)));
+        expressions.add(CrawlProfile.mustMatchSubpath(u.get(0)));
+        expressions.add("http://example\\.org/.*");
+        expressions.add("^https?://(www\\.)?example\\.org/.*");
+        expressions.add("(?:http://a\\.org/x|https://b\\.org/y).*");
+        expressions.add("https://exa?mple.org/.*");
+        expressions.add(".*\\.(js|css|png|gif)|.*/login.*");
+        expressions.add("(https?)?://example.org.*");
+        expressions.add("(?i)HTTP://EXAMPLE.org/.*");
+        expressions.add("http://[a-z]+\\.org/.*");
+        expressions.add("http://(a|b)+\\.org/.*");
+        expressions.add("\\Qhttp://q.org/\\E.*");
+        return expressions;
+    }
+
+    static List<String> urls() {
+        final List<String> urls = new ArrayList<String>();
+        for (final String host: new String[] {"example.org", "www.example.org", "EXAMPLE.org", "wwwexample.org", "exmple.org", "ftp.example.com", "yacy.net", "a.org", "b.org", "ab.org", "q.org"}) {
+            for (final String protocol: new String[] {"http", "https", "ftp", "smb"}) {
+                for (final String path: new String[] {"", "/", "/docs/index.html", "/docs/a.js", "/x", "/y/login.php", "/pub/file"}) {
+                    urls.add(protocol + "://" + host + path);
+                }
+            }
+        }
+        urls.add("://example.org/");
+        urls.add("example.org");
+        urls.add("");
+        return urls;
+    }
+
+    /**
+     * the filters give the same results as the regular expressions
+     */
+    @Test
+    public void testSameAsPattern() throws MalformedURLException {
+        final List<String> urls = urls();
+        for (final String regex: expressions()) {
+            final CrawlFilter filter = CrawlFilter.compile(regex);
+            final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            for (final String url: urls) {
+                assertEquals(regex + " on " + url, pattern.matcher(url).matches(), filter.matches(url));
+            }
+        }
+    }
+
+    @Test
+    public void testPrefilter() throws MalformedURLException {
+        final List<String> expressions = expressions();
+        assertTrue(CrawlFilter.compile(expressions.get(0)).hasPrefilter()); // site filter
+        assertTrue(CrawlFilter.compile(expressions.get(1)).hasPrefilter()); // sub-path filter
+        assertTrue(CrawlFilter.compile("http://example\\.org/.*").hasPrefilter());
+        assertFalse(CrawlFilter.compile(".*\\.(js|css|png|gif)|.*/login.*").hasPrefilter());
+        assertFalse(CrawlFilter.compile("(?i)HTTP://EXAMPLE.org/.*").hasPrefilter());
+    }
+
+    @Test
+    public void testShared() {
+        assertSame(CrawlFilter.MATCH_ALL, CrawlFilter.compile(CrawlProfile.MATCH_ALL_STRING));
+        assertSame(CrawlFilter.MATCH_NEVER, CrawlFilter.compile(null, CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_ALL));
+        assertSame(CrawlFilter.MATCH_ALL, CrawlFilter.compile("(", CrawlFilter.MATCH_NEVER, CrawlFilter.MATCH_ALL));
+        assertSame(CrawlFilter.compile("http://shared\\.org/.*"), CrawlFilter.compile("http://shared\\.org/.*"));
+        assertTrue(CrawlFilter.MATCH_ALL.matches("http://x.org/"));
+        assertFalse(CrawlFilter.MATCH_NEVER.matches("http://x.org/"));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *  SnapshotsTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for {@link Snapshots}
+ */
+public class SnapshotsTest {
+
+    private final File location = new File("test/DATA/snapshots");
+
+    @Before
+    public void setUp() {
+        FileUtils.deletedelete(this.location);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.location);
+    }
+
+    /**
+     * create the files of a snapshot and announce them
+     */
+    private static void store(final Snapshots snapshots, final DigestURL url, final int depth, final Date date, final String... exts) throws IOException {
+        for (String ext: exts) {
+            final File f = snapshots.definePath(url, depth, date, ext);
+            f.getParentFile().mkdirs();
+            f.createNewFile();
+        }
+        snapshots.announceStorage(url, depth, date);
+    }
+
+    @Test
+    public void testCatalog() throws IOException {
+        final DigestURL a = new DigestURL("http://example.com/a.html");
+        final DigestURL b = new DigestURL("http://example.com/b.html");
+        final DigestURL c = new DigestURL("http://example.org:8080/c.html");
+        final Snapshots snapshots = new Snapshots(this.location);
+        assertEquals(0, snapshots.size());
+        assertTrue(new File(this.location, Snapshots.CATALOG_NAME).exists());
+
+        store(snapshots, a, 1, new Date(1000L * 60000L), "xml", "pdf");
+        store(snapshots, b, 2, new Date(3000L * 60000L), "xml");
+        store(snapshots, c, 0, new Date(2000L * 60000L), "pdf");
+        store(snapshots, a, 1, new Date(4000L * 60000L), "xml");
+        assertEquals(4, snapshots.size());
+        assertEquals(2, snapshots.listHosts().size());
+
+        // lookup by url
+        assertEquals(3, snapshots.findPaths(a, 1, null).size());
+        assertEquals(1, snapshots.findPaths(a, 1, "pdf").size());
+        assertEquals(0, snapshots.findPaths(a, 2, null).size());
+        assertEquals(1, snapshots.findPaths(c, "pdf").size());
+        assertEquals(0, snapshots.findPaths(new DigestURL("http://example.com/unknown.html"), null).size());
+
+        // selection by date
+        assertEquals(keys(a, c, b), new ArrayList<String>(snapshots.select(null, null, Snapshots.Order.OLDESTFIRST, 3).keySet()));
+        assertEquals(keys(a, b), new ArrayList<String>(snapshots.select(null, null, Snapshots.Order.LATESTFIRST, 2).keySet()));
+        assertEquals(keys(b), new ArrayList<String>(snapshots.select(null, 2, Snapshots.Order.LATESTFIRST, 10).keySet()));
+        final LinkedHashMap<String, Snapshots.Revisions> host = snapshots.select("example.com", 1, Snapshots.Order.ANY, 10);
+        assertEquals(1, host.size());
+        assertEquals(1, host.values().iterator().next().depth);
+
+        // deletion
+        assertEquals(2, snapshots.announceDeletion(a, 1).size());
+        assertEquals(0, snapshots.announceDeletion(a, 1).size());
+        assertEquals(2, snapshots.size());
+        assertEquals(0, snapshots.findPaths(a, null).size());
+
+        // the catalog is loaded at start-up
+        final Snapshots loaded = new Snapshots(this.location);
+        assertEquals(2, loaded.size());
+        assertEquals(0, loaded.findPaths(a, null).size());
+        assertEquals(1, loaded.findPaths(b, 2, "xml").size());
+        assertEquals(keys(b, c), new ArrayList<String>(loaded.select(null, null, Snapshots.Order.LATESTFIRST, 10).keySet()));
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        final DigestURL a = new DigestURL("http://example.com/a.html");
+        final DigestURL b = new DigestURL("http://example.net/b.html");
+        final Snapshots snapshots = new Snapshots(this.location);
+        store(snapshots, a, 0, new Date(1000L * 60000L), "xml", "pdf");
+        store(snapshots, b, 3, new Date(2000L * 60000L), "pdf");
+
+        // without a catalog the storage is scanned
+        assertTrue(new File(this.location, Snapshots.CATALOG_NAME).delete());
+        final Snapshots scanned = new Snapshots(this.location);
+        assertEquals(2, scanned.size());
+        assertEquals(2, scanned.findPaths(a, null).size());
+        assertEquals(1, scanned.findPaths(b, 3, "pdf").size());
+        assertTrue(new File(this.location, Snapshots.CATALOG_NAME).exists());
+        assertFalse(scanned.listHosts().isEmpty());
+    }
+
+    private static List<String> keys(final DigestURL... urls) {
+        final List<String> keys = new ArrayList<String>();
+        for (DigestURL url: urls) keys.add(ASCII.String(url.hash()));
+        return keys;
+    }
+}
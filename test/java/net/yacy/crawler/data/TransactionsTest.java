@@ -0,0 +1,101 @@
+/**
+ *  TransactionsTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the commit and rollback of snapshots with {@link Transactions}
+ */
+public class TransactionsTest {
+
+    private final File location = new File("test/DATA/transactions");
+
+    @Before
+    public void setUp() {
+        FileUtils.deletedelete(this.location);
+        Transactions.init(this.location, 30);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.location);
+    }
+
+    /**
+     * a snapshot without xml metadata has no url in its revision; it must be moved together with its catalog entry
+     */
+    @Test
+    public void testCommitPdfOnlySnapshot() throws IOException {
+        final DigestURL url = new DigestURL("http://example.com/a.pdf");
+        final String urlhash = ASCII.String(url.hash());
+        final Date date = new Date(1000L * 60000L);
+        final File pdf = Transactions.definePath(url, 1, date, "pdf", Transactions.State.INVENTORY);
+        pdf.getParentFile().mkdirs();
+        assertTrue(pdf.createNewFile());
+        Transactions.announceStorage(url, 1, date, Transactions.State.INVENTORY);
+        assertNull(Transactions.getRevisions(Transactions.State.INVENTORY, urlhash).url);
+
+        // commit
+        assertNotNull(Transactions.commit(urlhash));
+        assertFalse(pdf.exists());
+        assertSnapshot(url, Transactions.State.ARCHIVE, Transactions.State.INVENTORY);
+
+        // the catalogs agree with the storage after a restart
+        Transactions.init(this.location, 30);
+        assertSnapshot(url, Transactions.State.ARCHIVE, Transactions.State.INVENTORY);
+
+        // rollback
+        assertNotNull(Transactions.rollback(urlhash));
+        assertTrue(pdf.exists());
+        assertSnapshot(url, Transactions.State.INVENTORY, Transactions.State.ARCHIVE);
+        Transactions.init(this.location, 30);
+        assertSnapshot(url, Transactions.State.INVENTORY, Transactions.State.ARCHIVE);
+
+        // a snapshot which is not in the state is not moved
+        assertNull(Transactions.rollback(urlhash));
+    }
+
+    private static void assertSnapshot(final DigestURL url, final Transactions.State in, final Transactions.State notIn) {
+        final String urlhash = ASCII.String(url.hash());
+        assertNotNull(Transactions.getRevisions(in, urlhash));
+        assertNull(Transactions.getRevisions(notIn, urlhash));
+        assertEquals(1, Transactions.findPaths(url, 1, "pdf", in).size());
+        assertEquals(0, Transactions.findPaths(url, 1, null, notIn).size());
+        assertEquals(1, Transactions.sizes().get(in.name()).intValue());
+        assertEquals(0, Transactions.sizes().get(notIn.name()).intValue());
+    }
+}
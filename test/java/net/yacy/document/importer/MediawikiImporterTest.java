@@ -0,0 +1,124 @@
+/**
+ *  MediawikiImporterTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.document.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the {@link MediawikiImporter} conversion of a dump to surrogate files
+ */
+public class MediawikiImporterTest {
+
+    private final File location = new File("test/DATA/mediawiki");
+    private File dump;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        FileUtils.deletedelete(this.location);
+        this.target = new File(this.location, "surrogates");
+        this.target.mkdirs();
+        this.dump = new File(this.location, "dump.xml");
+        // more pages than the writer queue holds, so that a failing writer would block the reader
+        try (final PrintWriter pw = new PrintWriter(this.dump, StandardCharsets.UTF_8.name())) {
+            pw.println("<mediawiki>");
+            pw.println("<siteinfo>");
+            pw.println("<base>http://en.wikipedia.org/wiki/Main_Page</base>");
+            pw.println("</siteinfo>");
+            for (int i = 0; i < 2000; i++) {
+                pw.println("<page>");
+                pw.println("<title>Page " + i + "</title>");
+                pw.println("<text xml:space=\"preserve\">'''Page " + i + "''' is a test page.</text>");
+                pw.println("</page>");
+            }
+            pw.println("</mediawiki>");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.location);
+    }
+
+    @Test(timeout = 120000)
+    public void testImport() throws IOException {
+        final MediawikiImporter importer = new MediawikiImporter(new MultiProtocolURL(this.dump), this.target);
+        importer.run();
+
+        assertEquals("", importer.status());
+        assertTrue(new File(this.target, "dump.xml.0.xml").exists());
+        assertFalse(this.checkpoint().exists());
+        assertConvertersTerminated();
+    }
+
+    /**
+     * a failing writer must terminate the import with an error, keep the checkpoint
+     * for a resume and shut down the converter threads
+     */
+    @Test(timeout = 120000)
+    public void testWriteFailure() throws IOException {
+        final MediawikiImporter importer = new MediawikiImporter(new MultiProtocolURL(this.dump), this.target);
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(this.checkpoint(), importer.source(), this.dump.length());
+        checkpoint.save();
+        // the first surrogate file can not be created
+        assertTrue(new File(this.target, "dump.xml.0.xml.prt").mkdirs());
+        importer.run();
+
+        assertFalse(importer.status().isEmpty());
+        assertFalse(new File(this.target, "dump.xml.0.xml").exists());
+        assertTrue(this.checkpoint().exists());
+        assertConvertersTerminated();
+    }
+
+    private File checkpoint() {
+        return new File(this.target, this.dump.getName() + ImportCheckpoint.EXTENSION);
+    }
+
+    private static void assertConvertersTerminated() {
+        boolean alive = true;
+        while (alive) {
+            alive = false;
+            for (final Thread t : Thread.getAllStackTraces().keySet()) {
+                if (t.isAlive() && t.getName().startsWith(MediawikiImporter.class.getSimpleName() + ".convert")) alive = true;
+            }
+            if (alive) {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
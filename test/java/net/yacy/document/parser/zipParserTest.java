@@ -0,0 +1,100 @@
+// zipParserTest.java
+// ---------------------------
+// part of YaCy
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.document.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.document.Document;
+import net.yacy.document.VocabularyScraper;
+
+/**
+ * Unit tests for the {@link zipParser} class
+ */
+public class zipParserTest {
+
+	/**
+	 * Build a zip archive in memory with the given number of text entries
+	 */
+	private static byte[] createZip(final int entries) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ZipOutputStream zos = new ZipOutputStream(out);
+		try {
+			for (int i = 0; i < entries; i++) {
+				final byte[] content = ("Text entry number" + i + " with link http://localhost/entry" + i + ".html")
+						.getBytes(StandardCharsets.UTF_8);
+				/* Use stored entries so that the entry size is known when reading the archive */
+				final ZipEntry entry = new ZipEntry("dir/entry" + i + ".txt");
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(content.length);
+				final CRC32 crc = new CRC32();
+				crc.update(content);
+				entry.setCrc(crc.getValue());
+				zos.putNextEntry(entry);
+				zos.write(content);
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parse an archive with more entries than parsing threads : all entries must
+	 * be parsed and added in the archive order.
+	 *
+	 * @throws Exception when an unexpected error occurred
+	 */
+	@Test
+	public void testParseManyEntries() throws Exception {
+		final int entries = 4 * Runtime.getRuntime().availableProcessors() + 3;
+		final zipParser parser = new zipParser();
+		final DigestURL location = new DigestURL("http://localhost/archive.zip");
+		final Document[] documents = parser.parse(location, "application/zip", null, new VocabularyScraper(), 0,
+				new ByteArrayInputStream(createZip(entries)));
+		assertNotNull(documents);
+		assertEquals(1, documents.length);
+
+		final String parsedText = documents[0].getTextString();
+		int lastIndex = -1;
+		for (int i = 0; i < entries; i++) {
+			final int index = parsedText.indexOf("number" + i + " ");
+			assertTrue("Entry " + i + " must be parsed", index >= 0);
+			assertTrue("Entry " + i + " must be added in archive order", index > lastIndex);
+			lastIndex = index;
+		}
+		assertEquals(entries, documents[0].getAnchors().size());
+	}
+}
@@ -0,0 +1,88 @@
+// ServletMethodTest.java
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.http.servlets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+import net.yacy.server.servletProperties;
+
+/**
+ * Unit tests for {@link ServletMethod} class.
+ */
+public class ServletMethodTest {
+
+    public static class EchoServlet {
+        public static servletProperties respond(final RequestHeader header, final serverObjects post, final serverSwitch env) {
+            if (post == null) return null;
+            if (post.containsKey("fail")) throw new IllegalStateException(post.get("fail"));
+            final servletProperties prop = new servletProperties();
+            prop.put("echo", post.get("text"));
+            return prop;
+        }
+    }
+
+    public static class NoServlet {
+        public servletProperties respond(final RequestHeader header, final serverObjects post, final serverSwitch env) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testRespond() throws Exception {
+        final ServletMethod m = ServletMethod.of(EchoServlet.class);
+        assertSame(EchoServlet.class, m.getServletClass());
+        assertNull(m.respond(new RequestHeader(), null, null));
+        final serverObjects post = new serverObjects();
+        post.put("text", "hello");
+        assertEquals("hello", ((serverObjects) m.respond(new RequestHeader(), post, null)).get("echo"));
+    }
+
+    /**
+     * exceptions of the servlet are wrapped like in a reflective call
+     */
+    @Test
+    public void testException() throws Exception {
+        final serverObjects post = new serverObjects();
+        post.put("fail", "broken");
+        try {
+            ServletMethod.of(EchoServlet.class).respond(new RequestHeader(), post, null);
+            fail("exception expected");
+        } catch (final InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("broken", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testNotStatic() throws Exception {
+        ServletMethod.of(NoServlet.class);
+    }
+}
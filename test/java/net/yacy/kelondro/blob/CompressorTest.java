@@ -0,0 +1,216 @@
+/**
+ *  CompressorTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.Base64Order;
+
+/**
+ * Unit tests for the {@link Compressor} codecs and its background compression.
+ */
+public class CompressorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return a html page of a host with the same navigation and footer on every page
+     */
+    private static byte[] page(final String host, final int i) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html>\n<html><head><title>Page ").append(i).append(" of ").append(host).append("</title>\n");
+        sb.append("<link rel=\"stylesheet\" href=\"/static/css/site-theme.css\">\n<script src=\"/static/js/site-navigation.js\"></script></head>\n<body>\n");
+        for (int n = 0; n < 40; n++) sb.append("<li class=\"nav-item\"><a href=\"/section/").append(n).append("/index.html\">Section number ").append(n).append("</a></li>\n");
+        sb.append("<div class=\"content\"><p>This is the individual text ").append(i * 7919).append(" of the page number ").append(i).append(".</p></div>\n");
+        for (int n = 0; n < 20; n++) sb.append("<p class=\"footer\">Footer line ").append(n).append(" copyright ").append(host).append(" all rights reserved</p>\n");
+        sb.append("</body></html>\n");
+        return UTF8.getBytes(sb.toString());
+    }
+
+    private static byte[] key(final int i, final String hosthash) {
+        return ASCII.getBytes(String.format("%06d", i) + hosthash);
+    }
+
+    private static String host(final int i) {
+        return i % 10 < 5 ? "hostCC" : "hostDD";
+    }
+
+    private Heap heap(final String name, final int keylength) throws Exception {
+        return new Heap(new File(this.folder.getRoot(), name), keylength, Base64Order.enhancedCoder, 1024 * 1024);
+    }
+
+    /**
+     * entries of a group are compressed with the trained dictionary after the samples, and all entries can be read again
+     */
+    @Test
+    public void testDictionaryCompression() throws Exception {
+        final Heap backend = heap("file.heap", 12);
+        Compressor compressor = new Compressor(backend, 1024 * 1024, 1000, Deflater.BEST_COMPRESSION, heap("dictionary.heap", 6));
+        compressor.setDictionaryCompression(true);
+        for (int i = 0; i < 10; i++) compressor.insert(key(i, "hostAA"), page("a.example", i));
+        compressor.flushAll();
+
+        // the first entries are the samples and compressed with gzip
+        assertEquals('z', backend.get(key(0, "hostAA"))[0]);
+        final byte[] stored = backend.get(key(9, "hostAA"));
+        assertEquals('d', stored[0]);
+        // the dictionary contains the boilerplate, so the entry is clearly smaller than with gzip only
+        final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (final OutputStream os = new GZIPOutputStream(gzip)) {
+            os.write(page("a.example", 9));
+        }
+        assertTrue(stored.length + " < " + gzip.size(), stored.length * 3 < gzip.size() * 2);
+
+        for (int i = 0; i < 10; i++) assertArrayEquals(page("a.example", i), compressor.get(key(i, "hostAA")));
+        compressor.close(true);
+
+        // the entries are readable after a restart, also when no new dictionaries shall be used
+        compressor = new Compressor(heap("file.heap", 12), 1024 * 1024, 1000, Deflater.BEST_COMPRESSION, heap("dictionary.heap", 6));
+        for (int i = 0; i < 10; i++) assertArrayEquals(page("a.example", i), compressor.get(key(i, "hostAA")));
+        compressor.insert(key(11, "hostAA"), page("a.example", 11));
+        compressor.flushAll();
+        assertArrayEquals(page("a.example", 11), compressor.get(key(11, "hostAA")));
+        compressor.close(true);
+    }
+
+    /**
+     * dictionaries of groups without entries are deleted; when the dictionaries are too large, the least recently
+     * used dictionaries are deleted together with their entries
+     */
+    @Test
+    public void testCleanupDictionaries() throws Exception {
+        final Heap dictionaries = heap("dictionary.heap", 6);
+        final Compressor compressor = new Compressor(heap("file.heap", 12), 1024 * 1024, 1000, Deflater.BEST_COMPRESSION, dictionaries);
+        compressor.setDictionaryCompression(true);
+        for (final String host: new String[]{"hostAA", "hostBB", "hostCC"}) {
+            for (int i = 0; i < 10; i++) compressor.insert(key(i, host), page(host + ".example", i));
+        }
+        compressor.flushAll();
+        assertEquals(3, dictionaries.size());
+
+        for (int i = 0; i < 10; i++) compressor.delete(key(i, "hostAA"));
+        Thread.sleep(10);
+        assertEquals(1, compressor.cleanupDictionaries(Long.MAX_VALUE));
+        assertFalse(dictionaries.containsKey(ASCII.getBytes("hostAA")));
+        assertArrayEquals(page("hostBB.example", 9), compressor.get(key(9, "hostBB")));
+
+        // hostCC is used more recently than hostBB
+        Thread.sleep(10);
+        assertArrayEquals(page("hostCC.example", 9), compressor.get(key(9, "hostCC")));
+        assertEquals(1, compressor.cleanupDictionaries(dictionaries.length(ASCII.getBytes("hostCC"))));
+        assertFalse(dictionaries.containsKey(ASCII.getBytes("hostBB")));
+        assertFalse(compressor.containsKey(key(9, "hostBB")));
+        for (int i = 0; i < 10; i++) assertArrayEquals(page("hostCC.example", i), compressor.get(key(i, "hostCC")));
+        compressor.close(true);
+    }
+
+    /**
+     * entries written with the gzip and plain codec are still readable
+     */
+    @Test
+    public void testLegacyEntries() throws Exception {
+        final Heap backend = heap("file.heap", 12);
+        final byte[] content = page("b.example", 1);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write('z');
+        baos.write('|');
+        try (final OutputStream os = new GZIPOutputStream(baos)) {
+            os.write(content);
+        }
+        backend.insert(key(1, "hostBB"), baos.toByteArray());
+        backend.insert(key(2, "hostBB"), UTF8.getBytes("p|plain"));
+        backend.insert(key(3, "hostBB"), UTF8.getBytes("no magic"));
+        final Compressor compressor = new Compressor(backend, 1024 * 1024, 1000, Deflater.BEST_COMPRESSION, heap("dictionary.heap", 6));
+        compressor.setDictionaryCompression(true);
+        assertArrayEquals(content, compressor.get(key(1, "hostBB")));
+        assertArrayEquals(UTF8.getBytes("plain"), compressor.get(key(2, "hostBB")));
+        assertArrayEquals(UTF8.getBytes("no magic"), compressor.get(key(3, "hostBB")));
+        compressor.close(true);
+    }
+
+    /**
+     * entries are readable while they are compressed in the background, and deleted entries are not written
+     */
+    @Test
+    public void testBackgroundCompression() throws Exception {
+        final Heap backend = heap("file.heap", 12);
+        final Compressor compressor = new Compressor(backend, 64 * 1024, 1000, Deflater.BEST_COMPRESSION);
+        for (int i = 0; i < 200; i++) {
+            compressor.insert(key(i, host(i)), page("c.example", i));
+            if (i % 20 == 0) compressor.delete(key(i, host(i)));
+            // an earlier entry is in the buffer, in the background compression or in the backend
+            if (i >= 5 && (i - 5) % 20 != 0) assertArrayEquals(page("c.example", i - 5), compressor.get(key(i - 5, host(i - 5))));
+        }
+        compressor.flushAll();
+        assertEquals(190, backend.size());
+        assertEquals(190, compressor.size());
+        for (int i = 0; i < 200; i++) {
+            if (i % 20 == 0) continue;
+            assertArrayEquals(page("c.example", i), compressor.get(key(i, host(i))));
+        }
+        compressor.close(true);
+    }
+
+    /**
+     * the buffer is handed to the background compression without waiting, i.e. for the memory budget
+     */
+    @Test
+    public void testFlushInBackground() throws Exception {
+        final Heap backend = heap("file.heap", 12);
+        final Compressor compressor = new Compressor(backend, 1024 * 1024, 1000, Deflater.BEST_COMPRESSION);
+        for (int i = 0; i < 10; i++) compressor.insert(key(i, host(i)), page("e.example", i));
+        compressor.flushInBackground(); // returns at once, the entries are written by the compression threads
+        for (int i = 0; i < 10; i++) assertArrayEquals(page("e.example", i), compressor.get(key(i, host(i))));
+        compressor.flushAll();
+        assertEquals(0, compressor.bufferLength());
+        assertEquals(0, compressor.flushInBackground());
+        assertEquals(10, backend.size());
+        compressor.close(true);
+    }
+
+    /**
+     * the trained dictionary contains only the segments which are shared by the samples
+     */
+    @Test
+    public void testTrain() {
+        final byte[] dictionary = Compressor.train(Arrays.asList(page("d.example", 1), page("d.example", 2), page("d.example", 3)));
+        final String d = UTF8.String(dictionary);
+        assertTrue(d.contains("<a href=\"/section/17/index.html\">Section number 17"));
+        assertTrue(d.contains("<p class=\"footer\">Footer line 3 copyright d.example all rights reserved"));
+        assertTrue(!d.contains("individual text"));
+        assertEquals(0, Compressor.train(Arrays.asList(UTF8.getBytes("<p>one</p>"), UTF8.getBytes("<p>two</p>"))).length);
+    }
+}
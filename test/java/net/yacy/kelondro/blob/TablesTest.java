@@ -0,0 +1,154 @@
+/**
+ *  TablesTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.kelondro.util.BEncoder;
+
+/**
+ * Unit tests for the conditional scans and the persistent column index of {@link Tables}.
+ */
+public class TablesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, byte[]> row(final String... kv) {
+        final Map<String, byte[]> map = new HashMap<String, byte[]>();
+        for (int i = 0; i < kv.length; i += 2) map.put(kv[i], UTF8.getBytes(kv[i + 1]));
+        return map;
+    }
+
+    private static Set<String> pks(final Iterator<Tables.Row> i) {
+        final Set<String> pks = new TreeSet<String>();
+        while (i.hasNext()) pks.add(UTF8.String(i.next().getPK()));
+        return pks;
+    }
+
+    private static Set<String> set(final String... s) {
+        final Set<String> set = new TreeSet<String>();
+        Collections.addAll(set, s);
+        return set;
+    }
+
+    private static void fill(final Tables tables) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            tables.insert("t", UTF8.getBytes(String.format("%012d", i)), i % 10 == 0 ?
+                    row("url", "http://host" + (i % 7) + "/", "comment", "no host") :
+                    row("url", "http://host" + (i % 7) + "/", "host", "host" + (i % 7), "comment", "row " + i));
+        }
+    }
+
+    /**
+     * a column value is found in the encoded row without decoding it
+     */
+    @Test
+    public void testColumn() {
+        final Map<String, byte[]> map = row("a", "1", "long", "a value with : and e", "z", "");
+        final byte[] b = BEncoder.encode(BEncoder.transcode(map));
+        assertArrayEquals(UTF8.getBytes("1"), BEncodedHeap.column(b, "a"));
+        assertArrayEquals(UTF8.getBytes("a value with : and e"), BEncodedHeap.column(b, "long"));
+        assertArrayEquals(new byte[0], BEncodedHeap.column(b, "z"));
+        assertNull(BEncodedHeap.column(b, "lon"));
+        assertNull(BEncodedHeap.column(b, "missing"));
+        assertNull(BEncodedHeap.column(UTF8.getBytes("d3:abc"), "abc")); // corrupt row
+    }
+
+    /**
+     * the conditional iterators return the same rows as a filter on all rows
+     */
+    @Test
+    public void testConditionalScan() throws Exception {
+        final Tables tables = new Tables(this.folder.newFolder(), 12);
+        try {
+            fill(tables);
+            assertEquals(100, pks(tables.iterator("t")).size());
+            assertEquals(set("000000000003", "000000000017", "000000000024", "000000000031", "000000000038", "000000000045", "000000000052", "000000000059", "000000000066", "000000000073", "000000000087", "000000000094"),
+                    pks(tables.iterator("t", "host", UTF8.getBytes("host3"))));
+            // rows without the column do not match
+            assertEquals(90, pks(tables.iterator("t", "host", Pattern.compile(".*"))).size());
+            assertEquals(set("000000000000", "000000000010", "000000000020", "000000000030", "000000000040", "000000000050", "000000000060", "000000000070", "000000000080", "000000000090"),
+                    pks(tables.iterator("t", "comment", Pattern.compile("no.*"))));
+            assertEquals(set("000000000042"), pks(tables.iterator("t", Pattern.compile("row 42"))));
+            assertEquals(9, tables.getHeap("t").select("comment", Pattern.compile("row 4.")).size());
+        } finally {
+            tables.close();
+        }
+    }
+
+    /**
+     * a persistent index is maintained on insert, update and delete and used again after a restart
+     */
+    @Test
+    public void testIndex() throws Exception {
+        final File location = this.folder.newFolder();
+        Tables tables = new Tables(location, 12);
+        try {
+            fill(tables);
+            final TablesColumnIndex index = tables.createIndex("t", Collections.singletonMap("url", ""));
+            assertTrue(tables.hasIndex("t", "url"));
+            assertFalse(tables.hasIndex("t", "comment"));
+            assertEquals(15, index.get("url", "http://host0/").size());
+
+            // changes are indexed
+            tables.update("t", UTF8.getBytes("000000000000"), row("url", "http://moved/"));
+            tables.delete("t", UTF8.getBytes("000000000007"));
+            final byte[] pk = tables.insert("t", row("url", "http://host0/"));
+            assertEquals(set("000000000014", "000000000021", "000000000028", "000000000035", "000000000042", "000000000049", "000000000056", "000000000063", "000000000070", "000000000077", "000000000084", "000000000091", "000000000098", UTF8.String(pk)),
+                    pks(tables.iterator("t", "url", UTF8.getBytes("http://host0/"))));
+            assertEquals(set("000000000000"), pks(tables.iterator("t", "url", UTF8.getBytes("http://moved/"))));
+            assertEquals("no host", UTF8.String(tables.select("t", UTF8.getBytes("000000000000")).get("comment")));
+        } finally {
+            tables.close();
+        }
+
+        // the index is opened together with the table
+        tables = new Tables(location, 12);
+        try {
+            assertTrue(tables.hasIndex("t", "url"));
+            assertEquals(set("000000000000"), pks(tables.iterator("t", "url", UTF8.getBytes("http://moved/"))));
+            assertEquals(14, pks(tables.iterator("t", "url", UTF8.getBytes("http://host0/"))).size());
+            assertTrue(tables.getIndex("t").keySet("url").contains("http://moved/"));
+            tables.clear("t");
+            assertEquals(0, pks(tables.iterator("t", "url", UTF8.getBytes("http://moved/"))).size());
+            assertTrue(tables.hasIndex("t", "url"));
+        } finally {
+            tables.close();
+        }
+    }
+}
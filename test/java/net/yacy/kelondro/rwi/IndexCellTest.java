@@ -0,0 +1,100 @@
+/**
+ *  IndexCellTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the {@link IndexCell} class.
+ */
+public class IndexCellTest {
+
+    private static final int TERMS = 4000;
+
+    private static IndexCell<WordReference> open(final File path, final IODispatcher merger) throws Exception {
+        return new IndexCell<WordReference>(path, "test", new WordReferenceFactory(), Base64Order.enhancedCoder,
+                Word.commonHashLength, 100000, 1024 * 1024, 1024 * 1024, 1024 * 1024, merger);
+    }
+
+    private static byte[] term(final int i) {
+        return Word.word2hash("term" + i);
+    }
+
+    /**
+     * a write buffer exceeding its memory limit is spilled to sorted runs which
+     * are readable at once and merged into the index when the cell is closed
+     */
+    @Test
+    public void testSpill() throws Exception {
+        final File path = new File(System.getProperty("java.io.tmpdir"), "IndexCellTest");
+        FileUtils.deletedelete(path);
+        final IODispatcher merger = new IODispatcher(1, 1, 1024 * 1024);
+        merger.start();
+        try {
+            IndexCell<WordReference> cell = open(path, merger);
+            cell.setBufferMaxBytes(1);
+            final byte[] url = ASCII.getBytes("AAAAAAAAAAAA");
+            for (int i = 0; i < TERMS; i++) {
+                cell.add(term(i), new WordReferenceRow(url, 20, 3, 0, 100, 10, 0L, 0L, ASCII.getBytes("en"), Response.DT_TEXT, 0, 0));
+            }
+
+            // the flush thread writes the buffer as a sorted run
+            final long timeout = System.currentTimeMillis() + 20000;
+            while (cell.getSegmentCount() == 0 && System.currentTimeMillis() < timeout) Thread.sleep(100);
+            assertTrue(cell.getSegmentCount() > 0);
+            assertEquals(0, cell.getBufferSize());
+            assertTrue(cell.has(term(17)));
+            assertEquals(1, cell.count(term(17)));
+            assertNotNull(cell.get(term(TERMS - 1), null));
+            cell.close();
+
+            cell = open(path, merger);
+            assertEquals(1, cell.getSegmentCount());
+            assertEquals(1, cell.count(term(17)));
+            assertEquals(TERMS, countTerms(cell));
+            cell.close();
+        } finally {
+            merger.terminate();
+            FileUtils.deletedelete(path);
+        }
+    }
+
+    private static int countTerms(final IndexCell<WordReference> cell) throws Exception {
+        final Iterator<ReferenceContainer<WordReference>> i = cell.referenceContainerIterator(null, false, false);
+        int c = 0;
+        while (i.hasNext()) if (i.next().size() > 0) c++;
+        return c;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *  ReferenceContainerArrayTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the {@link ReferenceContainerArray} class.
+ */
+public class ReferenceContainerArrayTest {
+
+    private static final WordReferenceFactory FACTORY = new WordReferenceFactory();
+
+    private static ReferenceContainerArray<WordReference> open(final File path) throws Exception {
+        return new ReferenceContainerArray<WordReference>(path, "test", FACTORY, Base64Order.enhancedCoder, Word.commonHashLength);
+    }
+
+    private static class Remover implements ReferenceContainerArray.ContainerReducer<WordReference> {
+
+        private final HandleSet urlHashes;
+
+        private Remover(final List<byte[]> urlHashes) throws Exception {
+            this.urlHashes = new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 0);
+            for (final byte[] urlHash: urlHashes) this.urlHashes.put(urlHash);
+        }
+
+        @Override
+        public ReferenceContainer<WordReference> reduce(final ReferenceContainer<WordReference> container) {
+            container.sort();
+            container.removeEntries(this.urlHashes);
+            return container;
+        }
+    }
+
+    /**
+     * removing rows from a compressed container may widen the bit-packed columns of its blocks,
+     * so that the reduced container needs more space than the old one; the rows must still be removed
+     */
+    @Test
+    public void testReduceGrowingContainer() throws Exception {
+        final File path = new File(System.getProperty("java.io.tmpdir"), "ReferenceContainerArrayTest");
+        FileUtils.deletedelete(path);
+        path.mkdirs();
+        try {
+            // two blocks with constant columns; the rows of the second block differ from the first in many columns
+            final List<byte[]> urls = new ArrayList<byte[]>();
+            for (int i = 0; i < 2 * ReferenceContainerCodec.BLOCK_SIZE; i++) urls.add(Word.word2hash("url" + i));
+            Collections.sort(urls, Base64Order.enhancedCoder);
+            final byte[] term = Word.word2hash("term");
+            final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(FACTORY, term);
+            for (int i = 0; i < urls.size(); i++) {
+                final int v = i < ReferenceContainerCodec.BLOCK_SIZE ? 0 : 255;
+                container.add(new WordReferenceRow(urls.get(i), v, v, v, v * 200, v * 200, 0L, 0L, ASCII.getBytes("en"), 't', v, v));
+            }
+            final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(FACTORY, Base64Order.enhancedCoder, Word.commonHashLength);
+            cache.add(container);
+            ReferenceContainerArray<WordReference> array = open(path);
+            final File f = array.newContainerBLOBFile();
+            cache.dump(f, 1024 * 1024, true);
+            array.mountBLOBFile(f);
+            assertEquals(urls.size(), array.count(term));
+
+            // removing the first row moves the first row of the second block into the first block
+            final List<byte[]> removed = new ArrayList<byte[]>();
+            removed.add(urls.get(0));
+            removed.add(urls.get(ReferenceContainerCodec.BLOCK_SIZE + 1));
+            assertEquals(2 * WordReferenceRow.urlEntryRow.objectsize, array.reduce(term, new Remover(removed)));
+            assertReduced(array, term, urls, removed);
+
+            // a reducer which does not match must not change anything
+            assertEquals(0, array.reduce(term, new Remover(Collections.singletonList(Word.word2hash("unknown")))));
+            assertReduced(array, term, urls, removed);
+            array.close();
+
+            array = open(path);
+            assertReduced(array, term, urls, removed);
+            array.close();
+        } finally {
+            FileUtils.deletedelete(path);
+        }
+    }
+
+    private static void assertReduced(final ReferenceContainerArray<WordReference> array, final byte[] term, final List<byte[]> urls, final List<byte[]> removed) throws Exception {
+        assertEquals(urls.size() - removed.size(), array.count(term));
+        final ReferenceContainer<WordReference> c = array.get(term);
+        assertEquals(urls.size() - removed.size(), c.size());
+        for (final byte[] url: urls) {
+            if (removed.contains(url)) assertNull(c.getReference(url)); else assertNotNull(c.getReference(url));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  ReferenceContainerCodecTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowSet;
+
+/**
+ * Unit tests for the {@link ReferenceContainerCodec} class.
+ */
+public class ReferenceContainerCodecTest {
+
+    private static final Row ROW = WordReferenceRow.urlEntryRow;
+
+    /**
+     * @return a row set with random url hashes and realistic small column values
+     */
+    private static RowSet randomRows(final int count, final long seed) throws Exception {
+        final Random r = new Random(seed);
+        final RowSet rows = new RowSet(ROW);
+        final byte[] hash = new byte[9];
+        for (int i = 0; i < count; i++) {
+            r.nextBytes(hash);
+            final Row.Entry e = ROW.newEntry();
+            e.setCol(0, ASCII.getBytes(Base64Order.enhancedCoder.encode(hash).substring(0, 12)));
+            e.setCol(1, 4000 + r.nextInt(300)); // lastModified
+            e.setCol(4, r.nextInt(5000)); // wordsInText
+            e.setCol(5, r.nextInt(300)); // phrasesInText
+            e.setCol(7, i % 3 == 0 ? "en" : "de"); // language
+            e.setCol(13, new byte[]{(byte) r.nextInt(4), 0, 0, (byte) r.nextInt(256)}); // flags
+            e.setCol(15, r.nextInt(1000)); // posintext
+            rows.addUnique(e);
+        }
+        return rows;
+    }
+
+    /**
+     * encoded containers must decode to the same sorted rows
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (final int count : new int[]{2, 127, 128, 129, 1000}) {
+            final RowSet rows = randomRows(count, count);
+            final byte[] encoded = ReferenceContainerCodec.encode(rows);
+            assertTrue(ReferenceContainerCodec.isEncoded(encoded));
+            assertEquals(count, ReferenceContainerCodec.importRowCount(Arrays.copyOf(encoded, ReferenceContainerCodec.HEAD_SIZE)));
+
+            final RowSet decoded = ReferenceContainerCodec.importRowSet(encoded, ROW);
+            assertEquals(count, decoded.size());
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals("row " + i + " of " + count, rows.get(i, false).bytes(), decoded.get(i, false).bytes());
+            }
+            assertTrue(decoded.has(rows.get(count / 2, false).getPrimaryKeyBytes()));
+        }
+    }
+
+    /**
+     * the compressed format must be considerably smaller than the plain export
+     */
+    @Test
+    public void testCompression() throws Exception {
+        final RowSet rows = randomRows(10000, 0);
+        final int plain = rows.exportCollection().length;
+        final int encoded = ReferenceContainerCodec.export(rows).length;
+        assertTrue("encoded " + encoded + " bytes, plain " + plain + " bytes", encoded * 2 < plain);
+    }
+
+    /**
+     * containers in the plain format and very small containers must stay readable
+     */
+    @Test
+    public void testPlainFormat() throws Exception {
+        final RowSet single = randomRows(1, 1);
+        final byte[] exported = ReferenceContainerCodec.export(single);
+        assertFalse(ReferenceContainerCodec.isEncoded(exported));
+
+        final RowSet rows = randomRows(300, 2);
+        final byte[] plain = rows.exportCollection();
+        assertEquals(300, ReferenceContainerCodec.importRowCount(plain));
+        final RowSet decoded = ReferenceContainerCodec.importRowSet(plain, ROW);
+        assertEquals(300, decoded.size());
+        assertArrayEquals(rows.get(7, false).bytes(), decoded.get(7, false).bytes());
+    }
+
+    /**
+     * single rows are found by decoding one block only
+     */
+    @Test
+    public void testLazyGet() throws Exception {
+        final RowSet rows = randomRows(1000, 3);
+        final ReferenceContainerCodec.Reader reader = new ReferenceContainerCodec.Reader(ReferenceContainerCodec.encode(rows), ROW);
+        assertEquals(1000, reader.size());
+        assertEquals(8, reader.blocks());
+        for (final int i : new int[]{0, 127, 128, 500, 999}) {
+            final Row.Entry expected = rows.get(i, false);
+            final Row.Entry found = reader.get(expected.getPrimaryKeyBytes());
+            assertNotNull(found);
+            assertArrayEquals(expected.bytes(), found.bytes());
+        }
+        assertNull(reader.get(ASCII.getBytes("____________")));
+    }
+}
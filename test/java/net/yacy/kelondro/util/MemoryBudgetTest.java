@@ -0,0 +1,115 @@
+/**
+ *  MemoryBudgetTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MemoryBudget}
+ */
+public class MemoryBudgetTest {
+
+    /**
+     * a cache which records the order of the shrink requests
+     */
+    private static class TestCache implements MemoryBudget.Consumer {
+        private final String name;
+        private final List<String> log;
+        private long used;
+
+        private TestCache(final String name, final long used, final List<String> log) {
+            this.name = name;
+            this.used = used;
+            this.log = log;
+        }
+
+        @Override
+        public long memoryUsed() {
+            return this.used;
+        }
+
+        @Override
+        public long shrink(final long bytes) {
+            this.log.add(this.name);
+            final long freed = Math.min(bytes, this.used);
+            this.used -= freed;
+            return freed;
+        }
+    }
+
+    @After
+    public void cleanup() {
+        MemoryBudget.deregister("test.a");
+        MemoryBudget.deregister("test.b");
+        MemoryBudget.deregister("test.c");
+        MemoryBudget.setWaterMarks(-1, -1);
+    }
+
+    @Test
+    public void testShrinkOrder() {
+        // the water marks are far below the real available memory, so only the explicit checks shrink
+        MemoryBudget.setWaterMarks(1000, 5000);
+        final List<String> log = new ArrayList<String>();
+        final TestCache a = new TestCache("a", 3000, log);
+        final TestCache b = new TestCache("b", 1000, log);
+        final TestCache c = new TestCache("c", 10000, log);
+        MemoryBudget.register("test.c", 3, c);
+        MemoryBudget.register("test.a", 1, a);
+        MemoryBudget.register("test.b", 2, b);
+
+        // enough memory available
+        assertEquals(0, MemoryBudget.check(2000));
+        assertTrue(log.isEmpty());
+
+        // 4900 bytes are needed to reach the high water mark
+        assertEquals(4900, MemoryBudget.check(100));
+        assertEquals(0, a.memoryUsed());
+        assertEquals(0, b.memoryUsed());
+        assertEquals(10000 - 900, c.memoryUsed());
+        assertEquals("[a, b, c]", log.toString());
+
+        // empty caches are not asked again
+        log.clear();
+        assertEquals(4900, MemoryBudget.check(100));
+        assertEquals("[c]", log.toString());
+    }
+
+    @Test
+    public void testUsage() {
+        final List<String> log = new ArrayList<String>();
+        MemoryBudget.register("test.b", 2, new TestCache("b", 20, log));
+        MemoryBudget.register("test.a", 1, new TestCache("a", 10, log));
+        final Map<String, Long> usage = MemoryBudget.usage();
+        assertEquals(10L, usage.get("test.a").longValue());
+        assertEquals(20L, usage.get("test.b").longValue());
+        MemoryBudget.deregister("test.a");
+        assertFalse(MemoryBudget.usage().containsKey("test.a"));
+        assertTrue(log.isEmpty());
+    }
+}
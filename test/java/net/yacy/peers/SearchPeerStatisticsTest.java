@@ -0,0 +1,134 @@
+/**
+ *  SearchPeerStatisticsTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+
+/**
+ * Unit tests for {@link SearchPeerStatistics}
+ */
+public class SearchPeerStatisticsTest {
+
+    private static Seed seed() {
+        return new Seed(ASCII.String(Seed.randomHash()), new ConcurrentHashMap<String, String>());
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, SearchPeerStatistics.bucket(1));
+        assertEquals(0, SearchPeerStatistics.bucket(16));
+        for (long ms = 17; ms < 100000; ms += 37) {
+            final int b = SearchPeerStatistics.bucket(ms);
+            assertTrue(ms <= SearchPeerStatistics.limit(b));
+            assertTrue(ms > SearchPeerStatistics.limit(b - 1));
+        }
+        assertEquals(SearchPeerStatistics.BUCKETS - 1, SearchPeerStatistics.bucket(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testStatistics() {
+        final SearchPeerStatistics stats = new SearchPeerStatistics(null);
+        final String fast = "fast", slow = "slow", failing = "failing";
+        assertNull(stats.get(fast));
+        assertEquals(SearchPeerStatistics.DEFAULT_LATENCY, stats.expectedLatency(fast), 0.0d);
+        assertEquals(500, stats.hedgeDelay(fast, 500));
+        for (int i = 0; i < 100; i++) {
+            stats.recordSuccess(fast, i % 10 == 0 ? 400 : 100, 10);
+            stats.recordSuccess(slow, 1500, 10);
+            stats.recordSuccess(failing, 100, 10);
+            stats.recordFailure(failing, 50);
+        }
+        assertEquals(100, stats.get(fast).count());
+        assertTrue(stats.get(fast).latency() < 400);
+        assertTrue(stats.get(fast).throughput() > 10);
+        // the 90th percentile contains the slow answers
+        assertTrue(stats.hedgeDelay(fast, 500) >= 100 && stats.hedgeDelay(fast, 500) < 400);
+        assertTrue(stats.get(fast).quantile(0.99d) >= 400);
+        assertTrue(stats.expectedLatency(fast) < stats.expectedLatency(slow));
+        // fast failures do not change the latency but the expected latency
+        assertTrue(stats.get(failing).errors() > 0.3d);
+        assertEquals(100.0d, stats.get(failing).latency(), 0.001d);
+        assertTrue(stats.expectedLatency(failing) > stats.expectedLatency(fast));
+    }
+
+    @Test
+    public void testPick() {
+        final SearchPeerStatistics stats = new SearchPeerStatistics(null);
+        final Seed fast = seed(), slow = seed(), unknown = seed();
+        for (int i = 0; i < 20; i++) {
+            stats.recordSuccess(fast.hash, 100, 10);
+            stats.recordSuccess(slow.hash, 4000, 10);
+        }
+        final Random random = new Random(1);
+        int fastPicks = 0, slowPicks = 0;
+        for (int i = 0; i < 1000; i++) {
+            final List<Seed> candidates = new ArrayList<Seed>();
+            candidates.add(slow);
+            candidates.add(unknown);
+            candidates.add(fast);
+            final Seed picked = stats.pick(candidates, random);
+            assertEquals(2, candidates.size());
+            if (picked == fast) fastPicks++;
+            if (picked == slow) slowPicks++;
+        }
+        // the choice prefers the fast peer but does not exclude the slow peer
+        assertTrue(fastPicks > 800);
+        assertTrue(slowPicks > 0);
+
+        final List<Seed> candidates = new ArrayList<Seed>();
+        candidates.add(slow);
+        candidates.add(fast);
+        assertSame(fast, stats.fastest(candidates));
+        assertSame(slow, stats.fastest(candidates));
+        assertNull(stats.fastest(candidates));
+    }
+
+    @Test
+    public void testPersistence() {
+        final File file = new File("test/DATA/searchPeerStatistics.txt");
+        file.getParentFile().mkdirs();
+        file.delete();
+        final SearchPeerStatistics stats = new SearchPeerStatistics(file);
+        for (int i = 0; i < 30; i++) stats.recordSuccess("peer", 200 + i, 5);
+        stats.recordFailure("peer", 5000);
+        stats.save();
+
+        final SearchPeerStatistics loaded = new SearchPeerStatistics(file);
+        assertEquals(stats.get("peer").count(), loaded.get("peer").count());
+        assertEquals((long) stats.get("peer").latency(), (long) loaded.get("peer").latency());
+        assertEquals(stats.get("peer").errors(), loaded.get("peer").errors(), 0.001d);
+        assertEquals(stats.get("peer").quantile(0.5d), loaded.get("peer").quantile(0.5d));
+        assertEquals(stats.hedgeDelay("peer", 0), loaded.hedgeDelay("peer", 0));
+        file.delete();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *  SeedRingTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+
+/**
+ * Unit tests for {@link SeedRing}
+ */
+public class SeedRingTest {
+
+    private static Seed seed(final byte[] hash, final long wordCount, final boolean acceptRemoteIndex) {
+        final Seed seed = new Seed(ASCII.String(hash), new ConcurrentHashMap<String, String>());
+        seed.put(Seed.VERSION, "1.92");
+        seed.put(Seed.ICOUNT, Long.toString(wordCount));
+        seed.setFlagAcceptRemoteIndex(acceptRemoteIndex);
+        return seed;
+    }
+
+    /**
+     * the ring has the order of the seed database, and the binary search finds the same positions as a sorted set
+     */
+    @Test
+    public void testOrder() {
+        final List<Seed> seeds = new ArrayList<Seed>();
+        final TreeSet<byte[]> hashes = new TreeSet<byte[]>(Base64Order.enhancedCoder);
+        for (int i = 0; i < 2000; i++) {
+            final byte[] hash = Seed.randomHash();
+            seeds.add(seed(hash, i, i % 3 != 0));
+            hashes.add(hash);
+        }
+        final SeedRing ring = SeedRing.of(seeds.iterator());
+        assertEquals(hashes.size(), ring.size());
+        int i = 0;
+        for (final byte[] hash: hashes) {
+            assertArrayEquals(hash, ring.get(i).hash);
+            assertEquals(i, ring.indexOf(hash));
+            assertEquals(i, ring.lowerBound(hash));
+            assertEquals(i + 1, ring.upperBound(hash));
+            i++;
+        }
+        for (int j = 0; j < 2000; j++) {
+            final byte[] probe = Seed.randomHash();
+            final byte[] ceiling = hashes.ceiling(probe);
+            assertEquals(ceiling == null ? ring.size() : ring.indexOf(ceiling), ring.lowerBound(probe));
+            final byte[] higher = hashes.higher(probe);
+            assertEquals(higher == null ? ring.size() : ring.indexOf(higher), ring.upperBound(probe));
+        }
+    }
+
+    /**
+     * changes create a new ring and leave the old ring unchanged
+     */
+    @Test
+    public void testCopyOnWrite() {
+        final byte[] a = ASCII.getBytes("AAAAAAAAAAAA");
+        final byte[] b = ASCII.getBytes("BBBBBBBBBBBB");
+        final byte[] c = ASCII.getBytes("CCCCCCCCCCCC");
+        final SeedRing ring0 = SeedRing.EMPTY.put(seed(c, 1, true)).put(seed(a, 2, false));
+        assertEquals(2, ring0.size());
+        assertArrayEquals(a, ring0.get(0).hash);
+        assertFalse(ring0.hasFlag(0, SeedRing.FLAG_ACCEPT_REMOTE_INDEX));
+        assertTrue(ring0.hasFlag(1, SeedRing.FLAG_ACCEPT_REMOTE_INDEX));
+
+        final SeedRing ring1 = ring0.put(seed(b, 3, true));
+        assertEquals(2, ring0.size());
+        assertEquals(3, ring1.size());
+        assertEquals(1, ring1.indexOf(b));
+        assertEquals(3, ring1.get(1).wordCount);
+
+        final SeedRing ring2 = ring1.put(seed(b, 4, false));
+        assertEquals(3, ring2.size());
+        assertEquals(4, ring2.get(1).wordCount);
+        assertEquals(3, ring1.get(1).wordCount);
+
+        final SeedRing ring3 = ring2.remove(a);
+        assertEquals(2, ring3.size());
+        assertEquals(-1, ring3.indexOf(a));
+        assertEquals(0, ring3.indexOf(b));
+        assertSame(ring3, ring3.remove(a));
+        assertEquals(0, ring2.indexOf(a));
+    }
+
+    @Test
+    public void testValues() {
+        final Seed seed = seed(ASCII.getBytes("AAAAAAAAAAAA"), 10, true);
+        seed.put(Seed.LCOUNT, "12345");
+        seed.setFlagSolrAvailable(false);
+        final SeedRing ring = SeedRing.EMPTY.put(seed);
+        assertEquals(12345, ring.get(0).linkCount);
+        assertFalse(ring.hasFlag(0, SeedRing.FLAG_SOLR_AVAILABLE));
+        assertTrue(ring.hasVersion(0, 1.5d));
+        assertFalse(ring.hasVersion(0, 2.0d));
+        assertEquals(seed.getAge(), ring.age(0, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  HostGraphTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.peers.graphics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for {@link HostGraph}
+ */
+public class HostGraphTest {
+
+    private static String hash(final int i) {
+        return String.format("h%05d", i);
+    }
+
+    /**
+     * fill a graph with random rows, changed again and again, and compare both directions with the plain maps
+     */
+    private static Map<Integer, Map<String, Integer>> fill(final HostGraph graph, final int hosts, final int updates) {
+        final Random random = new Random(17);
+        final Map<Integer, Map<String, Integer>> rows = new TreeMap<Integer, Map<String, Integer>>();
+        for (int u = 0; u < updates; u++) {
+            final int source = random.nextInt(hosts);
+            final Map<String, Integer> refs = new HashMap<String, Integer>();
+            final int degree = random.nextInt(10);
+            for (int k = 0; k < degree; k++) refs.put(hash(random.nextInt(hosts * 2)), Integer.valueOf(1 + random.nextInt(100)));
+            final int id = graph.addHost(hash(source), "host" + source + ".net", "20260101", true);
+            graph.setOutgoing(id, refs, "20261019");
+            rows.put(Integer.valueOf(source), refs);
+        }
+        return rows;
+    }
+
+    private static void check(final HostGraph graph, final Map<Integer, Map<String, Integer>> rows, final int hosts) {
+        for (final Map.Entry<Integer, Map<String, Integer>> row: rows.entrySet()) {
+            final int id = graph.id(hash(row.getKey().intValue()));
+            assertEquals(row.getValue(), graph.outgoing(id));
+            assertEquals(row.getValue().size(), graph.outdegree(id));
+            assertEquals("20261019", graph.date(id));
+        }
+        for (int t = 0; t < hosts * 2; t++) {
+            final Map<String, Integer> expected = new HashMap<String, Integer>();
+            for (final Map.Entry<Integer, Map<String, Integer>> row: rows.entrySet()) {
+                final Integer c = row.getValue().get(hash(t));
+                if (c != null) expected.put(hash(row.getKey().intValue()), c);
+            }
+            final int id = graph.id(hash(t));
+            if (id < 0) {
+                assertTrue(expected.isEmpty());
+            } else {
+                assertEquals(expected, graph.incoming(id));
+            }
+        }
+    }
+
+    /**
+     * the incoming links are correct with changed rows in the overlay and after the compression
+     */
+    @Test
+    public void testIncremental() {
+        final HostGraph graph = new HostGraph();
+        final Map<Integer, Map<String, Integer>> rows = fill(graph, 3000, 10000);
+        check(graph, rows, 3000);
+        graph.compress();
+        check(graph, rows, 3000);
+        assertEquals(rows.size(), graph.size());
+        assertEquals(rows.size(), graph.hosts(true).size());
+        assertTrue(graph.hosts(false).isEmpty());
+        graph.joinOldNew();
+        assertEquals(rows.size(), graph.hosts(false).size());
+    }
+
+    @Test
+    public void testHosts() {
+        final HostGraph graph = new HostGraph();
+        final int a = graph.addHost("AAAAAA", "example.org", "20260101", false);
+        final int b = graph.addHost("BBBBBB", "Example.org", "20260102", false);
+        final Map<String, Integer> refs = new HashMap<String, Integer>();
+        refs.put("CCCCCC", Integer.valueOf(100000));
+        graph.setOutgoing(a, refs, "20260103");
+        assertTrue(graph.exists("AAAAAA"));
+        assertFalse(graph.exists("CCCCCC")); // only known as link target
+        assertNull(graph.hostname(graph.id("CCCCCC")));
+        assertEquals(Integer.valueOf(HostGraph.MAX_COUNT), graph.outgoing(a).get("CCCCCC"));
+        assertArrayEquals(new int[] {a, b}, graph.hostIds("EXAMPLE.ORG"));
+        graph.removeHost(a);
+        assertFalse(graph.exists("AAAAAA"));
+        assertArrayEquals(new int[] {b}, graph.hostIds("example.org"));
+        assertTrue(graph.incoming(graph.id("CCCCCC")).isEmpty());
+        assertEquals(1, graph.size());
+    }
+
+    /**
+     * a binary dump is read back with the same hosts and links
+     */
+    @Test
+    public void testSaveLoad() throws IOException {
+        final HostGraph graph = new HostGraph();
+        final Map<Integer, Map<String, Integer>> rows = fill(graph, 500, 2000);
+        final File file = File.createTempFile("HostGraphTest", ".dump");
+        try {
+            graph.save(file);
+            assertTrue(HostGraph.isDump(file));
+            final HostGraph loaded = new HostGraph();
+            loaded.load(file);
+            assertEquals(graph.size(), loaded.size());
+            assertEquals(graph.idCount(), loaded.idCount());
+            check(loaded, rows, 500);
+            for (final Map.Entry<Integer, Map<String, Integer>> row: rows.entrySet()) {
+                assertEquals("host" + row.getKey() + ".net", loaded.hostname(loaded.id(hash(row.getKey().intValue()))));
+            }
+        } finally {
+            FileUtils.deletedelete(file);
+        }
+    }
+}
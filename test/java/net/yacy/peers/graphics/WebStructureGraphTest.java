@@ -21,16 +21,21 @@
 
 package net.yacy.peers.graphics;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.peers.graphics.WebStructureGraph.LearnObject;
 import net.yacy.peers.graphics.WebStructureGraph.StructureEntry;
 
@@ -313,6 +318,50 @@ public class WebStructureGraphTest {
 		}
 	}
 	
+	/**
+	 * A text dump of former versions is loaded and saved again as binary dump
+	 */
+	@Test
+	public void testPersistence() throws IOException {
+		final File file = File.createTempFile("WebStructureGraphTest", ".map");
+		try {
+			final String sourceHash = new DigestURL("http://source.net").hosthash();
+			final String targetHash = new DigestURL("http://target.com").hosthash();
+			final Map<String, byte[]> map = new TreeMap<>();
+			map.put(sourceHash + ",source.net", UTF8.getBytes("20170102" + targetHash + "000a"));
+			map.put(targetHash + ",target.com", UTF8.getBytes("20170101"));
+			FileUtils.saveMapB(file, map, "test");
+
+			WebStructureGraph graph = new WebStructureGraph(file);
+			StructureEntry outRefs = graph.outgoingReferences(sourceHash);
+			Assert.assertNotNull(outRefs);
+			Assert.assertEquals("20170102", outRefs.date);
+			Assert.assertEquals(Integer.valueOf(10), outRefs.references.get(targetHash));
+			Assert.assertFalse(graph.structureEntryIterator(true).hasNext());
+
+			final Set<DigestURL> targets = new HashSet<>();
+			targets.add(new DigestURL("http://other.org/index.html"));
+			graph.learnrefs(new LearnObject(new DigestURL("http://target.com/index.html"), targets));
+			graph.close();
+
+			graph = new WebStructureGraph(file);
+			try {
+				StructureEntry inRefs = graph.incomingReferences(targetHash);
+				Assert.assertNotNull(inRefs);
+				Assert.assertEquals(Integer.valueOf(10), inRefs.references.get(sourceHash));
+				inRefs = graph.incomingReferences(new DigestURL("http://other.org").hosthash());
+				Assert.assertEquals(Integer.valueOf(1), inRefs.references.get(targetHash));
+				Assert.assertEquals("other.org", inRefs.hostname);
+				Assert.assertEquals(1, graph.referencesCount(targetHash));
+				Assert.assertEquals(2, graph.incomingReferences().size());
+			} finally {
+				graph.close();
+			}
+		} finally {
+			FileUtils.deletedelete(file);
+		}
+	}
+
 	/**
 	 * Simple performance measurements with a test structure filled to its limits.
 	 */
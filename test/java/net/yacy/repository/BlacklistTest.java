@@ -119,4 +119,56 @@ public class BlacklistTest {
     	Assert.assertFalse(Blacklist.isListed("fr.notblacklisted.org", "/path/with/many/segments/e/f/g/h/i/j/k/l/m/n/o/p/q/r/s/t/u/v/w/x/y/z/file.html", blacklistMapMatched, blacklistMapNotMatched));
     }
 
+    private static Set<Pattern> patterns(final String... regex) {
+        final Set<Pattern> patterns = new HashSet<>();
+        for (final String r: regex) patterns.add(Pattern.compile(r, Pattern.CASE_INSENSITIVE));
+        return patterns;
+    }
+
+    /**
+     * Tests the host entry forms of the compiled blacklist: domains, sub-domain and prefix wildcards and host regular expressions.
+     */
+    @Test
+    public void testMatcherHostForms() {
+        final Map<String, Set<Pattern>> blacklistMapMatched = new HashMap<>();
+        blacklistMapMatched.put("example.com", patterns("ads/.*", "(.*/|)banner\\d+\\.gif"));
+        blacklistMapMatched.put("*.tracker.net", patterns(".*"));
+        blacklistMapMatched.put("cdn.*", patterns("(a|b)\\1/.*"));
+        blacklistMapMatched.put("www.shop.de", patterns("cart"));
+        final Map<String, Set<Pattern>> blacklistMapNotMatched = new HashMap<>();
+        blacklistMapNotMatched.put("(mobile|m)\\..*", patterns("app/.*"));
+        blacklistMapNotMatched.put("*", patterns(".*")); // an invalid host regular expression is ignored
+        final BlacklistMatcher matcher = new BlacklistMatcher(blacklistMapMatched, blacklistMapNotMatched);
+
+        // a domain entry matches the domain and all sub-domains, and hosts which start with the domain labels
+        assertTrue(matcher.isListed("example.com", "/ads/1.html"));
+        assertTrue(matcher.isListed("www.example.com", "/ADS/1.html"));
+        assertTrue(matcher.isListed("example.com.evil.org", "/ads/1.html"));
+        assertTrue(matcher.isListed("img.example.com", "/x/y/banner12.gif"));
+        assertFalse(matcher.isListed("example.com", "/index.html"));
+        assertFalse(matcher.isListed("badexample.com", "/ads/1.html"));
+        assertTrue(matcher.isListed("www.shop.de", "/cart"));
+        assertFalse(matcher.isListed("www.shop.de", "/cart2"));
+
+        // '*.domain' matches only sub-domains
+        assertTrue(matcher.isListed("a.b.tracker.net", "/"));
+        assertFalse(matcher.isListed("tracker.net", "/"));
+
+        // 'prefix.*' matches hosts with more labels only, back references are kept
+        assertTrue(matcher.isListed("cdn.example.org", "/aa/x"));
+        assertFalse(matcher.isListed("cdn.example.org", "/ab/x"));
+        assertFalse(matcher.isListed("cdn", "/aa/x"));
+
+        // host regular expressions
+        assertTrue(matcher.isListed("m.news.org", "/app/start"));
+        assertFalse(matcher.isListed("m.news.org", "/index.html"));
+        assertFalse(matcher.isListed("news.org", "/app/start"));
+
+        // the results are cached by url hash
+        final byte[] hash = "AAAAAAAAAAAA".getBytes();
+        assertNull(matcher.cached(hash));
+        matcher.cache(hash, true);
+        assertEquals(Boolean.TRUE, matcher.cached(hash));
+    }
+
 }
@@ -0,0 +1,116 @@
+/**
+ *  CitationRankGraphTest
+ *  part of YaCy
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.search.ranking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CitationRankGraph} class.
+ */
+public class CitationRankGraphTest {
+
+    /**
+     * @return a random graph where links[i][j] is true when node i links to node j
+     */
+    private static boolean[][] randomLinks(final int n, final long seed) {
+        final Random r = new Random(seed);
+        final boolean[][] links = new boolean[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int k = r.nextInt(8); k > 0; k--) {
+                final int j = r.nextInt(n);
+                if (j != i) links[i][j] = true;
+            }
+        }
+        return links;
+    }
+
+    private static CitationRankGraph graph(final boolean[][] links) {
+        final int n = links.length;
+        final int[] outdegree = new int[n];
+        for (int i = 0; i < n; i++) for (int j = 0; j < n; j++) if (links[i][j]) outdegree[i]++;
+        final CitationRankGraph.Builder builder = new CitationRankGraph.Builder(outdegree);
+        for (int j = 0; j < n; j++) {
+            int c = 0;
+            for (int i = 0; i < n; i++) if (links[i][j]) c++;
+            final int[] from = new int[c];
+            c = 0;
+            for (int i = 0; i < n; i++) if (links[i][j]) from[c++] = i;
+            builder.setInbound(j, from);
+        }
+        return builder.build();
+    }
+
+    /**
+     * the straightforward computation of the citation rank with a fixed number of steps
+     */
+    private static double[] naiveRank(final boolean[][] links, final double damping, final int steps) {
+        final int n = links.length;
+        final int[] outdegree = new int[n];
+        for (int i = 0; i < n; i++) for (int j = 0; j < n; j++) if (links[i][j]) outdegree[i]++;
+        double[] cr = new double[n];
+        for (int i = 0; i < n; i++) cr[i] = 1.0d / n;
+        for (int s = 0; s < steps; s++) {
+            final double[] next = new double[n];
+            for (int j = 0; j < n; j++) {
+                double ncr = 0.0d;
+                for (int i = 0; i < n; i++) if (links[i][j]) ncr += cr[i] / outdegree[i];
+                next[j] = (1.0d - damping) / n + damping * ncr;
+            }
+            cr = next;
+        }
+        return cr;
+    }
+
+    @Test
+    public void testConverge() {
+        final boolean[][] links = randomLinks(3000, 0);
+        final CitationRankGraph sequential = graph(links);
+        final int steps = sequential.converge(0.85d, 6, 30, 1);
+        assertTrue(steps > 1 && steps <= 30);
+        final double[] expected = naiveRank(links, 0.85d, steps);
+        final CitationRankGraph concurrent = graph(links);
+        assertEquals(steps, concurrent.converge(0.85d, 6, 30, 4));
+        for (int i = 0; i < links.length; i++) {
+            assertEquals(expected[i], sequential.rank(i), 1e-12);
+            assertEquals(expected[i], concurrent.rank(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        final boolean[][] links = randomLinks(1000, 1);
+        final CitationRankGraph g = graph(links);
+        g.converge(0.85d, 6, 30, 2);
+        final int[] crn = g.normalize();
+        int max = 0;
+        for (int i = 0; i < crn.length; i++) {
+            max = Math.max(max, crn[i]);
+            for (int j = 0; j < crn.length; j++) {
+                if (g.rank(i) < g.rank(j)) assertTrue(crn[i] <= crn[j]);
+                if (g.rank(i) == g.rank(j)) assertEquals(crn[i], crn[j]);
+            }
+        }
+        assertEquals(10, max);
+    }
+}
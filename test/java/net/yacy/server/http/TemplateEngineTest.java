@@ -0,0 +1,114 @@
+/**
+ *  TemplateEngineTest
+ *  part of YaCy
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package net.yacy.server.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.server.serverObjects;
+
+/**
+ * Unit tests for the {@link TemplateEngine} class.
+ */
+public class TemplateEngineTest {
+
+    private static String render(final String template, final serverObjects pattern) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateEngine.writeTemplate("test", new ByteArrayInputStream(UTF8.getBytes(template)), out, pattern);
+        return UTF8.String(out.toByteArray());
+    }
+
+    @Test
+    public void testNormal() throws IOException {
+        final serverObjects pattern = new serverObjects();
+        pattern.put("name", "John");
+        assertEquals("Hello John!", render("Hello #[name]#!", pattern));
+        assertEquals("Hello -UNRESOLVED_PATTERN-!", render("Hello #[other]#!", pattern));
+        assertEquals("color: #fff; ## #", render("color: #fff; ## #", pattern));
+        assertEquals("unterminated ", render("unterminated #[name", pattern));
+    }
+
+    @Test
+    public void testMulti() throws IOException {
+        final serverObjects pattern = new serverObjects();
+        pattern.put("times", 3);
+        for (int i = 0; i < 3; i++) pattern.put("times_" + i + "_num", i + 1);
+        // the newlines after the multi tags are removed
+        assertEquals("<ul><li>1</li><li>2</li><li>3</li></ul>",
+                render("<ul>#{times}#\n<li>#[num]#</li>#{/times}#\n</ul>", pattern));
+        assertEquals("[]", render("[#{none}#x#{/none}#]", pattern));
+    }
+
+    @Test
+    public void testAlternative() throws IOException {
+        final serverObjects pattern = new serverObjects();
+        pattern.put("daytime", 1);
+        pattern.put("daytime_name", "Sarah");
+        pattern.put("flag", "true");
+        pattern.put("many", 7);
+        assertEquals("Good evening Sarah", render("Good #(daytime)#morning::evening #[name]##(/daytime)#", pattern));
+        assertEquals("[yes]", render("[#(flag)#no::yes#(/flag)#]", pattern));
+        assertEquals("[no]", render("[#(missing)#no::yes#(/missing)#]", pattern));
+        // a missing alternative is replaced by the last one
+        assertEquals("[c]", render("[#(many)#a::b::c#(/many)#]", pattern));
+        // separators of nested alternatives are not separators of the enclosing alternative
+        pattern.put("daytime_flag", 1);
+        assertEquals("[x-z-y]", render("[#(daytime)#a::x-#(flag)#y::z#(/flag)#-y::b#(/daytime)#]", pattern));
+    }
+
+    @Test
+    public void testAlternativeByName() throws IOException {
+        final serverObjects pattern = new serverObjects();
+        pattern.put("mode", "beta");
+        assertEquals("[second]", render("[#(mode)#%%alphafirst::%%betasecond::%%gammathird#(/mode)#]", pattern));
+        pattern.put("mode", "delta");
+        assertEquals("[", render("[#(mode)#%%alphafirst::%%betasecond#(/mode)#]", pattern));
+    }
+
+    @Test
+    public void testFileCache() throws IOException {
+        final File f = File.createTempFile("TemplateEngineTest", ".html");
+        try {
+            final serverObjects pattern = new serverObjects();
+            pattern.put("a", "A");
+            pattern.put("b", "B");
+            FileUtils.copy(UTF8.getBytes("first #[a]#"), f);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TemplateEngine.writeTemplate(f, out, pattern);
+            assertEquals("first A", UTF8.String(out.toByteArray()));
+
+            // a changed file is compiled again
+            FileUtils.copy(UTF8.getBytes("second #[b]#"), f);
+            f.setLastModified(f.lastModified() + 2000);
+            out = new ByteArrayOutputStream();
+            TemplateEngine.writeTemplate(f, out, pattern);
+            assertEquals("second B", UTF8.String(out.toByteArray()));
+        } finally {
+            f.delete();
+        }
+    }
+}